@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.util.flags;
+
+import static com.afwsamples.testdpc.util.flags.Flags.command;
+import static com.afwsamples.testdpc.util.flags.Flags.namedParam;
+import static com.afwsamples.testdpc.util.flags.Flags.optional;
+import static com.afwsamples.testdpc.util.flags.Flags.ordinalParam;
+import static com.afwsamples.testdpc.util.flags.Flags.repeated;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Measures the latency of dispatching a single command, comparing a {@link Flags} instance that
+ * registers every command on each invocation (as {@code ShellCommand} used to) with one that uses a
+ * shared {@link Flags.CommandTable}.
+ *
+ * <p>Usage: {@code bazel run //:CommandDispatchBenchmark -- [iterations]}.
+ */
+public final class CommandDispatchBenchmark {
+  // Roughly the number of commands registered by ShellCommand
+  private static final int COMMAND_COUNT = 120;
+  private static final int ROUNDS = 5;
+
+  private static final String[] ARGS = {"set-restriction-64", "no_install_apps", "true"};
+
+  /** Stand-in for a custom type whose parser is bound to per-invocation state. */
+  private static final class Handle {
+    private final long id;
+
+    private Handle(long id) {
+      this.id = id;
+    }
+  }
+
+  private static long sink;
+
+  private CommandDispatchBenchmark() {}
+
+  public static void main(String[] args) {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+    PrintWriter output = new PrintWriter(Writer.nullWriter());
+
+    long coldStart = System.nanoTime();
+    runRegisteringAllCommands(output);
+    long coldRegistering = System.nanoTime() - coldStart;
+
+    coldStart = System.nanoTime();
+    Flags.CommandTable table = buildTable();
+    runWithTable(output, table);
+    long coldTable = System.nanoTime() - coldStart;
+
+    System.out.printf(
+        Locale.ROOT,
+        "Cold (first) dispatch: register-all %,d ns, shared table (including build) %,d ns%n",
+        coldRegistering,
+        coldTable);
+
+    for (int round = 1; round <= ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        runRegisteringAllCommands(output);
+      }
+      long registering = (System.nanoTime() - start) / iterations;
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        runWithTable(output, table);
+      }
+      long shared = (System.nanoTime() - start) / iterations;
+
+      System.out.printf(
+          Locale.ROOT,
+          "Warm round %d: register-all %,d ns/op, shared table %,d ns/op%n",
+          round,
+          registering,
+          shared);
+    }
+    System.out.println("(checksum " + sink + ")");
+  }
+
+  private static void runRegisteringAllCommands(PrintWriter output) {
+    Flags flags = new Flags(output);
+    registerCustomParser(flags);
+    for (int i = 0; i < COMMAND_COUNT; i++) {
+      flags.addCommand(commandAt(i));
+    }
+    flags.run(ARGS);
+  }
+
+  private static void runWithTable(PrintWriter output, Flags.CommandTable table) {
+    Flags flags = new Flags(output, table);
+    registerCustomParser(flags);
+    flags.run(ARGS);
+  }
+
+  private static Flags.CommandTable buildTable() {
+    Flags.CommandTable.Builder builder =
+        Flags.CommandTable.builder().declareCustomType(Handle.class);
+    for (int i = 0; i < COMMAND_COUNT; i++) {
+      builder.addCommand(commandAt(i));
+    }
+    return builder.build();
+  }
+
+  private static void registerCustomParser(Flags flags) {
+    long base = sink;
+    flags.registerCustomParser(
+        Handle.class, (string, validator) -> validator.valid(new Handle(base + string.length())));
+  }
+
+  /** Creates commands with the same mix of parameter shapes used by {@code ShellCommand}. */
+  private static Flags.RegisteredCommand.Builder commandAt(int index) {
+    switch (index % 6) {
+      case 0:
+        return command("get-value-" + index, () -> sink++).setDescription("Gets a value.");
+      case 1:
+        return command(
+                "set-enabled-" + index,
+                (enabled) -> sink += enabled ? 1 : 0,
+                ordinalParam(boolean.class, "enabled"))
+            .setDescription("Enables or disables something.");
+      case 2:
+        return command(
+                "set-flags-" + index,
+                (name, flags) -> sink += name.length() + (flags == null ? 0 : flags),
+                ordinalParam(String.class, "name"),
+                optional(namedParam(int.class, "flags")))
+            .setDescription("Sets something with the optional flags.");
+      case 3:
+        return command(
+                "set-packages-" + index,
+                (packages) -> sink += packages.length,
+                repeated(ordinalParam(String.class, "packages")))
+            .setDescription("Sets the given packages, or clears them if none are passed.");
+      case 4:
+        return command(
+                "set-restriction-" + index,
+                (restriction, enabled) -> sink += restriction.length() + (enabled ? 1 : 0),
+                ordinalParam(String.class, "restriction"),
+                ordinalParam(boolean.class, "enabled"))
+            .setDescription("Sets the given restriction.");
+      default:
+        return command(
+                "remove-handle-" + index,
+                (handle) -> sink += handle.id,
+                ordinalParam(Handle.class, "handle"))
+            .setDescription("Removes the given handle.");
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.util.flags;
+
+import static com.afwsamples.testdpc.util.flags.Flags.command;
+import static com.afwsamples.testdpc.util.flags.Flags.namedParam;
+import static com.afwsamples.testdpc.util.flags.Flags.optional;
+import static com.afwsamples.testdpc.util.flags.Flags.ordinalParam;
+import static com.afwsamples.testdpc.util.flags.Flags.repeated;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures parsing the arguments of a command with ordinal, named and repeated parameters.
+ *
+ * <p>The parser is private to {@link Flags}, so each case runs a whole command through {@link
+ * Flags#run}; {@link #noArgs} is the baseline cost of finding and invoking a command.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandLineParserBenchmark {
+  private static final String[] NO_ARGS = {"no-args"};
+  private static final String[] ORDINAL_ARGS = {"ordinal", "com.example", "42", "true"};
+  private static final String[] NAMED_ARGS = {
+    "named", "--name", "com.example", "--count", "42", "--enabled", "true"
+  };
+  private static final String[] NAMED_OPTIONAL_MISSING_ARGS = {"named", "--name", "com.example"};
+  private static final String[] REPEATED_ORDINAL_ARGS = repeatedArgs("repeated-ordinal");
+  private static final String[] REPEATED_NAMED_ARGS = repeatedArgs("repeated-named", "--values");
+
+  private Flags flags;
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    flags = new Flags(new PrintWriter(Writer.nullWriter()));
+    flags.addCommand(command("no-args", () -> blackhole.consume(true)));
+    flags.addCommand(
+        command(
+            "ordinal",
+            (name, count, enabled) -> {
+              blackhole.consume(name);
+              blackhole.consume(count);
+              blackhole.consume(enabled);
+            },
+            ordinalParam(String.class, "name"),
+            ordinalParam(int.class, "count"),
+            ordinalParam(boolean.class, "enabled")));
+    flags.addCommand(
+        command(
+            "named",
+            (name, count, enabled) -> {
+              blackhole.consume(name);
+              blackhole.consume(count);
+              blackhole.consume(enabled);
+            },
+            namedParam(String.class, "name"),
+            optional(namedParam(int.class, "count")),
+            optional(namedParam(boolean.class, "enabled"))));
+    flags.addCommand(
+        command(
+            "repeated-ordinal",
+            (values) -> blackhole.consume(values),
+            repeated(ordinalParam(Integer.class, "values"))));
+    flags.addCommand(
+        command(
+            "repeated-named",
+            (values) -> blackhole.consume(values),
+            repeated(namedParam(Integer.class, "values"))));
+  }
+
+  @Benchmark
+  public void noArgs() {
+    flags.run(NO_ARGS);
+  }
+
+  @Benchmark
+  public void ordinal() {
+    flags.run(ORDINAL_ARGS);
+  }
+
+  @Benchmark
+  public void named() {
+    flags.run(NAMED_ARGS);
+  }
+
+  @Benchmark
+  public void namedWithMissingOptional() {
+    flags.run(NAMED_OPTIONAL_MISSING_ARGS);
+  }
+
+  @Benchmark
+  public void repeatedOrdinal() {
+    flags.run(REPEATED_ORDINAL_ARGS);
+  }
+
+  @Benchmark
+  public void repeatedNamed() {
+    flags.run(REPEATED_NAMED_ARGS);
+  }
+
+  /** Creates the arguments of a command followed by 16 values. */
+  private static String[] repeatedArgs(String... prefix) {
+    String[] args = new String[prefix.length + 16];
+    System.arraycopy(prefix, 0, args, 0, prefix.length);
+    for (int i = 0; i < 16; i++) {
+      args[prefix.length + i] = Integer.toString(i * 1_000);
+    }
+    return args;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.util.flags;
+
+import static com.afwsamples.testdpc.util.flags.Flags.command;
+import static com.afwsamples.testdpc.util.flags.Flags.namedParam;
+import static com.afwsamples.testdpc.util.flags.Flags.optional;
+import static com.afwsamples.testdpc.util.flags.Flags.ordinalParam;
+import static com.afwsamples.testdpc.util.flags.Flags.repeated;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Flags#addCommand} and {@link Flags.CommandTable.Builder#addCommand}, which
+ * validate each command (name, parameter names and parsers) as it's registered.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegistrationBenchmark {
+  private static final PrintWriter NULL_WRITER = new PrintWriter(Writer.nullWriter());
+
+  @Param({"10", "120"})
+  public int commandCount;
+
+  @Benchmark
+  public Flags registerOnInstance() {
+    Flags flags = new Flags(NULL_WRITER);
+    for (int i = 0; i < commandCount; i++) {
+      flags.addCommand(commandAt(i));
+    }
+    return flags;
+  }
+
+  @Benchmark
+  public Flags.CommandTable buildCommandTable() {
+    Flags.CommandTable.Builder builder = Flags.CommandTable.builder();
+    for (int i = 0; i < commandCount; i++) {
+      builder.addCommand(commandAt(i));
+    }
+    return builder.build();
+  }
+
+  /** Creates commands with the mix of parameter shapes used by {@code ShellCommand}. */
+  private static Flags.RegisteredCommand.Builder commandAt(int index) {
+    switch (index % 5) {
+      case 0:
+        return command("get-value-" + index, () -> {}).setDescription("Gets a value.");
+      case 1:
+        return command(
+                "set-enabled-" + index, (enabled) -> {}, ordinalParam(boolean.class, "enabled"))
+            .setDescription("Enables or disables something.");
+      case 2:
+        return command(
+                "set-flags-" + index,
+                (name, flags) -> {},
+                ordinalParam(String.class, "name"),
+                optional(namedParam(int.class, "flags")))
+            .setDescription("Sets something with the optional flags.");
+      case 3:
+        return command(
+                "set-packages-" + index,
+                (packages) -> {},
+                repeated(ordinalParam(String.class, "packages")))
+            .setDescription("Sets the given packages, or clears them if none are passed.");
+      default:
+        return command(
+                "set-restriction-" + index,
+                (restriction, enabled) -> {},
+                ordinalParam(String.class, "restriction"),
+                ordinalParam(boolean.class, "enabled"))
+            .setDescription("Sets the given restriction.");
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.util.flags;
+
+import static com.afwsamples.testdpc.util.flags.Flags.command;
+import static com.afwsamples.testdpc.util.flags.Flags.ordinalParam;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the default numeric parsers, parsing a single ordinal argument of each type.
+ *
+ * <p>The parsers are private to {@link Flags}, so each case runs a one-parameter command; compare
+ * with {@link CommandLineParserBenchmark#noArgs} for the cost of the command itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TypeParserBenchmark {
+  @Param({"byte", "short", "int", "long", "float", "double"})
+  public String type;
+
+  private Flags flags;
+  private String[] args;
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    flags = new Flags(new PrintWriter(Writer.nullWriter()));
+    switch (type) {
+      case "byte":
+        flags.addCommand(command("byte", blackhole::consume, ordinalParam(byte.class, "value")));
+        args = new String[] {type, "-42"};
+        break;
+      case "short":
+        flags.addCommand(command("short", blackhole::consume, ordinalParam(short.class, "value")));
+        args = new String[] {type, "-4242"};
+        break;
+      case "int":
+        flags.addCommand(command("int", blackhole::consume, ordinalParam(int.class, "value")));
+        args = new String[] {type, "-42424242"};
+        break;
+      case "long":
+        flags.addCommand(command("long", blackhole::consume, ordinalParam(long.class, "value")));
+        args = new String[] {type, "-4242424242424242"};
+        break;
+      case "float":
+        flags.addCommand(command("float", blackhole::consume, ordinalParam(float.class, "value")));
+        args = new String[] {type, "-4242.42"};
+        break;
+      case "double":
+        flags.addCommand(
+            command("double", blackhole::consume, ordinalParam(double.class, "value")));
+        args = new String[] {type, "-42424242.4242"};
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported type " + type);
+    }
+  }
+
+  @Benchmark
+  public void parse() {
+    flags.run(args);
+  }
+}
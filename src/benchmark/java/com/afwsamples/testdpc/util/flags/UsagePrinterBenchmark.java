@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.util.flags;
+
+import static com.afwsamples.testdpc.util.flags.Flags.command;
+import static com.afwsamples.testdpc.util.flags.Flags.namedParam;
+import static com.afwsamples.testdpc.util.flags.Flags.optional;
+import static com.afwsamples.testdpc.util.flags.Flags.ordinalParam;
+import static com.afwsamples.testdpc.util.flags.Flags.repeated;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures printing the help text, which wraps the description of every command (and the list of
+ * its parameters) to the maximum line length.
+ *
+ * <p>{@link #showUsageUncached} renders the text from scratch on every invocation, as was done
+ * before the rendered text was cached, while {@link #showUsage} and {@link #showCommandUsage} only
+ * render it once per {@link Flags} instance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UsagePrinterBenchmark {
+  private static final String[] HELP_ARGS = {"help"};
+  private static final String[] COMMAND_HELP_ARGS = {"help", "set-policy-0"};
+
+  // Long enough to be wrapped in a few lines, like most of the ShellCommand descriptions
+  private static final String DESCRIPTION =
+      "Sets the policy of the given package, overriding any value previously set by this or any"
+          + " other admin. Pass --flags to customize how the policy is applied; see the"
+          + " documentation of the corresponding DevicePolicyManager method for details.";
+
+  @Param({"10", "120"})
+  public int commandCount;
+
+  private Flags flags;
+
+  /** Holds a {@link Flags} instance that has not printed the help text yet. */
+  @State(Scope.Thread)
+  public static class FreshFlags {
+    private Flags flags;
+
+    @Setup(Level.Invocation)
+    public void setUp(UsagePrinterBenchmark benchmark) {
+      flags = createFlags(benchmark.commandCount);
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    flags = createFlags(commandCount);
+  }
+
+  @Benchmark
+  public void showUsage() {
+    flags.run(HELP_ARGS);
+  }
+
+  @Benchmark
+  public void showUsageUncached(FreshFlags freshFlags) {
+    freshFlags.flags.run(HELP_ARGS);
+  }
+
+  @Benchmark
+  public void showCommandUsage() {
+    flags.run(COMMAND_HELP_ARGS);
+  }
+
+  private static Flags createFlags(int commandCount) {
+    Flags flags = new Flags(new PrintWriter(Writer.nullWriter()));
+    for (int i = 0; i < commandCount; i++) {
+      flags.addCommand(
+          command(
+                  "set-policy-" + i,
+                  (packageName, values, flagsValue) -> {},
+                  ordinalParam(String.class, "package"),
+                  repeated(ordinalParam(String.class, "values")),
+                  optional(namedParam(int.class, "flags")))
+              .setDescription(DESCRIPTION));
+    }
+    return flags;
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.afwsamples.testdpc.util.MainThreadExecutor;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Makes the calls of a {@link DevicePolicyManagerGateway} off the main thread, so screens don't
+ * block on binder calls while they load.
+ *
+ * <p>Calls are run in order on a background thread shared by the whole process, and their results
+ * are delivered on the main thread. Screens should {@link #close()} it when they're destroyed,
+ * which cancels the calls not started yet and drops the results not delivered yet.
+ *
+ * <p>Results are returned as {@link ListenableFuture}s ({@code CompletableFuture} requires API 24).
+ */
+public final class AsyncDevicePolicyManagerGateway {
+
+  private static final String TAG = "AsyncDpmGateway";
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static final AtomicInteger sCreatedThreads = new AtomicInteger();
+  // Single-threaded, so calls are made in the order they're submitted (e.g. a read submitted
+  // after a write sees the written value)
+  private static final ListeningExecutorService sExecutor =
+      MoreExecutors.listeningDecorator(createExecutor());
+
+  /** A read made through the gateway. */
+  public interface Read<T> {
+    T read(DevicePolicyManagerGateway gateway) throws Exception;
+  }
+
+  /** A gateway call that reports its result through callbacks. */
+  public interface Call<T> {
+    void call(
+        DevicePolicyManagerGateway gateway, Consumer<T> onSuccess, Consumer<Exception> onError);
+  }
+
+  private final DevicePolicyManagerGateway mGateway;
+  private final Executor mCallbackExecutor;
+  private final Set<ListenableFuture<?>> mPendingFutures =
+      Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private volatile boolean mClosed;
+
+  /** Creates an instance delivering the results on the main thread. */
+  public AsyncDevicePolicyManagerGateway(@NonNull DevicePolicyManagerGateway gateway) {
+    this(gateway, new MainThreadExecutor());
+  }
+
+  /** Creates an instance delivering the results on the given executor. */
+  public AsyncDevicePolicyManagerGateway(
+      @NonNull DevicePolicyManagerGateway gateway, @NonNull Executor callbackExecutor) {
+    mGateway = gateway;
+    mCallbackExecutor = callbackExecutor;
+  }
+
+  /** Makes a read in the background. */
+  @NonNull
+  public <T> ListenableFuture<T> read(@NonNull Read<T> read) {
+    if (mClosed) {
+      return Futures.immediateCancelledFuture();
+    }
+    return track(sExecutor.submit(() -> read.read(mGateway)));
+  }
+
+  /**
+   * Makes a read in the background, passing its result (or error) to the given callbacks unless the
+   * call is cancelled.
+   */
+  @NonNull
+  public <T> ListenableFuture<T> read(
+      @NonNull Read<T> read, @NonNull Consumer<T> onSuccess, @NonNull Consumer<Exception> onError) {
+    return deliver(read(read), onSuccess, onError);
+  }
+
+  /** Makes a call that takes callbacks in the background. */
+  @NonNull
+  public <T> ListenableFuture<T> call(@NonNull Call<T> call) {
+    if (mClosed) {
+      return Futures.immediateCancelledFuture();
+    }
+    SettableFuture<T> future = SettableFuture.create();
+    sExecutor.execute(
+        () -> {
+          if (future.isCancelled()) {
+            return;
+          }
+          try {
+            call.call(mGateway, future::set, future::setException);
+          } catch (RuntimeException e) {
+            future.setException(e);
+          }
+        });
+    return track(future);
+  }
+
+  /**
+   * Makes a call that takes callbacks in the background, passing its result (or error) to the given
+   * callbacks unless the call is cancelled.
+   */
+  @NonNull
+  public <T> ListenableFuture<T> call(
+      @NonNull Call<T> call, @NonNull Consumer<T> onSuccess, @NonNull Consumer<Exception> onError) {
+    return deliver(call(call), onSuccess, onError);
+  }
+
+  /**
+   * Cancels the calls not started yet and drops the results not delivered yet. Calls made after
+   * closing are cancelled right away.
+   */
+  public void close() {
+    mClosed = true;
+    List<ListenableFuture<?>> pendingFutures = new ArrayList<>(mPendingFutures);
+    if (!pendingFutures.isEmpty()) {
+      Log.d(TAG, "Cancelling " + pendingFutures.size() + " pending calls");
+    }
+    for (ListenableFuture<?> future : pendingFutures) {
+      future.cancel(false);
+    }
+  }
+
+  private <T> ListenableFuture<T> track(ListenableFuture<T> future) {
+    mPendingFutures.add(future);
+    future.addListener(() -> mPendingFutures.remove(future), MoreExecutors.directExecutor());
+    return future;
+  }
+
+  private <T> ListenableFuture<T> deliver(
+      ListenableFuture<T> future, Consumer<T> onSuccess, Consumer<Exception> onError) {
+    Futures.addCallback(
+        future,
+        new FutureCallback<T>() {
+          @Override
+          public void onSuccess(T result) {
+            // Checked again here, as the result may have been queued before closing
+            if (!mClosed) {
+              onSuccess.accept(result);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (mClosed || t instanceof CancellationException) {
+              return;
+            }
+            onError.accept(t instanceof Exception ? (Exception) t : new ExecutionException(t));
+          }
+        },
+        mCallbackExecutor);
+    return future;
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            (runnable) -> {
+              Thread thread =
+                  new Thread(runnable, "DpmGatewayThread-" + sCreatedThreads.incrementAndGet());
+              Log.i(TAG, "Starting " + thread);
+              return thread;
+            });
+    // Lets the thread exit when idle, as most screens only make calls while loading
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
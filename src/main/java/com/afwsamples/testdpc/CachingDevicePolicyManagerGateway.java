@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import android.app.admin.DevicePolicyManager;
+import android.content.ComponentName;
+import android.os.PersistableBundle;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A {@link DevicePolicyManagerGateway} that memoizes the getters that are called over and over
+ * (e.g. every time a screen is reloaded, or by each command of a {@code run-script}), so they only
+ * cross binder when their value may have changed.
+ *
+ * <p>Values are cached per instance, so they only live as long as the component that created it
+ * (e.g. one {@link ShellCommand} invocation, including all the commands of its scripts). A cached
+ * value is invalidated when the setter that changes it succeeds (through any instance, as the
+ * values are versioned per process), and all values are invalidated when {@link
+ * DeviceAdminReceiver} is told about ownership changes (see {@link #onAdminBroadcast(String)}).
+ * Changes made without going through this class (e.g. by calling {@link DevicePolicyManager}
+ * directly) are not noticed, so it should only wrap gateways of short-lived components that make
+ * all their changes through the gateway. Caching can be disabled for the whole process with {@link
+ * #setBypassed(boolean)}.
+ */
+public final class CachingDevicePolicyManagerGateway extends ForwardingDevicePolicyManagerGateway {
+
+  private static final String TAG = CachingDevicePolicyManagerGateway.class.getSimpleName();
+
+  /** The cached values, each of them invalidated by the setters that change it. */
+  enum CachedValue {
+    USER_RESTRICTIONS,
+    AFFILIATION_IDS,
+    CROSS_PROFILE_PACKAGES,
+    LOCK_TASK_PACKAGES,
+    DELEGATED_SCOPES,
+    METERED_DATA_DISABLED_PACKAGES,
+    OWNERSHIP
+  }
+
+  private static final int CACHED_VALUES_COUNT = CachedValue.values().length;
+
+  // Incremented whenever a value is invalidated; values loaded at an older version are stale
+  private static final AtomicLongArray sVersions = new AtomicLongArray(CACHED_VALUES_COUNT);
+  private static final AtomicLongArray sHits = new AtomicLongArray(CACHED_VALUES_COUNT);
+  private static final AtomicLongArray sMisses = new AtomicLongArray(CACHED_VALUES_COUNT);
+  private static volatile boolean sBypassed;
+
+  private final Entry<Set<String>> mUserRestrictions = new Entry<>(CachedValue.USER_RESTRICTIONS);
+  private final Entry<Set<String>> mAffiliationIds = new Entry<>(CachedValue.AFFILIATION_IDS);
+  private final Entry<Set<String>> mCrossProfilePackages =
+      new Entry<>(CachedValue.CROSS_PROFILE_PACKAGES);
+  private final Entry<String[]> mLockTaskPackages = new Entry<>(CachedValue.LOCK_TASK_PACKAGES);
+  private final Map<String, Entry<List<String>>> mDelegatedScopes = new HashMap<>();
+  private final Entry<List<String>> mMeteredDataDisabledPackages =
+      new Entry<>(CachedValue.METERED_DATA_DISABLED_PACKAGES);
+  private final Entry<Boolean> mIsDeviceOwnerApp = new Entry<>(CachedValue.OWNERSHIP);
+  private final Entry<Boolean> mIsProfileOwnerApp = new Entry<>(CachedValue.OWNERSHIP);
+
+  public CachingDevicePolicyManagerGateway(@NonNull DevicePolicyManagerGateway delegate) {
+    super(delegate);
+  }
+
+  /**
+   * Makes every instance call the underlying gateway directly (without updating the hit / miss
+   * counters) while {@code bypassed} is {@code true}.
+   */
+  public static void setBypassed(boolean bypassed) {
+    Log.i(TAG, "setBypassed(" + bypassed + ")");
+    sBypassed = bypassed;
+    if (bypassed) {
+      // Changes made while bypassed are not tracked
+      invalidateAll();
+    }
+  }
+
+  public static boolean isBypassed() {
+    return sBypassed;
+  }
+
+  /** Invalidates the values cached by every instance. */
+  public static void invalidateAll() {
+    for (int i = 0; i < CACHED_VALUES_COUNT; i++) {
+      sVersions.incrementAndGet(i);
+    }
+  }
+
+  /**
+   * Invalidates the values cached by every instance if the broadcast received by {@link
+   * DeviceAdminReceiver} means the admin, or its ownership, changed.
+   */
+  public static void onAdminBroadcast(@Nullable String action) {
+    if (action == null) {
+      return;
+    }
+    switch (action) {
+      case DeviceAdminReceiver.ACTION_DEVICE_ADMIN_ENABLED:
+      case DeviceAdminReceiver.ACTION_DEVICE_ADMIN_DISABLED:
+      case DeviceAdminReceiver.ACTION_PROFILE_PROVISIONING_COMPLETE:
+      case DeviceAdminReceiver.ACTION_TRANSFER_OWNERSHIP_COMPLETE:
+      case DeviceAdminReceiver.ACTION_AFFILIATED_PROFILE_TRANSFER_OWNERSHIP_COMPLETE:
+      case DevicePolicyManager.ACTION_DEVICE_OWNER_CHANGED:
+      case DevicePolicyManager.ACTION_PROFILE_OWNER_CHANGED:
+        Log.d(TAG, "Invalidating cached values on " + action);
+        invalidateAll();
+        break;
+      default:
+        break;
+    }
+  }
+
+  /** Prints whether the cache is bypassed and its hit / miss counters. */
+  public static void dump(PrintWriter writer) {
+    writer.printf("gatewayCacheBypassed: %b\n", sBypassed);
+    for (CachedValue value : CachedValue.values()) {
+      int index = value.ordinal();
+      writer.printf(
+          "gatewayCache.%s: %d hits, %d misses\n",
+          value.name().toLowerCase(Locale.ROOT), sHits.get(index), sMisses.get(index));
+    }
+  }
+
+  private static void invalidate(CachedValue value) {
+    sVersions.incrementAndGet(value.ordinal());
+  }
+
+  /** Wraps a success callback so that it invalidates the given value before being called. */
+  private static <T> Consumer<T> invalidating(CachedValue value, Consumer<T> onSuccess) {
+    return (result) -> {
+      invalidate(value);
+      onSuccess.accept(result);
+    };
+  }
+
+  private static <T> Consumer<T> invalidatingAll(Consumer<T> onSuccess) {
+    return (result) -> {
+      invalidateAll();
+      onSuccess.accept(result);
+    };
+  }
+
+  @Override
+  public boolean isDeviceOwnerApp() {
+    return mIsDeviceOwnerApp.get(mDelegate::isDeviceOwnerApp);
+  }
+
+  @Override
+  public boolean isProfileOwnerApp() {
+    return mIsProfileOwnerApp.get(mDelegate::isProfileOwnerApp);
+  }
+
+  @Override
+  public void setAffiliationIds(@NonNull Set<String> ids) {
+    try {
+      mDelegate.setAffiliationIds(ids);
+    } finally {
+      invalidate(CachedValue.AFFILIATION_IDS);
+    }
+  }
+
+  @NonNull
+  @Override
+  public Set<String> getAffiliationIds() {
+    return new LinkedHashSet<>(mAffiliationIds.get(mDelegate::getAffiliationIds));
+  }
+
+  @NonNull
+  @Override
+  public Set<String> getUserRestrictions() {
+    return new LinkedHashSet<>(mUserRestrictions.get(mDelegate::getUserRestrictions));
+  }
+
+  @Override
+  public void setUserRestriction(
+      @NonNull String userRestriction,
+      boolean enabled,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setUserRestriction(
+        userRestriction, enabled, invalidating(CachedValue.USER_RESTRICTIONS, onSuccess), onError);
+  }
+
+  @Override
+  public void setUserRestriction(@NonNull String userRestriction, boolean enabled) {
+    try {
+      mDelegate.setUserRestriction(userRestriction, enabled);
+    } finally {
+      invalidate(CachedValue.USER_RESTRICTIONS);
+    }
+  }
+
+  @Override
+  public void setUserRestrictions(
+      @NonNull Map<String, Boolean> userRestrictions,
+      @NonNull Consumer<Set<String>> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    // Invalidated on errors too, as some of the restrictions may have been changed
+    mDelegate.setUserRestrictions(
+        userRestrictions,
+        invalidating(CachedValue.USER_RESTRICTIONS, onSuccess),
+        invalidating(CachedValue.USER_RESTRICTIONS, onError));
+  }
+
+  @Override
+  public void setCrossProfilePackages(
+      @NonNull Set<String> packages,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setCrossProfilePackages(
+        packages, invalidating(CachedValue.CROSS_PROFILE_PACKAGES, onSuccess), onError);
+  }
+
+  @NonNull
+  @Override
+  public Set<String> getCrossProfilePackages() {
+    return new LinkedHashSet<>(mCrossProfilePackages.get(mDelegate::getCrossProfilePackages));
+  }
+
+  @Override
+  public void removeActiveAdmin(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.removeActiveAdmin(invalidatingAll(onSuccess), onError);
+  }
+
+  @Override
+  public void clearDeviceOwnerApp(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.clearDeviceOwnerApp(invalidatingAll(onSuccess), onError);
+  }
+
+  @Override
+  public void clearProfileOwner(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.clearProfileOwner(invalidatingAll(onSuccess), onError);
+  }
+
+  @Override
+  public void transferOwnership(
+      @NonNull ComponentName target,
+      @Nullable PersistableBundle bundle,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.transferOwnership(target, bundle, invalidatingAll(onSuccess), onError);
+  }
+
+  @Override
+  public void setLockTaskPackages(
+      String[] packages, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setLockTaskPackages(
+        packages, invalidating(CachedValue.LOCK_TASK_PACKAGES, onSuccess), onError);
+  }
+
+  @Override
+  public String[] getLockTaskPackages() {
+    String[] packages = mLockTaskPackages.get(mDelegate::getLockTaskPackages);
+    return packages == null ? null : packages.clone();
+  }
+
+  @Override
+  public void setDelegatedScopes(
+      @NonNull String delegatePackage,
+      @NonNull List<String> scopes,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setDelegatedScopes(
+        delegatePackage, scopes, invalidating(CachedValue.DELEGATED_SCOPES, onSuccess), onError);
+  }
+
+  @NonNull
+  @Override
+  public List<String> getDelegatedScopes(@NonNull String delegatePackage) {
+    Entry<List<String>> entry;
+    synchronized (mDelegatedScopes) {
+      entry = mDelegatedScopes.get(delegatePackage);
+      if (entry == null) {
+        entry = new Entry<>(CachedValue.DELEGATED_SCOPES);
+        mDelegatedScopes.put(delegatePackage, entry);
+      }
+    }
+    return new ArrayList<>(entry.get(() -> mDelegate.getDelegatedScopes(delegatePackage)));
+  }
+
+  @Override
+  public void setMeteredDataDisabledPackages(
+      @NonNull List<String> packageNames,
+      @NonNull Consumer<List<String>> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setMeteredDataDisabledPackages(
+        packageNames, invalidating(CachedValue.METERED_DATA_DISABLED_PACKAGES, onSuccess), onError);
+  }
+
+  @NonNull
+  @Override
+  public List<String> getMeteredDataDisabledPackages() {
+    return new ArrayList<>(
+        mMeteredDataDisabledPackages.get(mDelegate::getMeteredDataDisabledPackages));
+  }
+
+  /** A value cached by an instance, along with the version of its {@link CachedValue}. */
+  private static final class Entry<T> {
+    private final CachedValue mKey;
+    private boolean mLoaded;
+    private long mVersion;
+    private T mValue;
+
+    private Entry(CachedValue key) {
+      mKey = key;
+    }
+
+    synchronized T get(Supplier<T> loader) {
+      int index = mKey.ordinal();
+      if (sBypassed) {
+        return loader.get();
+      }
+      // Read before loading, so a concurrent invalidation makes the loaded value stale
+      long version = sVersions.get(index);
+      if (mLoaded && mVersion == version) {
+        sHits.incrementAndGet(index);
+        return mValue;
+      }
+      sMisses.incrementAndGet(index);
+      T value = loader.get();
+      mValue = value;
+      mVersion = version;
+      mLoaded = true;
+      return value;
+    }
+  }
+}
@@ -19,33 +19,21 @@ package com.afwsamples.testdpc;
 import static com.afwsamples.testdpc.policy.PolicyManagementFragment.OVERRIDE_KEY_SELECTION_KEY;
 
 import android.annotation.TargetApi;
-import android.app.admin.DevicePolicyManager;
-import android.app.admin.NetworkEvent;
 import android.content.ComponentName;
 import android.content.Context;
-import android.os.AsyncTask;
 import android.os.Build.VERSION_CODES;
 import android.os.Process;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
-import com.afwsamples.testdpc.common.Util;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import com.afwsamples.testdpc.networklogs.NetworkLogIngestionService;
 
 /**
  * A class that implements common logic to handle direct and delegated admin callbacks from
  * DeviceAdminReceiver and DelegatedAdminReceiver.
  */
 public class CommonReceiverOperations {
-  public static final String NETWORK_LOGS_FILE_PREFIX = "network_logs_";
-
   private static final String TAG = "AdminReceiver";
 
   public static String onChoosePrivateKeyAlias(Context context, int uid) {
@@ -75,62 +63,8 @@ public class CommonReceiverOperations {
             + ", event count: "
             + networkLogsCount);
 
-    DevicePolicyManager dpm =
-        (DevicePolicyManager) context.getSystemService(Context.DEVICE_POLICY_SERVICE);
-    List<NetworkEvent> events = null;
-    try {
-      events = dpm.retrieveNetworkLogs(admin, batchToken);
-    } catch (SecurityException e) {
-      Log.e(TAG, "Exception while retrieving network logs batch with batchToken: " + batchToken, e);
-    }
-
-    if (events == null) {
-      Log.e(TAG, "Failed to retrieve network logs batch with batchToken: " + batchToken);
-      showToast(
-          context, context.getString(R.string.on_network_logs_available_token_failure, batchToken));
-      return;
-    }
-
-    showToast(context, context.getString(R.string.on_network_logs_available_success, batchToken));
-
-    ArrayList<String> loggedEvents = new ArrayList<>();
-    if (Util.SDK_INT >= VERSION_CODES.P) {
-      for (NetworkEvent event : events) {
-        loggedEvents.add(event.toString());
-      }
-    } else {
-      events.forEach(event -> loggedEvents.add(event.toString()));
-    }
-    new EventSavingTask(context, batchToken, loggedEvents).execute();
-  }
-
-  private static class EventSavingTask extends AsyncTask<Void, Void, Void> {
-
-    private Context mContext;
-    private long mBatchToken;
-    private List<String> mLoggedEvents;
-
-    public EventSavingTask(Context context, long batchToken, ArrayList<String> loggedEvents) {
-      mContext = context;
-      mBatchToken = batchToken;
-      mLoggedEvents = loggedEvents;
-    }
-
-    @Override
-    protected Void doInBackground(Void... params) {
-      Date timestamp = new Date();
-      String filename = NETWORK_LOGS_FILE_PREFIX + mBatchToken + "_" + timestamp.getTime() + ".txt";
-      File file = new File(mContext.getExternalFilesDir(null), filename);
-      try (OutputStream os = new FileOutputStream(file)) {
-        for (String event : mLoggedEvents) {
-          os.write((event + "\n").getBytes());
-        }
-        Log.d(TAG, "Saved network logs to file: " + filename);
-      } catch (IOException e) {
-        Log.e(TAG, "Failed saving network events to file" + filename, e);
-      }
-      return null;
-    }
+    // Retrieved and stored in the background, so a large batch can't hold up the main thread
+    NetworkLogIngestionService.enqueue(context, admin, batchToken, networkLogsCount);
   }
 
   private static void showToast(Context context, String message) {
@@ -70,6 +70,7 @@ public class DeviceAdminReceiver extends android.app.admin.DeviceAdminReceiver {
 
   @Override
   public void onReceive(Context context, Intent intent) {
+    CachingDevicePolicyManagerGateway.onAdminBroadcast(intent.getAction());
     switch (intent.getAction()) {
       case ACTION_PASSWORD_REQUIREMENTS_CHANGED:
       case Intent.ACTION_BOOT_COMPLETED:
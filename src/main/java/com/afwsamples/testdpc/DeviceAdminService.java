@@ -20,6 +20,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Build.VERSION_CODES;
 import androidx.annotation.RequiresApi;
+import com.afwsamples.testdpc.common.PackageSnapshot;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 
@@ -49,15 +50,21 @@ public class DeviceAdminService extends android.app.admin.DeviceAdminService {
     IntentFilter intentFilter = new IntentFilter();
     intentFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
     intentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+    intentFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
     intentFilter.addDataScheme("package");
     mPackageChangedReceiver = new PackageMonitorReceiver();
     getApplicationContext().registerReceiver(mPackageChangedReceiver, intentFilter);
+    // The receiver keeps the snapshot up to date from now on, so it only needs to be built once
+    PackageSnapshot packageSnapshot = PackageSnapshot.get(this);
+    packageSnapshot.setMonitored(true);
+    packageSnapshot.prefetch();
   }
 
   private void unregisterPackageChangesReceiver() {
     if (mPackageChangedReceiver != null) {
       getApplicationContext().unregisterReceiver(mPackageChangedReceiver);
       mPackageChangedReceiver = null;
+      PackageSnapshot.get(this).setMonitored(false);
     }
   }
 
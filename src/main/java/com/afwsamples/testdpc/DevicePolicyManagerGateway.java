@@ -232,6 +232,19 @@ public interface DevicePolicyManagerGateway {
    */
   void setUserRestriction(@NonNull String userRestriction, boolean enabled);
 
+  /**
+   * Sets each of the given user restrictions to the given value, reading the current restrictions
+   * once and only adding or clearing the ones that change.
+   *
+   * <p>{@code onSuccess} receives the restrictions that were changed. If changing one fails, the
+   * ones changed before it are reverted before {@code onError} is called; the errors of those that
+   * can't be are added to its exception as suppressed.
+   */
+  void setUserRestrictions(
+      @NonNull Map<String, Boolean> userRestrictions,
+      @NonNull Consumer<Set<String>> onSuccess,
+      @NonNull Consumer<Exception> onError);
+
   /** See {@link android.os.UserManager#hasUserRestriction(String)}. */
   boolean hasUserRestriction(@NonNull String userRestriction);
 
@@ -520,7 +533,6 @@ public interface DevicePolicyManagerGateway {
    */
   int getPersonalAppsSuspendedReasons();
 
-  // TODO(b/171350084): use on CosuConfig
   /** See {@link android.app.admin.DevicePolicyManager#enableSystemApp(ComponentName, String)}. */
   void enableSystemApp(
       String packageName, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError);
@@ -24,7 +24,6 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.graphics.Bitmap;
@@ -39,13 +38,13 @@ import android.security.AttestedKeyPair;
 import android.security.keystore.KeyGenParameterSpec;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import com.afwsamples.testdpc.common.PackageSnapshot;
 import com.afwsamples.testdpc.common.ReflectionUtil;
 import com.afwsamples.testdpc.common.Util;
 import com.google.common.base.Joiner;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -62,6 +61,7 @@ public final class DevicePolicyManagerGatewayImpl implements DevicePolicyManager
   private final ComponentName mAdminComponentName;
   private final PackageManager mPackageManager;
   private final LocationManager mLocationManager;
+  private final PackageSnapshot mPackageSnapshot;
 
   public DevicePolicyManagerGatewayImpl(@NonNull Context context) {
     this(
@@ -69,7 +69,8 @@ public final class DevicePolicyManagerGatewayImpl implements DevicePolicyManager
         context.getSystemService(UserManager.class),
         context.getPackageManager(),
         context.getSystemService(LocationManager.class),
-        DeviceAdminReceiver.getComponentName(context));
+        DeviceAdminReceiver.getComponentName(context),
+        PackageSnapshot.get(context));
   }
 
   public DevicePolicyManagerGatewayImpl(
@@ -78,11 +79,22 @@ public final class DevicePolicyManagerGatewayImpl implements DevicePolicyManager
       @NonNull PackageManager pm,
       @NonNull LocationManager lm,
       @NonNull ComponentName admin) {
+    this(dpm, um, pm, lm, admin, new PackageSnapshot(pm));
+  }
+
+  public DevicePolicyManagerGatewayImpl(
+      @NonNull DevicePolicyManager dpm,
+      @NonNull UserManager um,
+      @NonNull PackageManager pm,
+      @NonNull LocationManager lm,
+      @NonNull ComponentName admin,
+      @NonNull PackageSnapshot packageSnapshot) {
     mDevicePolicyManager = dpm;
     mUserManager = um;
     mPackageManager = pm;
     mLocationManager = lm;
     mAdminComponentName = admin;
+    mPackageSnapshot = packageSnapshot;
 
     Log.d(TAG, "constructor: admin=" + mAdminComponentName + ", dpm=" + dpm);
   }
@@ -94,7 +106,7 @@ public final class DevicePolicyManagerGatewayImpl implements DevicePolicyManager
     UserManager um = context.getSystemService(UserManager.class);
     PackageManager pm = context.getPackageManager();
     LocationManager lm = context.getSystemService(LocationManager.class);
-    return new DevicePolicyManagerGatewayImpl(dpm, um, pm, lm, admin);
+    return new DevicePolicyManagerGatewayImpl(dpm, um, pm, lm, admin, PackageSnapshot.get(context));
   }
 
   @Override
@@ -383,6 +395,68 @@ public final class DevicePolicyManagerGatewayImpl implements DevicePolicyManager
         userRestriction, enabled, (v) -> onSuccessLog(message), (e) -> onErrorLog(e, message));
   }
 
+  @Override
+  public void setUserRestrictions(
+      Map<String, Boolean> userRestrictions,
+      Consumer<Set<String>> onSuccess,
+      Consumer<Exception> onError) {
+    Log.d(TAG, "setUserRestrictions(" + userRestrictions + ")");
+
+    Set<String> changedRestrictions = new LinkedHashSet<>();
+    try {
+      Set<String> currentRestrictions = getUserRestrictions();
+      for (Map.Entry<String, Boolean> entry : userRestrictions.entrySet()) {
+        String userRestriction = entry.getKey();
+        boolean enabled = entry.getValue();
+        if (currentRestrictions.contains(userRestriction) == enabled) {
+          continue;
+        }
+        if (enabled) {
+          mDevicePolicyManager.addUserRestriction(mAdminComponentName, userRestriction);
+        } else {
+          mDevicePolicyManager.clearUserRestriction(mAdminComponentName, userRestriction);
+        }
+        changedRestrictions.add(userRestriction);
+      }
+    } catch (Exception e) {
+      revertUserRestrictions(userRestrictions, changedRestrictions, e);
+      onError.accept(e);
+      return;
+    }
+    // Outside the try, so an exception thrown by the callback doesn't revert the restrictions
+    Log.d(TAG, "setUserRestrictions(): changed " + changedRestrictions);
+    onSuccess.accept(changedRestrictions);
+  }
+
+  /**
+   * Reverts the given restrictions, changed before {@code failure}, last changed first. The ones
+   * that can't be reverted are logged, and their errors added to {@code failure} as suppressed.
+   */
+  private void revertUserRestrictions(
+      Map<String, Boolean> userRestrictions, Set<String> changedRestrictions, Exception failure) {
+    List<String> changed = new ArrayList<>(changedRestrictions);
+    List<String> notReverted = new ArrayList<>();
+    for (int i = changed.size() - 1; i >= 0; i--) {
+      String userRestriction = changed.get(i);
+      try {
+        if (userRestrictions.get(userRestriction)) {
+          mDevicePolicyManager.clearUserRestriction(mAdminComponentName, userRestriction);
+        } else {
+          mDevicePolicyManager.addUserRestriction(mAdminComponentName, userRestriction);
+        }
+      } catch (Exception e) {
+        failure.addSuppressed(e);
+        notReverted.add(userRestriction);
+      }
+    }
+    Log.w(
+        TAG,
+        "setUserRestrictions(): failed, reverted "
+            + changedRestrictions
+            + (notReverted.isEmpty() ? "" : " except " + notReverted),
+        failure);
+  }
+
   @Override
   public boolean hasUserRestriction(String userRestriction) {
     if (Log.isLoggable(TAG, Log.VERBOSE)) {
@@ -865,25 +939,8 @@ public final class DevicePolicyManagerGatewayImpl implements DevicePolicyManager
   @Override
   public List<String> getDisabledSystemApps() {
     // Disabled system apps list = {All system apps} - {Enabled system apps}
-    List<String> disabledSystemApps = new ArrayList<String>();
-    // This list contains both enabled and disabled apps.
-    List<ApplicationInfo> allApps =
-        mPackageManager.getInstalledApplications(PackageManager.GET_UNINSTALLED_PACKAGES);
-    Collections.sort(allApps, new ApplicationInfo.DisplayNameComparator(mPackageManager));
-    // This list contains all enabled apps.
-    List<ApplicationInfo> enabledApps =
-        mPackageManager.getInstalledApplications(0 /* Default flags */);
-    Set<String> enabledAppsPkgNames = new HashSet<String>();
-    for (ApplicationInfo applicationInfo : enabledApps) {
-      enabledAppsPkgNames.add(applicationInfo.packageName);
-    }
-    for (ApplicationInfo applicationInfo : allApps) {
-      // Interested in disabled system apps only.
-      if (!enabledAppsPkgNames.contains(applicationInfo.packageName)
-          && (applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0) {
-        disabledSystemApps.add(applicationInfo.packageName);
-      }
-    }
+    List<String> disabledSystemApps =
+        mPackageSnapshot.getPackageNames((app) -> app.isSystemApp() && !app.isEnabled());
     Log.d(TAG, "getDisabledSystemApps(): returning " + disabledSystemApps.size() + " apps");
     return disabledSystemApps;
   }
@@ -1364,7 +1421,13 @@ public final class DevicePolicyManagerGatewayImpl implements DevicePolicyManager
 
   @Override
   public void addPersistentPreferredActivity(ComponentName activityComponentName, IntentFilter filter, Consumer<Boolean> onSuccess, Consumer<Exception> onError) {
-    Log.d(TAG, "addPersistentPreferredActivity(" + activityComponentName + ", " + Util.toString(filter) + ")");
+    Log.d(
+        TAG,
+        "addPersistentPreferredActivity("
+            + activityComponentName
+            + ", "
+            + Util.toString(filter)
+            + ")");
     try {
       mDevicePolicyManager.addPersistentPreferredActivity(mAdminComponentName, filter, activityComponentName);
       onSuccess.accept(null);
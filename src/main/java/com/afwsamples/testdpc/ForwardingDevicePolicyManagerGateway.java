@@ -0,0 +1,833 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import android.app.admin.DevicePolicyManager;
+import android.app.admin.NetworkEvent;
+import android.app.admin.SecurityLog.SecurityEvent;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.PersistableBundle;
+import android.os.UserHandle;
+import android.security.AttestedKeyPair;
+import android.security.keystore.KeyGenParameterSpec;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A {@link DevicePolicyManagerGateway} that forwards every call to another gateway.
+ *
+ * <p>Used as the base class of gateways that decorate the calls of {@link
+ * DevicePolicyManagerGatewayImpl}, which then only need to override the methods they change.
+ */
+public abstract class ForwardingDevicePolicyManagerGateway implements DevicePolicyManagerGateway {
+
+  protected final DevicePolicyManagerGateway mDelegate;
+
+  protected ForwardingDevicePolicyManagerGateway(@NonNull DevicePolicyManagerGateway delegate) {
+    mDelegate = delegate;
+  }
+
+  @Override
+  @NonNull
+  public ComponentName getAdmin() {
+    return mDelegate.getAdmin();
+  }
+
+  @Override
+  @NonNull
+  public DevicePolicyManager getDevicePolicyManager() {
+    return mDelegate.getDevicePolicyManager();
+  }
+
+  @Override
+  public boolean isDeviceOwnerApp() {
+    return mDelegate.isDeviceOwnerApp();
+  }
+
+  @Override
+  public boolean isProfileOwnerApp() {
+    return mDelegate.isProfileOwnerApp();
+  }
+
+  @Override
+  public boolean isOrganizationOwnedDeviceWithManagedProfile() {
+    return mDelegate.isOrganizationOwnedDeviceWithManagedProfile();
+  }
+
+  @Override
+  public boolean isHeadlessSystemUserMode() {
+    return mDelegate.isHeadlessSystemUserMode();
+  }
+
+  @Override
+  public boolean isUserForeground() {
+    return mDelegate.isUserForeground();
+  }
+
+  @Override
+  public List<UserHandle> listForegroundAffiliatedUsers() {
+    return mDelegate.listForegroundAffiliatedUsers();
+  }
+
+  @Override
+  public void createAndManageUser(
+      @Nullable String name,
+      int flags,
+      @NonNull Consumer<UserHandle> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.createAndManageUser(name, flags, onSuccess, onError);
+  }
+
+  @Override
+  public void setUserIcon(
+      @NonNull Bitmap icon,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setUserIcon(icon, onSuccess, onError);
+  }
+
+  @Override
+  public void setStartUserSessionMessage(
+      @Nullable CharSequence message,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setStartUserSessionMessage(message, onSuccess, onError);
+  }
+
+  @Override
+  @NonNull
+  public CharSequence getStartUserSessionMessage() {
+    return mDelegate.getStartUserSessionMessage();
+  }
+
+  @Override
+  public void setEndUserSessionMessage(
+      @Nullable CharSequence message,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setEndUserSessionMessage(message, onSuccess, onError);
+  }
+
+  @Override
+  @NonNull
+  public CharSequence getEndUserSessionMessage() {
+    return mDelegate.getEndUserSessionMessage();
+  }
+
+  @Override
+  @Nullable
+  public UserHandle getUserHandle(long serialNumber) {
+    return mDelegate.getUserHandle(serialNumber);
+  }
+
+  @Override
+  public long getSerialNumber(@NonNull UserHandle user) {
+    return mDelegate.getSerialNumber(user);
+  }
+
+  @Override
+  public void removeUser(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.removeUser(userHandle, onSuccess, onError);
+  }
+
+  @Override
+  public void switchUser(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.switchUser(userHandle, onSuccess, onError);
+  }
+
+  @Override
+  public void startUserInBackground(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Integer> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.startUserInBackground(userHandle, onSuccess, onError);
+  }
+
+  @Override
+  public void stopUser(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Integer> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.stopUser(userHandle, onSuccess, onError);
+  }
+
+  @Override
+  public boolean isLogoutEnabled() {
+    return mDelegate.isLogoutEnabled();
+  }
+
+  @Override
+  public void setLogoutEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setLogoutEnabled(enabled, onSuccess, onError);
+  }
+
+  @Override
+  public void logoutUser(
+      @NonNull Consumer<Integer> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.logoutUser(onSuccess, onError);
+  }
+
+  @Override
+  public boolean isAffiliatedUser() {
+    return mDelegate.isAffiliatedUser();
+  }
+
+  @Override
+  public void setAffiliationIds(@NonNull Set<String> ids) {
+    mDelegate.setAffiliationIds(ids);
+  }
+
+  @Override
+  @NonNull
+  public Set<String> getAffiliationIds() {
+    return mDelegate.getAffiliationIds();
+  }
+
+  @Override
+  @NonNull
+  public Set<String> getUserRestrictions() {
+    return mDelegate.getUserRestrictions();
+  }
+
+  @Override
+  public void setUserRestriction(
+      @NonNull String userRestriction,
+      boolean enabled,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setUserRestriction(userRestriction, enabled, onSuccess, onError);
+  }
+
+  @Override
+  public void setUserRestriction(@NonNull String userRestriction, boolean enabled) {
+    mDelegate.setUserRestriction(userRestriction, enabled);
+  }
+
+  @Override
+  public void setUserRestrictions(
+      @NonNull Map<String, Boolean> userRestrictions,
+      @NonNull Consumer<Set<String>> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setUserRestrictions(userRestrictions, onSuccess, onError);
+  }
+
+  @Override
+  public boolean hasUserRestriction(@NonNull String userRestriction) {
+    return mDelegate.hasUserRestriction(userRestriction);
+  }
+
+  @Override
+  public void lockNow(@NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.lockNow(onSuccess, onError);
+  }
+
+  @Override
+  public void lockNow(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.lockNow(flags, onSuccess, onError);
+  }
+
+  @Override
+  public void reboot(@NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.reboot(onSuccess, onError);
+  }
+
+  @Override
+  public void wipeData(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.wipeData(flags, onSuccess, onError);
+  }
+
+  @Override
+  public void wipeDevice(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.wipeDevice(flags, onSuccess, onError);
+  }
+
+  @Override
+  public void requestBugreport(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.requestBugreport(onSuccess, onError);
+  }
+
+  @Override
+  public long getLastBugReportRequestTime() {
+    return mDelegate.getLastBugReportRequestTime();
+  }
+
+  @Override
+  public void setNetworkLoggingEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setNetworkLoggingEnabled(enabled, onSuccess, onError);
+  }
+
+  @Override
+  public void setNetworkLoggingEnabled(boolean enabled) {
+    mDelegate.setNetworkLoggingEnabled(enabled);
+  }
+
+  @Override
+  public boolean isNetworkLoggingEnabled() {
+    return mDelegate.isNetworkLoggingEnabled();
+  }
+
+  @Override
+  public long getLastNetworkLogRetrievalTime() {
+    return mDelegate.getLastNetworkLogRetrievalTime();
+  }
+
+  @Override
+  public List<NetworkEvent> retrieveNetworkLogs(long batchToken) {
+    return mDelegate.retrieveNetworkLogs(batchToken);
+  }
+
+  @Override
+  public void setSecurityLoggingEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setSecurityLoggingEnabled(enabled, onSuccess, onError);
+  }
+
+  @Override
+  public boolean isSecurityLoggingEnabled() {
+    return mDelegate.isSecurityLoggingEnabled();
+  }
+
+  @Override
+  public long getLastSecurityLogRetrievalTime() {
+    return mDelegate.getLastSecurityLogRetrievalTime();
+  }
+
+  @Override
+  public List<SecurityEvent> retrieveSecurityLogs() {
+    return mDelegate.retrieveSecurityLogs();
+  }
+
+  @Override
+  public List<SecurityEvent> retrievePreRebootSecurityLogs() {
+    return mDelegate.retrievePreRebootSecurityLogs();
+  }
+
+  @Override
+  public void setOrganizationName(
+      @Nullable CharSequence title,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setOrganizationName(title, onSuccess, onError);
+  }
+
+  @Override
+  @Nullable
+  public CharSequence getOrganizationName() {
+    return mDelegate.getOrganizationName();
+  }
+
+  @Override
+  public void setUserControlDisabledPackages(
+      @Nullable List<String> packages,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setUserControlDisabledPackages(packages, onSuccess, onError);
+  }
+
+  @Override
+  @NonNull
+  public List<String> getUserControlDisabledPackages() {
+    return mDelegate.getUserControlDisabledPackages();
+  }
+
+  @Override
+  public void setCrossProfilePackages(
+      @NonNull Set<String> packages,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setCrossProfilePackages(packages, onSuccess, onError);
+  }
+
+  @Override
+  @NonNull
+  public Set<String> getCrossProfilePackages() {
+    return mDelegate.getCrossProfilePackages();
+  }
+
+  @Override
+  public boolean setPermittedInputMethods(
+      List<String> packageNames,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    return mDelegate.setPermittedInputMethods(packageNames, onSuccess, onError);
+  }
+
+  @Override
+  public boolean setPermittedInputMethods(List<String> packageNames) {
+    return mDelegate.setPermittedInputMethods(packageNames);
+  }
+
+  @Override
+  public void removeActiveAdmin(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.removeActiveAdmin(onSuccess, onError);
+  }
+
+  @Override
+  public void clearDeviceOwnerApp(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.clearDeviceOwnerApp(onSuccess, onError);
+  }
+
+  @Override
+  public void clearProfileOwner(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.clearProfileOwner(onSuccess, onError);
+  }
+
+  @Override
+  public void setPasswordQuality(
+      int quality, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setPasswordQuality(quality, onSuccess, onError);
+  }
+
+  @Override
+  public int getPasswordQuality() {
+    return mDelegate.getPasswordQuality();
+  }
+
+  @Override
+  public void setRequiredPasswordComplexity(
+      int quality, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setRequiredPasswordComplexity(quality, onSuccess, onError);
+  }
+
+  @Override
+  public int getRequiredPasswordComplexity() {
+    return mDelegate.getRequiredPasswordComplexity();
+  }
+
+  @Override
+  public boolean isActivePasswordSufficient() {
+    return mDelegate.isActivePasswordSufficient();
+  }
+
+  @Override
+  public boolean isActivePasswordSufficientForDeviceRequirement() {
+    return mDelegate.isActivePasswordSufficientForDeviceRequirement();
+  }
+
+  @Override
+  public void transferOwnership(
+      @NonNull ComponentName target,
+      @Nullable PersistableBundle bundle,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.transferOwnership(target, bundle, onSuccess, onError);
+  }
+
+  @Override
+  public void setUsbDataSignalingEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setUsbDataSignalingEnabled(enabled, onSuccess, onError);
+  }
+
+  @Override
+  public void setUsbDataSignalingEnabled(boolean enabled) {
+    mDelegate.setUsbDataSignalingEnabled(enabled);
+  }
+
+  @Override
+  public boolean canUsbDataSignalingBeDisabled() {
+    return mDelegate.canUsbDataSignalingBeDisabled();
+  }
+
+  @Override
+  public void setPreferentialNetworkServiceEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setPreferentialNetworkServiceEnabled(enabled, onSuccess, onError);
+  }
+
+  @Override
+  public boolean isPreferentialNetworkServiceEnabled() {
+    return mDelegate.isPreferentialNetworkServiceEnabled();
+  }
+
+  @Override
+  public void setPackagesSuspended(
+      String[] packageNames,
+      boolean suspended,
+      @NonNull Consumer<String[]> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setPackagesSuspended(packageNames, suspended, onSuccess, onError);
+  }
+
+  @Override
+  public boolean isPackageSuspended(String packageName) throws NameNotFoundException {
+    return mDelegate.isPackageSuspended(packageName);
+  }
+
+  @Override
+  public void setApplicationHidden(
+      String packageName,
+      boolean suspended,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setApplicationHidden(packageName, suspended, onSuccess, onError);
+  }
+
+  @Override
+  public boolean isApplicationHidden(String packageName) throws NameNotFoundException {
+    return mDelegate.isApplicationHidden(packageName);
+  }
+
+  @Override
+  public void setPersonalAppsSuspended(
+      boolean suspended, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setPersonalAppsSuspended(suspended, onSuccess, onError);
+  }
+
+  @Override
+  public int getPersonalAppsSuspendedReasons() {
+    return mDelegate.getPersonalAppsSuspendedReasons();
+  }
+
+  @Override
+  public void enableSystemApp(
+      String packageName, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.enableSystemApp(packageName, onSuccess, onError);
+  }
+
+  @Override
+  public void enableSystemApp(
+      Intent intent, @NonNull Consumer<Integer> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.enableSystemApp(intent, onSuccess, onError);
+  }
+
+  @Override
+  @NonNull
+  public List<String> getDisabledSystemApps() {
+    return mDelegate.getDisabledSystemApps();
+  }
+
+  @Override
+  public void setLockTaskPackages(
+      String[] packages, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setLockTaskPackages(packages, onSuccess, onError);
+  }
+
+  @Override
+  public String[] getLockTaskPackages() {
+    return mDelegate.getLockTaskPackages();
+  }
+
+  @Override
+  public void setLockTaskFeatures(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setLockTaskFeatures(flags, onSuccess, onError);
+  }
+
+  @Override
+  public int getLockTaskFeatures() {
+    return mDelegate.getLockTaskFeatures();
+  }
+
+  @Override
+  public boolean isLockTaskPermitted(String packageName) {
+    return mDelegate.isLockTaskPermitted(packageName);
+  }
+
+  @Override
+  public void setApplicationRestrictions(
+      String packageName,
+      Bundle settings,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setApplicationRestrictions(packageName, settings, onSuccess, onError);
+  }
+
+  @Override
+  public Bundle getApplicationRestrictions(String packageName) {
+    return mDelegate.getApplicationRestrictions(packageName);
+  }
+
+  @Override
+  public Bundle getSelfRestrictions() {
+    return mDelegate.getSelfRestrictions();
+  }
+
+  @Override
+  public void setPermissionGrantState(
+      String packageName,
+      String permission,
+      int grantState,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setPermissionGrantState(packageName, permission, grantState, onSuccess, onError);
+  }
+
+  @Override
+  public int getPermissionGrantState(String packageName, String permission) {
+    return mDelegate.getPermissionGrantState(packageName, permission);
+  }
+
+  @Override
+  public boolean canAdminGrantSensorsPermissions() {
+    return mDelegate.canAdminGrantSensorsPermissions();
+  }
+
+  @Override
+  public void setLocationEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setLocationEnabled(enabled, onSuccess, onError);
+  }
+
+  @Override
+  public boolean isLocationEnabled() {
+    return mDelegate.isLocationEnabled();
+  }
+
+  @Override
+  public void setDeviceOwnerLockScreenInfo(
+      CharSequence info, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setDeviceOwnerLockScreenInfo(info, onSuccess, onError);
+  }
+
+  @Override
+  public CharSequence getDeviceOwnerLockScreenInfo() {
+    return mDelegate.getDeviceOwnerLockScreenInfo();
+  }
+
+  @Override
+  public void setKeyguardDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setKeyguardDisabled(disabled, onSuccess, onError);
+  }
+
+  @Override
+  public void setKeyguardDisabledFeatures(
+      int which, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setKeyguardDisabledFeatures(which, onSuccess, onError);
+  }
+
+  @Override
+  public int getKeyguardDisabledFeatures() {
+    return mDelegate.getKeyguardDisabledFeatures();
+  }
+
+  @Override
+  public void setCameraDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setCameraDisabled(disabled, onSuccess, onError);
+  }
+
+  @Override
+  public boolean getCameraDisabled() {
+    return mDelegate.getCameraDisabled();
+  }
+
+  @Override
+  public boolean getCameraDisabledByAnyAdmin() {
+    return mDelegate.getCameraDisabledByAnyAdmin();
+  }
+
+  @Override
+  public void setStatusBarDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setStatusBarDisabled(disabled, onSuccess, onError);
+  }
+
+  @Override
+  public void setScreenCaptureDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setScreenCaptureDisabled(disabled, onSuccess, onError);
+  }
+
+  @Override
+  public void setMaximumFailedPasswordsForWipe(
+      int max, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.setMaximumFailedPasswordsForWipe(max, onSuccess, onError);
+  }
+
+  @Override
+  public int getMaximumFailedPasswordsForWipe() {
+    return mDelegate.getMaximumFailedPasswordsForWipe();
+  }
+
+  @Override
+  public void installExistingPackage(
+      String packageName, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDelegate.installExistingPackage(packageName, onSuccess, onError);
+  }
+
+  @Override
+  public void setUninstallBlocked(
+      @NonNull String packageName,
+      boolean uninstallBlocked,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setUninstallBlocked(packageName, uninstallBlocked, onSuccess, onError);
+  }
+
+  @Override
+  public boolean isUninstallBlocked(@NonNull String packageName) {
+    return mDelegate.isUninstallBlocked(packageName);
+  }
+
+  @Override
+  public void setSecureSetting(
+      String setting,
+      String value,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setSecureSetting(setting, value, onSuccess, onError);
+  }
+
+  @Override
+  public void setGlobalSetting(
+      String setting,
+      String value,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setGlobalSetting(setting, value, onSuccess, onError);
+  }
+
+  @Override
+  public boolean isDeviceIdAttestationSupported() {
+    return mDelegate.isDeviceIdAttestationSupported();
+  }
+
+  @Override
+  public boolean isUniqueDeviceAttestationSupported() {
+    return mDelegate.isUniqueDeviceAttestationSupported();
+  }
+
+  @Override
+  public boolean hasKeyPair(String alias) {
+    return mDelegate.hasKeyPair(alias);
+  }
+
+  @Override
+  public void generateKeyPair(
+      @NonNull String algorithm,
+      @NonNull KeyGenParameterSpec keySpec,
+      int idAttestationFlags,
+      @NonNull Consumer<AttestedKeyPair> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.generateKeyPair(algorithm, keySpec, idAttestationFlags, onSuccess, onError);
+  }
+
+  @Override
+  public void removeKeyPair(
+      @NonNull String alias,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.removeKeyPair(alias, onSuccess, onError);
+  }
+
+  @Override
+  public void grantKeyPairToApp(
+      @NonNull String alias,
+      @NonNull String packageName,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.grantKeyPairToApp(alias, packageName, onSuccess, onError);
+  }
+
+  @Override
+  @NonNull
+  public Map<Integer, Set<String>> getKeyPairGrants(@NonNull String alias) {
+    return mDelegate.getKeyPairGrants(alias);
+  }
+
+  @Override
+  public void revokeKeyPairFromApp(
+      @NonNull String alias,
+      @NonNull String packageName,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.revokeKeyPairFromApp(alias, packageName, onSuccess, onError);
+  }
+
+  @Override
+  public void setDelegatedScopes(
+      @NonNull String delegatePackage,
+      @NonNull List<String> scopes,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setDelegatedScopes(delegatePackage, scopes, onSuccess, onError);
+  }
+
+  @Override
+  @NonNull
+  public List<String> getDelegatedScopes(@NonNull String delegatePackage) {
+    return mDelegate.getDelegatedScopes(delegatePackage);
+  }
+
+  @Override
+  @NonNull
+  public List<String> getDelegatePackages(@NonNull String delegationScope) {
+    return mDelegate.getDelegatePackages(delegationScope);
+  }
+
+  @Override
+  public void setMeteredDataDisabledPackages(
+      @NonNull List<String> packageNames,
+      @NonNull Consumer<List<String>> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.setMeteredDataDisabledPackages(packageNames, onSuccess, onError);
+  }
+
+  @Override
+  @NonNull
+  public List<String> getMeteredDataDisabledPackages() {
+    return mDelegate.getMeteredDataDisabledPackages();
+  }
+
+  @Override
+  @NonNull
+  public List<UserHandle> getSecondaryUsers() {
+    return mDelegate.getSecondaryUsers();
+  }
+
+  @Override
+  public void addPersistentPreferredActivity(
+      ComponentName activityComponentName,
+      IntentFilter filter,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.addPersistentPreferredActivity(activityComponentName, filter, onSuccess, onError);
+  }
+
+  @Override
+  public void clearPackagePersistentPreferredActivities(
+      @NonNull String packageName,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mDelegate.clearPackagePersistentPreferredActivities(packageName, onSuccess, onError);
+  }
+}
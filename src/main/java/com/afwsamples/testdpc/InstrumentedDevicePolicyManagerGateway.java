@@ -0,0 +1,2439 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import android.app.admin.DevicePolicyManager;
+import android.app.admin.NetworkEvent;
+import android.app.admin.SecurityLog.SecurityEvent;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.PersistableBundle;
+import android.os.UserHandle;
+import android.security.AttestedKeyPair;
+import android.security.keystore.KeyGenParameterSpec;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.afwsamples.testdpc.util.LatencyHistogram;
+import com.afwsamples.testdpc.util.StripedCounter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A {@link DevicePolicyManagerGateway} that records, for each of its methods, how many times it was
+ * called, how many of those calls failed and how long they took, so it's possible to tell which
+ * calls dominate the time it takes to load a screen or run a script.
+ *
+ * <p>The stats are kept for the whole process (across instances) and printed by {@link
+ * #dump(PrintWriter)}. Recording a call only updates {@link StripedCounter striped counters} and a
+ * {@link LatencyHistogram}, without allocating (other than wrapping the error callback of the
+ * methods that take one), so it can wrap the gateway of production builds.
+ *
+ * <p>The time of a call is the time until the method returns, so for methods taking callbacks it
+ * only includes the work done before returning. Errors are exceptions thrown by the method or
+ * passed to its error callback.
+ *
+ * <p>Each instance also adds up the time of the calls made through it by the thread that created it
+ * (see {@link #getCallerThreadNanos()}), so callers can tell how much of their own time was spent
+ * in the gateway.
+ */
+public final class InstrumentedDevicePolicyManagerGateway
+    extends ForwardingDevicePolicyManagerGateway {
+
+  // Must be initialized before the CallStats below, which add themselves to it
+  private static final List<CallStats> sAllCalls = new ArrayList<>();
+
+  private static final CallStats GET_ADMIN = new CallStats("getAdmin");
+  private static final CallStats GET_DEVICE_POLICY_MANAGER =
+      new CallStats("getDevicePolicyManager");
+  private static final CallStats IS_DEVICE_OWNER_APP = new CallStats("isDeviceOwnerApp");
+  private static final CallStats IS_PROFILE_OWNER_APP = new CallStats("isProfileOwnerApp");
+  private static final CallStats IS_ORGANIZATION_OWNED_DEVICE_WITH_MANAGED_PROFILE =
+      new CallStats("isOrganizationOwnedDeviceWithManagedProfile");
+  private static final CallStats IS_HEADLESS_SYSTEM_USER_MODE =
+      new CallStats("isHeadlessSystemUserMode");
+  private static final CallStats IS_USER_FOREGROUND = new CallStats("isUserForeground");
+  private static final CallStats LIST_FOREGROUND_AFFILIATED_USERS =
+      new CallStats("listForegroundAffiliatedUsers");
+  private static final CallStats CREATE_AND_MANAGE_USER = new CallStats("createAndManageUser");
+  private static final CallStats SET_USER_ICON = new CallStats("setUserIcon");
+  private static final CallStats SET_START_USER_SESSION_MESSAGE =
+      new CallStats("setStartUserSessionMessage");
+  private static final CallStats GET_START_USER_SESSION_MESSAGE =
+      new CallStats("getStartUserSessionMessage");
+  private static final CallStats SET_END_USER_SESSION_MESSAGE =
+      new CallStats("setEndUserSessionMessage");
+  private static final CallStats GET_END_USER_SESSION_MESSAGE =
+      new CallStats("getEndUserSessionMessage");
+  private static final CallStats GET_USER_HANDLE = new CallStats("getUserHandle");
+  private static final CallStats GET_SERIAL_NUMBER = new CallStats("getSerialNumber");
+  private static final CallStats REMOVE_USER = new CallStats("removeUser");
+  private static final CallStats SWITCH_USER = new CallStats("switchUser");
+  private static final CallStats START_USER_IN_BACKGROUND = new CallStats("startUserInBackground");
+  private static final CallStats STOP_USER = new CallStats("stopUser");
+  private static final CallStats IS_LOGOUT_ENABLED = new CallStats("isLogoutEnabled");
+  private static final CallStats SET_LOGOUT_ENABLED = new CallStats("setLogoutEnabled");
+  private static final CallStats LOGOUT_USER = new CallStats("logoutUser");
+  private static final CallStats IS_AFFILIATED_USER = new CallStats("isAffiliatedUser");
+  private static final CallStats SET_AFFILIATION_IDS = new CallStats("setAffiliationIds");
+  private static final CallStats GET_AFFILIATION_IDS = new CallStats("getAffiliationIds");
+  private static final CallStats GET_USER_RESTRICTIONS = new CallStats("getUserRestrictions");
+  private static final CallStats SET_USER_RESTRICTION_4 =
+      new CallStats("setUserRestriction(String, boolean, Consumer, Consumer)");
+  private static final CallStats SET_USER_RESTRICTION_2 =
+      new CallStats("setUserRestriction(String, boolean)");
+  private static final CallStats SET_USER_RESTRICTIONS = new CallStats("setUserRestrictions");
+  private static final CallStats HAS_USER_RESTRICTION = new CallStats("hasUserRestriction");
+  private static final CallStats LOCK_NOW_2 = new CallStats("lockNow(Consumer, Consumer)");
+  private static final CallStats LOCK_NOW_3 = new CallStats("lockNow(int, Consumer, Consumer)");
+  private static final CallStats REBOOT = new CallStats("reboot");
+  private static final CallStats WIPE_DATA = new CallStats("wipeData");
+  private static final CallStats WIPE_DEVICE = new CallStats("wipeDevice");
+  private static final CallStats REQUEST_BUGREPORT = new CallStats("requestBugreport");
+  private static final CallStats GET_LAST_BUG_REPORT_REQUEST_TIME =
+      new CallStats("getLastBugReportRequestTime");
+  private static final CallStats SET_NETWORK_LOGGING_ENABLED_3 =
+      new CallStats("setNetworkLoggingEnabled(boolean, Consumer, Consumer)");
+  private static final CallStats SET_NETWORK_LOGGING_ENABLED_1 =
+      new CallStats("setNetworkLoggingEnabled(boolean)");
+  private static final CallStats IS_NETWORK_LOGGING_ENABLED =
+      new CallStats("isNetworkLoggingEnabled");
+  private static final CallStats GET_LAST_NETWORK_LOG_RETRIEVAL_TIME =
+      new CallStats("getLastNetworkLogRetrievalTime");
+  private static final CallStats RETRIEVE_NETWORK_LOGS = new CallStats("retrieveNetworkLogs");
+  private static final CallStats SET_SECURITY_LOGGING_ENABLED =
+      new CallStats("setSecurityLoggingEnabled");
+  private static final CallStats IS_SECURITY_LOGGING_ENABLED =
+      new CallStats("isSecurityLoggingEnabled");
+  private static final CallStats GET_LAST_SECURITY_LOG_RETRIEVAL_TIME =
+      new CallStats("getLastSecurityLogRetrievalTime");
+  private static final CallStats RETRIEVE_SECURITY_LOGS = new CallStats("retrieveSecurityLogs");
+  private static final CallStats RETRIEVE_PRE_REBOOT_SECURITY_LOGS =
+      new CallStats("retrievePreRebootSecurityLogs");
+  private static final CallStats SET_ORGANIZATION_NAME = new CallStats("setOrganizationName");
+  private static final CallStats GET_ORGANIZATION_NAME = new CallStats("getOrganizationName");
+  private static final CallStats SET_USER_CONTROL_DISABLED_PACKAGES =
+      new CallStats("setUserControlDisabledPackages");
+  private static final CallStats GET_USER_CONTROL_DISABLED_PACKAGES =
+      new CallStats("getUserControlDisabledPackages");
+  private static final CallStats SET_CROSS_PROFILE_PACKAGES =
+      new CallStats("setCrossProfilePackages");
+  private static final CallStats GET_CROSS_PROFILE_PACKAGES =
+      new CallStats("getCrossProfilePackages");
+  private static final CallStats SET_PERMITTED_INPUT_METHODS_3 =
+      new CallStats("setPermittedInputMethods(List, Consumer, Consumer)");
+  private static final CallStats SET_PERMITTED_INPUT_METHODS_1 =
+      new CallStats("setPermittedInputMethods(List)");
+  private static final CallStats REMOVE_ACTIVE_ADMIN = new CallStats("removeActiveAdmin");
+  private static final CallStats CLEAR_DEVICE_OWNER_APP = new CallStats("clearDeviceOwnerApp");
+  private static final CallStats CLEAR_PROFILE_OWNER = new CallStats("clearProfileOwner");
+  private static final CallStats SET_PASSWORD_QUALITY = new CallStats("setPasswordQuality");
+  private static final CallStats GET_PASSWORD_QUALITY = new CallStats("getPasswordQuality");
+  private static final CallStats SET_REQUIRED_PASSWORD_COMPLEXITY =
+      new CallStats("setRequiredPasswordComplexity");
+  private static final CallStats GET_REQUIRED_PASSWORD_COMPLEXITY =
+      new CallStats("getRequiredPasswordComplexity");
+  private static final CallStats IS_ACTIVE_PASSWORD_SUFFICIENT =
+      new CallStats("isActivePasswordSufficient");
+  private static final CallStats IS_ACTIVE_PASSWORD_SUFFICIENT_FOR_DEVICE_REQUIREMENT =
+      new CallStats("isActivePasswordSufficientForDeviceRequirement");
+  private static final CallStats TRANSFER_OWNERSHIP = new CallStats("transferOwnership");
+  private static final CallStats SET_USB_DATA_SIGNALING_ENABLED_3 =
+      new CallStats("setUsbDataSignalingEnabled(boolean, Consumer, Consumer)");
+  private static final CallStats SET_USB_DATA_SIGNALING_ENABLED_1 =
+      new CallStats("setUsbDataSignalingEnabled(boolean)");
+  private static final CallStats CAN_USB_DATA_SIGNALING_BE_DISABLED =
+      new CallStats("canUsbDataSignalingBeDisabled");
+  private static final CallStats SET_PREFERENTIAL_NETWORK_SERVICE_ENABLED =
+      new CallStats("setPreferentialNetworkServiceEnabled");
+  private static final CallStats IS_PREFERENTIAL_NETWORK_SERVICE_ENABLED =
+      new CallStats("isPreferentialNetworkServiceEnabled");
+  private static final CallStats SET_PACKAGES_SUSPENDED = new CallStats("setPackagesSuspended");
+  private static final CallStats IS_PACKAGE_SUSPENDED = new CallStats("isPackageSuspended");
+  private static final CallStats SET_APPLICATION_HIDDEN = new CallStats("setApplicationHidden");
+  private static final CallStats IS_APPLICATION_HIDDEN = new CallStats("isApplicationHidden");
+  private static final CallStats SET_PERSONAL_APPS_SUSPENDED =
+      new CallStats("setPersonalAppsSuspended");
+  private static final CallStats GET_PERSONAL_APPS_SUSPENDED_REASONS =
+      new CallStats("getPersonalAppsSuspendedReasons");
+  private static final CallStats ENABLE_SYSTEM_APP_STRING =
+      new CallStats("enableSystemApp(String, Consumer, Consumer)");
+  private static final CallStats ENABLE_SYSTEM_APP_INTENT =
+      new CallStats("enableSystemApp(Intent, Consumer, Consumer)");
+  private static final CallStats GET_DISABLED_SYSTEM_APPS = new CallStats("getDisabledSystemApps");
+  private static final CallStats SET_LOCK_TASK_PACKAGES = new CallStats("setLockTaskPackages");
+  private static final CallStats GET_LOCK_TASK_PACKAGES = new CallStats("getLockTaskPackages");
+  private static final CallStats SET_LOCK_TASK_FEATURES = new CallStats("setLockTaskFeatures");
+  private static final CallStats GET_LOCK_TASK_FEATURES = new CallStats("getLockTaskFeatures");
+  private static final CallStats IS_LOCK_TASK_PERMITTED = new CallStats("isLockTaskPermitted");
+  private static final CallStats SET_APPLICATION_RESTRICTIONS =
+      new CallStats("setApplicationRestrictions");
+  private static final CallStats GET_APPLICATION_RESTRICTIONS =
+      new CallStats("getApplicationRestrictions");
+  private static final CallStats GET_SELF_RESTRICTIONS = new CallStats("getSelfRestrictions");
+  private static final CallStats SET_PERMISSION_GRANT_STATE =
+      new CallStats("setPermissionGrantState");
+  private static final CallStats GET_PERMISSION_GRANT_STATE =
+      new CallStats("getPermissionGrantState");
+  private static final CallStats CAN_ADMIN_GRANT_SENSORS_PERMISSIONS =
+      new CallStats("canAdminGrantSensorsPermissions");
+  private static final CallStats SET_LOCATION_ENABLED = new CallStats("setLocationEnabled");
+  private static final CallStats IS_LOCATION_ENABLED = new CallStats("isLocationEnabled");
+  private static final CallStats SET_DEVICE_OWNER_LOCK_SCREEN_INFO =
+      new CallStats("setDeviceOwnerLockScreenInfo");
+  private static final CallStats GET_DEVICE_OWNER_LOCK_SCREEN_INFO =
+      new CallStats("getDeviceOwnerLockScreenInfo");
+  private static final CallStats SET_KEYGUARD_DISABLED = new CallStats("setKeyguardDisabled");
+  private static final CallStats SET_KEYGUARD_DISABLED_FEATURES =
+      new CallStats("setKeyguardDisabledFeatures");
+  private static final CallStats GET_KEYGUARD_DISABLED_FEATURES =
+      new CallStats("getKeyguardDisabledFeatures");
+  private static final CallStats SET_CAMERA_DISABLED = new CallStats("setCameraDisabled");
+  private static final CallStats GET_CAMERA_DISABLED = new CallStats("getCameraDisabled");
+  private static final CallStats GET_CAMERA_DISABLED_BY_ANY_ADMIN =
+      new CallStats("getCameraDisabledByAnyAdmin");
+  private static final CallStats SET_STATUS_BAR_DISABLED = new CallStats("setStatusBarDisabled");
+  private static final CallStats SET_SCREEN_CAPTURE_DISABLED =
+      new CallStats("setScreenCaptureDisabled");
+  private static final CallStats SET_MAXIMUM_FAILED_PASSWORDS_FOR_WIPE =
+      new CallStats("setMaximumFailedPasswordsForWipe");
+  private static final CallStats GET_MAXIMUM_FAILED_PASSWORDS_FOR_WIPE =
+      new CallStats("getMaximumFailedPasswordsForWipe");
+  private static final CallStats INSTALL_EXISTING_PACKAGE = new CallStats("installExistingPackage");
+  private static final CallStats SET_UNINSTALL_BLOCKED = new CallStats("setUninstallBlocked");
+  private static final CallStats IS_UNINSTALL_BLOCKED = new CallStats("isUninstallBlocked");
+  private static final CallStats SET_SECURE_SETTING = new CallStats("setSecureSetting");
+  private static final CallStats SET_GLOBAL_SETTING = new CallStats("setGlobalSetting");
+  private static final CallStats IS_DEVICE_ID_ATTESTATION_SUPPORTED =
+      new CallStats("isDeviceIdAttestationSupported");
+  private static final CallStats IS_UNIQUE_DEVICE_ATTESTATION_SUPPORTED =
+      new CallStats("isUniqueDeviceAttestationSupported");
+  private static final CallStats HAS_KEY_PAIR = new CallStats("hasKeyPair");
+  private static final CallStats GENERATE_KEY_PAIR = new CallStats("generateKeyPair");
+  private static final CallStats REMOVE_KEY_PAIR = new CallStats("removeKeyPair");
+  private static final CallStats GRANT_KEY_PAIR_TO_APP = new CallStats("grantKeyPairToApp");
+  private static final CallStats GET_KEY_PAIR_GRANTS = new CallStats("getKeyPairGrants");
+  private static final CallStats REVOKE_KEY_PAIR_FROM_APP = new CallStats("revokeKeyPairFromApp");
+  private static final CallStats SET_DELEGATED_SCOPES = new CallStats("setDelegatedScopes");
+  private static final CallStats GET_DELEGATED_SCOPES = new CallStats("getDelegatedScopes");
+  private static final CallStats GET_DELEGATE_PACKAGES = new CallStats("getDelegatePackages");
+  private static final CallStats SET_METERED_DATA_DISABLED_PACKAGES =
+      new CallStats("setMeteredDataDisabledPackages");
+  private static final CallStats GET_METERED_DATA_DISABLED_PACKAGES =
+      new CallStats("getMeteredDataDisabledPackages");
+  private static final CallStats GET_SECONDARY_USERS = new CallStats("getSecondaryUsers");
+  private static final CallStats ADD_PERSISTENT_PREFERRED_ACTIVITY =
+      new CallStats("addPersistentPreferredActivity");
+  private static final CallStats CLEAR_PACKAGE_PERSISTENT_PREFERRED_ACTIVITIES =
+      new CallStats("clearPackagePersistentPreferredActivities");
+
+  private final Thread mCallerThread = Thread.currentThread();
+  // Only accessed by mCallerThread
+  private long mCallerThreadNanos;
+
+  public InstrumentedDevicePolicyManagerGateway(@NonNull DevicePolicyManagerGateway delegate) {
+    super(delegate);
+  }
+
+  /**
+   * Returns the time spent in the calls made through this instance by the thread that created it.
+   * Calls made by other threads (e.g. to run asynchronous work) are not included. Must be called on
+   * the thread that created the instance.
+   */
+  public long getCallerThreadNanos() {
+    return mCallerThreadNanos;
+  }
+
+  /** Prints the stats of every method called so far, sorted by the total time spent in them. */
+  public static void dump(PrintWriter writer) {
+    List<CallStats.Snapshot> snapshots = new ArrayList<>();
+    long totalCalls = 0;
+    long totalErrors = 0;
+    long totalNanos = 0;
+    for (CallStats stats : sAllCalls) {
+      CallStats.Snapshot snapshot = stats.snapshot();
+      if (snapshot == null) {
+        continue;
+      }
+      snapshots.add(snapshot);
+      totalCalls += snapshot.mCalls;
+      totalErrors += snapshot.mErrors;
+      totalNanos += snapshot.mTotalNanos;
+    }
+    Collections.sort(snapshots, (a, b) -> Long.compare(b.mTotalNanos, a.mTotalNanos));
+
+    writer.printf(
+        "gatewayCalls: %d (errors: %d, total: %s)\n",
+        totalCalls, totalErrors, formatNanos(totalNanos));
+    for (CallStats.Snapshot snapshot : snapshots) {
+      writer.printf(
+          "  %s: %d calls, %d errors, total=%s p50=%s p99=%s max=%s\n",
+          snapshot.mMethod,
+          snapshot.mCalls,
+          snapshot.mErrors,
+          formatNanos(snapshot.mTotalNanos),
+          formatNanos(snapshot.mLatency.getValueAtPercentile(50)),
+          formatNanos(snapshot.mLatency.getValueAtPercentile(99)),
+          formatNanos(snapshot.mLatency.getMax()));
+    }
+  }
+
+  private void record(CallStats stats, long startNanos) {
+    long nanos = stats.record(startNanos);
+    if (Thread.currentThread() == mCallerThread) {
+      mCallerThreadNanos += nanos;
+    }
+  }
+
+  private static String formatNanos(long nanos) {
+    return String.format(Locale.ROOT, "%.3fms", nanos / 1_000_000.0);
+  }
+
+  @Override
+  @NonNull
+  public ComponentName getAdmin() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getAdmin();
+    } catch (RuntimeException e) {
+      GET_ADMIN.recordError();
+      throw e;
+    } finally {
+      record(GET_ADMIN, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public DevicePolicyManager getDevicePolicyManager() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getDevicePolicyManager();
+    } catch (RuntimeException e) {
+      GET_DEVICE_POLICY_MANAGER.recordError();
+      throw e;
+    } finally {
+      record(GET_DEVICE_POLICY_MANAGER, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isDeviceOwnerApp() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isDeviceOwnerApp();
+    } catch (RuntimeException e) {
+      IS_DEVICE_OWNER_APP.recordError();
+      throw e;
+    } finally {
+      record(IS_DEVICE_OWNER_APP, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isProfileOwnerApp() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isProfileOwnerApp();
+    } catch (RuntimeException e) {
+      IS_PROFILE_OWNER_APP.recordError();
+      throw e;
+    } finally {
+      record(IS_PROFILE_OWNER_APP, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isOrganizationOwnedDeviceWithManagedProfile() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isOrganizationOwnedDeviceWithManagedProfile();
+    } catch (RuntimeException e) {
+      IS_ORGANIZATION_OWNED_DEVICE_WITH_MANAGED_PROFILE.recordError();
+      throw e;
+    } finally {
+      record(IS_ORGANIZATION_OWNED_DEVICE_WITH_MANAGED_PROFILE, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isHeadlessSystemUserMode() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isHeadlessSystemUserMode();
+    } catch (RuntimeException e) {
+      IS_HEADLESS_SYSTEM_USER_MODE.recordError();
+      throw e;
+    } finally {
+      record(IS_HEADLESS_SYSTEM_USER_MODE, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isUserForeground() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isUserForeground();
+    } catch (RuntimeException e) {
+      IS_USER_FOREGROUND.recordError();
+      throw e;
+    } finally {
+      record(IS_USER_FOREGROUND, startNanos);
+    }
+  }
+
+  @Override
+  public List<UserHandle> listForegroundAffiliatedUsers() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.listForegroundAffiliatedUsers();
+    } catch (RuntimeException e) {
+      LIST_FOREGROUND_AFFILIATED_USERS.recordError();
+      throw e;
+    } finally {
+      record(LIST_FOREGROUND_AFFILIATED_USERS, startNanos);
+    }
+  }
+
+  @Override
+  public void createAndManageUser(
+      @Nullable String name,
+      int flags,
+      @NonNull Consumer<UserHandle> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(CREATE_AND_MANAGE_USER, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.createAndManageUser(name, flags, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      CREATE_AND_MANAGE_USER.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(CREATE_AND_MANAGE_USER, startNanos);
+    }
+  }
+
+  @Override
+  public void setUserIcon(
+      @NonNull Bitmap icon,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(SET_USER_ICON, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setUserIcon(icon, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_USER_ICON.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_USER_ICON, startNanos);
+    }
+  }
+
+  @Override
+  public void setStartUserSessionMessage(
+      @Nullable CharSequence message,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_START_USER_SESSION_MESSAGE, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setStartUserSessionMessage(message, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_START_USER_SESSION_MESSAGE.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_START_USER_SESSION_MESSAGE, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public CharSequence getStartUserSessionMessage() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getStartUserSessionMessage();
+    } catch (RuntimeException e) {
+      GET_START_USER_SESSION_MESSAGE.recordError();
+      throw e;
+    } finally {
+      record(GET_START_USER_SESSION_MESSAGE, startNanos);
+    }
+  }
+
+  @Override
+  public void setEndUserSessionMessage(
+      @Nullable CharSequence message,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_END_USER_SESSION_MESSAGE, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setEndUserSessionMessage(message, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_END_USER_SESSION_MESSAGE.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_END_USER_SESSION_MESSAGE, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public CharSequence getEndUserSessionMessage() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getEndUserSessionMessage();
+    } catch (RuntimeException e) {
+      GET_END_USER_SESSION_MESSAGE.recordError();
+      throw e;
+    } finally {
+      record(GET_END_USER_SESSION_MESSAGE, startNanos);
+    }
+  }
+
+  @Override
+  @Nullable
+  public UserHandle getUserHandle(long serialNumber) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getUserHandle(serialNumber);
+    } catch (RuntimeException e) {
+      GET_USER_HANDLE.recordError();
+      throw e;
+    } finally {
+      record(GET_USER_HANDLE, startNanos);
+    }
+  }
+
+  @Override
+  public long getSerialNumber(@NonNull UserHandle user) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getSerialNumber(user);
+    } catch (RuntimeException e) {
+      GET_SERIAL_NUMBER.recordError();
+      throw e;
+    } finally {
+      record(GET_SERIAL_NUMBER, startNanos);
+    }
+  }
+
+  @Override
+  public void removeUser(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(REMOVE_USER, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.removeUser(userHandle, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      REMOVE_USER.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(REMOVE_USER, startNanos);
+    }
+  }
+
+  @Override
+  public void switchUser(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(SWITCH_USER, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.switchUser(userHandle, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SWITCH_USER.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SWITCH_USER, startNanos);
+    }
+  }
+
+  @Override
+  public void startUserInBackground(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Integer> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(START_USER_IN_BACKGROUND, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.startUserInBackground(userHandle, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      START_USER_IN_BACKGROUND.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(START_USER_IN_BACKGROUND, startNanos);
+    }
+  }
+
+  @Override
+  public void stopUser(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Integer> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(STOP_USER, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.stopUser(userHandle, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      STOP_USER.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(STOP_USER, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isLogoutEnabled() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isLogoutEnabled();
+    } catch (RuntimeException e) {
+      IS_LOGOUT_ENABLED.recordError();
+      throw e;
+    } finally {
+      record(IS_LOGOUT_ENABLED, startNanos);
+    }
+  }
+
+  @Override
+  public void setLogoutEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(SET_LOGOUT_ENABLED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setLogoutEnabled(enabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_LOGOUT_ENABLED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_LOGOUT_ENABLED, startNanos);
+    }
+  }
+
+  @Override
+  public void logoutUser(
+      @NonNull Consumer<Integer> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(LOGOUT_USER, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.logoutUser(callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      LOGOUT_USER.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(LOGOUT_USER, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isAffiliatedUser() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isAffiliatedUser();
+    } catch (RuntimeException e) {
+      IS_AFFILIATED_USER.recordError();
+      throw e;
+    } finally {
+      record(IS_AFFILIATED_USER, startNanos);
+    }
+  }
+
+  @Override
+  public void setAffiliationIds(@NonNull Set<String> ids) {
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setAffiliationIds(ids);
+    } catch (RuntimeException e) {
+      SET_AFFILIATION_IDS.recordError();
+      throw e;
+    } finally {
+      record(SET_AFFILIATION_IDS, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public Set<String> getAffiliationIds() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getAffiliationIds();
+    } catch (RuntimeException e) {
+      GET_AFFILIATION_IDS.recordError();
+      throw e;
+    } finally {
+      record(GET_AFFILIATION_IDS, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public Set<String> getUserRestrictions() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getUserRestrictions();
+    } catch (RuntimeException e) {
+      GET_USER_RESTRICTIONS.recordError();
+      throw e;
+    } finally {
+      record(GET_USER_RESTRICTIONS, startNanos);
+    }
+  }
+
+  @Override
+  public void setUserRestriction(
+      @NonNull String userRestriction,
+      boolean enabled,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_USER_RESTRICTION_4, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setUserRestriction(
+          userRestriction, enabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_USER_RESTRICTION_4.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_USER_RESTRICTION_4, startNanos);
+    }
+  }
+
+  @Override
+  public void setUserRestriction(@NonNull String userRestriction, boolean enabled) {
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setUserRestriction(userRestriction, enabled);
+    } catch (RuntimeException e) {
+      SET_USER_RESTRICTION_2.recordError();
+      throw e;
+    } finally {
+      record(SET_USER_RESTRICTION_2, startNanos);
+    }
+  }
+
+  @Override
+  public void setUserRestrictions(
+      @NonNull Map<String, Boolean> userRestrictions,
+      @NonNull Consumer<Set<String>> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_USER_RESTRICTIONS, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setUserRestrictions(userRestrictions, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_USER_RESTRICTIONS.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_USER_RESTRICTIONS, startNanos);
+    }
+  }
+
+  @Override
+  public boolean hasUserRestriction(@NonNull String userRestriction) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.hasUserRestriction(userRestriction);
+    } catch (RuntimeException e) {
+      HAS_USER_RESTRICTION.recordError();
+      throw e;
+    } finally {
+      record(HAS_USER_RESTRICTION, startNanos);
+    }
+  }
+
+  @Override
+  public void lockNow(@NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(LOCK_NOW_2, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.lockNow(callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      LOCK_NOW_2.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(LOCK_NOW_2, startNanos);
+    }
+  }
+
+  @Override
+  public void lockNow(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(LOCK_NOW_3, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.lockNow(flags, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      LOCK_NOW_3.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(LOCK_NOW_3, startNanos);
+    }
+  }
+
+  @Override
+  public void reboot(@NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(REBOOT, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.reboot(callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      REBOOT.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(REBOOT, startNanos);
+    }
+  }
+
+  @Override
+  public void wipeData(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(WIPE_DATA, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.wipeData(flags, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      WIPE_DATA.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(WIPE_DATA, startNanos);
+    }
+  }
+
+  @Override
+  public void wipeDevice(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(WIPE_DEVICE, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.wipeDevice(flags, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      WIPE_DEVICE.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(WIPE_DEVICE, startNanos);
+    }
+  }
+
+  @Override
+  public void requestBugreport(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(REQUEST_BUGREPORT, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.requestBugreport(callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      REQUEST_BUGREPORT.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(REQUEST_BUGREPORT, startNanos);
+    }
+  }
+
+  @Override
+  public long getLastBugReportRequestTime() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getLastBugReportRequestTime();
+    } catch (RuntimeException e) {
+      GET_LAST_BUG_REPORT_REQUEST_TIME.recordError();
+      throw e;
+    } finally {
+      record(GET_LAST_BUG_REPORT_REQUEST_TIME, startNanos);
+    }
+  }
+
+  @Override
+  public void setNetworkLoggingEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_NETWORK_LOGGING_ENABLED_3, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setNetworkLoggingEnabled(enabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_NETWORK_LOGGING_ENABLED_3.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_NETWORK_LOGGING_ENABLED_3, startNanos);
+    }
+  }
+
+  @Override
+  public void setNetworkLoggingEnabled(boolean enabled) {
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setNetworkLoggingEnabled(enabled);
+    } catch (RuntimeException e) {
+      SET_NETWORK_LOGGING_ENABLED_1.recordError();
+      throw e;
+    } finally {
+      record(SET_NETWORK_LOGGING_ENABLED_1, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isNetworkLoggingEnabled() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isNetworkLoggingEnabled();
+    } catch (RuntimeException e) {
+      IS_NETWORK_LOGGING_ENABLED.recordError();
+      throw e;
+    } finally {
+      record(IS_NETWORK_LOGGING_ENABLED, startNanos);
+    }
+  }
+
+  @Override
+  public long getLastNetworkLogRetrievalTime() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getLastNetworkLogRetrievalTime();
+    } catch (RuntimeException e) {
+      GET_LAST_NETWORK_LOG_RETRIEVAL_TIME.recordError();
+      throw e;
+    } finally {
+      record(GET_LAST_NETWORK_LOG_RETRIEVAL_TIME, startNanos);
+    }
+  }
+
+  @Override
+  public List<NetworkEvent> retrieveNetworkLogs(long batchToken) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.retrieveNetworkLogs(batchToken);
+    } catch (RuntimeException e) {
+      RETRIEVE_NETWORK_LOGS.recordError();
+      throw e;
+    } finally {
+      record(RETRIEVE_NETWORK_LOGS, startNanos);
+    }
+  }
+
+  @Override
+  public void setSecurityLoggingEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_SECURITY_LOGGING_ENABLED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setSecurityLoggingEnabled(enabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_SECURITY_LOGGING_ENABLED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_SECURITY_LOGGING_ENABLED, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isSecurityLoggingEnabled() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isSecurityLoggingEnabled();
+    } catch (RuntimeException e) {
+      IS_SECURITY_LOGGING_ENABLED.recordError();
+      throw e;
+    } finally {
+      record(IS_SECURITY_LOGGING_ENABLED, startNanos);
+    }
+  }
+
+  @Override
+  public long getLastSecurityLogRetrievalTime() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getLastSecurityLogRetrievalTime();
+    } catch (RuntimeException e) {
+      GET_LAST_SECURITY_LOG_RETRIEVAL_TIME.recordError();
+      throw e;
+    } finally {
+      record(GET_LAST_SECURITY_LOG_RETRIEVAL_TIME, startNanos);
+    }
+  }
+
+  @Override
+  public List<SecurityEvent> retrieveSecurityLogs() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.retrieveSecurityLogs();
+    } catch (RuntimeException e) {
+      RETRIEVE_SECURITY_LOGS.recordError();
+      throw e;
+    } finally {
+      record(RETRIEVE_SECURITY_LOGS, startNanos);
+    }
+  }
+
+  @Override
+  public List<SecurityEvent> retrievePreRebootSecurityLogs() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.retrievePreRebootSecurityLogs();
+    } catch (RuntimeException e) {
+      RETRIEVE_PRE_REBOOT_SECURITY_LOGS.recordError();
+      throw e;
+    } finally {
+      record(RETRIEVE_PRE_REBOOT_SECURITY_LOGS, startNanos);
+    }
+  }
+
+  @Override
+  public void setOrganizationName(
+      @Nullable CharSequence title,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_ORGANIZATION_NAME, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setOrganizationName(title, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_ORGANIZATION_NAME.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_ORGANIZATION_NAME, startNanos);
+    }
+  }
+
+  @Override
+  @Nullable
+  public CharSequence getOrganizationName() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getOrganizationName();
+    } catch (RuntimeException e) {
+      GET_ORGANIZATION_NAME.recordError();
+      throw e;
+    } finally {
+      record(GET_ORGANIZATION_NAME, startNanos);
+    }
+  }
+
+  @Override
+  public void setUserControlDisabledPackages(
+      @Nullable List<String> packages,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_USER_CONTROL_DISABLED_PACKAGES, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setUserControlDisabledPackages(
+          packages, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_USER_CONTROL_DISABLED_PACKAGES.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_USER_CONTROL_DISABLED_PACKAGES, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public List<String> getUserControlDisabledPackages() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getUserControlDisabledPackages();
+    } catch (RuntimeException e) {
+      GET_USER_CONTROL_DISABLED_PACKAGES.recordError();
+      throw e;
+    } finally {
+      record(GET_USER_CONTROL_DISABLED_PACKAGES, startNanos);
+    }
+  }
+
+  @Override
+  public void setCrossProfilePackages(
+      @NonNull Set<String> packages,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_CROSS_PROFILE_PACKAGES, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setCrossProfilePackages(packages, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_CROSS_PROFILE_PACKAGES.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_CROSS_PROFILE_PACKAGES, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public Set<String> getCrossProfilePackages() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getCrossProfilePackages();
+    } catch (RuntimeException e) {
+      GET_CROSS_PROFILE_PACKAGES.recordError();
+      throw e;
+    } finally {
+      record(GET_CROSS_PROFILE_PACKAGES, startNanos);
+    }
+  }
+
+  @Override
+  public boolean setPermittedInputMethods(
+      List<String> packageNames,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_PERMITTED_INPUT_METHODS_3, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.setPermittedInputMethods(
+          packageNames, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_PERMITTED_INPUT_METHODS_3.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_PERMITTED_INPUT_METHODS_3, startNanos);
+    }
+  }
+
+  @Override
+  public boolean setPermittedInputMethods(List<String> packageNames) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.setPermittedInputMethods(packageNames);
+    } catch (RuntimeException e) {
+      SET_PERMITTED_INPUT_METHODS_1.recordError();
+      throw e;
+    } finally {
+      record(SET_PERMITTED_INPUT_METHODS_1, startNanos);
+    }
+  }
+
+  @Override
+  public void removeActiveAdmin(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(REMOVE_ACTIVE_ADMIN, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.removeActiveAdmin(callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      REMOVE_ACTIVE_ADMIN.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(REMOVE_ACTIVE_ADMIN, startNanos);
+    }
+  }
+
+  @Override
+  public void clearDeviceOwnerApp(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(CLEAR_DEVICE_OWNER_APP, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.clearDeviceOwnerApp(callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      CLEAR_DEVICE_OWNER_APP.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(CLEAR_DEVICE_OWNER_APP, startNanos);
+    }
+  }
+
+  @Override
+  public void clearProfileOwner(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(CLEAR_PROFILE_OWNER, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.clearProfileOwner(callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      CLEAR_PROFILE_OWNER.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(CLEAR_PROFILE_OWNER, startNanos);
+    }
+  }
+
+  @Override
+  public void setPasswordQuality(
+      int quality, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_PASSWORD_QUALITY, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setPasswordQuality(quality, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_PASSWORD_QUALITY.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_PASSWORD_QUALITY, startNanos);
+    }
+  }
+
+  @Override
+  public int getPasswordQuality() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getPasswordQuality();
+    } catch (RuntimeException e) {
+      GET_PASSWORD_QUALITY.recordError();
+      throw e;
+    } finally {
+      record(GET_PASSWORD_QUALITY, startNanos);
+    }
+  }
+
+  @Override
+  public void setRequiredPasswordComplexity(
+      int quality, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_REQUIRED_PASSWORD_COMPLEXITY, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setRequiredPasswordComplexity(quality, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_REQUIRED_PASSWORD_COMPLEXITY.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_REQUIRED_PASSWORD_COMPLEXITY, startNanos);
+    }
+  }
+
+  @Override
+  public int getRequiredPasswordComplexity() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getRequiredPasswordComplexity();
+    } catch (RuntimeException e) {
+      GET_REQUIRED_PASSWORD_COMPLEXITY.recordError();
+      throw e;
+    } finally {
+      record(GET_REQUIRED_PASSWORD_COMPLEXITY, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isActivePasswordSufficient() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isActivePasswordSufficient();
+    } catch (RuntimeException e) {
+      IS_ACTIVE_PASSWORD_SUFFICIENT.recordError();
+      throw e;
+    } finally {
+      record(IS_ACTIVE_PASSWORD_SUFFICIENT, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isActivePasswordSufficientForDeviceRequirement() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isActivePasswordSufficientForDeviceRequirement();
+    } catch (RuntimeException e) {
+      IS_ACTIVE_PASSWORD_SUFFICIENT_FOR_DEVICE_REQUIREMENT.recordError();
+      throw e;
+    } finally {
+      record(IS_ACTIVE_PASSWORD_SUFFICIENT_FOR_DEVICE_REQUIREMENT, startNanos);
+    }
+  }
+
+  @Override
+  public void transferOwnership(
+      @NonNull ComponentName target,
+      @Nullable PersistableBundle bundle,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(TRANSFER_OWNERSHIP, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.transferOwnership(target, bundle, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      TRANSFER_OWNERSHIP.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(TRANSFER_OWNERSHIP, startNanos);
+    }
+  }
+
+  @Override
+  public void setUsbDataSignalingEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_USB_DATA_SIGNALING_ENABLED_3, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setUsbDataSignalingEnabled(enabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_USB_DATA_SIGNALING_ENABLED_3.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_USB_DATA_SIGNALING_ENABLED_3, startNanos);
+    }
+  }
+
+  @Override
+  public void setUsbDataSignalingEnabled(boolean enabled) {
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setUsbDataSignalingEnabled(enabled);
+    } catch (RuntimeException e) {
+      SET_USB_DATA_SIGNALING_ENABLED_1.recordError();
+      throw e;
+    } finally {
+      record(SET_USB_DATA_SIGNALING_ENABLED_1, startNanos);
+    }
+  }
+
+  @Override
+  public boolean canUsbDataSignalingBeDisabled() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.canUsbDataSignalingBeDisabled();
+    } catch (RuntimeException e) {
+      CAN_USB_DATA_SIGNALING_BE_DISABLED.recordError();
+      throw e;
+    } finally {
+      record(CAN_USB_DATA_SIGNALING_BE_DISABLED, startNanos);
+    }
+  }
+
+  @Override
+  public void setPreferentialNetworkServiceEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_PREFERENTIAL_NETWORK_SERVICE_ENABLED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setPreferentialNetworkServiceEnabled(
+          enabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_PREFERENTIAL_NETWORK_SERVICE_ENABLED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_PREFERENTIAL_NETWORK_SERVICE_ENABLED, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isPreferentialNetworkServiceEnabled() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isPreferentialNetworkServiceEnabled();
+    } catch (RuntimeException e) {
+      IS_PREFERENTIAL_NETWORK_SERVICE_ENABLED.recordError();
+      throw e;
+    } finally {
+      record(IS_PREFERENTIAL_NETWORK_SERVICE_ENABLED, startNanos);
+    }
+  }
+
+  @Override
+  public void setPackagesSuspended(
+      String[] packageNames,
+      boolean suspended,
+      @NonNull Consumer<String[]> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_PACKAGES_SUSPENDED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setPackagesSuspended(
+          packageNames, suspended, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_PACKAGES_SUSPENDED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_PACKAGES_SUSPENDED, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isPackageSuspended(String packageName) throws NameNotFoundException {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isPackageSuspended(packageName);
+    } catch (RuntimeException | NameNotFoundException e) {
+      IS_PACKAGE_SUSPENDED.recordError();
+      throw e;
+    } finally {
+      record(IS_PACKAGE_SUSPENDED, startNanos);
+    }
+  }
+
+  @Override
+  public void setApplicationHidden(
+      String packageName,
+      boolean suspended,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_APPLICATION_HIDDEN, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setApplicationHidden(
+          packageName, suspended, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_APPLICATION_HIDDEN.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_APPLICATION_HIDDEN, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isApplicationHidden(String packageName) throws NameNotFoundException {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isApplicationHidden(packageName);
+    } catch (RuntimeException | NameNotFoundException e) {
+      IS_APPLICATION_HIDDEN.recordError();
+      throw e;
+    } finally {
+      record(IS_APPLICATION_HIDDEN, startNanos);
+    }
+  }
+
+  @Override
+  public void setPersonalAppsSuspended(
+      boolean suspended, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_PERSONAL_APPS_SUSPENDED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setPersonalAppsSuspended(suspended, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_PERSONAL_APPS_SUSPENDED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_PERSONAL_APPS_SUSPENDED, startNanos);
+    }
+  }
+
+  @Override
+  public int getPersonalAppsSuspendedReasons() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getPersonalAppsSuspendedReasons();
+    } catch (RuntimeException e) {
+      GET_PERSONAL_APPS_SUSPENDED_REASONS.recordError();
+      throw e;
+    } finally {
+      record(GET_PERSONAL_APPS_SUSPENDED_REASONS, startNanos);
+    }
+  }
+
+  @Override
+  public void enableSystemApp(
+      String packageName, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(ENABLE_SYSTEM_APP_STRING, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.enableSystemApp(packageName, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      ENABLE_SYSTEM_APP_STRING.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(ENABLE_SYSTEM_APP_STRING, startNanos);
+    }
+  }
+
+  @Override
+  public void enableSystemApp(
+      Intent intent, @NonNull Consumer<Integer> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(ENABLE_SYSTEM_APP_INTENT, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.enableSystemApp(intent, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      ENABLE_SYSTEM_APP_INTENT.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(ENABLE_SYSTEM_APP_INTENT, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public List<String> getDisabledSystemApps() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getDisabledSystemApps();
+    } catch (RuntimeException e) {
+      GET_DISABLED_SYSTEM_APPS.recordError();
+      throw e;
+    } finally {
+      record(GET_DISABLED_SYSTEM_APPS, startNanos);
+    }
+  }
+
+  @Override
+  public void setLockTaskPackages(
+      String[] packages, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_LOCK_TASK_PACKAGES, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setLockTaskPackages(packages, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_LOCK_TASK_PACKAGES.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_LOCK_TASK_PACKAGES, startNanos);
+    }
+  }
+
+  @Override
+  public String[] getLockTaskPackages() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getLockTaskPackages();
+    } catch (RuntimeException e) {
+      GET_LOCK_TASK_PACKAGES.recordError();
+      throw e;
+    } finally {
+      record(GET_LOCK_TASK_PACKAGES, startNanos);
+    }
+  }
+
+  @Override
+  public void setLockTaskFeatures(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_LOCK_TASK_FEATURES, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setLockTaskFeatures(flags, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_LOCK_TASK_FEATURES.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_LOCK_TASK_FEATURES, startNanos);
+    }
+  }
+
+  @Override
+  public int getLockTaskFeatures() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getLockTaskFeatures();
+    } catch (RuntimeException e) {
+      GET_LOCK_TASK_FEATURES.recordError();
+      throw e;
+    } finally {
+      record(GET_LOCK_TASK_FEATURES, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isLockTaskPermitted(String packageName) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isLockTaskPermitted(packageName);
+    } catch (RuntimeException e) {
+      IS_LOCK_TASK_PERMITTED.recordError();
+      throw e;
+    } finally {
+      record(IS_LOCK_TASK_PERMITTED, startNanos);
+    }
+  }
+
+  @Override
+  public void setApplicationRestrictions(
+      String packageName,
+      Bundle settings,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_APPLICATION_RESTRICTIONS, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setApplicationRestrictions(
+          packageName, settings, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_APPLICATION_RESTRICTIONS.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_APPLICATION_RESTRICTIONS, startNanos);
+    }
+  }
+
+  @Override
+  public Bundle getApplicationRestrictions(String packageName) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getApplicationRestrictions(packageName);
+    } catch (RuntimeException e) {
+      GET_APPLICATION_RESTRICTIONS.recordError();
+      throw e;
+    } finally {
+      record(GET_APPLICATION_RESTRICTIONS, startNanos);
+    }
+  }
+
+  @Override
+  public Bundle getSelfRestrictions() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getSelfRestrictions();
+    } catch (RuntimeException e) {
+      GET_SELF_RESTRICTIONS.recordError();
+      throw e;
+    } finally {
+      record(GET_SELF_RESTRICTIONS, startNanos);
+    }
+  }
+
+  @Override
+  public void setPermissionGrantState(
+      String packageName,
+      String permission,
+      int grantState,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_PERMISSION_GRANT_STATE, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setPermissionGrantState(
+          packageName, permission, grantState, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_PERMISSION_GRANT_STATE.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_PERMISSION_GRANT_STATE, startNanos);
+    }
+  }
+
+  @Override
+  public int getPermissionGrantState(String packageName, String permission) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getPermissionGrantState(packageName, permission);
+    } catch (RuntimeException e) {
+      GET_PERMISSION_GRANT_STATE.recordError();
+      throw e;
+    } finally {
+      record(GET_PERMISSION_GRANT_STATE, startNanos);
+    }
+  }
+
+  @Override
+  public boolean canAdminGrantSensorsPermissions() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.canAdminGrantSensorsPermissions();
+    } catch (RuntimeException e) {
+      CAN_ADMIN_GRANT_SENSORS_PERMISSIONS.recordError();
+      throw e;
+    } finally {
+      record(CAN_ADMIN_GRANT_SENSORS_PERMISSIONS, startNanos);
+    }
+  }
+
+  @Override
+  public void setLocationEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_LOCATION_ENABLED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setLocationEnabled(enabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_LOCATION_ENABLED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_LOCATION_ENABLED, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isLocationEnabled() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isLocationEnabled();
+    } catch (RuntimeException e) {
+      IS_LOCATION_ENABLED.recordError();
+      throw e;
+    } finally {
+      record(IS_LOCATION_ENABLED, startNanos);
+    }
+  }
+
+  @Override
+  public void setDeviceOwnerLockScreenInfo(
+      CharSequence info, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_DEVICE_OWNER_LOCK_SCREEN_INFO, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setDeviceOwnerLockScreenInfo(info, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_DEVICE_OWNER_LOCK_SCREEN_INFO.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_DEVICE_OWNER_LOCK_SCREEN_INFO, startNanos);
+    }
+  }
+
+  @Override
+  public CharSequence getDeviceOwnerLockScreenInfo() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getDeviceOwnerLockScreenInfo();
+    } catch (RuntimeException e) {
+      GET_DEVICE_OWNER_LOCK_SCREEN_INFO.recordError();
+      throw e;
+    } finally {
+      record(GET_DEVICE_OWNER_LOCK_SCREEN_INFO, startNanos);
+    }
+  }
+
+  @Override
+  public void setKeyguardDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_KEYGUARD_DISABLED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setKeyguardDisabled(disabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_KEYGUARD_DISABLED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_KEYGUARD_DISABLED, startNanos);
+    }
+  }
+
+  @Override
+  public void setKeyguardDisabledFeatures(
+      int which, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_KEYGUARD_DISABLED_FEATURES, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setKeyguardDisabledFeatures(which, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_KEYGUARD_DISABLED_FEATURES.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_KEYGUARD_DISABLED_FEATURES, startNanos);
+    }
+  }
+
+  @Override
+  public int getKeyguardDisabledFeatures() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getKeyguardDisabledFeatures();
+    } catch (RuntimeException e) {
+      GET_KEYGUARD_DISABLED_FEATURES.recordError();
+      throw e;
+    } finally {
+      record(GET_KEYGUARD_DISABLED_FEATURES, startNanos);
+    }
+  }
+
+  @Override
+  public void setCameraDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(SET_CAMERA_DISABLED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setCameraDisabled(disabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_CAMERA_DISABLED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_CAMERA_DISABLED, startNanos);
+    }
+  }
+
+  @Override
+  public boolean getCameraDisabled() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getCameraDisabled();
+    } catch (RuntimeException e) {
+      GET_CAMERA_DISABLED.recordError();
+      throw e;
+    } finally {
+      record(GET_CAMERA_DISABLED, startNanos);
+    }
+  }
+
+  @Override
+  public boolean getCameraDisabledByAnyAdmin() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getCameraDisabledByAnyAdmin();
+    } catch (RuntimeException e) {
+      GET_CAMERA_DISABLED_BY_ANY_ADMIN.recordError();
+      throw e;
+    } finally {
+      record(GET_CAMERA_DISABLED_BY_ANY_ADMIN, startNanos);
+    }
+  }
+
+  @Override
+  public void setStatusBarDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_STATUS_BAR_DISABLED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setStatusBarDisabled(disabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_STATUS_BAR_DISABLED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_STATUS_BAR_DISABLED, startNanos);
+    }
+  }
+
+  @Override
+  public void setScreenCaptureDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_SCREEN_CAPTURE_DISABLED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setScreenCaptureDisabled(disabled, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_SCREEN_CAPTURE_DISABLED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_SCREEN_CAPTURE_DISABLED, startNanos);
+    }
+  }
+
+  @Override
+  public void setMaximumFailedPasswordsForWipe(
+      int max, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_MAXIMUM_FAILED_PASSWORDS_FOR_WIPE, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setMaximumFailedPasswordsForWipe(max, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_MAXIMUM_FAILED_PASSWORDS_FOR_WIPE.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_MAXIMUM_FAILED_PASSWORDS_FOR_WIPE, startNanos);
+    }
+  }
+
+  @Override
+  public int getMaximumFailedPasswordsForWipe() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getMaximumFailedPasswordsForWipe();
+    } catch (RuntimeException e) {
+      GET_MAXIMUM_FAILED_PASSWORDS_FOR_WIPE.recordError();
+      throw e;
+    } finally {
+      record(GET_MAXIMUM_FAILED_PASSWORDS_FOR_WIPE, startNanos);
+    }
+  }
+
+  @Override
+  public void installExistingPackage(
+      String packageName, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(INSTALL_EXISTING_PACKAGE, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.installExistingPackage(packageName, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      INSTALL_EXISTING_PACKAGE.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(INSTALL_EXISTING_PACKAGE, startNanos);
+    }
+  }
+
+  @Override
+  public void setUninstallBlocked(
+      @NonNull String packageName,
+      boolean uninstallBlocked,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_UNINSTALL_BLOCKED, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setUninstallBlocked(
+          packageName, uninstallBlocked, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_UNINSTALL_BLOCKED.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_UNINSTALL_BLOCKED, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isUninstallBlocked(@NonNull String packageName) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isUninstallBlocked(packageName);
+    } catch (RuntimeException e) {
+      IS_UNINSTALL_BLOCKED.recordError();
+      throw e;
+    } finally {
+      record(IS_UNINSTALL_BLOCKED, startNanos);
+    }
+  }
+
+  @Override
+  public void setSecureSetting(
+      String setting,
+      String value,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(SET_SECURE_SETTING, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setSecureSetting(setting, value, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_SECURE_SETTING.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_SECURE_SETTING, startNanos);
+    }
+  }
+
+  @Override
+  public void setGlobalSetting(
+      String setting,
+      String value,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(SET_GLOBAL_SETTING, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setGlobalSetting(setting, value, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_GLOBAL_SETTING.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_GLOBAL_SETTING, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isDeviceIdAttestationSupported() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isDeviceIdAttestationSupported();
+    } catch (RuntimeException e) {
+      IS_DEVICE_ID_ATTESTATION_SUPPORTED.recordError();
+      throw e;
+    } finally {
+      record(IS_DEVICE_ID_ATTESTATION_SUPPORTED, startNanos);
+    }
+  }
+
+  @Override
+  public boolean isUniqueDeviceAttestationSupported() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.isUniqueDeviceAttestationSupported();
+    } catch (RuntimeException e) {
+      IS_UNIQUE_DEVICE_ATTESTATION_SUPPORTED.recordError();
+      throw e;
+    } finally {
+      record(IS_UNIQUE_DEVICE_ATTESTATION_SUPPORTED, startNanos);
+    }
+  }
+
+  @Override
+  public boolean hasKeyPair(String alias) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.hasKeyPair(alias);
+    } catch (RuntimeException e) {
+      HAS_KEY_PAIR.recordError();
+      throw e;
+    } finally {
+      record(HAS_KEY_PAIR, startNanos);
+    }
+  }
+
+  @Override
+  public void generateKeyPair(
+      @NonNull String algorithm,
+      @NonNull KeyGenParameterSpec keySpec,
+      int idAttestationFlags,
+      @NonNull Consumer<AttestedKeyPair> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(GENERATE_KEY_PAIR, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.generateKeyPair(
+          algorithm, keySpec, idAttestationFlags, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      GENERATE_KEY_PAIR.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(GENERATE_KEY_PAIR, startNanos);
+    }
+  }
+
+  @Override
+  public void removeKeyPair(
+      @NonNull String alias,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks = CountingCallbacks.obtain(REMOVE_KEY_PAIR, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.removeKeyPair(alias, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      REMOVE_KEY_PAIR.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(REMOVE_KEY_PAIR, startNanos);
+    }
+  }
+
+  @Override
+  public void grantKeyPairToApp(
+      @NonNull String alias,
+      @NonNull String packageName,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(GRANT_KEY_PAIR_TO_APP, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.grantKeyPairToApp(alias, packageName, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      GRANT_KEY_PAIR_TO_APP.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(GRANT_KEY_PAIR_TO_APP, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public Map<Integer, Set<String>> getKeyPairGrants(@NonNull String alias) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getKeyPairGrants(alias);
+    } catch (RuntimeException e) {
+      GET_KEY_PAIR_GRANTS.recordError();
+      throw e;
+    } finally {
+      record(GET_KEY_PAIR_GRANTS, startNanos);
+    }
+  }
+
+  @Override
+  public void revokeKeyPairFromApp(
+      @NonNull String alias,
+      @NonNull String packageName,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(REVOKE_KEY_PAIR_FROM_APP, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.revokeKeyPairFromApp(
+          alias, packageName, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      REVOKE_KEY_PAIR_FROM_APP.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(REVOKE_KEY_PAIR_FROM_APP, startNanos);
+    }
+  }
+
+  @Override
+  public void setDelegatedScopes(
+      @NonNull String delegatePackage,
+      @NonNull List<String> scopes,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_DELEGATED_SCOPES, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setDelegatedScopes(
+          delegatePackage, scopes, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_DELEGATED_SCOPES.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_DELEGATED_SCOPES, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public List<String> getDelegatedScopes(@NonNull String delegatePackage) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getDelegatedScopes(delegatePackage);
+    } catch (RuntimeException e) {
+      GET_DELEGATED_SCOPES.recordError();
+      throw e;
+    } finally {
+      record(GET_DELEGATED_SCOPES, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public List<String> getDelegatePackages(@NonNull String delegationScope) {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getDelegatePackages(delegationScope);
+    } catch (RuntimeException e) {
+      GET_DELEGATE_PACKAGES.recordError();
+      throw e;
+    } finally {
+      record(GET_DELEGATE_PACKAGES, startNanos);
+    }
+  }
+
+  @Override
+  public void setMeteredDataDisabledPackages(
+      @NonNull List<String> packageNames,
+      @NonNull Consumer<List<String>> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(SET_METERED_DATA_DISABLED_PACKAGES, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.setMeteredDataDisabledPackages(
+          packageNames, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      SET_METERED_DATA_DISABLED_PACKAGES.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(SET_METERED_DATA_DISABLED_PACKAGES, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public List<String> getMeteredDataDisabledPackages() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getMeteredDataDisabledPackages();
+    } catch (RuntimeException e) {
+      GET_METERED_DATA_DISABLED_PACKAGES.recordError();
+      throw e;
+    } finally {
+      record(GET_METERED_DATA_DISABLED_PACKAGES, startNanos);
+    }
+  }
+
+  @Override
+  @NonNull
+  public List<UserHandle> getSecondaryUsers() {
+    long startNanos = System.nanoTime();
+    try {
+      return mDelegate.getSecondaryUsers();
+    } catch (RuntimeException e) {
+      GET_SECONDARY_USERS.recordError();
+      throw e;
+    } finally {
+      record(GET_SECONDARY_USERS, startNanos);
+    }
+  }
+
+  @Override
+  public void addPersistentPreferredActivity(
+      ComponentName activityComponentName,
+      IntentFilter filter,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(ADD_PERSISTENT_PREFERRED_ACTIVITY, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.addPersistentPreferredActivity(
+          activityComponentName, filter, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      ADD_PERSISTENT_PREFERRED_ACTIVITY.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(ADD_PERSISTENT_PREFERRED_ACTIVITY, startNanos);
+    }
+  }
+
+  @Override
+  public void clearPackagePersistentPreferredActivities(
+      @NonNull String packageName,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    CountingCallbacks callbacks =
+        CountingCallbacks.obtain(CLEAR_PACKAGE_PERSISTENT_PREFERRED_ACTIVITIES, onSuccess, onError);
+    long startNanos = System.nanoTime();
+    try {
+      mDelegate.clearPackagePersistentPreferredActivities(
+          packageName, callbacks.onSuccess(), callbacks.onError());
+    } catch (RuntimeException e) {
+      CLEAR_PACKAGE_PERSISTENT_PREFERRED_ACTIVITIES.recordError();
+      throw e;
+    } finally {
+      callbacks.release();
+      record(CLEAR_PACKAGE_PERSISTENT_PREFERRED_ACTIVITIES, startNanos);
+    }
+  }
+
+  /** The stats of the calls to one of the methods of the gateway. */
+  private static final class CallStats {
+    private final String mMethod;
+    // Only allocated on the first call, as most methods are never called by a given process
+    private volatile Counters mCounters;
+
+    private CallStats(String method) {
+      mMethod = method;
+      sAllCalls.add(this);
+    }
+
+    /**
+     * Records a call that started at {@code startNanos} (as returned by {@link System#nanoTime}),
+     * returning how long it took.
+     */
+    long record(long startNanos) {
+      long nanos = System.nanoTime() - startNanos;
+      Counters counters = counters();
+      counters.mCalls.increment();
+      counters.mTotalNanos.add(nanos);
+      counters.mLatency.record(nanos);
+      return nanos;
+    }
+
+    void recordError() {
+      counters().mErrors.increment();
+    }
+
+    /** Returns a copy of the stats, or {@code null} if the method was never called. */
+    Snapshot snapshot() {
+      Counters counters = mCounters;
+      if (counters == null) {
+        return null;
+      }
+      return new Snapshot(
+          mMethod,
+          counters.mCalls.get(),
+          counters.mErrors.get(),
+          counters.mTotalNanos.get(),
+          counters.mLatency.snapshot());
+    }
+
+    private Counters counters() {
+      Counters counters = mCounters;
+      if (counters == null) {
+        synchronized (this) {
+          counters = mCounters;
+          if (counters == null) {
+            counters = new Counters();
+            mCounters = counters;
+          }
+        }
+      }
+      return counters;
+    }
+
+    private static final class Counters {
+      private final StripedCounter mCalls = new StripedCounter();
+      private final StripedCounter mErrors = new StripedCounter();
+      private final StripedCounter mTotalNanos = new StripedCounter();
+      private final LatencyHistogram mLatency = new LatencyHistogram();
+    }
+
+    private static final class Snapshot {
+      private final String mMethod;
+      private final long mCalls;
+      private final long mErrors;
+      private final long mTotalNanos;
+      private final LatencyHistogram.Snapshot mLatency;
+
+      private Snapshot(
+          String method,
+          long calls,
+          long errors,
+          long totalNanos,
+          LatencyHistogram.Snapshot latency) {
+        mMethod = method;
+        mCalls = calls;
+        mErrors = errors;
+        mTotalNanos = totalNanos;
+        mLatency = latency;
+      }
+    }
+  }
+
+  /**
+   * The callbacks passed to the delegate in place of the caller's, so the errors are counted.
+   *
+   * <p>Each thread reuses the same instance for its calls, so they don't allocate: it's given back
+   * once the call returns if either callback ran by then, as gateways like {@link
+   * DevicePolicyManagerGatewayImpl} call them before returning. A delegate that keeps them to call
+   * later keeps the instance for good, and the thread allocates another one for its next call.
+   */
+  private static final class CountingCallbacks {
+    private static final ThreadLocal<CountingCallbacks> sReusable = new ThreadLocal<>();
+
+    private final Consumer<Object> mCountingOnSuccess = this::onSuccess;
+    private final Consumer<Exception> mCountingOnError = this::onError;
+    private CallStats mStats;
+    private Consumer<Object> mOnSuccess;
+    private Consumer<Exception> mOnError;
+    private volatile boolean mCalled;
+
+    /** Returns the callbacks of a call, which must be given back with {@link #release()}. */
+    @SuppressWarnings("unchecked")
+    static CountingCallbacks obtain(
+        CallStats stats, Consumer<?> onSuccess, Consumer<Exception> onError) {
+      CountingCallbacks callbacks = sReusable.get();
+      if (callbacks == null) {
+        callbacks = new CountingCallbacks();
+      } else {
+        // Taken, so the calls made by the callbacks themselves get their own
+        sReusable.set(null);
+      }
+      callbacks.mStats = stats;
+      callbacks.mOnSuccess = (Consumer<Object>) onSuccess;
+      callbacks.mOnError = onError;
+      callbacks.mCalled = false;
+      return callbacks;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Consumer<T> onSuccess() {
+      return (Consumer<T>) mCountingOnSuccess;
+    }
+
+    Consumer<Exception> onError() {
+      return mCountingOnError;
+    }
+
+    /** Called once the delegate returned, making the instance reusable if it's done with it. */
+    void release() {
+      if (!mCalled) {
+        return;
+      }
+      mStats = null;
+      mOnSuccess = null;
+      mOnError = null;
+      sReusable.set(this);
+    }
+
+    // The fields are read before setting mCalled, as release() may clear them right after
+
+    private void onSuccess(Object result) {
+      Consumer<Object> onSuccess = mOnSuccess;
+      mCalled = true;
+      onSuccess.accept(result);
+    }
+
+    private void onError(Exception e) {
+      CallStats stats = mStats;
+      Consumer<Exception> onError = mOnError;
+      mCalled = true;
+      stats.recordError();
+      onError.accept(e);
+    }
+  }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import android.annotation.TargetApi;
+import android.app.admin.ConnectEvent;
+import android.app.admin.DnsEvent;
+import android.app.admin.NetworkEvent;
+import android.app.admin.SecurityLog.SecurityEvent;
+import android.os.Build.VERSION_CODES;
+import androidx.annotation.Nullable;
+import com.afwsamples.testdpc.common.Util;
+import com.afwsamples.testdpc.policy.SecurityLogsFragment;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes network and security log events straight to a {@link PrintWriter}, one line per event (or
+ * one {@link ShellOutput} record per event, when the output is not text).
+ *
+ * <p>Events are filtered before being formatted, and every line is formatted in the same buffer, so
+ * even batches with tens of thousands of events don't allocate a string per event.
+ */
+@TargetApi(VERSION_CODES.O)
+final class LogEventWriter {
+
+  private static final int NO_TAG = -1;
+  private static final int TAG_DNS = 1;
+  private static final int TAG_CONNECT = 2;
+
+  /** Selects which events of a batch are written. */
+  static final class Filter {
+    private final int mLimit;
+    private final int mOffset;
+    @Nullable private final String mPackageName;
+    @Nullable private final String mTag;
+    private final long mSinceMillis;
+
+    /**
+     * Creates a filter; {@code null} arguments don't filter anything.
+     *
+     * @param limit maximum number of events to write.
+     * @param offset number of matching events to skip.
+     * @param packageName only write events from that package.
+     * @param tag only write events with that tag.
+     * @param sinceMillis only write events that happened at or after that time.
+     */
+    Filter(
+        @Nullable Integer limit,
+        @Nullable Integer offset,
+        @Nullable String packageName,
+        @Nullable String tag,
+        @Nullable Long sinceMillis) {
+      if ((limit != null && limit < 0) || (offset != null && offset < 0)) {
+        throw new IllegalArgumentException("limit and offset cannot be negative");
+      }
+      mLimit = limit == null ? Integer.MAX_VALUE : limit;
+      mOffset = offset == null ? 0 : offset;
+      mPackageName = packageName;
+      mTag = tag;
+      mSinceMillis = sinceMillis == null ? 0 : sinceMillis;
+    }
+  }
+
+  private final PrintWriter mWriter;
+  private final ShellOutput mOutput;
+  private final StringBuilder mLine = new StringBuilder(256);
+  private final Calendar mCalendar = Calendar.getInstance();
+  private char[] mChars = new char[256];
+
+  LogEventWriter(PrintWriter writer, ShellOutput output) {
+    mWriter = writer;
+    mOutput = output;
+  }
+
+  /**
+   * Writes the network events selected by {@code filter}.
+   *
+   * @return number of events written.
+   */
+  int writeNetworkEvents(List<NetworkEvent> events, Filter filter) {
+    int tag = getNetworkTag(filter.mTag);
+    if (filter.mSinceMillis > 0 && Util.SDK_INT < VERSION_CODES.P) {
+      throw new IllegalArgumentException("Filtering network events by time requires Android P");
+    }
+
+    if (!mOutput.isText()) {
+      mOutput.beginRecords(
+          "network-event",
+          "index",
+          "event",
+          "id",
+          "package",
+          "hostname",
+          "addresses",
+          "address",
+          "port");
+    }
+
+    int skipped = 0;
+    int written = 0;
+    for (int i = 0; i < events.size() && written < filter.mLimit; i++) {
+      NetworkEvent event = events.get(i);
+      if ((filter.mPackageName != null && !filter.mPackageName.equals(event.getPackageName()))
+          || (tag == TAG_DNS && !(event instanceof DnsEvent))
+          || (tag == TAG_CONNECT && !(event instanceof ConnectEvent))
+          || (filter.mSinceMillis > 0 && event.getTimestamp() < filter.mSinceMillis)) {
+        continue;
+      }
+      if (skipped < filter.mOffset) {
+        skipped++;
+        continue;
+      }
+      if (mOutput.isText()) {
+        appendNetworkEvent(i, event);
+        writeLine();
+      } else {
+        writeNetworkRecord(i, event);
+      }
+      written++;
+    }
+    return written;
+  }
+
+  /**
+   * Writes the security events selected by {@code filter}; the package filter matches events whose
+   * data contains the package name.
+   *
+   * @return number of events written.
+   */
+  @TargetApi(VERSION_CODES.N)
+  int writeSecurityEvents(List<SecurityEvent> events, Filter filter) {
+    int tag = getSecurityTag(filter.mTag);
+    long sinceNanos = TimeUnit.MILLISECONDS.toNanos(filter.mSinceMillis);
+    if (!mOutput.isText()) {
+      mOutput.beginRecords("security-event", "index", "id", "tag", "time", "data");
+    }
+
+    int skipped = 0;
+    int written = 0;
+    for (int i = 0; i < events.size() && written < filter.mLimit; i++) {
+      SecurityEvent event = events.get(i);
+      if ((tag != NO_TAG && event.getTag() != tag)
+          || event.getTimeNanos() < sinceNanos
+          || (filter.mPackageName != null && !dataContains(event.getData(), filter.mPackageName))) {
+        continue;
+      }
+      if (skipped < filter.mOffset) {
+        skipped++;
+        continue;
+      }
+      if (mOutput.isText()) {
+        appendSecurityEvent(event);
+        writeLine();
+      } else {
+        writeSecurityRecord(i, event);
+      }
+      written++;
+    }
+    return written;
+  }
+
+  private void appendNetworkEvent(int index, NetworkEvent event) {
+    mLine.append('\t').append(index).append(':');
+    if (event instanceof DnsEvent) {
+      DnsEvent dnsEvent = (DnsEvent) event;
+      appendEventIds("DnsEvent", event);
+      mLine.append(" hostname=").append(dnsEvent.getHostname()).append(" addresses=");
+      List<InetAddress> addresses = dnsEvent.getInetAddresses();
+      for (int i = 0; i < addresses.size(); i++) {
+        if (i > 0) {
+          mLine.append(',');
+        }
+        mLine.append(addresses.get(i));
+      }
+    } else if (event instanceof ConnectEvent) {
+      ConnectEvent connectEvent = (ConnectEvent) event;
+      appendEventIds("ConnectEvent", event);
+      mLine
+          .append(" address=")
+          .append(connectEvent.getInetAddress())
+          .append(" port=")
+          .append(connectEvent.getPort());
+    } else {
+      appendEventIds("Unknown", event);
+    }
+  }
+
+  private void writeNetworkRecord(int index, NetworkEvent event) {
+    mOutput.beginRecord();
+    if (event instanceof DnsEvent) {
+      DnsEvent dnsEvent = (DnsEvent) event;
+      writeRecordIds(index, "dns", event);
+      mOutput.value(dnsEvent.getHostname());
+      List<InetAddress> addresses = dnsEvent.getInetAddresses();
+      for (int i = 0; i < addresses.size(); i++) {
+        if (i > 0) {
+          mLine.append(' ');
+        }
+        mLine.append(addresses.get(i).getHostAddress());
+      }
+      mOutput.value(mLine).value(null).value(null);
+      mLine.setLength(0);
+    } else if (event instanceof ConnectEvent) {
+      ConnectEvent connectEvent = (ConnectEvent) event;
+      writeRecordIds(index, "connect", event);
+      mOutput.value(null).value(null);
+      mOutput.value(connectEvent.getInetAddress().getHostAddress()).value(connectEvent.getPort());
+    } else {
+      writeRecordIds(index, "unknown", event);
+      mOutput.value(null).value(null).value(null).value(null);
+    }
+    mOutput.endRecord();
+  }
+
+  private void writeRecordIds(int index, String type, NetworkEvent event) {
+    mOutput.value(index).value(type).value(event.getId()).value(event.getPackageName());
+  }
+
+  @TargetApi(VERSION_CODES.N)
+  private void writeSecurityRecord(int index, SecurityEvent event) {
+    mOutput.beginRecord();
+    mOutput.value(index);
+    if (Util.SDK_INT >= VERSION_CODES.P) {
+      mOutput.value(event.getId());
+    } else {
+      mOutput.value(null);
+    }
+    mOutput
+        .value(SecurityLogsFragment.getStringEventTagFromId(event.getTag()))
+        .value(TimeUnit.NANOSECONDS.toMillis(event.getTimeNanos()));
+    appendData(event.getData());
+    if (mLine.length() > 0) {
+      // Removes the separator appended after the last item
+      mLine.setLength(mLine.length() - 1);
+    }
+    mOutput.value(mLine).endRecord();
+    mLine.setLength(0);
+  }
+
+  private void appendEventIds(String type, NetworkEvent event) {
+    mLine
+        .append(type)
+        .append(" id=")
+        .append(event.getId())
+        .append(" pkg=")
+        .append(event.getPackageName());
+  }
+
+  @TargetApi(VERSION_CODES.N)
+  private void appendSecurityEvent(SecurityEvent event) {
+    if (Util.SDK_INT >= VERSION_CODES.P) {
+      mLine.append(event.getId()).append(": ");
+    }
+    mLine.append(SecurityLogsFragment.getStringEventTagFromId(event.getTag())).append(" (");
+    appendTime(TimeUnit.NANOSECONDS.toMillis(event.getTimeNanos()));
+    mLine.append("): ");
+    appendData(event.getData());
+  }
+
+  /** Same format as {@link SecurityLogsFragment#printData}, without converting numbers first. */
+  private void appendData(Object data) {
+    if (data instanceof Integer) {
+      mLine.append((int) (Integer) data).append(' ');
+    } else if (data instanceof Long) {
+      mLine.append((long) (Long) data).append(' ');
+    } else if (data instanceof Float) {
+      mLine.append((float) (Float) data).append(' ');
+    } else if (data instanceof String) {
+      mLine.append((String) data).append(' ');
+    } else if (data instanceof Object[]) {
+      for (Object item : (Object[]) data) {
+        appendData(item);
+      }
+    }
+  }
+
+  /** Appends the time using the {@code MM-dd HH:mm:ss.SSS} format. */
+  private void appendTime(long millis) {
+    mCalendar.setTimeInMillis(millis);
+    appendPadded(mCalendar.get(Calendar.MONTH) + 1, 2);
+    mLine.append('-');
+    appendPadded(mCalendar.get(Calendar.DAY_OF_MONTH), 2);
+    mLine.append(' ');
+    appendPadded(mCalendar.get(Calendar.HOUR_OF_DAY), 2);
+    mLine.append(':');
+    appendPadded(mCalendar.get(Calendar.MINUTE), 2);
+    mLine.append(':');
+    appendPadded(mCalendar.get(Calendar.SECOND), 2);
+    mLine.append('.');
+    appendPadded(mCalendar.get(Calendar.MILLISECOND), 3);
+  }
+
+  private void appendPadded(int value, int digits) {
+    for (int limit = 10; digits > 1; digits--, limit *= 10) {
+      if (value < limit) {
+        mLine.append('0');
+      }
+    }
+    mLine.append(value);
+  }
+
+  /** Writes the current line (without copying it to a string) and clears it. */
+  private void writeLine() {
+    int length = mLine.length();
+    if (mChars.length < length) {
+      mChars = new char[Math.max(length, mChars.length * 2)];
+    }
+    mLine.getChars(0, length, mChars, 0);
+    mWriter.write(mChars, 0, length);
+    mWriter.write('\n');
+    mLine.setLength(0);
+  }
+
+  private static boolean dataContains(Object data, String value) {
+    if (data instanceof Object[]) {
+      for (Object item : (Object[]) data) {
+        if (dataContains(item, value)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return value.equals(data);
+  }
+
+  private static int getNetworkTag(@Nullable String tag) {
+    if (tag == null) {
+      return NO_TAG;
+    }
+    if (tag.equalsIgnoreCase("dns")) {
+      return TAG_DNS;
+    }
+    if (tag.equalsIgnoreCase("connect")) {
+      return TAG_CONNECT;
+    }
+    throw new IllegalArgumentException(
+        "Invalid network event tag (must be dns or connect): " + tag);
+  }
+
+  private static int getSecurityTag(@Nullable String tag) {
+    if (tag == null) {
+      return NO_TAG;
+    }
+    int id = SecurityLogsFragment.getEventTagIdFromString(tag);
+    if (id != NO_TAG) {
+      return id;
+    }
+    try {
+      return Integer.parseInt(tag);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid security event tag: " + tag);
+    }
+  }
+}
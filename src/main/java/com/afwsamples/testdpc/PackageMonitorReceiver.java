@@ -7,7 +7,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.text.TextUtils;
 import androidx.core.app.NotificationCompat;
+import com.afwsamples.testdpc.common.AppIconLoader;
 import com.afwsamples.testdpc.common.NotificationUtil;
+import com.afwsamples.testdpc.common.PackageSnapshot;
 
 public class PackageMonitorReceiver extends BroadcastReceiver {
   private static final String TAG = "PackageMonitorReceiver";
@@ -17,13 +19,23 @@ public class PackageMonitorReceiver extends BroadcastReceiver {
   public void onReceive(Context context, Intent intent) {
     String action = intent.getAction();
     if (!Intent.ACTION_PACKAGE_ADDED.equals(action)
-        && !Intent.ACTION_PACKAGE_REMOVED.equals(action)) {
+        && !Intent.ACTION_PACKAGE_REMOVED.equals(action)
+        && !Intent.ACTION_PACKAGE_CHANGED.equals(action)) {
       return;
     }
     String packageName = getPackageNameFromIntent(intent);
     if (TextUtils.isEmpty(packageName)) {
       return;
     }
+    // Updated even when replacing, as the label or launcher activities may have changed
+    PackageSnapshot.get(context).onPackageChanged(packageName);
+    // Also drops the icons keyed by uid, as the label of a shared uid may have changed
+    AppIconLoader.get(context)
+        .evictPackage(packageName, intent.getIntExtra(Intent.EXTRA_UID, -1 /* defaultValue */));
+    if (Intent.ACTION_PACKAGE_CHANGED.equals(action)) {
+      // Only shown to tell apps were added or removed
+      return;
+    }
     boolean replacing = intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
     if (replacing) {
       return;
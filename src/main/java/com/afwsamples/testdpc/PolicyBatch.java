@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A set of policy changes applied through a {@link DevicePolicyManagerGateway} as a unit, for
+ * example all the policies of a kiosk or COSU profile.
+ *
+ * <p>Before changing a policy, each operation reads its current value, so that if an operation
+ * fails the ones already applied are rolled back (in reverse order) and the device is left as it
+ * was. The operation that failed is rolled back too, as it may have been partly applied (e.g. some
+ * of the restrictions of {@link Builder#setUserRestrictions(Map)}). Operations whose value can't be
+ * read through the gateway (like {@link Builder#setGlobalSetting(String, String)}) can't be rolled
+ * back, so they should be added last.
+ *
+ * <p>Operations are split into groups: the operations of a group are applied in order, and groups
+ * are applied one after the other or, if an {@link Executor} is {@link Builder#setExecutor set}, in
+ * parallel. Once an operation fails, the operations not started yet are skipped.
+ *
+ * <p>{@link #apply()} blocks until the gateway invokes the callbacks of every call, so it must not
+ * be called from the thread the gateway delivers them on (which isn't an issue for {@link
+ * DevicePolicyManagerGatewayImpl}, as it invokes them before returning).
+ */
+public final class PolicyBatch {
+
+  private static final String TAG = "PolicyBatch";
+
+  /** The group of the operations added before calling {@link Builder#inGroup(String)}. */
+  public static final String DEFAULT_GROUP = "default";
+
+  private static final long CALL_TIMEOUT_MS = 30_000;
+
+  /** The status of an operation after the batch was applied. */
+  public enum Status {
+    /** The operation was applied (and the batch succeeded, or the rollback was disabled). */
+    APPLIED,
+    /** The operation was applied, and then reverted because another operation failed. */
+    ROLLED_BACK,
+    /** The operation was applied but couldn't be reverted after another operation failed. */
+    NOT_ROLLED_BACK,
+    /**
+     * The operation (or reading the value it changes) failed. It's still rolled back, but keeps
+     * this status either way.
+     */
+    FAILED,
+    /** The operation was not attempted because another operation failed first. */
+    SKIPPED
+  }
+
+  private final Map<String, List<Operation>> mGroups;
+  @Nullable private final Executor mExecutor;
+  private final boolean mRollbackOnFailure;
+
+  private PolicyBatch(Builder builder) {
+    mGroups = builder.mGroups;
+    mExecutor = builder.mExecutor;
+    mRollbackOnFailure = builder.mRollbackOnFailure;
+  }
+
+  public static Builder builder(@NonNull DevicePolicyManagerGateway gateway) {
+    return new Builder(gateway);
+  }
+
+  /** Applies all the operations, rolling them back if any of them fails. */
+  @NonNull
+  public Result apply() {
+    long startNanos = System.nanoTime();
+    AtomicBoolean failed = new AtomicBoolean();
+    List<List<OperationResult>> groupResults = new ArrayList<>();
+    for (Map.Entry<String, List<Operation>> group : mGroups.entrySet()) {
+      List<OperationResult> results = new ArrayList<>();
+      for (Operation operation : group.getValue()) {
+        results.add(new OperationResult(group.getKey(), operation.mDescription));
+      }
+      groupResults.add(results);
+    }
+
+    List<List<Operation>> groups = new ArrayList<>(mGroups.values());
+    if (mExecutor == null || groups.size() < 2) {
+      for (int i = 0; i < groups.size(); i++) {
+        applyGroup(groups.get(i), groupResults.get(i), failed);
+      }
+    } else {
+      CountDownLatch done = new CountDownLatch(groups.size());
+      for (int i = 0; i < groups.size(); i++) {
+        List<Operation> operations = groups.get(i);
+        List<OperationResult> results = groupResults.get(i);
+        mExecutor.execute(
+            () -> {
+              try {
+                applyGroup(operations, results, failed);
+              } finally {
+                done.countDown();
+              }
+            });
+      }
+      awaitUninterruptibly(done);
+    }
+
+    if (failed.get() && mRollbackOnFailure) {
+      for (int i = groups.size() - 1; i >= 0; i--) {
+        rollBackGroup(groupResults.get(i));
+      }
+    }
+
+    List<OperationResult> allResults = new ArrayList<>();
+    for (List<OperationResult> results : groupResults) {
+      allResults.addAll(results);
+    }
+    Result result = new Result(allResults, !failed.get(), System.nanoTime() - startNanos);
+    Log.i(TAG, result.toString());
+    return result;
+  }
+
+  private void applyGroup(
+      List<Operation> operations, List<OperationResult> results, AtomicBoolean failed) {
+    for (int i = 0; i < operations.size(); i++) {
+      Operation operation = operations.get(i);
+      OperationResult result = results.get(i);
+      if (failed.get()) {
+        result.mStatus = Status.SKIPPED;
+        continue;
+      }
+      long startNanos = System.nanoTime();
+      try {
+        result.mUndo = operation.mCapture.capture();
+        call(operation.mApply);
+        result.mStatus = Status.APPLIED;
+      } catch (Exception e) {
+        Log.w(TAG, "Failed to apply " + operation.mDescription, e);
+        result.mStatus = Status.FAILED;
+        result.mError = e;
+        failed.set(true);
+      } finally {
+        result.mApplyNanos = System.nanoTime() - startNanos;
+      }
+    }
+  }
+
+  private void rollBackGroup(List<OperationResult> results) {
+    for (int i = results.size() - 1; i >= 0; i--) {
+      OperationResult result = results.get(i);
+      boolean failed = result.mStatus == Status.FAILED;
+      if (result.mStatus != Status.APPLIED && !failed) {
+        continue;
+      }
+      if (result.mUndo == null) {
+        if (!failed) {
+          result.mStatus = Status.NOT_ROLLED_BACK;
+        }
+        continue;
+      }
+      long startNanos = System.nanoTime();
+      try {
+        call(result.mUndo);
+        if (!failed) {
+          result.mStatus = Status.ROLLED_BACK;
+        }
+      } catch (Exception e) {
+        Log.e(TAG, "Failed to roll back " + result.mDescription, e);
+        if (failed) {
+          // The error of the operation is the one reported
+          result.mError.addSuppressed(e);
+        } else {
+          result.mStatus = Status.NOT_ROLLED_BACK;
+          result.mError = e;
+        }
+      } finally {
+        result.mRollbackNanos = System.nanoTime() - startNanos;
+      }
+    }
+  }
+
+  /** Makes a gateway call, waiting for its callbacks and throwing the error passed to them. */
+  private static void call(Call call) throws Exception {
+    CountDownLatch done = new CountDownLatch(1);
+    AtomicReference<Exception> error = new AtomicReference<>();
+    call.run(
+        (v) -> done.countDown(),
+        (e) -> {
+          error.set(e);
+          done.countDown();
+        });
+    try {
+      // Most gateways invoke the callbacks before returning, there's nothing to wait for then
+      if (done.getCount() > 0 && !done.await(CALL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        throw new TimeoutException("No result after " + CALL_TIMEOUT_MS + "ms");
+      }
+    } catch (InterruptedException e) {
+      // Fails the operation, but whoever interrupted the thread still needs to know
+      Thread.currentThread().interrupt();
+      throw e;
+    }
+    if (error.get() != null) {
+      throw error.get();
+    }
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** A gateway call taking the usual success and error callbacks. */
+  private interface Call {
+    void run(Consumer<Void> onSuccess, Consumer<Exception> onError);
+  }
+
+  /** Reads the value changed by an operation, returning the call that restores it. */
+  private interface Capture {
+    @Nullable
+    Call capture() throws Exception;
+  }
+
+  private static final class Operation {
+    private final String mDescription;
+    private final Capture mCapture;
+    private final Call mApply;
+
+    private Operation(String description, Capture capture, Call apply) {
+      mDescription = description;
+      mCapture = capture;
+      mApply = apply;
+    }
+  }
+
+  /** Builds a {@link PolicyBatch}; operations are applied in the order they're added. */
+  public static final class Builder {
+    private final DevicePolicyManagerGateway mGateway;
+    private final Map<String, List<Operation>> mGroups = new LinkedHashMap<>();
+    private String mGroup = DEFAULT_GROUP;
+    @Nullable private Executor mExecutor;
+    private boolean mRollbackOnFailure = true;
+
+    private Builder(DevicePolicyManagerGateway gateway) {
+      mGateway = gateway;
+    }
+
+    /**
+     * Adds the operations added after this call to the given group. Groups must be independent
+     * (i.e., not change the same policies), as they can be applied in parallel.
+     */
+    public Builder inGroup(@NonNull String group) {
+      mGroup = group;
+      return this;
+    }
+
+    /**
+     * Applies the groups in parallel on the given executor (by default they're applied in turn).
+     */
+    public Builder setExecutor(@Nullable Executor executor) {
+      mExecutor = executor;
+      return this;
+    }
+
+    /** Sets whether the applied operations are rolled back when one fails (the default). */
+    public Builder setRollbackOnFailure(boolean rollbackOnFailure) {
+      mRollbackOnFailure = rollbackOnFailure;
+      return this;
+    }
+
+    public Builder setUserRestriction(@NonNull String restriction, boolean enabled) {
+      return add(
+          String.format("setUserRestriction(%s, %b)", restriction, enabled),
+          () -> {
+            boolean previous = mGateway.getUserRestrictions().contains(restriction);
+            return (onSuccess, onError) ->
+                mGateway.setUserRestriction(restriction, previous, onSuccess, onError);
+          },
+          (onSuccess, onError) ->
+              mGateway.setUserRestriction(restriction, enabled, onSuccess, onError));
+    }
+
+    /** Same as {@link #setUserRestriction}, but for many restrictions with a single read. */
+    public Builder setUserRestrictions(@NonNull Map<String, Boolean> restrictions) {
+      return add(
+          "setUserRestrictions(" + restrictions + ")",
+          () -> {
+            Set<String> current = mGateway.getUserRestrictions();
+            Map<String, Boolean> previous = new LinkedHashMap<>();
+            for (String restriction : restrictions.keySet()) {
+              previous.put(restriction, current.contains(restriction));
+            }
+            return (onSuccess, onError) ->
+                mGateway.setUserRestrictions(
+                    previous, (changed) -> onSuccess.accept(null), onError);
+          },
+          (onSuccess, onError) ->
+              mGateway.setUserRestrictions(
+                  restrictions, (changed) -> onSuccess.accept(null), onError));
+    }
+
+    public Builder setLockTaskPackages(@NonNull String[] packages) {
+      return add(
+          "setLockTaskPackages(" + Arrays.toString(packages) + ")",
+          () -> {
+            String[] previous = mGateway.getLockTaskPackages();
+            return (onSuccess, onError) ->
+                mGateway.setLockTaskPackages(
+                    previous == null ? new String[0] : previous, onSuccess, onError);
+          },
+          (onSuccess, onError) -> mGateway.setLockTaskPackages(packages, onSuccess, onError));
+    }
+
+    public Builder setLockTaskFeatures(int flags) {
+      return add(
+          "setLockTaskFeatures(" + flags + ")",
+          () -> {
+            int previous = mGateway.getLockTaskFeatures();
+            return (onSuccess, onError) ->
+                mGateway.setLockTaskFeatures(previous, onSuccess, onError);
+          },
+          (onSuccess, onError) -> mGateway.setLockTaskFeatures(flags, onSuccess, onError));
+    }
+
+    public Builder setApplicationHidden(@NonNull String packageName, boolean hidden) {
+      return add(
+          String.format("setApplicationHidden(%s, %b)", packageName, hidden),
+          () -> {
+            boolean previous = mGateway.isApplicationHidden(packageName);
+            return (onSuccess, onError) ->
+                mGateway.setApplicationHidden(packageName, previous, onSuccess, onError);
+          },
+          (onSuccess, onError) ->
+              mGateway.setApplicationHidden(packageName, hidden, onSuccess, onError));
+    }
+
+    public Builder setUninstallBlocked(@NonNull String packageName, boolean blocked) {
+      return add(
+          String.format("setUninstallBlocked(%s, %b)", packageName, blocked),
+          () -> {
+            boolean previous = mGateway.isUninstallBlocked(packageName);
+            return (onSuccess, onError) ->
+                mGateway.setUninstallBlocked(packageName, previous, onSuccess, onError);
+          },
+          (onSuccess, onError) ->
+              mGateway.setUninstallBlocked(packageName, blocked, onSuccess, onError));
+    }
+
+    /**
+     * Adds an operation that can't be rolled back. Enabling an app that isn't a system app fails
+     * with an {@link IllegalArgumentException}, which is only logged so it doesn't fail the batch.
+     */
+    public Builder enableSystemApp(@NonNull String packageName) {
+      return add(
+          "enableSystemApp(" + packageName + ")",
+          () -> null,
+          (onSuccess, onError) ->
+              mGateway.enableSystemApp(
+                  packageName,
+                  onSuccess,
+                  (e) -> {
+                    if (e instanceof IllegalArgumentException) {
+                      Log.w(TAG, "Failed to enable " + packageName + ", not a system app", e);
+                      onSuccess.accept(null);
+                    } else {
+                      onError.accept(e);
+                    }
+                  }));
+    }
+
+    public Builder setCameraDisabled(boolean disabled) {
+      return add(
+          "setCameraDisabled(" + disabled + ")",
+          () -> {
+            boolean previous = mGateway.getCameraDisabled();
+            return (onSuccess, onError) -> mGateway.setCameraDisabled(previous, onSuccess, onError);
+          },
+          (onSuccess, onError) -> mGateway.setCameraDisabled(disabled, onSuccess, onError));
+    }
+
+    /** Adds an operation that can't be rolled back. */
+    public Builder setKeyguardDisabled(boolean disabled) {
+      return add(
+          "setKeyguardDisabled(" + disabled + ")",
+          () -> null,
+          (onSuccess, onError) -> mGateway.setKeyguardDisabled(disabled, onSuccess, onError));
+    }
+
+    /** Adds an operation that can't be rolled back. */
+    public Builder setStatusBarDisabled(boolean disabled) {
+      return add(
+          "setStatusBarDisabled(" + disabled + ")",
+          () -> null,
+          (onSuccess, onError) -> mGateway.setStatusBarDisabled(disabled, onSuccess, onError));
+    }
+
+    /** Adds an operation that can't be rolled back. */
+    public Builder setScreenCaptureDisabled(boolean disabled) {
+      return add(
+          "setScreenCaptureDisabled(" + disabled + ")",
+          () -> null,
+          (onSuccess, onError) -> mGateway.setScreenCaptureDisabled(disabled, onSuccess, onError));
+    }
+
+    /** Adds an operation that can't be rolled back. */
+    public Builder setGlobalSetting(@NonNull String setting, @Nullable String value) {
+      return add(
+          String.format("setGlobalSetting(%s, %s)", setting, value),
+          () -> null,
+          (onSuccess, onError) -> mGateway.setGlobalSetting(setting, value, onSuccess, onError));
+    }
+
+    public PolicyBatch build() {
+      return new PolicyBatch(this);
+    }
+
+    private Builder add(String description, Capture capture, Call apply) {
+      List<Operation> operations = mGroups.get(mGroup);
+      if (operations == null) {
+        operations = new ArrayList<>();
+        mGroups.put(mGroup, operations);
+      }
+      operations.add(new Operation(description, capture, apply));
+      return this;
+    }
+  }
+
+  /** The outcome of an operation of the batch. */
+  public static final class OperationResult {
+    private final String mGroup;
+    private final String mDescription;
+    // Written by the thread applying the group, read after the batch finished
+    private volatile Status mStatus = Status.SKIPPED;
+    @Nullable private volatile Call mUndo;
+    @Nullable private volatile Exception mError;
+    private volatile long mApplyNanos;
+    private volatile long mRollbackNanos;
+
+    private OperationResult(String group, String description) {
+      mGroup = group;
+      mDescription = description;
+    }
+
+    public String getGroup() {
+      return mGroup;
+    }
+
+    public String getDescription() {
+      return mDescription;
+    }
+
+    public Status getStatus() {
+      return mStatus;
+    }
+
+    /** Returns why the operation or its rollback failed, if they did. */
+    @Nullable
+    public Exception getError() {
+      return mError;
+    }
+
+    /** Returns how long it took to read the previous value and apply the operation. */
+    public long getApplyNanos() {
+      return mApplyNanos;
+    }
+
+    /** Returns how long it took to roll back the operation (0 if it wasn't). */
+    public long getRollbackNanos() {
+      return mRollbackNanos;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder =
+          new StringBuilder()
+              .append(mDescription)
+              .append(": ")
+              .append(mStatus)
+              .append(String.format(Locale.ROOT, " (%.3fms", mApplyNanos / 1_000_000.0));
+      if (mRollbackNanos > 0) {
+        builder.append(
+            String.format(Locale.ROOT, ", rollback %.3fms", mRollbackNanos / 1_000_000.0));
+      }
+      builder.append(')');
+      if (mError != null) {
+        builder.append(": ").append(mError);
+      }
+      return builder.toString();
+    }
+  }
+
+  /** The combined outcome of applying a batch. */
+  public static final class Result {
+    private final List<OperationResult> mOperations;
+    private final boolean mSuccessful;
+    private final long mElapsedNanos;
+
+    private Result(List<OperationResult> operations, boolean successful, long elapsedNanos) {
+      mOperations = Collections.unmodifiableList(operations);
+      mSuccessful = successful;
+      mElapsedNanos = elapsedNanos;
+    }
+
+    /** Returns whether every operation was applied. */
+    public boolean isSuccessful() {
+      return mSuccessful;
+    }
+
+    /** Returns the outcome of each operation, in the order they were added to their group. */
+    public List<OperationResult> getOperations() {
+      return mOperations;
+    }
+
+    public long getElapsedNanos() {
+      return mElapsedNanos;
+    }
+
+    /** Returns the error of the first operation that failed, if any. */
+    @Nullable
+    public Exception getError() {
+      for (OperationResult operation : mOperations) {
+        if (operation.mStatus == Status.FAILED) {
+          return operation.mError;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder =
+          new StringBuilder(
+              String.format(
+                  Locale.ROOT,
+                  "%d operations %s in %.3fms",
+                  mOperations.size(),
+                  mSuccessful ? "applied" : "failed",
+                  mElapsedNanos / 1_000_000.0));
+      for (OperationResult operation : mOperations) {
+        builder.append("\n  ").append(operation);
+      }
+      return builder.toString();
+    }
+  }
+}
@@ -22,9 +22,7 @@ import static com.afwsamples.testdpc.util.flags.Flags.ordinalParam;
 import static com.afwsamples.testdpc.util.flags.Flags.repeated;
 
 import android.annotation.TargetApi;
-import android.app.admin.ConnectEvent;
 import android.app.admin.DevicePolicyManager;
-import android.app.admin.DnsEvent;
 import android.app.admin.NetworkEvent;
 import android.app.admin.SecurityLog.SecurityEvent;
 import android.content.ComponentName;
@@ -35,8 +33,6 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Process;
 import android.os.UserHandle;
 import android.security.keystore.KeyGenParameterSpec;
@@ -44,47 +40,142 @@ import android.security.keystore.KeyProperties;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.afwsamples.testdpc.common.AppIconLoader;
+import com.afwsamples.testdpc.common.AppLabelSorter;
+import com.afwsamples.testdpc.common.PackageSnapshot;
 import com.afwsamples.testdpc.common.Util;
-import com.afwsamples.testdpc.policy.SecurityLogsFragment;
+import com.afwsamples.testdpc.networklogs.HeavyHitters;
+import com.afwsamples.testdpc.networklogs.NetworkLogIngestionService;
+import com.afwsamples.testdpc.networklogs.NetworkLogRetention;
+import com.afwsamples.testdpc.networklogs.NetworkLogRetentionManager;
+import com.afwsamples.testdpc.networklogs.NetworkLogStats;
+import com.afwsamples.testdpc.networklogs.NetworkLogStatsStore;
 import com.afwsamples.testdpc.policy.resetpassword.ResetPasswordWithTokenFragment;
+import com.afwsamples.testdpc.util.LatencyHistogram;
 import com.afwsamples.testdpc.util.flags.Flags;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.net.InetAddress;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Date;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Provides a CLI (command-line interface) to TestDPC through {@code dumpsys}.
  *
- * <p>Usage: {@code adb shell dumpsys activity --user USER_ID service com.afwsamples.testdpc CMD}.
+ * <p>Usage: {@code adb shell dumpsys activity --user USER_ID service com.afwsamples.testdpc
+ * [--format=text|json|csv|tsv] [--wait[=TIMEOUT_MS]] CMD}.
+ *
+ * <p>Commands that must run off the binder thread (like {@code
+ * generate-device-attestation-key-pair}) are executed by {@link ShellCommandExecutor}; by default
+ * their result is only logged, but {@code --wait} blocks until it's available and prints it.
  */
 final class ShellCommand {
   private static final String TAG = "TestDPCShellCommand";
 
+  private static final String FORMAT_OPTION = "--format=";
+  private static final String WAIT_OPTION = "--wait";
+  private static final String WAIT_TIMEOUT_OPTION = WAIT_OPTION + "=";
+  private static final long DEFAULT_WAIT_TIMEOUT_MS = 30_000;
+  private static final int DEFAULT_TOP_HOSTNAMES = 10;
+
   private final Context mContext;
   private final PrintWriter mWriter;
+  private final ShellOutput mOutput;
+  @Nullable private final String mOptionError;
   private final String[] mArgs;
   private final DevicePolicyManagerGateway mDevicePolicyManagerGateway;
+  // Wrapped by mDevicePolicyManagerGateway; its time is used to split the duration of each command
+  // in ShellCommandStats
+  private final InstrumentedDevicePolicyManagerGateway mInstrumentedGateway;
+
+  // How long asynchronous commands are waited for; 0 means their result is only logged
+  private final long mWaitTimeoutMs;
+
+  @Nullable // set by run()
+  private Flags mFlags;
 
-  @Nullable // dynamically created on post() method
-  private Handler mHandler;
+  // Used to report the status of each command executed by run-script / run-commands
+  private int mErrorCount;
+  private boolean mRunningScript;
+
+  /** Holds the table of commands, which is only built when the first command is executed. */
+  private static final class CommandTableHolder {
+    private static final Flags.CommandTable COMMAND_TABLE = buildCommandTable();
+  }
+
+  private static final ThreadLocal<ShellCommand> sCurrentCommand = new ThreadLocal<>();
 
   public ShellCommand(
       @NonNull Context context, @NonNull PrintWriter writer, @Nullable String[] args) {
+    this(context, writer, args, new DevicePolicyManagerGatewayImpl(context));
+  }
+
+  /** Creates a command making its calls through the given gateway (e.g. a fake in tests). */
+  @VisibleForTesting
+  ShellCommand(
+      @NonNull Context context,
+      @NonNull PrintWriter writer,
+      @Nullable String[] args,
+      @NonNull DevicePolicyManagerGateway gateway) {
     mContext = context;
-    mWriter = writer;
-    mArgs = args;
-    mDevicePolicyManagerGateway = new DevicePolicyManagerGatewayImpl(context);
+    ShellOutput.Format format = ShellOutput.Format.TEXT;
+    long waitTimeoutMs = 0;
+    String optionError = null;
+    List<String> commandArgs = new ArrayList<>();
+    if (args != null) {
+      // Global options only come before the command name, the command's own args are kept as is
+      boolean beforeCommand = true;
+      for (String arg : args) {
+        if (beforeCommand && arg.startsWith(FORMAT_OPTION)) {
+          try {
+            format = ShellOutput.Format.fromName(arg.substring(FORMAT_OPTION.length()));
+          } catch (IllegalArgumentException e) {
+            optionError = e.getMessage();
+          }
+        } else if (beforeCommand && arg.equals(WAIT_OPTION)) {
+          waitTimeoutMs = DEFAULT_WAIT_TIMEOUT_MS;
+        } else if (beforeCommand && arg.startsWith(WAIT_TIMEOUT_OPTION)) {
+          String timeout = arg.substring(WAIT_TIMEOUT_OPTION.length());
+          try {
+            waitTimeoutMs = Long.parseLong(timeout);
+          } catch (NumberFormatException e) {
+            waitTimeoutMs = -1;
+          }
+          if (waitTimeoutMs <= 0) {
+            optionError = "Invalid wait timeout: " + timeout + " (must be a positive number of ms)";
+          }
+        } else {
+          beforeCommand = false;
+          commandArgs.add(arg);
+        }
+      }
+    }
+    mOptionError = optionError;
+    mWaitTimeoutMs = waitTimeoutMs;
+    mOutput = ShellOutput.create(writer, format);
+    // Text is written as is, so there's no need to go through the output
+    mWriter = mOutput.isText() ? writer : new PrintWriter(mOutput);
+    mArgs = args == null ? null : commandArgs.toArray(new String[0]);
+    mInstrumentedGateway = new InstrumentedDevicePolicyManagerGateway(gateway);
+    mDevicePolicyManagerGateway = new CachingDevicePolicyManagerGateway(mInstrumentedGateway);
     Log.d(
         TAG,
         "constructor: pid="
@@ -108,8 +199,30 @@ final class ShellCommand {
   }
 
   public void run() {
-    Flags flags = new Flags(mWriter);
+    if (mOptionError != null) {
+      mWriter.println(mOptionError);
+      return;
+    }
+    Flags flags = new Flags(mWriter, CommandTableHolder.COMMAND_TABLE);
+    registerCustomParsers(flags);
+    flags.setCommandInterceptor(this::timeCommand);
+    mFlags = flags;
 
+    sCurrentCommand.set(this);
+    try {
+      flags.run(mArgs);
+    } catch (Exception e) {
+      // Must explicitly catch and show generic exceptions (like NumberFormatException parsing
+      // args), otherwise they'dbe logcat'ed on AndroidRuntime and not surfaced to caller
+      onError(e, "error executing %s", Arrays.toString(mArgs));
+    } finally {
+      sCurrentCommand.remove();
+      mOutput.close();
+    }
+  }
+
+  /** Registers the parsers for the custom types, which depend on the state of this invocation. */
+  private void registerCustomParsers(Flags flags) {
     flags.registerCustomParser(
         UserHandle.class,
         (string, validator) -> {
@@ -154,17 +267,78 @@ final class ShellCommand {
               String.format(
                   "Key-value type must contain '=' separator, found only: '%s'.", string));
         });
+  }
+
+  /** Gets the invocation running on the calling thread, whose methods the shared commands call. */
+  private static ShellCommand current() {
+    return sCurrentCommand.get();
+  }
 
-    flags.addCommand(command("dump", this::dumpState).setDescription("Dump internal state."));
-    flags.addCommand(
+  /**
+   * Builds the commands shared by all invocations; they don't capture any {@code ShellCommand} so
+   * they can be built only once per process, and dispatch to {@link #current()} instead.
+   */
+  private static Flags.CommandTable buildCommandTable() {
+    Flags.CommandTable.Builder commands =
+        Flags.CommandTable.builder()
+            .declareCustomType(UserHandle.class)
+            .declareCustomType(File.class)
+            .declareCustomType(KeyValue.class);
+
+    commands.addCommand(
+        command("dump", () -> current().dumpState()).setDescription("Dump internal state."));
+    commands.addCommand(
+        command(
+                "stats",
+                (reset) -> current().printStats(reset),
+                optional(namedParam(boolean.class, "reset")))
+            .setDescription(
+                "Print the count and latency percentiles of each command executed since TestDPC"
+                    + " started (or since the stats were reset), split into the time spent parsing"
+                    + " the command, calling DevicePolicyManager and producing the output. Pass"
+                    + " --reset to clear the stats after printing them."));
+    commands.addCommand(
+        command(
+                "set-gateway-cache-bypassed",
+                (bypassed) -> current().setGatewayCacheBypassed(bypassed),
+                ordinalParam(boolean.class, "bypassed"))
+            .setDescription(
+                "Make every DevicePolicyManager call go to the system instead of using the values"
+                    + " cached by TestDPC (for example, after changing policies with another"
+                    + " tool). The cache state and hit counts are shown by dump."));
+    commands.addCommand(
+        command(
+                "run-script",
+                (file, stopOnError) -> current().runScript(file, stopOnError),
+                ordinalParam(File.class, "file"),
+                optional(namedParam(boolean.class, "stop-on-error")))
+            .setDescription(
+                "Run the commands in the given file (one per line; empty lines and lines starting"
+                    + " with # are ignored) in a single invocation, printing the status and"
+                    + " duration of each one. The file must be located in the same directory used"
+                    + " by set-user-icon."));
+    commands.addCommand(
+        command(
+                "run-commands",
+                (commandLines, stopOnError) -> current().runCommands(commandLines, stopOnError),
+                repeated(ordinalParam(String.class, "commands")),
+                optional(namedParam(boolean.class, "stop-on-error")))
+            .setDescription(
+                "Run the given commands (each one quoted as a single argument, for example"
+                    + " \"'lock-now' 'reboot'\") in a single invocation, printing the status and"
+                    + " duration of each one."));
+    commands.addCommand(
         command(
                 "create-user",
-                this::createUser,
+                (name, flags) -> current().createUser(name, flags),
                 ordinalParam(String.class, "name"),
                 optional(namedParam(int.class, "flags")))
             .setDescription("Create a user with the optional flags and name."));
-    flags.addCommand(
-        command("set-user-icon", this::setUserIcon, ordinalParam(File.class, "file"))
+    commands.addCommand(
+        command(
+                "set-user-icon",
+                (file) -> current().setUserIcon(file),
+                ordinalParam(File.class, "file"))
             .setDescription(
                 "Set the user icon using the bitmap located at the given file, which must be"
                     + " located in the user's `UserIcons` directory. For user 0, you can use `adb"
@@ -174,503 +348,634 @@ final class ShellCommand {
                     + " provider (for example, `adb shell content write --user 10 --uri"
                     + " content://com.afwsamples.testdpc.usericoncontentprovider/icon.png <"
                     + " /tmp/icon.png`)."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-start-user-session-message",
-                this::setStartUserSessionMessage,
+                (message) -> current().setStartUserSessionMessage(message),
                 ordinalParam(String.class, "message"))
             .setDescription("Set the message shown when a user is switched to"));
-    flags.addCommand(
-        command("get-start-user-session-message", this::getStartUserSessionMessage)
+    commands.addCommand(
+        command("get-start-user-session-message", () -> current().getStartUserSessionMessage())
             .setDescription("Get the message shown when a user is switched to"));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-end-user-session-message",
-                this::setEndUserSessionMessage,
+                (message) -> current().setEndUserSessionMessage(message),
                 ordinalParam(String.class, "message"))
             .setDescription("Set the message shown when a user is switched of"));
-    flags.addCommand(
-        command("get-end-user-session-message", this::getEndUserSessionMessage)
+    commands.addCommand(
+        command("get-end-user-session-message", () -> current().getEndUserSessionMessage())
             .setDescription("Get the message shown when a user is switched of"));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "remove-user",
-                this::removeUser,
+                (userSerialNumber) -> current().removeUser(userSerialNumber),
                 ordinalParam(UserHandle.class, "user-serial-number"))
             .setDescription("Remove the given user."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "switch-user",
-                this::switchUser,
+                (userSerialNumber) -> current().switchUser(userSerialNumber),
                 ordinalParam(UserHandle.class, "user-serial-number"))
             .setDescription("Switch the given user to foreground."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "start-user-in-background",
-                this::startUserInBackground,
+                (userSerialNumber) -> current().startUserInBackground(userSerialNumber),
                 ordinalParam(UserHandle.class, "user-serial-number"))
             .setDescription("Switch the given user to foreground."));
-    flags.addCommand(
-            command(
-                    "is-logout-enabled",
-                    this::isLogoutEnabled)
-                .setDescription("Whether logout is enabled."));
-    flags.addCommand(
-            command(
-                    "set-logout-enabled",
-                    this::setLogoutEnabled,
-                    ordinalParam(boolean.class, "enabled"))
-                .setDescription("Set whether logout is enabled."));
-    flags.addCommand(
-            command(
-                    "logout-user",
-                    this::logoutUser)
-                .setDescription("Logout the current user."));
-    flags.addCommand(
-        command("is-user-affiliated", this::isUserAffiliated)
+    commands.addCommand(
+        command("is-logout-enabled", () -> current().isLogoutEnabled())
+            .setDescription("Whether logout is enabled."));
+    commands.addCommand(
+        command(
+                "set-logout-enabled",
+                (enabled) -> current().setLogoutEnabled(enabled),
+                ordinalParam(boolean.class, "enabled"))
+            .setDescription("Set whether logout is enabled."));
+    commands.addCommand(
+        command("logout-user", () -> current().logoutUser())
+            .setDescription("Logout the current user."));
+    commands.addCommand(
+        command("is-user-affiliated", () -> current().isUserAffiliated())
             .setDescription("Check if the user is affiliated with the device."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-affiliation-ids",
-                this::setAffiliationIds,
+                (ids) -> current().setAffiliationIds(ids),
                 repeated(ordinalParam(String.class, "ids")))
             .setDescription("Set the user affiliation ids (or clear them if no ids are passed)."));
-    flags.addCommand(
-        command("get-affiliation-ids", this::getAffiliationIds)
+    commands.addCommand(
+        command("get-affiliation-ids", () -> current().getAffiliationIds())
             .setDescription("Get the user affiliation ids."));
-    flags.addCommand(
-        command("list-user-restrictions", this::listUserRestrictions)
+    commands.addCommand(
+        command("list-user-restrictions", () -> current().listUserRestrictions())
             .setDescription("List the user restrictions."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-user-restriction",
-                this::setUserRestriction,
+                (restriction, enabled) -> current().setUserRestriction(restriction, enabled),
                 ordinalParam(String.class, "restriction"),
                 ordinalParam(boolean.class, "enabled"))
             .setDescription("Set the given user restriction."));
-    flags.addCommand(
+    commands.addCommand(
+        command(
+                "set-user-restrictions",
+                (restrictions) -> current().setUserRestrictions(restrictions),
+                repeated(ordinalParam(KeyValue.class, "restrictions")))
+            .setDescription(
+                "Set the given user restrictions (provided as restriction=true|false strings),"
+                    + " only changing the ones that are not already set to the given value."));
+    commands.addCommand(
         command(
                 "set-user-restriction-on-parent",
-                this::setUserRestrictionOnParent,
+                (restriction, enabled) ->
+                    current().setUserRestrictionOnParent(restriction, enabled),
                 ordinalParam(String.class, "restriction"),
                 ordinalParam(boolean.class, "enabled"))
             .setDescription("Set the given user restriction on the parent user."));
-    flags.addCommand(
-        command("lock-now", this::lockNow, optional(namedParam(int.class, "flags")))
+    commands.addCommand(
+        command(
+                "lock-now",
+                (flags) -> current().lockNow(flags),
+                optional(namedParam(int.class, "flags")))
             .setDescription("Lock the device (now! :-)."));
-    flags.addCommand(command("reboot", this::reboot).setDescription("Reboot the device."));
-    flags.addCommand(
-        command("wipe-data", this::wipeData, optional(namedParam(int.class, "flags")))
+    commands.addCommand(
+        command("reboot", () -> current().reboot()).setDescription("Reboot the device."));
+    commands.addCommand(
+        command(
+                "wipe-data",
+                (flags) -> current().wipeData(flags),
+                optional(namedParam(int.class, "flags")))
             .setDescription("Factory reset the device."));
-    flags.addCommand(
-                command("request-bugreport", this::requestBugreport)
-                        .setDescription("Request a bug report."));
-    flags.addCommand(
-            command("get-last-bugreport-request-time", this::getLastBugReportRequestTime)
-                    .setDescription("Prints the last time the device owner request a bugreport."));
-    flags.addCommand(
+    commands.addCommand(
+        command("request-bugreport", () -> current().requestBugreport())
+            .setDescription("Request a bug report."));
+    commands.addCommand(
+        command("get-last-bugreport-request-time", () -> current().getLastBugReportRequestTime())
+            .setDescription("Prints the last time the device owner request a bugreport."));
+    commands.addCommand(
         command(
                 "set-network-logging-enabled",
-                this::setNetworkLoggingEnabled,
+                (enabled) -> current().setNetworkLoggingEnabled(enabled),
                 ordinalParam(boolean.class, "enabled"))
             .setDescription("Enable / disable network logging."));
-    flags.addCommand(
-            command("is-network-logging-enabled", this::isNetworkLoggingEnabled)
-                .setDescription("Checks whether network logging is enabled."));
-    flags.addCommand(
-        command("get-last-network-log-retrieval-time", this::getLastNetworkLogRetrievalTime)
+    commands.addCommand(
+        command("is-network-logging-enabled", () -> current().isNetworkLoggingEnabled())
+            .setDescription("Checks whether network logging is enabled."));
+    commands.addCommand(
+        command(
+                "get-last-network-log-retrieval-time",
+                () -> current().getLastNetworkLogRetrievalTime())
             .setDescription("Prints the last time the device owner retrieved the network log."));
-    flags.addCommand(
-            command("retrieve-network-logs", this::retrieveNetworkLogs,
-                    ordinalParam(Long.class, "batch-token"))
-                    .setDescription("Retrieves the network logs."));
-    flags.addCommand(
-            command(
-                    "set-security-logging-enabled",
-                    this::setSecurityLoggingEnabled,
-                    ordinalParam(boolean.class, "enabled"))
-                .setDescription("Enable / disable security logging."));
-    flags.addCommand(
-            command("is-security-logging-enabled", this::isSecurityLoggingEnabled)
-                .setDescription("Checks whether security logging is enabled."));
-    flags.addCommand(
-        command("get-last-security-log-retrieval-time", this::getLastSecurityLogRetrievalTime)
+    commands.addCommand(
+        command(
+                "retrieve-network-logs",
+                (batchToken, limit, offset, pkg, tag, since) ->
+                    current()
+                        .retrieveNetworkLogs(
+                            batchToken, new LogEventWriter.Filter(limit, offset, pkg, tag, since)),
+                ordinalParam(Long.class, "batch-token"),
+                optional(namedParam(Integer.class, "limit")),
+                optional(namedParam(Integer.class, "offset")),
+                optional(namedParam(String.class, "package")),
+                optional(namedParam(String.class, "tag")),
+                optional(namedParam(Long.class, "since")))
+            .setDescription(
+                "Retrieves the network logs. --limit and --offset page through the matching events,"
+                    + " --package only prints events from the given package, --tag only prints"
+                    + " events with the given tag (dns or connect) and --since only prints events"
+                    + " that happened at or after the given time (in milliseconds since epoch)."));
+    commands.addCommand(
+        command(
+                "network-log-stats",
+                (top, pkg) -> current().printNetworkLogStats(top, pkg),
+                optional(namedParam(Integer.class, "top")),
+                optional(namedParam(String.class, "package")))
+            .setDescription(
+                "Prints the stats aggregated from all the network logs batches retrieved: DNS"
+                    + " lookups and connections of each package (in total and in the last 24"
+                    + " hours), estimated distinct hostnames and addresses, and the --top (default "
+                    + DEFAULT_TOP_HOSTNAMES
+                    + ") most looked up hostnames. --package only prints the given package."));
+    commands.addCommand(
+        command("network-log-usage", () -> current().printNetworkLogUsage())
+            .setDescription(
+                "Prints the storage used by the network logs batches retrieved, the compression"
+                    + " ratio of the compressed ones and the retention limits."));
+    commands.addCommand(
+        command(
+                "set-network-log-retention",
+                (maxMb, maxDays) -> current().setNetworkLogRetention(maxMb, maxDays),
+                optional(namedParam(Long.class, "max-mb")),
+                optional(namedParam(Long.class, "max-days")))
+            .setDescription(
+                "Sets the storage (--max-mb) and age (--max-days) the network logs batches"
+                    + " retrieved are limited to, keeping the current limit for any option not"
+                    + " given, then compresses and deletes batches to apply them. Oldest batches"
+                    + " are deleted first."));
+    commands.addCommand(
+        command(
+                "set-security-logging-enabled",
+                (enabled) -> current().setSecurityLoggingEnabled(enabled),
+                ordinalParam(boolean.class, "enabled"))
+            .setDescription("Enable / disable security logging."));
+    commands.addCommand(
+        command("is-security-logging-enabled", () -> current().isSecurityLoggingEnabled())
+            .setDescription("Checks whether security logging is enabled."));
+    commands.addCommand(
+        command(
+                "get-last-security-log-retrieval-time",
+                () -> current().getLastSecurityLogRetrievalTime())
             .setDescription("Prints the last time the device owner retrieved the security log."));
-    flags.addCommand(
-            command("retrieve-security-logs", this::retrieveSecurityLogs)
-                    .setDescription("Retrieves the security logs."));
-    flags.addCommand(
-            command("retrieve-pre-reboot-security-logs", this::retrievePreRebootSecurityLogs)
-                    .setDescription("Retrieves the pre-reboot security logs."));
-    flags.addCommand(
-        command("clear-organization-name", this::clearOrganizationName)
+    commands.addCommand(
+        command(
+                "retrieve-security-logs",
+                (limit, offset, pkg, tag, since) ->
+                    current()
+                        .retrieveSecurityLogs(
+                            new LogEventWriter.Filter(limit, offset, pkg, tag, since)),
+                optional(namedParam(Integer.class, "limit")),
+                optional(namedParam(Integer.class, "offset")),
+                optional(namedParam(String.class, "package")),
+                optional(namedParam(String.class, "tag")),
+                optional(namedParam(Long.class, "since")))
+            .setDescription(
+                "Retrieves the security logs. --limit and --offset page through the matching"
+                    + " events, --package only prints events whose data contains the given package,"
+                    + " --tag only prints events with the given tag (like APP_PROCESS_START) and"
+                    + " --since only prints events that happened at or after the given time (in"
+                    + " milliseconds since epoch)."));
+    commands.addCommand(
+        command(
+                "retrieve-pre-reboot-security-logs",
+                (limit, offset, pkg, tag, since) ->
+                    current()
+                        .retrievePreRebootSecurityLogs(
+                            new LogEventWriter.Filter(limit, offset, pkg, tag, since)),
+                optional(namedParam(Integer.class, "limit")),
+                optional(namedParam(Integer.class, "offset")),
+                optional(namedParam(String.class, "package")),
+                optional(namedParam(String.class, "tag")),
+                optional(namedParam(Long.class, "since")))
+            .setDescription(
+                "Retrieves the pre-reboot security logs, accepting the same filters as"
+                    + " retrieve-security-logs."));
+    commands.addCommand(
+        command("clear-organization-name", () -> current().clearOrganizationName())
             .setDescription("Clear the organisation name."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-organization-name",
-                this::setOrganizationName,
+                (name) -> current().setOrganizationName(name),
                 ordinalParam(String.class, "name"))
             .setDescription("Set the organisation name."));
-    flags.addCommand(
-        command("get-organization-name", this::getOrganizationName)
+    commands.addCommand(
+        command("get-organization-name", () -> current().getOrganizationName())
             .setDescription("Get the organization name."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-user-control-disabled-packages",
-                this::setUserControlDisabledPackages,
+                (packages) -> current().setUserControlDisabledPackages(packages),
                 repeated(ordinalParam(String.class, "packages")))
             .setDescription(
                 "Set the packages that the user cannot force stop or clear data for. Provide an"
                     + " empty list to reset."));
-    flags.addCommand(
-        command("get-user-control-disabled-packages", this::getUserControlDisabledPackages)
+    commands.addCommand(
+        command(
+                "get-user-control-disabled-packages",
+                () -> current().getUserControlDisabledPackages())
             .setDescription("Get the packages that the user cannot force stop or clear data for."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-cross-profile-packages",
-                this::setCrossProfilePackages,
+                (packages) -> current().setCrossProfilePackages(packages),
                 repeated(ordinalParam(String.class, "packages")))
             .setDescription(
                 "Set the allow-listed packages that are allowed to request user consent for"
                     + " cross-profile communication. Provide an empty list to reset."));
-    flags.addCommand(
-        command("get-cross-profile-packages", this::getCrossProfilePackages)
+    commands.addCommand(
+        command("get-cross-profile-packages", () -> current().getCrossProfilePackages())
             .setDescription(
                 "Get the allow-listed packages that are allowed to request user consent"
                     + " for cross-profile communication."));
-    flags.addCommand(
-        command("remove-active-admin", this::removeActiveAdmin)
+    commands.addCommand(
+        command("remove-active-admin", () -> current().removeActiveAdmin())
             .setDescription("Remove TestDPC as an active admin."));
-    flags.addCommand(
-        command("clear-device-owner", this::clearDeviceOwner)
+    commands.addCommand(
+        command("clear-device-owner", () -> current().clearDeviceOwner())
             .setDescription("Clear TestDPC as device owner."));
-    flags.addCommand(
-        command("clear-profile-owner", this::clearProfileOwner)
+    commands.addCommand(
+        command("clear-profile-owner", () -> current().clearProfileOwner())
             .setDescription("Clear TestDPC as profile owner."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-password-quality",
-                this::setPasswordQuality,
+                (quality) -> current().setPasswordQuality(quality),
                 ordinalParam(int.class, "quality"))
             .setDescription("Set the password quality."));
-    flags.addCommand(
-        command("get-password-quality", this::getPasswordQuality)
+    commands.addCommand(
+        command("get-password-quality", () -> current().getPasswordQuality())
             .setDescription("Get the password quality."));
-    flags.addCommand(
-        command("is-active-password-sufficient", this::isActivePasswordSufficient)
+    commands.addCommand(
+        command("is-active-password-sufficient", () -> current().isActivePasswordSufficient())
             .setDescription("Checks if user's password is sufficient."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "is-active-password-sufficient-for-device-requirement",
-                this::isActivePasswordSufficientForDeviceRequirement)
+                () -> current().isActivePasswordSufficientForDeviceRequirement())
             .setDescription("Checks if user's password is sufficient for device requirement."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-required-password-complexity",
-                this::setRequiredPasswordComplexity,
+                (complexity) -> current().setRequiredPasswordComplexity(complexity),
                 ordinalParam(int.class, "complexity"))
             .setDescription("Set the required password complexity."));
-    flags.addCommand(
-        command("get-required-password-complexity", this::getRequiredPasswordComplexity)
+    commands.addCommand(
+        command("get-required-password-complexity", () -> current().getRequiredPasswordComplexity())
             .setDescription("Get required the password complexity."));
-    flags.addCommand(
-        command("transfer-ownership", this::transferOwnership, ordinalParam(String.class, "admin"))
+    commands.addCommand(
+        command(
+                "transfer-ownership",
+                (admin) -> current().transferOwnership(admin),
+                ordinalParam(String.class, "admin"))
             .setDescription("Transfer ownership to the given admin."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-suspended-packages",
-                this::setSuspendedPackages,
+                (suspended, packageNames) ->
+                    current().setSuspendedPackages(suspended, packageNames),
                 ordinalParam(boolean.class, "suspended"),
                 repeated(ordinalParam(String.class, "packageNames")))
             .setDescription("Suspend / unsuspend the given packages."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "is-suspended-packages",
-                this::isSuspendedPackage,
+                (packageNames) -> current().isSuspendedPackage(packageNames),
                 repeated(ordinalParam(String.class, "packageNames")))
             .setDescription("Check if the given packages are suspended."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-personal-apps-suspended",
-                this::setPersonalAppsSuspended,
+                (suspended) -> current().setPersonalAppsSuspended(suspended),
                 ordinalParam(boolean.class, "suspended"))
             .setDescription("Suspend / unsuspend personal apps."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "enable-system-app",
-                this::enableSystemApp,
+                (packageName) -> current().enableSystemApp(packageName),
                 ordinalParam(String.class, "packageName"))
             .setDescription("Enable the given system app."));
-    flags.addCommand(
-        command("list-disabled-system-apps", this::listDisabledSystemApps)
+    commands.addCommand(
+        command("list-disabled-system-apps", () -> current().listDisabledSystemApps())
             .setDescription("List the disabled system apps."));
-    flags.addCommand(
-        command("get-personal-apps-suspended-reasons", this::getPersonalAppsSuspendedReasons)
+    commands.addCommand(
+        command(
+                "get-personal-apps-suspended-reasons",
+                () -> current().getPersonalAppsSuspendedReasons())
             .setDescription("Get the reasons for suspending personal apps."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-hidden-package",
-                this::setHiddenPackage,
+                (pkg, hidden) -> current().setHiddenPackage(pkg, hidden),
                 ordinalParam(String.class, "package"),
                 ordinalParam(boolean.class, "hidden"))
             .setDescription("Hide / unhide the given package."));
-    flags.addCommand(
-        command("is-hidden-package", this::isHiddenPackage, ordinalParam(String.class, "package"))
+    commands.addCommand(
+        command(
+                "is-hidden-package",
+                (pkg) -> current().isHiddenPackage(pkg),
+                ordinalParam(String.class, "package"))
             .setDescription("Check if the given package is hidden."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-lock-task-packages",
-                this::setLockTaskPackages,
+                (packages) -> current().setLockTaskPackages(packages),
                 repeated(ordinalParam(String.class, "packages")))
             .setDescription("Set the packages allowed to have tasks locked."));
-    flags.addCommand(
-        command("get-lock-task-packages", this::getLockTaskPackages)
+    commands.addCommand(
+        command("get-lock-task-packages", () -> current().getLockTaskPackages())
             .setDescription("Get the packages allowed to have tasks locked."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "is-lock-task-permitted",
-                this::isLockTaskPermitted,
+                (packages) -> current().isLockTaskPermitted(packages),
                 repeated(ordinalParam(String.class, "packages")))
             .setDescription("Check if the given packages are allowed to have tasks locked."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-lock-task-features",
-                this::setLockTaskFeatures,
+                (flags) -> current().setLockTaskFeatures(flags),
                 ordinalParam(int.class, "flags"))
             .setDescription("Set the lock task features."));
-    flags.addCommand(
-        command("get-lock-task-features", this::getLockTaskFeatures)
+    commands.addCommand(
+        command("get-lock-task-features", () -> current().getLockTaskFeatures())
             .setDescription("Get the lock task features."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-app-restrictions",
-                this::setAppRestrictions,
+                (pkg, restrictions) -> current().setAppRestrictions(pkg, restrictions),
                 ordinalParam(String.class, "package"),
                 repeated(ordinalParam(KeyValue.class, "restrictions")))
             .setDescription(
                 "Set the application restrictions (provided as key=value strings) for the given app"
                     + " (or clear if no values provided)."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "get-app-restrictions",
-                this::getAppRestrictions,
+                (packages) -> current().getAppRestrictions(packages),
                 repeated(ordinalParam(String.class, "packages")))
             .setDescription(
                 "Get the application restrictions for the given apps (or for TestDPC when empty,"
                     + " using UserManager)."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-permission-grant-state",
-                this::setPermissionGrantState,
+                (pkg, permission, state) ->
+                    current().setPermissionGrantState(pkg, permission, state),
                 ordinalParam(String.class, "package"),
                 ordinalParam(String.class, "permission"),
                 ordinalParam(int.class, "state"))
             .setDescription("Set the grant state for the given package and permission."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "get-permission-grant-state",
-                this::getPermissionGrantState,
+                (pkg, permission) -> current().getPermissionGrantState(pkg, permission),
                 ordinalParam(String.class, "package"),
                 ordinalParam(String.class, "permission"))
             .setDescription("Get the grant state for the given package and persmission."));
-    flags.addCommand(
-        command("can-admin-grant-sensors-permissions", this::canAdminGrantSensorsPermissions)
+    commands.addCommand(
+        command(
+                "can-admin-grant-sensors-permissions",
+                () -> current().canAdminGrantSensorsPermissions())
             .setDescription("Checks whether the admin can grant sensor permissions."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-location-enabled",
-                this::setLocationEnabled,
+                (enabled) -> current().setLocationEnabled(enabled),
                 ordinalParam(boolean.class, "enabled"))
             .setDescription("Set location enabled for the user."));
-    flags.addCommand(
-        command("is-location-enabled", this::isLocationEnabled)
+    commands.addCommand(
+        command("is-location-enabled", () -> current().isLocationEnabled())
             .setDescription("Get whether location is enabled for the user."));
-    flags.addCommand(
-        command("clear-device-owner-lockscreen-info", this::clearDeviceOwnerLockScreenInfo)
+    commands.addCommand(
+        command(
+                "clear-device-owner-lockscreen-info",
+                () -> current().clearDeviceOwnerLockScreenInfo())
             .setDescription("Clear the device owner lock screen info."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-device-owner-lockscreen-info",
-                this::setDeviceOwnerLockScreenInfo,
+                (info) -> current().setDeviceOwnerLockScreenInfo(info),
                 ordinalParam(String.class, "info"))
             .setDescription("Set the device owner lock screen info."));
-    flags.addCommand(
-        command("get-device-owner-lockscreen-info", this::getDeviceOwnerLockScreenInfo)
+    commands.addCommand(
+        command("get-device-owner-lockscreen-info", () -> current().getDeviceOwnerLockScreenInfo())
             .setDescription("Get the device owner lock screen info."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-keyguard-disabled",
-                this::setKeyguardDisabled,
+                (disabled) -> current().setKeyguardDisabled(disabled),
                 ordinalParam(boolean.class, "disabled"))
             .setDescription("Set keyguard disabled."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-keyguard-disabled-features",
-                this::setKeyguardDisabledFeatures,
+                (flags) -> current().setKeyguardDisabledFeatures(flags),
                 ordinalParam(int.class, "flags"))
             .setDescription("Set the keyguard disabled features."));
-    flags.addCommand(
-        command("get-keyguard-disabled-features", this::getKeyguardDisabledFeatures)
+    commands.addCommand(
+        command("get-keyguard-disabled-features", () -> current().getKeyguardDisabledFeatures())
             .setDescription("Get the keyguard disabled features."));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-camera-disabled",
-                this::setCameraDisabled,
+                (disabled) -> current().setCameraDisabled(disabled),
                 ordinalParam(boolean.class, "disabled"))
             .setDescription("Set camera disabled."));
-    flags.addCommand(
-        command("get-camera-disabled", this::getCameraDisabled)
+    commands.addCommand(
+        command("get-camera-disabled", () -> current().getCameraDisabled())
             .setDescription("Get camera disabled."));
-    flags.addCommand(
-            command(
-                    "set-status-bar-disabled",
-                    this::setStatusBarDisabled,
-                    ordinalParam(boolean.class, "disabled"))
-                .setDescription("Set status bar disabled."));
-    flags.addCommand(
+    commands.addCommand(
+        command(
+                "set-status-bar-disabled",
+                (disabled) -> current().setStatusBarDisabled(disabled),
+                ordinalParam(boolean.class, "disabled"))
+            .setDescription("Set status bar disabled."));
+    commands.addCommand(
         command(
                 "set-max-failed-passwords",
-                this::setMaximumFailedPasswordsForWipe,
+                (max) -> current().setMaximumFailedPasswordsForWipe(max),
                 ordinalParam(int.class, "max"))
             .setDescription("Set maximum number of failed passwords before user is wiped."));
-    flags.addCommand(
-        command("get-max-failed-passwords", this::getMaximumFailedPasswordsForWipe)
+    commands.addCommand(
+        command("get-max-failed-passwords", () -> current().getMaximumFailedPasswordsForWipe())
             .setDescription("Get maximum number of failed passwords before user is wiped."));
-    flags.addCommand(
-        command("install-existing-package", this::installExistingPackage,
+    commands.addCommand(
+        command(
+                "install-existing-package",
+                (pkg) -> current().installExistingPackage(pkg),
                 ordinalParam(String.class, "package"))
             .setDescription("Installs the existing package for this user."));
-    flags.addCommand(
-        command("set-uninstall-blocked", this::setUninstallBlocked,
+    commands.addCommand(
+        command(
+                "set-uninstall-blocked",
+                (pkg, blocked) -> current().setUninstallBlocked(pkg, blocked),
                 ordinalParam(String.class, "package"),
                 ordinalParam(boolean.class, "blocked"))
             .setDescription("Sets whether the given package can be uninstalled."));
-    flags.addCommand(
-        command("is-uninstall-blocked", this::isUninstallBlocked,
+    commands.addCommand(
+        command(
+                "is-uninstall-blocked",
+                (pkg) -> current().isUninstallBlocked(pkg),
                 ordinalParam(String.class, "package"))
             .setDescription("Checks whether the given package can be uninstalled."));
-    flags.addCommand(
-        command("set-secure-setting", this::setSecureSetting,
+    commands.addCommand(
+        command(
+                "set-secure-setting",
+                (setting, value) -> current().setSecureSetting(setting, value),
                 ordinalParam(String.class, "setting"),
                 ordinalParam(String.class, "value"))
             .setDescription("Sets the given Settings.SECURE setting for this user."));
-    flags.addCommand(
-        command("set-global-setting", this::setGlobalSetting,
+    commands.addCommand(
+        command(
+                "set-global-setting",
+                (setting, value) -> current().setGlobalSetting(setting, value),
                 ordinalParam(String.class, "setting"),
                 ordinalParam(String.class, "value"))
             .setDescription("Sets the given Settings.GLOBAL setting for this user."));
-    flags.addCommand(
-        command("has-key-pair", this::hasKeyPair,
+    commands.addCommand(
+        command(
+                "has-key-pair",
+                (alias) -> current().hasKeyPair(alias),
                 ordinalParam(String.class, "alias"))
             .setDescription("Checks if a certificate key with the given alias is installed."));
-    flags.addCommand(
-        command("generate-device-attestation-key-pair", this::generateDeviceAttestationKeyPair,
+    commands.addCommand(
+        command(
+                "generate-device-attestation-key-pair",
+                (alias, flags) -> current().generateDeviceAttestationKeyPair(alias, flags),
                 ordinalParam(String.class, "alias"),
                 optional(namedParam(int.class, "flags")))
             .setDescription("Generates a device attestation key."));
-    flags.addCommand(
-        command("remove-key-pair", this::removeKeyPair,
+    commands.addCommand(
+        command(
+                "remove-key-pair",
+                (alias) -> current().removeKeyPair(alias),
                 ordinalParam(String.class, "alias"))
             .setDescription("Removes the certificate key with the given alias."));
-    flags.addCommand(
-        command("grant-key-pair-to-app", this::grantKeyPairToApp,
+    commands.addCommand(
+        command(
+                "grant-key-pair-to-app",
+                (alias, packageName) -> current().grantKeyPairToApp(alias, packageName),
                 ordinalParam(String.class, "alias"),
                 ordinalParam(String.class, "packageName"))
             .setDescription("Grants a certificate key to an app."));
-    flags.addCommand(
-        command("get-key-pair-grants", this::getKeyPairGrants,
+    commands.addCommand(
+        command(
+                "get-key-pair-grants",
+                (alias) -> current().getKeyPairGrants(alias),
                 ordinalParam(String.class, "alias"))
             .setDescription("Lists the apps that were granted the given certificate key."));
-    flags.addCommand(
-        command("revoke-key-pair-from-app", this::revokeKeyPairFromApp,
+    commands.addCommand(
+        command(
+                "revoke-key-pair-from-app",
+                (alias, packageName) -> current().revokeKeyPairFromApp(alias, packageName),
                 ordinalParam(String.class, "alias"),
                 ordinalParam(String.class, "packageName"))
             .setDescription("Revokes a certificate key from an app."));
-    flags.addCommand(
-        command("set-delegated-scopes", this::setDelegatedScopes,
+    commands.addCommand(
+        command(
+                "set-delegated-scopes",
+                (packageName, scopes) -> current().setDelegatedScopes(packageName, scopes),
                 ordinalParam(String.class, "packageName"),
                 repeated(ordinalParam(String.class, "scopes")))
             .setDescription("Delegates the given scopes to an app."));
-    flags.addCommand(
-        command("get-delegated-scopes", this::getDelegatedScopes,
+    commands.addCommand(
+        command(
+                "get-delegated-scopes",
+                (packageName) -> current().getDelegatedScopes(packageName),
                 ordinalParam(String.class, "packageName"))
             .setDescription("Gets the scopes delgated to an app."));
-    flags.addCommand(
-        command("get-delegate-packages", this::getDelegatePackages,
+    commands.addCommand(
+        command(
+                "get-delegate-packages",
+                (scope) -> current().getDelegatePackages(scope),
                 ordinalParam(String.class, "scope"))
             .setDescription("Gets the apps that were delegate a given scope."));
-    flags.addCommand(
-        command("set-password", this::setPassword, ordinalParam(String.class, "newPassword"))
+    commands.addCommand(
+        command(
+                "set-password",
+                (newPassword) -> current().setPassword(newPassword),
+                ordinalParam(String.class, "newPassword"))
             .setDescription("Resets password to a given one. Requires an active token"));
-    flags.addCommand(
-        command("clear-password", this::clearPassword)
+    commands.addCommand(
+        command("clear-password", () -> current().clearPassword())
             .setDescription("Resets password to an empty one. Requires an active token"));
-    flags.addCommand(
+    commands.addCommand(
         command(
                 "set-screencapture-disabled",
-                this::setScreenCaptureDisabled,
+                (disabled) -> current().setScreenCaptureDisabled(disabled),
                 ordinalParam(boolean.class, "disabled"))
             .setDescription("Set whether screen capture is disabled."));
-    flags.addCommand(
-        command("add-persistent-preferred-activity", 
-            this::addPersistentPreferredActivity,
+    commands.addCommand(
+        command(
+                "add-persistent-preferred-activity",
+                (activityName, action, categories) ->
+                    current().addPersistentPreferredActivity(activityName, action, categories),
                 ordinalParam(String.class, "activityName"),
                 ordinalParam(String.class, "action"),
                 repeated(ordinalParam(String.class, "categories")))
             .setDescription("Adds a preferred activity for the given intent filter."));
-    flags.addCommand(
-        command("clear-package-persistent-preferred-activities", 
-            this::clearPackagePersistentPreferredActivities,
+    commands.addCommand(
+        command(
+                "clear-package-persistent-preferred-activities",
+                (packageName) -> current().clearPackagePersistentPreferredActivities(packageName),
                 ordinalParam(String.class, "packageName"))
             .setDescription("Clears preferred activities assigned to an app."));
 
     // Separator for S / pre-S commands - do NOT remove line to avoid cherry-pick conflicts
 
     if (Util.isAtLeastS()) {
-      flags.addCommand(
+      commands.addCommand(
           command(
                   "set-usb-data-signaling-enabled",
-                  this::setUsbDataSignalingEnabled,
+                  (enabled) -> current().setUsbDataSignalingEnabled(enabled),
                   ordinalParam(boolean.class, "enabled"))
               .setDescription("Enable / disable USB data signaling."));
-      flags.addCommand(
+      commands.addCommand(
           command(
                   "can-usb-data-signaling-be-disabled",
-                  this::canUsbDataSignalingBeDisabled)
+                  () -> current().canUsbDataSignalingBeDisabled())
               .setDescription("Check if USB data signaling can be disabled."));
-      flags.addCommand(
+      commands.addCommand(
           command(
                   "set-permitted-input-methods-parent",
-                  this::setPermittedInputMethodsOnParent,
+                  (methods) -> current().setPermittedInputMethodsOnParent(methods),
                   repeated(ordinalParam(String.class, "methods")))
               .setDescription("Set the permitted input methods in the parent's device admin."));
-      flags.addCommand(
-          command("list-foreground-users", this::listForegroundUsers)
+      commands.addCommand(
+          command("list-foreground-users", () -> current().listForegroundUsers())
               .setDescription("List the users running in the foreground."));
-      flags.addCommand(
-          command("is-foreground-user", this::isForegroundUser)
+      commands.addCommand(
+          command("is-foreground-user", () -> current().isForegroundUser())
               .setDescription("Checks if the calling user is running in the foreground."));
-      flags.addCommand(
+      commands.addCommand(
           command(
                   "set-metered-data-disabled-packages",
-                  this::setMeteredDataDisabledPackages,
+                  (disabledPackages) -> current().setMeteredDataDisabledPackages(disabledPackages),
                   repeated(ordinalParam(String.class, "disabled-packages")))
               .setDescription("Restricts packages from using metered data."));
-      flags.addCommand(
-          command("get-metered-data-disabled-packages", this::getMeteredDataDisabledPackages)
+      commands.addCommand(
+          command(
+                  "get-metered-data-disabled-packages",
+                  () -> current().getMeteredDataDisabledPackages())
               .setDescription("List the packages restricted from using metered data."));
-      flags.addCommand(
-          command("get-secondary-users", this::getSecondaryUsers)
+      commands.addCommand(
+          command("get-secondary-users", () -> current().getSecondaryUsers())
               .setDescription("List all UserHandles of secondary users on the device."));
     }
 
-    try {
-      flags.run(mArgs);
-    } catch (Exception e) {
-      // Must explicitly catch and show generic exceptions (like NumberFormatException parsing
-      // args), otherwise they'dbe logcat'ed on AndroidRuntime and not surfaced to caller
-      onError(e, "error executing %s", Arrays.toString(mArgs));
-    }
+    return commands.build();
   }
 
   private void dumpState() {
@@ -688,6 +993,192 @@ final class ShellCommand {
         mDevicePolicyManagerGateway.isDeviceIdAttestationSupported());
     mWriter.printf("isUniqueDeviceAttestationSupported: %b\n",
         mDevicePolicyManagerGateway.isUniqueDeviceAttestationSupported());
+    ShellCommandExecutor.dump(mWriter);
+    CachingDevicePolicyManagerGateway.dump(mWriter);
+    InstrumentedDevicePolicyManagerGateway.dump(mWriter);
+    PackageSnapshot.get(mContext).dump(mWriter);
+    AppLabelSorter.get(mContext).dump(mWriter);
+    AppIconLoader.get(mContext).dump(mWriter);
+    if (Util.SDK_INT >= VERSION_CODES.O) {
+      NetworkLogIngestionService.dump(mContext, mWriter);
+    }
+  }
+
+  private void setGatewayCacheBypassed(boolean bypassed) {
+    Log.i(TAG, "setGatewayCacheBypassed(" + bypassed + ")");
+    CachingDevicePolicyManagerGateway.setBypassed(bypassed);
+    mWriter.printf("Gateway cache %s\n", bypassed ? "bypassed" : "enabled");
+  }
+
+  private void printStats(boolean reset) {
+    SortedMap<String, ShellCommandStats.CommandStats> allStats = ShellCommandStats.get();
+    if (reset) {
+      ShellCommandStats.reset();
+    }
+
+    if (mOutput.isText() && allStats.isEmpty()) {
+      mWriter.println("No commands executed");
+    }
+    if (!mOutput.isText()) {
+      mOutput.beginRecords(
+          "command-stats", "command", "phase", "count", "p50_us", "p95_us", "p99_us", "max_us");
+    }
+    for (Map.Entry<String, ShellCommandStats.CommandStats> entry : allStats.entrySet()) {
+      ShellCommandStats.CommandStats stats = entry.getValue();
+      long count = stats.snapshot(ShellCommandStats.Phase.TOTAL).getCount();
+      if (count == 0) {
+        continue;
+      }
+      if (mOutput.isText()) {
+        mWriter.printf("%s: %d executions\n", entry.getKey(), count);
+      }
+      for (ShellCommandStats.Phase phase : ShellCommandStats.Phase.values()) {
+        LatencyHistogram.Snapshot snapshot = stats.snapshot(phase);
+        long p50 = snapshot.getValueAtPercentile(50);
+        long p95 = snapshot.getValueAtPercentile(95);
+        long p99 = snapshot.getValueAtPercentile(99);
+        if (mOutput.isText()) {
+          mWriter.printf(
+              Locale.ROOT,
+              "  %-8s p50=%s p95=%s p99=%s max=%s\n",
+              phase.label() + ":",
+              formatNanos(p50),
+              formatNanos(p95),
+              formatNanos(p99),
+              formatNanos(snapshot.getMax()));
+          continue;
+        }
+        mOutput.beginRecord();
+        mOutput
+            .value(entry.getKey())
+            .value(phase.label())
+            .value(snapshot.getCount())
+            .value(TimeUnit.NANOSECONDS.toMicros(p50))
+            .value(TimeUnit.NANOSECONDS.toMicros(p95))
+            .value(TimeUnit.NANOSECONDS.toMicros(p99))
+            .value(TimeUnit.NANOSECONDS.toMicros(snapshot.getMax()))
+            .endRecord();
+      }
+    }
+    if (reset && mOutput.isText()) {
+      mWriter.println("Stats reset");
+    }
+  }
+
+  private static String formatNanos(long nanos) {
+    return String.format(Locale.ROOT, "%.3fms", nanos / 1_000_000.0);
+  }
+
+  private void runScript(File file, boolean stopOnError) {
+    Log.i(TAG, "runScript(): file=" + file + ", stopOnError=" + stopOnError);
+    List<String> commandLines = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        commandLines.add(line);
+      }
+    } catch (IOException e) {
+      onError(e, "Error reading script %s", file);
+      return;
+    }
+    runCommandLines(commandLines, stopOnError);
+  }
+
+  private void runCommands(String[] commandLines, boolean stopOnError) {
+    Log.i(TAG, "runCommands(): " + commandLines.length + " commands, stopOnError=" + stopOnError);
+    runCommandLines(Arrays.asList(commandLines), stopOnError);
+  }
+
+  /**
+   * Runs each command line in this invocation, so they all share the same gateway and {@link
+   * Flags} instance.
+   */
+  private void runCommandLines(List<String> commandLines, boolean stopOnError) {
+    if (mRunningScript) {
+      mWriter.println("Scripts cannot run other scripts");
+      mErrorCount++;
+      return;
+    }
+
+    mRunningScript = true;
+    long scriptStart = System.nanoTime();
+    int executed = 0;
+    int failed = 0;
+    try {
+      for (int i = 0; i < commandLines.size(); i++) {
+        String commandLine = commandLines.get(i).trim();
+        if (commandLine.isEmpty() || commandLine.startsWith("#")) {
+          continue;
+        }
+        int lineNumber = i + 1;
+        mWriter.printf("[%d] %s\n", lineNumber, commandLine);
+
+        executed++;
+        int previousErrorCount = mErrorCount;
+        long start = System.nanoTime();
+        boolean success;
+        try {
+          success =
+              mFlags.runCommand(splitCommandLine(commandLine)) && mErrorCount == previousErrorCount;
+        } catch (Exception e) {
+          onError(e, "error executing %s", commandLine);
+          success = false;
+        }
+        mWriter.printf(
+            "[%d] %s (%.2f ms)\n", lineNumber, success ? "OK" : "FAILED", elapsedMs(start));
+
+        if (!success) {
+          failed++;
+          if (stopOnError) {
+            mWriter.println("Stopping after first failure");
+            break;
+          }
+        }
+      }
+    } finally {
+      mRunningScript = false;
+    }
+    mWriter.printf(
+        "Ran %d command%s (%d failed) in %.2f ms\n",
+        executed, executed == 1 ? "" : "s", failed, elapsedMs(scriptStart));
+  }
+
+  private static double elapsedMs(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1_000_000.0;
+  }
+
+  /** Splits a command line into arguments, keeping quoted (with ' or ") text as one argument. */
+  private static String[] splitCommandLine(String commandLine) {
+    List<String> args = new ArrayList<>();
+    StringBuilder arg = new StringBuilder();
+    boolean hasArg = false;
+    char quote = 0;
+    for (int i = 0; i < commandLine.length(); i++) {
+      char c = commandLine.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else {
+          arg.append(c);
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+        hasArg = true;
+      } else if (Character.isWhitespace(c)) {
+        if (hasArg) {
+          args.add(arg.toString());
+          arg.setLength(0);
+          hasArg = false;
+        }
+      } else {
+        arg.append(c);
+        hasArg = true;
+      }
+    }
+    if (hasArg) {
+      args.add(arg.toString());
+    }
+    return args.toArray(new String[0]);
   }
 
   private void createUser(String name, int flags) {
@@ -813,13 +1304,34 @@ final class ShellCommand {
 
   private void setUserRestriction(String userRestriction, boolean enabled) {
     Log.i(TAG, "setUserRestriction(" + userRestriction + ", " + enabled + ")");
-    mDevicePolicyManagerGateway.setUserRestriction(
-        userRestriction,
-        enabled,
-        (v) -> onSuccess("User restriction '%s' set to %b", userRestriction, enabled),
+    mDevicePolicyManagerGateway.setUserRestrictions(
+        Collections.singletonMap(userRestriction, enabled),
+        (changed) -> onSuccess("User restriction '%s' set to %b", userRestriction, enabled),
         (e) -> onError(e, "Error setting user restriction '%s' to %b", userRestriction, enabled));
   }
 
+  private void setUserRestrictions(KeyValue[] restrictions) {
+    Map<String, Boolean> userRestrictions = new LinkedHashMap<>();
+    for (KeyValue restriction : restrictions) {
+      if (!restriction.value.equals("true") && !restriction.value.equals("false")) {
+        onError(
+            new IllegalArgumentException("Invalid value: " + restriction.value),
+            "Value of user restriction '%s' must be true or false",
+            restriction.key);
+        return;
+      }
+      userRestrictions.put(restriction.key, Boolean.parseBoolean(restriction.value));
+    }
+    Log.i(TAG, "setUserRestrictions(" + userRestrictions + ")");
+    mDevicePolicyManagerGateway.setUserRestrictions(
+        userRestrictions,
+        (changed) ->
+            onSuccess(
+                "Changed %d of %d user restrictions: %s",
+                changed.size(), userRestrictions.size(), changed),
+        (e) -> onError(e, "Error setting user restrictions %s", userRestrictions));
+  }
+
   private void setUserRestrictionOnParent(String userRestriction, boolean enabled) {
     Log.i(TAG, "setUserRestrictionOnParent(" + userRestriction + ", " + enabled + ")");
     DevicePolicyManagerGateway parentDpmGateway =
@@ -883,28 +1395,178 @@ final class ShellCommand {
     printTime(mDevicePolicyManagerGateway.getLastNetworkLogRetrievalTime());
   }
 
-  private void retrieveNetworkLogs(long batchToken) {
+  private void retrieveNetworkLogs(long batchToken, LogEventWriter.Filter filter) {
     List<NetworkEvent> events = mDevicePolicyManagerGateway.retrieveNetworkLogs(batchToken);
     if (events == null || events.isEmpty()) {
       mWriter.println("N/A");
       return;
     }
     mWriter.printf("%d events:\n", events.size());
-    for (int i = 0; i < events.size(); i++) {
-        NetworkEvent event = events.get(i);
-        if (event instanceof DnsEvent) {
-          DnsEvent de = (DnsEvent) event;
-          String addresses = de.getInetAddresses().stream()
-              .map(InetAddress::toString).collect(Collectors.joining(","));
-          mWriter.printf("\t%d:DnsEvent id=%d pkg=%s hostname=%s addresses=%s\n",
-              i, event.getId(), event.getPackageName(), de.getHostname(), addresses);
-        } else if (event instanceof ConnectEvent) {
-          ConnectEvent ce = (ConnectEvent) event;
-          mWriter.printf("\t%d:ConnectEvent id=%d pkg=%s address=%s port=%d\n",
-              i, ce.getId(), ce.getPackageName(), ce.getInetAddress(), ce.getPort());
-        } else {
-          mWriter.printf("\t%d:Unknown id=%d pkg=%s\n", i, event.getId(), event.getPackageName());
+    printFilteredCount(
+        new LogEventWriter(mWriter, mOutput).writeNetworkEvents(events, filter), events);
+  }
+
+  @TargetApi(VERSION_CODES.O)
+  private void printNetworkLogUsage() {
+    NetworkLogRetentionManager manager = NetworkLogRetentionManager.get(mContext);
+    NetworkLogRetention retention = manager.getRetention();
+    NetworkLogRetention.Usage usage = manager.getUsage();
+    if (mOutput.isText()) {
+      mWriter.printf(
+          "%d batches using %d bytes (limit: %d bytes, %d days)\n",
+          usage.getSegmentCount(),
+          usage.getTotalBytes(),
+          retention.getMaxBytes(),
+          TimeUnit.MILLISECONDS.toDays(retention.getMaxAgeMillis()));
+      mWriter.printf(
+          "%d compressed: %d bytes, %d uncompressed (ratio: %.2f)\n",
+          usage.getCompressedCount(),
+          usage.getCompressedBytes(),
+          usage.getUncompressedBytes(),
+          usage.getCompressionRatio());
+      if (usage.getSegmentCount() > 0) {
+        mWriter.printf("Oldest batch: %s\n", Util.formatTimestamp(usage.getOldestMillis()));
+      }
+      return;
+    }
+    mOutput.beginRecords(
+        "network-log-usage",
+        "batches",
+        "bytes",
+        "compressed_batches",
+        "compressed_bytes",
+        "uncompressed_bytes",
+        "compression_ratio",
+        "oldest_millis",
+        "max_bytes",
+        "max_age_millis");
+    mOutput.beginRecord();
+    mOutput
+        .value(usage.getSegmentCount())
+        .value(usage.getTotalBytes())
+        .value(usage.getCompressedCount())
+        .value(usage.getCompressedBytes())
+        .value(usage.getUncompressedBytes())
+        .value(String.format(Locale.ROOT, "%.2f", usage.getCompressionRatio()))
+        .value(usage.getOldestMillis())
+        .value(retention.getMaxBytes())
+        .value(retention.getMaxAgeMillis())
+        .endRecord();
+  }
+
+  @TargetApi(VERSION_CODES.O)
+  private void setNetworkLogRetention(@Nullable Long maxMb, @Nullable Long maxDays) {
+    Log.i(TAG, "setNetworkLogRetention(" + maxMb + ", " + maxDays + ")");
+    if ((maxMb != null && maxMb <= 0) || (maxDays != null && maxDays <= 0)) {
+      onError(
+          new IllegalArgumentException("Invalid limits: " + maxMb + " MB, " + maxDays + " days"),
+          "--max-mb and --max-days must be positive");
+      return;
+    }
+    NetworkLogRetentionManager manager = NetworkLogRetentionManager.get(mContext);
+    NetworkLogRetention retention = manager.getRetention();
+    long maxBytes;
+    try {
+      maxBytes = maxMb == null ? retention.getMaxBytes() : Math.multiplyExact(maxMb, 1024L * 1024);
+    } catch (ArithmeticException e) {
+      onError(e, "--max-mb is too large: %d", maxMb);
+      return;
+    }
+    // Saturates at Long.MAX_VALUE, i.e. no age limit
+    long maxAgeMillis =
+        maxDays == null ? retention.getMaxAgeMillis() : TimeUnit.DAYS.toMillis(maxDays);
+    manager.setLimits(maxBytes, maxAgeMillis);
+    NetworkLogRetention.Result result = manager.enforce();
+    mWriter.printf(
+        "Compressed %d and deleted %d batches, freeing %d bytes (%d failures)\n",
+        result.getCompressedCount(),
+        result.getDeletedCount(),
+        result.getFreedBytes(),
+        result.getFailureCount());
+  }
+
+  @TargetApi(VERSION_CODES.O)
+  private void printNetworkLogStats(@Nullable Integer top, @Nullable String packageName) {
+    NetworkLogStats stats = NetworkLogStatsStore.get(mContext).getStats();
+    long dayAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+    List<NetworkLogStats.PackageStats> packages;
+    if (packageName == null) {
+      packages = stats.getPackages();
+    } else {
+      NetworkLogStats.PackageStats packageStats = stats.findPackage(packageName);
+      packages =
+          packageStats == null
+              ? Collections.emptyList()
+              : Collections.singletonList(packageStats);
+    }
+    List<HeavyHitters.Entry> topHostnames =
+        stats.getTopHostnames(top == null ? DEFAULT_TOP_HOSTNAMES : top);
+
+    if (mOutput.isText()) {
+      NetworkLogStats.Counts totals = stats.getTotals();
+      NetworkLogStats.Counts lastDay = stats.getCountsSince(dayAgo);
+      mWriter.printf(
+          "%d batches: %d DNS lookups, %d connections (last 24h: %d, %d), ~%d hostnames,"
+              + " ~%d addresses\n",
+          stats.getBatchCount(),
+          totals.getDnsLookups(),
+          totals.getConnects(),
+          lastDay.getDnsLookups(),
+          lastDay.getConnects(),
+          stats.getDistinctHostnames(),
+          stats.getDistinctAddresses());
+      if (!topHostnames.isEmpty()) {
+        mWriter.println("Top hostnames:");
+        for (HeavyHitters.Entry entry : topHostnames) {
+          mWriter.printf(
+              "  %s: %d lookups (+/- %d)\n", entry.getValue(), entry.getCount(), entry.getError());
         }
+      }
+      if (!packages.isEmpty()) {
+        mWriter.println("Packages:");
+      }
+      for (NetworkLogStats.PackageStats packageStats : packages) {
+        lastDay = packageStats.getCountsSince(dayAgo);
+        mWriter.printf(
+            "  %s: %d DNS lookups, %d connections (last 24h: %d, %d), ~%d hostnames,"
+                + " ~%d addresses\n",
+            packageStats.getPackageName(),
+            packageStats.getDnsLookups(),
+            packageStats.getConnects(),
+            lastDay.getDnsLookups(),
+            lastDay.getConnects(),
+            packageStats.getDistinctHostnames(),
+            packageStats.getDistinctAddresses());
+      }
+      return;
+    }
+
+    mOutput.beginRecords("network-log-top-hostnames", "hostname", "lookups", "error");
+    for (HeavyHitters.Entry entry : topHostnames) {
+      mOutput.beginRecord();
+      mOutput.value(entry.getValue()).value(entry.getCount()).value(entry.getError()).endRecord();
+    }
+    mOutput.beginRecords(
+        "network-log-package-stats",
+        "package",
+        "dns_lookups",
+        "connects",
+        "dns_lookups_24h",
+        "connects_24h",
+        "distinct_hostnames",
+        "distinct_addresses");
+    for (NetworkLogStats.PackageStats packageStats : packages) {
+      NetworkLogStats.Counts lastDay = packageStats.getCountsSince(dayAgo);
+      mOutput.beginRecord();
+      mOutput
+          .value(packageStats.getPackageName())
+          .value(packageStats.getDnsLookups())
+          .value(packageStats.getConnects())
+          .value(lastDay.getDnsLookups())
+          .value(lastDay.getConnects())
+          .value(packageStats.getDistinctHostnames())
+          .value(packageStats.getDistinctAddresses())
+          .endRecord();
     }
   }
 
@@ -924,12 +1586,12 @@ final class ShellCommand {
       printTime(mDevicePolicyManagerGateway.getLastSecurityLogRetrievalTime());
   }
 
-  private void retrieveSecurityLogs() {
-    printSecurityLogs(mDevicePolicyManagerGateway.retrieveSecurityLogs());
+  private void retrieveSecurityLogs(LogEventWriter.Filter filter) {
+    printSecurityLogs(mDevicePolicyManagerGateway.retrieveSecurityLogs(), filter);
   }
 
-  private void retrievePreRebootSecurityLogs() {
-    printSecurityLogs(mDevicePolicyManagerGateway.retrievePreRebootSecurityLogs());
+  private void retrievePreRebootSecurityLogs(LogEventWriter.Filter filter) {
+    printSecurityLogs(mDevicePolicyManagerGateway.retrievePreRebootSecurityLogs(), filter);
   }
 
   private void clearOrganizationName() {
@@ -1258,6 +1920,19 @@ final class ShellCommand {
   }
 
   private void printAppRestrictions(String packageName, String source, Bundle settings) {
+    if (!mOutput.isText()) {
+      mOutput.beginRecords("app-restriction", "package", "source", "key", "value");
+      if (settings == null) {
+        return;
+      }
+      for (String key : settings.keySet()) {
+        Object value = settings.get(key);
+        mOutput.beginRecord();
+        mOutput.value(packageName).value(source).value(key);
+        mOutput.value(value == null ? null : value.toString()).endRecord();
+      }
+      return;
+    }
     if (settings == null || settings.isEmpty()) {
       mWriter.printf("No app restrictions (from %s) for %s\n", source, packageName);
       return;
@@ -1421,8 +2096,9 @@ final class ShellCommand {
 
   private void generateDeviceAttestationKeyPair(String alias, int flags) {
     // Cannot call dpm.generateKeyPair() on main thread
-    warnAboutAsyncCall();
-    post(()->handleDeviceAttestationKeyPair(alias, flags));
+    postAsync(
+        "generate-device-attestation-key-pair",
+        (result) -> handleDeviceAttestationKeyPair(alias, flags, result));
   }
 
   private void removeKeyPair(String alias) {
@@ -1564,16 +2240,18 @@ final class ShellCommand {
   }
 
   private void warnAboutAsyncCall() {
-    mWriter.printf("Command will be executed asynchronally; use `adb logcat %s *:s` for result\n",
-        TAG);
+    mWriter.printf(
+        "Command will be executed asynchronously; use %s to print its result, or `adb logcat %s"
+            + " *:s`\n",
+        WAIT_OPTION, TAG);
   }
 
-  private void handleDeviceAttestationKeyPair(String alias, int flags) {
+  private void handleDeviceAttestationKeyPair(String alias, int flags, AsyncResult result) {
     KeyGenParameterSpec keySpec = buildRsaKeySpecWithKeyAttestation(alias);
     String algorithm = "RSA";
     mDevicePolicyManagerGateway.generateKeyPair(algorithm, keySpec, flags,
-        (v) -> onSuccessLog("Generated key: %s", v),
-        (e) -> onErrorLog(e, "Error generating key with alias %s, flags %d, and spec %s",
+        (v) -> result.onSuccess("Generated key: %s", v),
+        (e) -> result.onError(e, "Error generating key with alias %s, flags %d, and spec %s",
             alias, flags, keySpec));
   }
 
@@ -1599,15 +2277,113 @@ final class ShellCommand {
             onError(e, "Error clearing package persistent preferred activities for %s", packageName));
   }
 
-  private void post(Runnable r) {
-    if (mHandler == null) {
-      HandlerThread handlerThread = new HandlerThread("ShellCommandThread");
-      Log.i(TAG, "Starting " + handlerThread);
-      handlerThread.start();
-      mHandler = new Handler(handlerThread.getLooper());
+  /**
+   * Executes a command, recording in {@link ShellCommandStats} how long it took.
+   *
+   * <p>Nested commands (like the ones executed by {@code run-script}) are recorded on their own,
+   * but also count towards the time of the command that executed them.
+   */
+  private void timeCommand(String commandName, long parseNanos, Runnable command) {
+    long gatewayNanosBefore = mInstrumentedGateway.getCallerThreadNanos();
+    long startNanos = System.nanoTime();
+    try {
+      command.run();
+    } finally {
+      long executionNanos = System.nanoTime() - startNanos;
+      long gatewayNanos = mInstrumentedGateway.getCallerThreadNanos() - gatewayNanosBefore;
+      ShellCommandStats.record(
+          commandName, parseNanos, gatewayNanos, executionNanos - gatewayNanos);
+    }
+  }
+
+  /**
+   * Runs a command on the {@link ShellCommandExecutor}, waiting for its result when {@code --wait}
+   * was passed.
+   */
+  private void postAsync(String commandName, Consumer<AsyncResult> command) {
+    AsyncResult result = new AsyncResult(/* printing= */ mWaitTimeoutMs > 0);
+    Log.d(TAG, "posting " + commandName);
+    try {
+      ShellCommandExecutor.execute(
+          () -> {
+            try {
+              command.accept(result);
+            } catch (RuntimeException e) {
+              result.onError(e, "Error executing %s", commandName);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      onError(e, "Could not execute %s", commandName);
+      return;
+    }
+
+    if (mWaitTimeoutMs == 0) {
+      warnAboutAsyncCall();
+      return;
+    }
+    try {
+      if (!result.await(mWaitTimeoutMs)) {
+        onError(
+            new TimeoutException("No result after " + mWaitTimeoutMs + " ms"),
+            "Stopped waiting for %s; use `adb logcat %s *:s` for its result",
+            commandName,
+            TAG);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      onError(e, "Interrupted while waiting for %s", commandName);
+    }
+  }
+
+  /**
+   * Reports the result of a command running on the {@link ShellCommandExecutor}: it's printed while
+   * the invocation is waiting for it (see {@link #postAsync}), and only logged afterwards, as the
+   * output is closed by then.
+   */
+  private final class AsyncResult {
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    // Guarded by this
+    private boolean mPrinting;
+
+    private AsyncResult(boolean printing) {
+      mPrinting = printing;
+    }
+
+    synchronized void onSuccess(String pattern, Object... args) {
+      if (mPrinting) {
+        ShellCommand.this.onSuccess(pattern, args);
+      } else {
+        onSuccessLog(pattern, args);
+      }
+      mDone.countDown();
+    }
+
+    synchronized void onError(Exception e, String pattern, Object... args) {
+      if (mPrinting) {
+        ShellCommand.this.onError(e, pattern, args);
+      } else {
+        onErrorLog(e, pattern, args);
+      }
+      mDone.countDown();
+    }
+
+    /** Waits for the result, returning whether it was printed. */
+    boolean await(long timeoutMs) throws InterruptedException {
+      try {
+        mDone.await(timeoutMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        stopPrinting();
+        throw e;
+      }
+      // The result might still have arrived after the timeout, before printing was disabled
+      return stopPrinting();
+    }
+
+    private synchronized boolean stopPrinting() {
+      mPrinting = false;
+      return mDone.getCount() == 0;
     }
-    Log.d(TAG, "posting runnable");
-    mHandler.post(r);
   }
 
   private static void onSuccessLog(String template, Object... args) {
@@ -1625,12 +2401,27 @@ final class ShellCommand {
   }
 
   private void onError(@NonNull Exception e, @NonNull String pattern, @Nullable Object... args) {
+    mErrorCount++;
     String msg = String.format(pattern, args);
     Log.e(TAG, msg, e);
-    mWriter.printf("%s: %s\n", msg, e);
+    if (mOutput.isText()) {
+      mWriter.printf("%s: %s\n", msg, e);
+      return;
+    }
+    mOutput.beginRecords("error", "message", "exception");
+    mOutput.beginRecord();
+    mOutput.value(msg).value(e.toString()).endRecord();
   }
 
   private void printCollection(String nameOnSingular, Collection<String> collection) {
+    if (!mOutput.isText()) {
+      mOutput.beginRecords(nameOnSingular.replace(' ', '-'), "value");
+      for (String value : collection) {
+        mOutput.beginRecord();
+        mOutput.value(value).endRecord();
+      }
+      return;
+    }
     if (collection.isEmpty()) {
       mWriter.printf("No %ss\n", nameOnSingular);
       return;
@@ -1641,31 +2432,30 @@ final class ShellCommand {
   }
 
   private void printTime(long time) {
+    if (!mOutput.isText()) {
+      mOutput.beginRecords("time", "millis", "date");
+      mOutput.beginRecord();
+      mOutput.value(time).value(time > 0 ? new java.sql.Date(time).toString() : null).endRecord();
+      return;
+    }
     String formattedDate = time > 0 ? new java.sql.Date(time).toString() : "N/A";
     mWriter.printf("%d (%s)\n", time, formattedDate);
   }
 
   @TargetApi(VERSION_CODES.N)
-  @SuppressWarnings("SimpleDateFormat")
-  private void printSecurityLogs(List<SecurityEvent> events) {
+  private void printSecurityLogs(List<SecurityEvent> events, LogEventWriter.Filter filter) {
     if (events == null || events.isEmpty()) {
       mWriter.println("N/A");
       return;
     }
     mWriter.printf("%d events:\n", events.size());
-    SimpleDateFormat formatter = new SimpleDateFormat("MM-dd HH:mm:ss.SSS");
-    for (int i = 0; i < events.size(); i++) {
-      SecurityEvent event = events.get(i);
-      StringBuilder sb = new StringBuilder();
-      if (Util.SDK_INT >= VERSION_CODES.P) {
-        sb.append(event.getId() + ": ");
-      }
-      sb.append(SecurityLogsFragment.getStringEventTagFromId(event.getTag()));
-      sb.append(" (")
-          .append(formatter.format(new Date(TimeUnit.NANOSECONDS.toMillis(event.getTimeNanos()))))
-          .append("): ");
-      SecurityLogsFragment.printData(sb, event.getData());
-      mWriter.printf("%s\n", sb.toString());
+    printFilteredCount(
+        new LogEventWriter(mWriter, mOutput).writeSecurityEvents(events, filter), events);
+  }
+
+  private void printFilteredCount(int printed, List<?> events) {
+    if (printed != events.size()) {
+      mWriter.printf("Printed %d of %d events\n", printed, events.size());
     }
   }
 
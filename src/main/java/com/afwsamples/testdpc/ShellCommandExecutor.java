@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import android.util.Log;
+import java.io.PrintWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the asynchronous work of {@link ShellCommand} invocations (i.e., calls that cannot be made
+ * on the binder thread serving {@code dumpsys}) on a small pool shared by the whole process.
+ *
+ * <p>Threads are only kept alive while there is work to do, and the number of pending tasks is
+ * bounded, so a script that keeps invoking asynchronous commands can neither leak threads nor pile
+ * up work indefinitely.
+ */
+final class ShellCommandExecutor {
+  private static final String TAG = "ShellCommandExecutor";
+
+  private static final int MAX_THREADS = 2;
+  private static final int MAX_QUEUED_TASKS = 32;
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static final AtomicInteger sCreatedThreads = new AtomicInteger();
+  private static final AtomicLong sRejectedTasks = new AtomicLong();
+
+  private static final ThreadPoolExecutor sExecutor = createExecutor();
+
+  private ShellCommandExecutor() {}
+
+  /**
+   * Executes the task on the shared pool.
+   *
+   * @throws RejectedExecutionException if too many tasks are already pending.
+   */
+  static void execute(Runnable task) {
+    sExecutor.execute(task);
+  }
+
+  /**
+   * Prints the size of the pool and of its queue, in the format used by the {@code dump} command.
+   */
+  static void dump(PrintWriter writer) {
+    writer.printf(
+        "asyncThreads: %d (active: %d, largest: %d, max: %d, created: %d)\n",
+        sExecutor.getPoolSize(),
+        sExecutor.getActiveCount(),
+        sExecutor.getLargestPoolSize(),
+        MAX_THREADS,
+        sCreatedThreads.get());
+    writer.printf(
+        "asyncQueueDepth: %d (capacity: %d)\n", sExecutor.getQueue().size(), MAX_QUEUED_TASKS);
+    writer.printf(
+        "asyncTasks: %d completed, %d rejected\n",
+        sExecutor.getCompletedTaskCount(), sRejectedTasks.get());
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            MAX_THREADS,
+            MAX_THREADS,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED_TASKS),
+            (runnable) -> {
+              Thread thread =
+                  new Thread(runnable, "ShellCommandThread-" + sCreatedThreads.incrementAndGet());
+              Log.i(TAG, "Starting " + thread);
+              return thread;
+            },
+            (runnable, pool) -> {
+              sRejectedTasks.incrementAndGet();
+              throw new RejectedExecutionException(
+                  String.format(
+                      "%d asynchronous commands are already pending", pool.getQueue().size()));
+            });
+    // Lets the threads exit when idle, as most invocations don't have any asynchronous work
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
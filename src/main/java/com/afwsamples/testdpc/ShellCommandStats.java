@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import com.afwsamples.testdpc.util.LatencyHistogram;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency of the {@link ShellCommand} commands executed by this process, kept across invocations
+ * (which are served by different {@code ShellCommand} instances).
+ *
+ * <p>The execution of each command is split into phases, so it's possible to tell whether a slow
+ * command is slow because of the shell itself or because of {@code DevicePolicyManager}.
+ */
+final class ShellCommandStats {
+
+  /** The phases each command execution is split into. */
+  enum Phase {
+    /** Resolving the command and parsing its arguments. */
+    PARSE,
+    /** Calls to {@link DevicePolicyManagerGateway} made by the command, other than cache hits. */
+    GATEWAY,
+    /** The rest of the execution, which is mostly formatting and writing the output. */
+    OUTPUT,
+    TOTAL;
+
+    /** Name used in the output of the {@code stats} command. */
+    String label() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  /** The histograms of a single command, one per {@link Phase}. */
+  static final class CommandStats {
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[Phase.values().length];
+
+    private CommandStats() {
+      for (int i = 0; i < mHistograms.length; i++) {
+        mHistograms[i] = new LatencyHistogram();
+      }
+    }
+
+    LatencyHistogram.Snapshot snapshot(Phase phase) {
+      return mHistograms[phase.ordinal()].snapshot();
+    }
+
+    private void record(long parseNanos, long gatewayNanos, long outputNanos) {
+      mHistograms[Phase.PARSE.ordinal()].record(parseNanos);
+      mHistograms[Phase.GATEWAY.ordinal()].record(gatewayNanos);
+      mHistograms[Phase.OUTPUT.ordinal()].record(outputNanos);
+      mHistograms[Phase.TOTAL.ordinal()].record(parseNanos + gatewayNanos + outputNanos);
+    }
+
+    private void reset() {
+      for (LatencyHistogram histogram : mHistograms) {
+        histogram.reset();
+      }
+    }
+  }
+
+  private static final ConcurrentHashMap<String, CommandStats> sStats = new ConcurrentHashMap<>();
+
+  private ShellCommandStats() {}
+
+  /** Records the duration (in nanoseconds) of each phase of an execution of a command. */
+  static void record(String commandName, long parseNanos, long gatewayNanos, long outputNanos) {
+    CommandStats stats = sStats.get(commandName);
+    if (stats == null) {
+      stats = new CommandStats();
+      CommandStats existing = sStats.putIfAbsent(commandName, stats);
+      if (existing != null) {
+        stats = existing;
+      }
+    }
+    stats.record(parseNanos, gatewayNanos, outputNanos);
+  }
+
+  /** Returns the stats of every command executed so far, sorted by command name. */
+  static SortedMap<String, CommandStats> get() {
+    return new TreeMap<>(sStats);
+  }
+
+  /** Clears the stats of all commands. */
+  static void reset() {
+    for (CommandStats stats : sStats.values()) {
+      stats.reset();
+    }
+  }
+}
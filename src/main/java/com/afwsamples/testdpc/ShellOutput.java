@@ -0,0 +1,532 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import androidx.annotation.Nullable;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Output of {@link ShellCommand}, in one of the {@link Format formats} selected by the {@code
+ * --format} option.
+ *
+ * <p>Structured values are written as records: {@link #beginRecords(String, String...)} declares
+ * the type and columns of the records that follow, then each record is written with {@link
+ * #beginRecord()}, one {@code value()} call per column and {@link #endRecord()}. Any other text
+ * written to this {@link Writer} (typically through a {@link PrintWriter} wrapping it) is converted
+ * to {@code text} records, one per line.
+ *
+ * <p>Values are escaped as they're written to the underlying writer, so no intermediate strings are
+ * created.
+ */
+abstract class ShellOutput extends Writer {
+
+  /** Supported output formats. */
+  enum Format {
+    /** Human-readable text, as printed before the other formats were added. */
+    TEXT,
+    /** One JSON object per line (JSON Lines), with the record type on the {@code type} field. */
+    JSON,
+    /** Comma-separated values, with a header row whenever the type of the records changes. */
+    CSV,
+    /** Same as {@link #CSV}, but separated by tabs (and escaped with backslashes). */
+    TSV;
+
+    /** Gets the format with the given (case-insensitive) name. */
+    static Format fromName(String name) {
+      for (Format format : values()) {
+        if (format.name().equalsIgnoreCase(name)) {
+          return format;
+        }
+      }
+      throw new IllegalArgumentException(
+          "Invalid format '" + name + "'; must be one of " + Arrays.toString(values()));
+    }
+  }
+
+  private static final String TEXT_TYPE = "text";
+  private static final String[] TEXT_COLUMNS = {"text"};
+
+  protected final PrintWriter mOut;
+
+  private String mType;
+  private String[] mColumns;
+  private int mColumn;
+  private boolean mInRecord;
+  private boolean mInTextLine;
+
+  static ShellOutput create(PrintWriter out, Format format) {
+    switch (format) {
+      case JSON:
+        return new JsonOutput(out);
+      case CSV:
+        return new DelimitedOutput(out, ',');
+      case TSV:
+        return new DelimitedOutput(out, '\t');
+      default:
+        return new TextOutput(out);
+    }
+  }
+
+  private ShellOutput(PrintWriter out) {
+    mOut = out;
+  }
+
+  /** Whether the output is the human-readable {@link Format#TEXT} format. */
+  boolean isText() {
+    return false;
+  }
+
+  /** Declares the type and columns of the records written next. */
+  final void beginRecords(String type, String... columns) {
+    endTextLine();
+    mType = type;
+    mColumns = columns;
+    onBeginRecords(type, columns);
+  }
+
+  final void beginRecord() {
+    if (mInRecord) {
+      throw new IllegalStateException("Record of type " + mType + " was not ended");
+    }
+    mInRecord = true;
+    mColumn = 0;
+    onBeginRecord(mType);
+  }
+
+  final ShellOutput value(@Nullable CharSequence value) {
+    onValue(nextColumn(), value);
+    return this;
+  }
+
+  final ShellOutput value(long value) {
+    onValue(nextColumn(), value);
+    return this;
+  }
+
+  final ShellOutput value(boolean value) {
+    onValue(nextColumn(), value);
+    return this;
+  }
+
+  final void endRecord() {
+    if (mColumn != mColumns.length) {
+      throw new IllegalStateException(
+          String.format(
+              Locale.ROOT,
+              "Record of type %s has %d values, but %d columns",
+              mType,
+              mColumn,
+              mColumns.length));
+    }
+    onEndRecord();
+    mInRecord = false;
+  }
+
+  private String nextColumn() {
+    if (!mInRecord || mColumn >= mColumns.length) {
+      throw new IllegalStateException("Too many values for record of type " + mType);
+    }
+    return mColumns[mColumn++];
+  }
+
+  @Override
+  public void write(char[] chars, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      write(chars[i]);
+    }
+  }
+
+  @Override
+  public void write(String string, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      write(string.charAt(i));
+    }
+  }
+
+  @Override
+  public void write(int c) {
+    if (c == '\r') {
+      return;
+    }
+    if (c == '\n') {
+      if (!mInTextLine) {
+        beginTextLine();
+      }
+      endTextLine();
+      return;
+    }
+    if (!mInTextLine) {
+      beginTextLine();
+    }
+    onTextChar((char) c);
+  }
+
+  private void beginTextLine() {
+    if (mInRecord) {
+      throw new IllegalStateException("Cannot write text inside a record of type " + mType);
+    }
+    if (!TEXT_TYPE.equals(mType)) {
+      mType = TEXT_TYPE;
+      mColumns = TEXT_COLUMNS;
+      onBeginRecords(TEXT_TYPE, TEXT_COLUMNS);
+    }
+    mInTextLine = true;
+    onBeginTextLine();
+  }
+
+  private void endTextLine() {
+    if (mInTextLine) {
+      mInTextLine = false;
+      onEndTextLine();
+    }
+  }
+
+  @Override
+  public void flush() {
+    mOut.flush();
+  }
+
+  @Override
+  public void close() {
+    endTextLine();
+    flush();
+  }
+
+  protected void onBeginRecords(String type, String[] columns) {}
+
+  protected abstract void onBeginRecord(String type);
+
+  protected abstract void onValue(String column, @Nullable CharSequence value);
+
+  protected abstract void onValue(String column, long value);
+
+  protected abstract void onValue(String column, boolean value);
+
+  protected abstract void onEndRecord();
+
+  protected abstract void onBeginTextLine();
+
+  protected abstract void onTextChar(char c);
+
+  protected abstract void onEndTextLine();
+
+  /**
+   * Writes text as is; callers are expected to format their own values when {@link #isText()}, so
+   * records are only written as {@code column=value} pairs for completeness.
+   */
+  private static final class TextOutput extends ShellOutput {
+    private boolean mFirstValue;
+
+    private TextOutput(PrintWriter out) {
+      super(out);
+    }
+
+    @Override
+    boolean isText() {
+      return true;
+    }
+
+    @Override
+    protected void onBeginRecord(String type) {
+      mFirstValue = true;
+    }
+
+    @Override
+    protected void onValue(String column, @Nullable CharSequence value) {
+      beginValue(column);
+      mOut.append(value);
+    }
+
+    @Override
+    protected void onValue(String column, long value) {
+      beginValue(column);
+      mOut.print(value);
+    }
+
+    @Override
+    protected void onValue(String column, boolean value) {
+      beginValue(column);
+      mOut.print(value);
+    }
+
+    private void beginValue(String column) {
+      if (!mFirstValue) {
+        mOut.write(' ');
+      }
+      mFirstValue = false;
+      mOut.write(column);
+      mOut.write('=');
+    }
+
+    @Override
+    protected void onEndRecord() {
+      mOut.write('\n');
+    }
+
+    @Override
+    protected void onBeginTextLine() {}
+
+    @Override
+    protected void onTextChar(char c) {
+      mOut.write(c);
+    }
+
+    @Override
+    protected void onEndTextLine() {
+      mOut.write('\n');
+    }
+  }
+
+  /** Writes each record as a JSON object in its own line. */
+  private static final class JsonOutput extends ShellOutput {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private JsonOutput(PrintWriter out) {
+      super(out);
+    }
+
+    @Override
+    protected void onBeginRecord(String type) {
+      mOut.write("{\"type\":");
+      writeString(type);
+    }
+
+    @Override
+    protected void onValue(String column, @Nullable CharSequence value) {
+      writeKey(column);
+      if (value == null) {
+        mOut.write("null");
+      } else {
+        writeString(value);
+      }
+    }
+
+    @Override
+    protected void onValue(String column, long value) {
+      writeKey(column);
+      mOut.print(value);
+    }
+
+    @Override
+    protected void onValue(String column, boolean value) {
+      writeKey(column);
+      mOut.print(value);
+    }
+
+    @Override
+    protected void onEndRecord() {
+      mOut.write("}\n");
+    }
+
+    @Override
+    protected void onBeginTextLine() {
+      onBeginRecord(TEXT_TYPE);
+      writeKey(TEXT_COLUMNS[0]);
+      mOut.write('"');
+    }
+
+    @Override
+    protected void onTextChar(char c) {
+      writeEscaped(c);
+    }
+
+    @Override
+    protected void onEndTextLine() {
+      mOut.write('"');
+      onEndRecord();
+    }
+
+    private void writeKey(String key) {
+      mOut.write(',');
+      writeString(key);
+      mOut.write(':');
+    }
+
+    private void writeString(CharSequence value) {
+      mOut.write('"');
+      for (int i = 0; i < value.length(); i++) {
+        writeEscaped(value.charAt(i));
+      }
+      mOut.write('"');
+    }
+
+    private void writeEscaped(char c) {
+      switch (c) {
+        case '"':
+          mOut.write("\\\"");
+          break;
+        case '\\':
+          mOut.write("\\\\");
+          break;
+        case '\n':
+          mOut.write("\\n");
+          break;
+        case '\r':
+          mOut.write("\\r");
+          break;
+        case '\t':
+          mOut.write("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            mOut.write("\\u00");
+            mOut.write(HEX_DIGITS[c >> 4]);
+            mOut.write(HEX_DIGITS[c & 0xf]);
+          } else {
+            mOut.write(c);
+          }
+      }
+    }
+  }
+
+  /**
+   * Writes each record as a row of values separated by {@code ','} (CSV, quoted as defined by RFC
+   * 4180) or {@code '\t'} (TSV, escaped with backslashes). The first column of every row is the
+   * record type, and a header row (whose first column is {@code type}) is written whenever the type
+   * of the records changes.
+   */
+  private static final class DelimitedOutput extends ShellOutput {
+    private final char mSeparator;
+    private final boolean mQuoted;
+    @Nullable private String mHeaderType;
+
+    private DelimitedOutput(PrintWriter out, char separator) {
+      super(out);
+      mSeparator = separator;
+      mQuoted = separator == ',';
+    }
+
+    @Override
+    protected void onBeginRecords(String type, String[] columns) {
+      if (type.equals(mHeaderType)) {
+        return;
+      }
+      mHeaderType = type;
+      mOut.write("type");
+      for (String column : columns) {
+        mOut.write(mSeparator);
+        writeField(column);
+      }
+      mOut.write('\n');
+    }
+
+    @Override
+    protected void onBeginRecord(String type) {
+      writeField(type);
+    }
+
+    @Override
+    protected void onValue(String column, @Nullable CharSequence value) {
+      mOut.write(mSeparator);
+      if (value != null) {
+        writeField(value);
+      }
+    }
+
+    @Override
+    protected void onValue(String column, long value) {
+      mOut.write(mSeparator);
+      mOut.print(value);
+    }
+
+    @Override
+    protected void onValue(String column, boolean value) {
+      mOut.write(mSeparator);
+      mOut.print(value);
+    }
+
+    @Override
+    protected void onEndRecord() {
+      mOut.write('\n');
+    }
+
+    @Override
+    protected void onBeginTextLine() {
+      onBeginRecord(TEXT_TYPE);
+      mOut.write(mSeparator);
+      // The line is not known in advance, so it's always quoted
+      if (mQuoted) {
+        mOut.write('"');
+      }
+    }
+
+    @Override
+    protected void onTextChar(char c) {
+      writeEscaped(c);
+    }
+
+    @Override
+    protected void onEndTextLine() {
+      if (mQuoted) {
+        mOut.write('"');
+      }
+      onEndRecord();
+    }
+
+    private void writeField(CharSequence value) {
+      boolean quote = mQuoted && needsQuotes(value);
+      if (quote) {
+        mOut.write('"');
+      }
+      for (int i = 0; i < value.length(); i++) {
+        writeEscaped(value.charAt(i));
+      }
+      if (quote) {
+        mOut.write('"');
+      }
+    }
+
+    private boolean needsQuotes(CharSequence value) {
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c == mSeparator || c == '"' || c == '\n' || c == '\r') {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Escapes a character that is either quoted (CSV) or not (TSV). */
+    private void writeEscaped(char c) {
+      if (mQuoted) {
+        if (c == '"') {
+          mOut.write('"');
+        }
+        mOut.write(c);
+        return;
+      }
+      switch (c) {
+        case '\t':
+          mOut.write("\\t");
+          break;
+        case '\n':
+          mOut.write("\\n");
+          break;
+        case '\r':
+          mOut.write("\\r");
+          break;
+        case '\\':
+          mOut.write("\\\\");
+          break;
+        default:
+          mOut.write(c);
+      }
+    }
+  }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.common;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ComponentInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+import android.widget.TextView;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.afwsamples.testdpc.util.MainThreadExecutor;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads app icons (and labels) for list rows in the background, so binding a row doesn't block on
+ * the package manager.
+ *
+ * <p>Loaded icons are kept in an LRU cache bounded by their size in bytes. Rows asking for an icon
+ * that is already being loaded share the same load, and a row that is rebound (i.e. its views were
+ * recycled for another item) before its icon is loaded stops waiting for it; the load itself is
+ * cancelled once no row is waiting for it anymore.
+ *
+ * <p>Everything but the loads runs on the main thread.
+ */
+public final class AppIconLoader {
+
+  private static final String TAG = "AppIconLoader";
+
+  private static final int THREADS =
+      Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()));
+  private static final long KEEP_ALIVE_SECONDS = 30;
+  // Used for icons that aren't bitmaps (e.g. adaptive icons), as they're drawn at about this size
+  private static final int BYTES_PER_PIXEL = 4;
+  private static final String UID_KEY_PREFIX = "uid:";
+
+  private static AppIconLoader sInstance; // guarded by AppIconLoader.class
+
+  /** Loads the icon and label of an item, in the background. */
+  public interface Loader {
+    @NonNull
+    AppIcon load(@NonNull PackageManager packageManager) throws NameNotFoundException;
+  }
+
+  /** An icon and the label shown with it. */
+  public static final class AppIcon {
+    @Nullable private final Drawable mIcon;
+    @Nullable private final CharSequence mLabel;
+
+    public AppIcon(@Nullable Drawable icon, @Nullable CharSequence label) {
+      mIcon = icon;
+      mLabel = label;
+    }
+
+    @Nullable
+    public Drawable getIcon() {
+      return mIcon;
+    }
+
+    @Nullable
+    public CharSequence getLabel() {
+      return mLabel;
+    }
+  }
+
+  /** The views waiting for a load. */
+  private static final class Target {
+    private final ImageView mIconView;
+    @Nullable private final TextView mLabelView;
+    private final Load mLoad;
+
+    private Target(ImageView iconView, @Nullable TextView labelView, Load load) {
+      mIconView = iconView;
+      mLabelView = labelView;
+      mLoad = load;
+    }
+  }
+
+  /** A load in progress, shared by all the views asking for the same key. */
+  private static final class Load {
+    private final String mKey;
+    private final List<Target> mTargets = new ArrayList<>();
+    private ListenableFuture<AppIcon> mFuture;
+    // Set when the icons were dropped while loading, as the result may be outdated
+    private boolean mStale;
+
+    private Load(String key) {
+      mKey = key;
+    }
+  }
+
+  private final PackageManager mPackageManager;
+  private final ListeningExecutorService mExecutor =
+      MoreExecutors.listeningDecorator(createExecutor());
+  private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
+  private final LruCache<String, AppIcon> mCache;
+  // Both only accessed on the main thread
+  private final Map<String, Load> mLoads = new HashMap<>();
+  private final Map<ImageView, Target> mTargets = new WeakHashMap<>();
+
+  private final AtomicLong mCacheHits = new AtomicLong();
+  private final AtomicLong mCoalesced = new AtomicLong();
+  private final AtomicLong mLoaded = new AtomicLong();
+  private final AtomicLong mCancelled = new AtomicLong();
+
+  /** Returns the loader shared by the whole process. */
+  @NonNull
+  public static synchronized AppIconLoader get(@NonNull Context context) {
+    if (sInstance == null) {
+      // An eighth of the heap, which holds a few hundred icons on most devices
+      int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+      sInstance = new AppIconLoader(context.getApplicationContext().getPackageManager(), maxBytes);
+    }
+    return sInstance;
+  }
+
+  public AppIconLoader(@NonNull PackageManager packageManager, int maxBytes) {
+    mPackageManager = packageManager;
+    mCache =
+        new LruCache<String, AppIcon>(maxBytes) {
+          @Override
+          protected int sizeOf(String key, AppIcon appIcon) {
+            return estimateBytes(appIcon.getIcon());
+          }
+        };
+  }
+
+  /**
+   * Shows the icon and label of the given package, which is looked up with the given {@link
+   * PackageManager} flags. Nothing is shown if the package can't be found, so the label view should
+   * be set to something (e.g. the package name) beforehand.
+   */
+  @MainThread
+  public void load(
+      @NonNull ImageView iconView,
+      @Nullable TextView labelView,
+      @NonNull String packageName,
+      int flags) {
+    load(
+        iconView,
+        labelView,
+        packageName,
+        (packageManager) -> {
+          ApplicationInfo applicationInfo = packageManager.getApplicationInfo(packageName, flags);
+          return new AppIcon(
+              packageManager.getApplicationIcon(applicationInfo),
+              packageManager.getApplicationLabel(applicationInfo));
+        });
+  }
+
+  /** Shows the icon and label of the given app. */
+  @MainThread
+  public void load(
+      @NonNull ImageView iconView,
+      @Nullable TextView labelView,
+      @NonNull ApplicationInfo applicationInfo) {
+    load(
+        iconView,
+        labelView,
+        applicationInfo.packageName,
+        (packageManager) ->
+            new AppIcon(
+                packageManager.getApplicationIcon(applicationInfo),
+                packageManager.getApplicationLabel(applicationInfo)));
+  }
+
+  /** Shows the icon and label of the given component (activity, service, etc.). */
+  @MainThread
+  public void load(
+      @NonNull ImageView iconView, @Nullable TextView labelView, @NonNull ResolveInfo resolveInfo) {
+    load(
+        iconView,
+        labelView,
+        getKey(resolveInfo),
+        (packageManager) ->
+            new AppIcon(
+                resolveInfo.loadIcon(packageManager), resolveInfo.loadLabel(packageManager)));
+  }
+
+  /**
+   * Shows the icon and label loaded by the given loader, or the ones already cached for the given
+   * key. The icon view is cleared until they're loaded, and the label view (if any) is left as it
+   * is.
+   *
+   * <p>Any load the icon view was waiting for is dropped, as its row is being reused for another
+   * item.
+   *
+   * <p>The key must start with the name of the package the icon comes from, optionally followed by
+   * a {@code /} and anything else (e.g. the name of a component), or be a {@link #getUidKey uid
+   * key}. This is what {@link #evictPackage} relies on to find the icons of a package.
+   */
+  @MainThread
+  public void load(
+      @NonNull ImageView iconView,
+      @Nullable TextView labelView,
+      @NonNull String key,
+      @NonNull Loader loader) {
+    Target previousTarget = mTargets.get(iconView);
+    if (previousTarget != null && previousTarget.mLoad.mKey.equals(key)) {
+      // Rebound to the same item (e.g. after notifyDataSetChanged()), keep waiting for it
+      return;
+    }
+    cancel(iconView);
+
+    AppIcon appIcon = mCache.get(key);
+    if (appIcon != null) {
+      mCacheHits.incrementAndGet();
+      show(appIcon, iconView, labelView);
+      return;
+    }
+    iconView.setImageDrawable(null);
+
+    Load load = mLoads.get(key);
+    if (load == null) {
+      load = startLoad(key, loader);
+    } else {
+      mCoalesced.incrementAndGet();
+    }
+    Target target = new Target(iconView, labelView, load);
+    load.mTargets.add(target);
+    mTargets.put(iconView, target);
+  }
+
+  /**
+   * Stops waiting for the icon the given view is waiting for, if any. The load is cancelled unless
+   * other views are waiting for it too.
+   */
+  @MainThread
+  public void cancel(@NonNull ImageView iconView) {
+    Target target = mTargets.remove(iconView);
+    if (target == null) {
+      return;
+    }
+    Load load = target.mLoad;
+    load.mTargets.remove(target);
+    if (load.mTargets.isEmpty()) {
+      if (mLoads.get(load.mKey) == load) {
+        mLoads.remove(load.mKey);
+      }
+      if (load.mFuture.cancel(false)) {
+        mCancelled.incrementAndGet();
+      }
+    }
+  }
+
+  /** Returns the key of the icon of the app (or shared user) with the given uid. */
+  @NonNull
+  public static String getUidKey(int uid) {
+    return UID_KEY_PREFIX + uid;
+  }
+
+  /**
+   * Drops all the cached icons. The loads in progress are left to finish, but their icons aren't
+   * cached as they may have been loaded before the change.
+   */
+  @MainThread
+  public void clear() {
+    for (Load load : mLoads.values()) {
+      load.mStale = true;
+    }
+    mLoads.clear();
+    mCache.evictAll();
+  }
+
+  /**
+   * Drops the cached icons of the given package (e.g. when it was updated), and those of its uid
+   * unless it's {@code -1}. As with {@link #clear()}, the icons being loaded aren't cached.
+   */
+  @MainThread
+  public void evictPackage(@NonNull String packageName, int uid) {
+    String componentPrefix = packageName + "/";
+    String uidKey = uid == -1 ? null : getUidKey(uid);
+    Iterator<Load> loads = mLoads.values().iterator();
+    while (loads.hasNext()) {
+      Load load = loads.next();
+      if (isPackageKey(load.mKey, packageName, componentPrefix, uidKey)) {
+        load.mStale = true;
+        loads.remove();
+      }
+    }
+    for (String key : mCache.snapshot().keySet()) {
+      if (isPackageKey(key, packageName, componentPrefix, uidKey)) {
+        mCache.remove(key);
+      }
+    }
+  }
+
+  public void dump(@NonNull PrintWriter writer) {
+    writer.printf(
+        "appIconLoader: %d cached icons, %d/%d KiB (hits: %d, loaded: %d, coalesced: %d,"
+            + " cancelled: %d)\n",
+        mCache.snapshot().size(),
+        mCache.size() / 1024,
+        mCache.maxSize() / 1024,
+        mCacheHits.get(),
+        mLoaded.get(),
+        mCoalesced.get(),
+        mCancelled.get());
+  }
+
+  private Load startLoad(String key, Loader loader) {
+    Load load = new Load(key);
+    load.mFuture = mExecutor.submit(() -> loader.load(mPackageManager));
+    mLoads.put(key, load);
+    Futures.addCallback(
+        load.mFuture,
+        new FutureCallback<AppIcon>() {
+          @Override
+          public void onSuccess(AppIcon appIcon) {
+            mLoaded.incrementAndGet();
+            if (!load.mStale) {
+              mCache.put(key, appIcon);
+            }
+            finishLoad(load, appIcon);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (t instanceof CancellationException) {
+              return;
+            }
+            if (!(t instanceof NameNotFoundException)) {
+              Log.w(TAG, "Failed to load the icon of " + key, t);
+            }
+            finishLoad(load, null);
+          }
+        },
+        mMainThreadExecutor);
+    return load;
+  }
+
+  private void finishLoad(Load load, @Nullable AppIcon appIcon) {
+    if (mLoads.get(load.mKey) == load) {
+      mLoads.remove(load.mKey);
+    }
+    for (Target target : load.mTargets) {
+      // The views may have been rebound since, in which case they're waiting for another load
+      if (mTargets.get(target.mIconView) == target) {
+        mTargets.remove(target.mIconView);
+        if (appIcon != null) {
+          show(appIcon, target.mIconView, target.mLabelView);
+        }
+      }
+    }
+    load.mTargets.clear();
+  }
+
+  private static void show(AppIcon appIcon, ImageView iconView, @Nullable TextView labelView) {
+    Drawable icon = appIcon.getIcon();
+    // Each view gets its own drawable, as they hold per-view state (bounds, callback, etc.)
+    if (icon != null && icon.getConstantState() != null) {
+      icon = icon.getConstantState().newDrawable(iconView.getResources());
+    }
+    iconView.setImageDrawable(icon);
+    if (labelView != null && appIcon.getLabel() != null) {
+      labelView.setText(appIcon.getLabel());
+    }
+  }
+
+  private static boolean isPackageKey(
+      String key, String packageName, String componentPrefix, @Nullable String uidKey) {
+    return key.equals(packageName) || key.startsWith(componentPrefix) || key.equals(uidKey);
+  }
+
+  private static String getKey(ResolveInfo resolveInfo) {
+    ComponentInfo componentInfo =
+        resolveInfo.activityInfo != null
+            ? resolveInfo.activityInfo
+            : resolveInfo.serviceInfo != null ? resolveInfo.serviceInfo : resolveInfo.providerInfo;
+    return componentInfo.packageName + "/" + componentInfo.name;
+  }
+
+  private static int estimateBytes(@Nullable Drawable icon) {
+    if (icon == null) {
+      return 1;
+    }
+    if (icon instanceof BitmapDrawable) {
+      Bitmap bitmap = ((BitmapDrawable) icon).getBitmap();
+      if (bitmap != null) {
+        return bitmap.getByteCount();
+      }
+    }
+    return Math.max(1, icon.getIntrinsicWidth() * icon.getIntrinsicHeight() * BYTES_PER_PIXEL);
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    AtomicInteger createdThreads = new AtomicInteger();
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            THREADS,
+            THREADS,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            (runnable) ->
+                new Thread(runnable, "AppIconLoaderThread-" + createdThreads.incrementAndGet()));
+    // Icons are only loaded while lists are shown, so there's no need to keep the threads around
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.common;
+
+import android.content.Context;
+import android.content.pm.ComponentInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.pm.ResolveInfo;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.PrintWriter;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sorts apps and components by label, replacing {@code ApplicationInfo.DisplayNameComparator} and
+ * {@code ResolveInfo.DisplayNameComparator}, which load both labels in every comparison.
+ *
+ * <p>Each label is loaded at most once per sort (in parallel, for long lists) and turned into a
+ * {@link CollationKey}, so comparisons are just byte compares. The keys are also cached, by package
+ * (or component) and the package's {@link PackageInfo#lastUpdateTime}, so lists shown again don't
+ * load any label unless the app was updated (or the locale changed).
+ */
+public final class AppLabelSorter {
+
+  private static final String TAG = "AppLabelSorter";
+
+  // Shorter lists are labeled on the calling thread, as it's not worth handing them off
+  private static final int MIN_PARALLEL_ITEMS = 16;
+  private static final int THREADS =
+      Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  @SuppressWarnings("deprecation")
+  private static final int ALL_PACKAGES_FLAGS = PackageManager.GET_UNINSTALLED_PACKAGES;
+
+  private static AppLabelSorter sInstance; // guarded by AppLabelSorter.class
+
+  /** The label of an app or component, and the key to sort it by. */
+  public static final class SortKey implements Comparable<SortKey> {
+    private final String mLabel;
+    private final CollationKey mCollationKey;
+
+    private SortKey(String label, CollationKey collationKey) {
+      mLabel = label;
+      mCollationKey = collationKey;
+    }
+
+    @NonNull
+    public String getLabel() {
+      return mLabel;
+    }
+
+    @NonNull
+    public CollationKey getCollationKey() {
+      return mCollationKey;
+    }
+
+    @Override
+    public int compareTo(SortKey other) {
+      return mCollationKey.compareTo(other.mCollationKey);
+    }
+  }
+
+  /** How the items of a list are labeled. */
+  private interface Labeler<T> {
+    /** Returns what identifies the label of the item in the cache, or null to not cache it. */
+    String getCacheKey(T item);
+
+    /** Returns the {@link PackageInfo#lastUpdateTime} of the package of the item. */
+    long getLastUpdateTime(T item);
+
+    CharSequence loadLabel(T item);
+  }
+
+  private static final class CachedSortKey {
+    private final long mLastUpdateTime;
+    private final SortKey mSortKey;
+
+    private CachedSortKey(long lastUpdateTime, SortKey sortKey) {
+      mLastUpdateTime = lastUpdateTime;
+      mSortKey = sortKey;
+    }
+  }
+
+  private final PackageManager mPackageManager;
+  private final ExecutorService mExecutor = createExecutor();
+  private final Map<String, CachedSortKey> mCache = new ConcurrentHashMap<>();
+  private final AtomicLong mCacheHits = new AtomicLong();
+  private final AtomicLong mLabelsLoaded = new AtomicLong();
+
+  // Both replaced when the locale changes, which also clears the cache; guarded by this
+  private Locale mLocale;
+  private Collator mCollator;
+
+  /** Returns the sorter shared by the whole process. */
+  @NonNull
+  public static synchronized AppLabelSorter get(@NonNull Context context) {
+    if (sInstance == null) {
+      sInstance = new AppLabelSorter(context.getApplicationContext().getPackageManager());
+    }
+    return sInstance;
+  }
+
+  public AppLabelSorter(@NonNull PackageManager packageManager) {
+    mPackageManager = packageManager;
+  }
+
+  /** Sorts the given components (activities, services, etc.) by label. */
+  public void sortResolveInfos(@NonNull List<ResolveInfo> resolveInfos) {
+    // Looked up once per package, as there may be several components of the same package
+    Map<String, Long> lastUpdateTimes = new ConcurrentHashMap<>();
+    sort(
+        resolveInfos,
+        new Labeler<ResolveInfo>() {
+          @Override
+          public String getCacheKey(ResolveInfo resolveInfo) {
+            ComponentInfo componentInfo = getComponentInfo(resolveInfo);
+            if (componentInfo == null) {
+              return null;
+            }
+            // The label of the intent filter, if any, takes precedence over the component's one
+            return componentInfo.packageName
+                + "/"
+                + componentInfo.name
+                + "#"
+                + resolveInfo.labelRes
+                + (resolveInfo.nonLocalizedLabel == null ? "" : resolveInfo.nonLocalizedLabel);
+          }
+
+          @Override
+          public long getLastUpdateTime(ResolveInfo resolveInfo) {
+            ComponentInfo componentInfo = getComponentInfo(resolveInfo);
+            String packageName =
+                componentInfo == null ? resolveInfo.resolvePackageName : componentInfo.packageName;
+            if (packageName == null) {
+              return 0;
+            }
+            Long lastUpdateTime = lastUpdateTimes.get(packageName);
+            if (lastUpdateTime == null) {
+              lastUpdateTime = lookUpLastUpdateTime(packageName);
+              lastUpdateTimes.put(packageName, lastUpdateTime);
+            }
+            return lastUpdateTime;
+          }
+
+          @Override
+          public CharSequence loadLabel(ResolveInfo resolveInfo) {
+            return resolveInfo.loadLabel(mPackageManager);
+          }
+        });
+  }
+
+  /** Returns the sort keys of the given packages' apps, in the same order. */
+  @NonNull
+  public List<SortKey> getSortKeys(@NonNull List<PackageInfo> packageInfos) {
+    return Arrays.asList(
+        getSortKeys(
+            packageInfos,
+            new Labeler<PackageInfo>() {
+              @Override
+              public String getCacheKey(PackageInfo packageInfo) {
+                return packageInfo.packageName;
+              }
+
+              @Override
+              public long getLastUpdateTime(PackageInfo packageInfo) {
+                return packageInfo.lastUpdateTime;
+              }
+
+              @Override
+              public CharSequence loadLabel(PackageInfo packageInfo) {
+                return packageInfo.applicationInfo.loadLabel(mPackageManager);
+              }
+            }));
+  }
+
+  public void dump(@NonNull PrintWriter writer) {
+    writer.printf(
+        "appLabelSorter: %d cached labels (hits: %d, loaded: %d)\n",
+        mCache.size(), mCacheHits.get(), mLabelsLoaded.get());
+  }
+
+  private <T> void sort(List<T> items, Labeler<T> labeler) {
+    long start = System.nanoTime();
+    SortKey[] sortKeys = getSortKeys(items, labeler);
+    // Sorts the indexes rather than the items, as they need to be kept with their keys
+    Integer[] order = new Integer[items.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> sortKeys[a].compareTo(sortKeys[b]));
+    List<T> sortedItems = new ArrayList<>(items.size());
+    for (Integer index : order) {
+      sortedItems.add(items.get(index));
+    }
+    for (int i = 0; i < sortedItems.size(); i++) {
+      items.set(i, sortedItems.get(i));
+    }
+    Log.d(
+        TAG,
+        "Sorted "
+            + items.size()
+            + " items in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+            + "ms");
+  }
+
+  private <T> SortKey[] getSortKeys(List<T> items, Labeler<T> labeler) {
+    Collator collator = getCollator();
+    SortKey[] sortKeys = new SortKey[items.size()];
+    if (items.size() < MIN_PARALLEL_ITEMS) {
+      for (int i = 0; i < sortKeys.length; i++) {
+        sortKeys[i] = getSortKey(items.get(i), labeler, collator);
+      }
+      return sortKeys;
+    }
+
+    // Each task takes every THREADS-th item, so they get a similar mix of cached and new labels
+    List<Callable<Void>> tasks = new ArrayList<>(THREADS);
+    for (int task = 0; task < THREADS; task++) {
+      int first = task;
+      tasks.add(
+          () -> {
+            for (int i = first; i < sortKeys.length; i += THREADS) {
+              sortKeys[i] = getSortKey(items.get(i), labeler, collator);
+            }
+            return null;
+          });
+    }
+    try {
+      for (Future<Void> future : mExecutor.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof RuntimeException
+          ? (RuntimeException) cause
+          : new IllegalStateException(cause);
+    } catch (InterruptedException e) {
+      Log.w(TAG, "Interrupted while loading labels, loading the rest on this thread");
+      Thread.currentThread().interrupt();
+      for (int i = 0; i < sortKeys.length; i++) {
+        if (sortKeys[i] == null) {
+          sortKeys[i] = getSortKey(items.get(i), labeler, collator);
+        }
+      }
+    }
+    return sortKeys;
+  }
+
+  private <T> SortKey getSortKey(T item, Labeler<T> labeler, Collator collator) {
+    String cacheKey = labeler.getCacheKey(item);
+    long lastUpdateTime = cacheKey == null ? 0 : labeler.getLastUpdateTime(item);
+    CachedSortKey cached = cacheKey == null ? null : mCache.get(cacheKey);
+    if (cached != null && cached.mLastUpdateTime == lastUpdateTime) {
+      mCacheHits.incrementAndGet();
+      return cached.mSortKey;
+    }
+
+    CharSequence loadedLabel = labeler.loadLabel(item);
+    mLabelsLoaded.incrementAndGet();
+    String label = loadedLabel == null ? "" : loadedLabel.toString();
+    CollationKey collationKey;
+    // Collators aren't thread-safe, but getting a key is much cheaper than loading a label
+    synchronized (collator) {
+      collationKey = collator.getCollationKey(label);
+    }
+    SortKey sortKey = new SortKey(label, collationKey);
+    if (cacheKey != null) {
+      mCache.put(cacheKey, new CachedSortKey(lastUpdateTime, sortKey));
+    }
+    return sortKey;
+  }
+
+  /** Returns the collator for the current locale, clearing the cache if the locale changed. */
+  private synchronized Collator getCollator() {
+    Locale locale = Locale.getDefault();
+    if (!locale.equals(mLocale)) {
+      if (mLocale != null) {
+        Log.d(TAG, "Locale changed from " + mLocale + " to " + locale + ", clearing cache");
+      }
+      mCache.clear();
+      mLocale = locale;
+      mCollator = Collator.getInstance(locale);
+    }
+    return mCollator;
+  }
+
+  private long lookUpLastUpdateTime(String packageName) {
+    try {
+      return mPackageManager.getPackageInfo(packageName, ALL_PACKAGES_FLAGS).lastUpdateTime;
+    } catch (NameNotFoundException e) {
+      return 0;
+    }
+  }
+
+  private static ComponentInfo getComponentInfo(ResolveInfo resolveInfo) {
+    if (resolveInfo.activityInfo != null) {
+      return resolveInfo.activityInfo;
+    }
+    if (resolveInfo.serviceInfo != null) {
+      return resolveInfo.serviceInfo;
+    }
+    return resolveInfo.providerInfo;
+  }
+
+  private static ExecutorService createExecutor() {
+    AtomicInteger createdThreads = new AtomicInteger();
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            THREADS,
+            THREADS,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            (runnable) ->
+                new Thread(runnable, "AppLabelSorterThread-" + createdThreads.incrementAndGet()));
+    // Labels are only loaded when a list is shown, so there's no need to keep the threads around
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
@@ -19,8 +19,6 @@ package com.afwsamples.testdpc.common;
 import android.content.pm.ApplicationInfo;
 import android.widget.SpinnerAdapter;
 import com.afwsamples.testdpc.R;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -37,7 +35,6 @@ public abstract class ManageAppFragment extends BaseManageComponentFragment<Appl
   @Override
   protected SpinnerAdapter createSpinnerAdapter() {
     List<ApplicationInfo> managedAppList = getInstalledOrLaunchableApps();
-    Collections.sort(managedAppList, new ApplicationInfo.DisplayNameComparator(mPackageManager));
     return new AppInfoSpinnerAdapter(
         getActivity(), R.layout.app_row, R.id.pkg_name, managedAppList);
   }
@@ -50,19 +47,15 @@ public abstract class ManageAppFragment extends BaseManageComponentFragment<Appl
     return true;
   }
 
+  /** Returns the installed apps that are launchable, not system or allowlisted, sorted by label. */
   private List<ApplicationInfo> getInstalledOrLaunchableApps() {
-    List<ApplicationInfo> installedApps =
-        mPackageManager.getInstalledApplications(0 /* Default flags */);
-    List<ApplicationInfo> filteredAppList = new ArrayList<>();
-    for (ApplicationInfo applicationInfo : installedApps) {
-      if (mPackageManager.getLaunchIntentForPackage(applicationInfo.packageName) != null
-          || (applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) == 0
-          || ALLOWLISTED_APPS.contains(applicationInfo.packageName)) {
-        if (filterApp(applicationInfo)) {
-          filteredAppList.add(applicationInfo);
-        }
-      }
-    }
-    return filteredAppList;
+    return PackageSnapshot.get(getActivity())
+        .getApplicationInfos(
+            (app) ->
+                app.isEnabled()
+                    && (app.isLaunchable()
+                        || !app.isSystemApp()
+                        || ALLOWLISTED_APPS.contains(app.getPackageName()))
+                    && filterApp(app.getApplicationInfo()));
   }
 }
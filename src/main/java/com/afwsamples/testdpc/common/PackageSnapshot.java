@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.common;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.pm.ResolveInfo;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.afwsamples.testdpc.common.AppLabelSorter.SortKey;
+import java.io.PrintWriter;
+import java.text.CollationKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An index of the packages on the device, keyed by package name, so screens that list apps don't
+ * have to enumerate (and label) every package each time they're shown.
+ *
+ * <p>The index is built once in the background (see {@link #prefetch()}) and then updated one
+ * package at a time from the package broadcasts received by {@code PackageMonitorReceiver}, which
+ * calls {@link #onPackageChanged(String)}. While nothing forwards those broadcasts (for example,
+ * when {@code DeviceAdminService} isn't running), the index is rebuilt on every read instead, so
+ * it's never stale. Labels are loaded through {@link AppLabelSorter}, so a rebuild only loads the
+ * labels of the apps updated since the last one.
+ *
+ * <p>Reads return immutable lists and never block on updates, only on the first build.
+ */
+public final class PackageSnapshot {
+
+  private static final String TAG = "PackageSnapshot";
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  // Apps, including the ones uninstalled (or hidden) for the user, whose state is tracked here
+  @SuppressWarnings("deprecation")
+  private static final int ALL_PACKAGES_FLAGS = PackageManager.GET_UNINSTALLED_PACKAGES;
+
+  // Can't use Comparator.comparing(): requires default interface methods (min_sdk >= 24)
+  private static final Comparator<Entry> BY_LABEL =
+      (a, b) -> {
+        int result = a.mSortKey.compareTo(b.mSortKey);
+        return result != 0 ? result : a.getPackageName().compareTo(b.getPackageName());
+      };
+
+  private static PackageSnapshot sInstance; // guarded by PackageSnapshot.class
+
+  private static final class Index {
+    // The labels (and their order) depend on it
+    private final Locale mLocale = Locale.getDefault();
+    private final Map<String, Entry> mEntries;
+    private final List<Entry> mSortedEntries;
+
+    private Index(Map<String, Entry> entries) {
+      List<Entry> sortedEntries = new ArrayList<>(entries.values());
+      Collections.sort(sortedEntries, BY_LABEL);
+      mEntries = Collections.unmodifiableMap(entries);
+      mSortedEntries = Collections.unmodifiableList(sortedEntries);
+    }
+  }
+
+  /** State of a package, as of the last time the index was updated. */
+  public static final class Entry {
+    private final ApplicationInfo mApplicationInfo;
+    private final long mLastUpdateTime;
+    private final boolean mEnabled;
+    private final boolean mLaunchable;
+    private final SortKey mSortKey;
+
+    private Entry(PackageInfo packageInfo, boolean enabled, boolean launchable, SortKey sortKey) {
+      mApplicationInfo = packageInfo.applicationInfo;
+      mLastUpdateTime = packageInfo.lastUpdateTime;
+      mEnabled = enabled;
+      mLaunchable = launchable;
+      mSortKey = sortKey;
+    }
+
+    @NonNull
+    public String getPackageName() {
+      return mApplicationInfo.packageName;
+    }
+
+    /** Returns the {@link ApplicationInfo} of the package, which must not be modified. */
+    @NonNull
+    public ApplicationInfo getApplicationInfo() {
+      return mApplicationInfo;
+    }
+
+    /** Returns the {@link ApplicationInfo#flags} of the package. */
+    public int getFlags() {
+      return mApplicationInfo.flags;
+    }
+
+    /** Returns the {@link PackageInfo#lastUpdateTime} of the package. */
+    public long getLastUpdateTime() {
+      return mLastUpdateTime;
+    }
+
+    public boolean isSystemApp() {
+      return (mApplicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+    }
+
+    /**
+     * Returns whether the package is available to the user, i.e. it's returned by {@link
+     * PackageManager#getInstalledApplications} without {@code GET_UNINSTALLED_PACKAGES}; system
+     * apps that aren't are the ones that can be enabled with {@code enableSystemApp}.
+     */
+    public boolean isEnabled() {
+      return mEnabled;
+    }
+
+    /** Returns whether {@link PackageManager#getLaunchIntentForPackage} returns an intent. */
+    public boolean isLaunchable() {
+      return mLaunchable;
+    }
+
+    @NonNull
+    public String getLabel() {
+      return mSortKey.getLabel();
+    }
+
+    /** Returns the key used to sort the packages by label, in the default locale. */
+    @NonNull
+    public CollationKey getCollationKey() {
+      return mSortKey.getCollationKey();
+    }
+
+    @Override
+    public String toString() {
+      return getPackageName()
+          + "["
+          + (isSystemApp() ? "system" : "user")
+          + (mEnabled ? "" : ", disabled")
+          + (mLaunchable ? ", launchable" : "")
+          + "]";
+    }
+  }
+
+  private final PackageManager mPackageManager;
+  private final AppLabelSorter mAppLabelSorter;
+  private final Object mLock = new Object();
+  // Runs the background build and the updates, in order
+  private final Executor mExecutor = createExecutor();
+
+  // Replaced (never modified) on each update, so it can be read without locking
+  @Nullable private volatile Index mIndex;
+
+  private volatile boolean mMonitored;
+  // Only written with mLock held, but read without it so dumps don't wait for a build
+  private volatile int mFullBuilds;
+  private volatile int mUpdates;
+
+  /** Returns the index shared by the whole process. */
+  @NonNull
+  public static synchronized PackageSnapshot get(@NonNull Context context) {
+    if (sInstance == null) {
+      sInstance =
+          new PackageSnapshot(
+              context.getApplicationContext().getPackageManager(), AppLabelSorter.get(context));
+    }
+    return sInstance;
+  }
+
+  /**
+   * Creates an index that isn't shared (and hence isn't updated by {@code PackageMonitorReceiver}),
+   * so it's rebuilt on every read.
+   */
+  public PackageSnapshot(@NonNull PackageManager packageManager) {
+    this(packageManager, new AppLabelSorter(packageManager));
+  }
+
+  private PackageSnapshot(
+      @NonNull PackageManager packageManager, @NonNull AppLabelSorter appLabelSorter) {
+    mPackageManager = packageManager;
+    mAppLabelSorter = appLabelSorter;
+  }
+
+  /**
+   * Starts building the index in the background, if it's kept up to date and hasn't been built yet.
+   */
+  public void prefetch() {
+    if (mMonitored && mIndex == null) {
+      mExecutor.execute(() -> ensureBuilt());
+    }
+  }
+
+  /**
+   * Sets whether package broadcasts are forwarded to {@link #onPackageChanged(String)}; if not, the
+   * index is rebuilt on every read.
+   */
+  public void setMonitored(boolean monitored) {
+    Log.d(TAG, "setMonitored(" + monitored + ")");
+    mMonitored = monitored;
+    // Either changes will be missed from now on, or they may have been missed until now
+    mIndex = null;
+  }
+
+  /** Updates the state of the given package (added, removed, enabled, etc.) in the background. */
+  public void onPackageChanged(@NonNull String packageName) {
+    mExecutor.execute(() -> update(packageName));
+  }
+
+  /** Returns all the packages (including the ones not {@link Entry#isEnabled enabled}). */
+  @NonNull
+  public List<Entry> getPackages() {
+    return ensureBuilt().mSortedEntries;
+  }
+
+  /** Returns the package with the given name, or {@code null} if it's not on the device. */
+  @Nullable
+  public Entry getPackage(@NonNull String packageName) {
+    return ensureBuilt().mEntries.get(packageName);
+  }
+
+  /** Returns the names of the packages matching the given filter, sorted by label. */
+  @NonNull
+  public List<String> getPackageNames(@NonNull Filter filter) {
+    List<String> packageNames = new ArrayList<>();
+    for (Entry entry : getPackages()) {
+      if (filter.matches(entry)) {
+        packageNames.add(entry.getPackageName());
+      }
+    }
+    return packageNames;
+  }
+
+  /** Returns the {@link ApplicationInfo} of the packages matching the given filter. */
+  @NonNull
+  public List<ApplicationInfo> getApplicationInfos(@NonNull Filter filter) {
+    List<ApplicationInfo> applicationInfos = new ArrayList<>();
+    for (Entry entry : getPackages()) {
+      if (filter.matches(entry)) {
+        applicationInfos.add(entry.getApplicationInfo());
+      }
+    }
+    return applicationInfos;
+  }
+
+  /** Selects packages of the index. */
+  public interface Filter {
+    boolean matches(Entry entry);
+  }
+
+  public void dump(@NonNull PrintWriter writer) {
+    Index index = mIndex;
+    writer.printf(
+        "packageSnapshot: %s (monitored: %b, full builds: %d, updates: %d)\n",
+        index == null ? "not built" : index.mEntries.size() + " packages",
+        mMonitored,
+        mFullBuilds,
+        mUpdates);
+  }
+
+  private Index ensureBuilt() {
+    Index index = mIndex;
+    if (isUpToDate(index)) {
+      return index;
+    }
+    synchronized (mLock) {
+      // Checked again, as it may have been built while waiting for the lock
+      index = mIndex;
+      if (isUpToDate(index)) {
+        return index;
+      }
+      long start = System.nanoTime();
+      Set<String> enabledPackages = new HashSet<>();
+      for (ApplicationInfo info : mPackageManager.getInstalledApplications(/* flags= */ 0)) {
+        enabledPackages.add(info.packageName);
+      }
+      Set<String> launchablePackages = queryLaunchablePackages(/* packageName= */ null);
+      List<PackageInfo> packageInfos = mPackageManager.getInstalledPackages(ALL_PACKAGES_FLAGS);
+      List<SortKey> sortKeys = mAppLabelSorter.getSortKeys(packageInfos);
+      Map<String, Entry> entries = new HashMap<>();
+      for (int i = 0; i < packageInfos.size(); i++) {
+        PackageInfo info = packageInfos.get(i);
+        entries.put(
+            info.packageName,
+            new Entry(
+                info,
+                enabledPackages.contains(info.packageName),
+                launchablePackages.contains(info.packageName),
+                sortKeys.get(i)));
+      }
+      index = new Index(entries);
+      mIndex = index;
+      mFullBuilds++;
+      Log.d(
+          TAG,
+          "Indexed "
+              + entries.size()
+              + " packages in "
+              + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+              + "ms");
+      return index;
+    }
+  }
+
+  private void update(String packageName) {
+    synchronized (mLock) {
+      Index current = mIndex;
+      if (!isUpToDate(current)) {
+        // Not built yet (or not kept up to date), so the change will be seen when it's built
+        return;
+      }
+      Map<String, Entry> entries = new HashMap<>(current.mEntries);
+      try {
+        PackageInfo info = mPackageManager.getPackageInfo(packageName, ALL_PACKAGES_FLAGS);
+        entries.put(
+            packageName,
+            new Entry(
+                info,
+                isEnabledForUser(packageName),
+                !queryLaunchablePackages(packageName).isEmpty(),
+                mAppLabelSorter.getSortKeys(Collections.singletonList(info)).get(0)));
+      } catch (NameNotFoundException e) {
+        entries.remove(packageName);
+      }
+      mIndex = new Index(entries);
+      mUpdates++;
+      Log.d(TAG, "Updated " + packageName + ": " + entries.get(packageName));
+    }
+  }
+
+  private boolean isEnabledForUser(String packageName) {
+    try {
+      mPackageManager.getApplicationInfo(packageName, /* flags= */ 0);
+      return true;
+    } catch (NameNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the packages (or just the given one) with an activity that {@link
+   * PackageManager#getLaunchIntentForPackage} would return.
+   */
+  private Set<String> queryLaunchablePackages(@Nullable String packageName) {
+    Set<String> packageNames = new HashSet<>();
+    for (String category : new String[] {Intent.CATEGORY_INFO, Intent.CATEGORY_LAUNCHER}) {
+      Intent intent = new Intent(Intent.ACTION_MAIN).addCategory(category).setPackage(packageName);
+      for (ResolveInfo resolveInfo : mPackageManager.queryIntentActivities(intent, 0)) {
+        packageNames.add(resolveInfo.activityInfo.packageName);
+      }
+    }
+    return packageNames;
+  }
+
+  /** Returns whether the index can be used, rather than rebuilt. */
+  private boolean isUpToDate(@Nullable Index index) {
+    return mMonitored && index != null && index.mLocale.equals(Locale.getDefault());
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            (runnable) -> new Thread(runnable, "PackageSnapshotThread"));
+    // Updates are rare, so there's no need to keep the thread around
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
@@ -17,9 +17,9 @@
 package com.afwsamples.testdpc.common;
 
 import android.app.Fragment;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
+import android.content.Context;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -28,22 +28,53 @@ import android.widget.AdapterView.OnItemClickListener;
 import android.widget.EditText;
 import android.widget.ListView;
 import com.afwsamples.testdpc.R;
+import com.afwsamples.testdpc.util.MainThreadExecutor;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This fragment shows the list of apps, and allows the user to select one of them to perform a
  * certain operation as defined by {@link #setSelectedPackage}. Alternatively the user can manually
  * specify an app's package name, in case the app has not been installed yet.
+ *
+ * <p>The list is loaded in the background (a spinner is shown meanwhile) and kept in the saved
+ * state, so a recreated fragment shows it right away while it's reloaded in case apps were
+ * installed or removed since. A load still running when the fragment is recreated on a
+ * configuration change (e.g. on rotation) is picked up by the new instance rather than started
+ * over.
  */
 public abstract class SelectAppFragment extends Fragment
     implements View.OnClickListener, OnItemClickListener {
+  private static final String TAG = "SelectAppFragment";
+
+  private static final String KEY_APP_PACKAGES = "app_packages";
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  // Shared by all the screens, as only one is shown at a time
+  private static final ListeningExecutorService sExecutor =
+      MoreExecutors.listeningDecorator(createExecutor());
+  // Loads running, by fragment class; only accessed on the main thread
+  private static final Map<String, ListenableFuture<List<String>>> sPendingLoads = new HashMap<>();
 
   private EditText mCurrentSelectedPackage;
   private EditText mNewSelectedPackage;
   private ListView mAppListView;
-  private List<String> mAppPackages;
+  private View mProgressView;
+  private AppInfoArrayAdapter mAppInfoArrayAdapter;
+  // Null until loaded, or restored from the saved state
+  private ArrayList<String> mAppPackages;
+  private ListenableFuture<List<String>> mAppPackagesFuture;
 
   @Override
   public void onResume() {
@@ -54,7 +85,11 @@ public abstract class SelectAppFragment extends Fragment
   @Override
   public void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
-    mAppPackages = createAppList();
+    if (savedInstanceState != null) {
+      // Only shown until reloaded, as it may be stale
+      mAppPackages = savedInstanceState.getStringArrayList(KEY_APP_PACKAGES);
+    }
+    loadAppList();
   }
 
   @Override
@@ -65,27 +100,55 @@ public abstract class SelectAppFragment extends Fragment
     mCurrentSelectedPackage = view.findViewById(R.id.selected_package_current);
     mNewSelectedPackage = view.findViewById(R.id.selected_package_new);
     mAppListView = view.findViewById(R.id.select_app_list);
-    AppInfoArrayAdapter appInfoArrayAdapter =
-        new AppInfoArrayAdapter(getActivity(), R.id.pkg_name, mAppPackages, true);
-    mAppListView.setAdapter(appInfoArrayAdapter);
+    mProgressView = view.findViewById(R.id.select_app_progress);
+    mAppInfoArrayAdapter =
+        new AppInfoArrayAdapter(getActivity(), R.id.pkg_name, new ArrayList<>(), true);
+    mAppListView.setAdapter(mAppInfoArrayAdapter);
+    if (mAppPackages != null) {
+      showAppList();
+    }
     view.findViewById(R.id.selected_package_set).setOnClickListener(this);
     view.findViewById(R.id.selected_package_clear).setOnClickListener(this);
     mAppListView.setOnItemClickListener(this);
     return view;
   }
 
-  /** @return a list of apps that users are allowed to select from. */
-  protected List<String> createAppList() {
-    List<String> appList = new ArrayList<>();
-    PackageManager pm = getActivity().getPackageManager();
-    List<ApplicationInfo> allApps = pm.getInstalledApplications(0 /* No flag */);
-    Collections.sort(allApps, new ApplicationInfo.DisplayNameComparator(pm));
-    for (ApplicationInfo info : allApps) {
-      if ((pm.getLaunchIntentForPackage(info.packageName)) != null) {
-        appList.add(info.packageName);
-      }
+  @Override
+  public void onSaveInstanceState(Bundle outState) {
+    super.onSaveInstanceState(outState);
+    if (mAppPackages != null) {
+      outState.putStringArrayList(KEY_APP_PACKAGES, mAppPackages);
+    }
+  }
+
+  @Override
+  public void onDestroyView() {
+    super.onDestroyView();
+    mAppListView = null;
+    mProgressView = null;
+    mAppInfoArrayAdapter = null;
+  }
+
+  @Override
+  public void onDestroy() {
+    super.onDestroy();
+    // Kept running for the instance replacing this one
+    if (mAppPackagesFuture != null && !getActivity().isChangingConfigurations()) {
+      sPendingLoads.remove(getClass().getName());
+      mAppPackagesFuture.cancel(false);
     }
-    return appList;
+  }
+
+  /**
+   * Called on a background thread.
+   *
+   * @return a list of apps that users are allowed to select from.
+   */
+  protected List<String> createAppList(Context context) {
+    // Launchable apps are found with a single query of the launcher activities, rather than
+    // looking up the launch intent of each app
+    return PackageSnapshot.get(context)
+        .getPackageNames((app) -> app.isEnabled() && app.isLaunchable());
   }
 
   protected ViewGroup getExtensionLayout(View rootView) {
@@ -116,7 +179,7 @@ public abstract class SelectAppFragment extends Fragment
 
   @Override
   public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-    String packageName = mAppPackages.get(position);
+    String packageName = mAppInfoArrayAdapter.getItem(position);
     mNewSelectedPackage.setText(packageName);
   }
 
@@ -131,4 +194,90 @@ public abstract class SelectAppFragment extends Fragment
    * been cleared.
    */
   protected abstract String getSelectedPackage();
+
+  private void loadAppList() {
+    String key = getClass().getName();
+    mAppPackagesFuture = sPendingLoads.get(key);
+    if (mAppPackagesFuture == null) {
+      mAppPackagesFuture = startLoad(key);
+    }
+    Futures.addCallback(
+        mAppPackagesFuture,
+        new FutureCallback<List<String>>() {
+          @Override
+          public void onSuccess(List<String> appPackages) {
+            mAppPackagesFuture = null;
+            mAppPackages = new ArrayList<>(appPackages);
+            if (mAppListView != null) {
+              showAppList();
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (t instanceof CancellationException) {
+              return;
+            }
+            Log.e(TAG, "Failed to load the list of apps", t);
+            mAppPackagesFuture = null;
+            // Keeps the restored list, if any
+            if (mAppPackages == null) {
+              mAppPackages = new ArrayList<>();
+            }
+            if (mAppListView != null) {
+              showAppList();
+            }
+          }
+        },
+        new MainThreadExecutor());
+  }
+
+  /** Starts loading the list in the background, keeping it in {@link #sPendingLoads} until done. */
+  private ListenableFuture<List<String>> startLoad(String key) {
+    Context context = getActivity().getApplicationContext();
+    ListenableFuture<List<String>> future =
+        sExecutor.submit(
+            () -> {
+              long start = System.nanoTime();
+              List<String> appPackages = createAppList(context);
+              Log.d(
+                  TAG,
+                  "Loaded "
+                      + appPackages.size()
+                      + " apps in "
+                      + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                      + "ms");
+              return appPackages;
+            });
+    sPendingLoads.put(key, future);
+    future.addListener(
+        () -> {
+          if (sPendingLoads.get(key) == future) {
+            sPendingLoads.remove(key);
+          }
+        },
+        new MainThreadExecutor());
+    return future;
+  }
+
+  private void showAppList() {
+    mAppInfoArrayAdapter.clear();
+    mAppInfoArrayAdapter.addAll(mAppPackages);
+    mProgressView.setVisibility(View.GONE);
+    mAppListView.setVisibility(View.VISIBLE);
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            (runnable) -> new Thread(runnable, "SelectAppThread"));
+    // The list is only loaded when a screen is opened, so there's no need to keep the thread around
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
 }
@@ -19,10 +19,11 @@ package com.afwsamples.testdpc.common;
 import android.app.admin.DevicePolicyManager;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.ComponentInfo;
 import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ResolveInfo;
 import android.graphics.drawable.Drawable;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -63,29 +64,41 @@ public abstract class ToggleComponentsArrayAdapter extends ArrayAdapter<ResolveI
   }
 
   /**
-   * Get the display name of the item.
+   * Get the display name of the item. Called on a background thread, along with {@link
+   * #getApplicationIcon(ApplicationInfo)}.
    *
-   * @param position The position of a component in this adapter which should handle the click
-   *     event.
+   * @param resolveInfo The item, as it was when its view was bound.
+   * @param applicationInfo The {@link ApplicationInfo} of the item, as returned by {@link
+   *     #getApplicationInfo(ResolveInfo)}.
    */
-  public abstract CharSequence getDisplayName(int position);
+  public abstract CharSequence getDisplayName(
+      ResolveInfo resolveInfo, ApplicationInfo applicationInfo);
 
   @Override
   public View getView(final int position, View convertView, ViewGroup parent) {
-    ApplicationInfo applicationInfo = getApplicationInfo(position);
-    if (applicationInfo == null) {
-      Log.e(TAG, "Fail to retrieve application info for the entry: " + position);
-      return null;
-    }
+    // Captured now, as the items may have changed by the time the loader runs
+    ResolveInfo resolveInfo = getItem(position);
+    String packageName = getPackageName(resolveInfo);
 
     if (convertView == null) {
       convertView =
           LayoutInflater.from(getContext()).inflate(R.layout.enable_component_row, parent, false);
     }
     ImageView iconImageView = (ImageView) convertView.findViewById(R.id.pkg_icon);
-    iconImageView.setImageDrawable(getApplicationIcon(applicationInfo));
     TextView pkgNameTextView = (TextView) convertView.findViewById(R.id.pkg_name);
-    pkgNameTextView.setText(getDisplayName(position));
+    // Shown until the display name is loaded
+    pkgNameTextView.setText(packageName);
+    AppIconLoader.get(getContext())
+        .load(
+            iconImageView,
+            pkgNameTextView,
+            getIconKey(resolveInfo, packageName),
+            (packageManager) -> {
+              ApplicationInfo applicationInfo = getApplicationInfo(resolveInfo);
+              return new AppIconLoader.AppIcon(
+                  getApplicationIcon(applicationInfo),
+                  getDisplayName(resolveInfo, applicationInfo));
+            });
     CheckBox enableComponentCheckbox =
         (CheckBox) convertView.findViewById(R.id.enable_component_checkbox);
     enableComponentCheckbox.setOnClickListener(
@@ -121,15 +134,22 @@ public abstract class ToggleComponentsArrayAdapter extends ArrayAdapter<ResolveI
   }
 
   /**
-   * Gets the {@link android.content.pm.ApplicationInfo} of a service or an activity.
+   * Gets the {@link android.content.pm.ApplicationInfo} of a service or an activity. Called on a
+   * background thread, so it may query {@link android.content.pm.PackageManager}.
    *
-   * @param position The position of the view that requests {@link
-   *     android.content.pm.ApplicationInfo}.
-   * @return The {@link android.content.pm.ApplicationInfo} of a service or an activity at the given
-   *     position. The {@link android.content.pm.ApplicationInfo} should come from either a direct
-   *     or indirect query of {@link android.content.pm.PackageManager}.
+   * @param resolveInfo The item whose {@link android.content.pm.ApplicationInfo} is requested.
+   * @return The {@link android.content.pm.ApplicationInfo} of the service or activity, or of the
+   *     {@link ResolveInfo#resolvePackageName} package if the item has neither.
    */
-  protected abstract ApplicationInfo getApplicationInfo(int position);
+  protected ApplicationInfo getApplicationInfo(ResolveInfo resolveInfo)
+      throws NameNotFoundException {
+    ComponentInfo componentInfo = getComponentInfo(resolveInfo);
+    if (componentInfo != null) {
+      return componentInfo.applicationInfo;
+    }
+    return mPackageManager.getApplicationInfo(
+        resolveInfo.resolvePackageName, 0 /* Default flags */);
+  }
 
   /** Update {@link ToggleComponentsArrayAdapter#mIsComponentCheckedList}. */
   protected void setIsComponentEnabledList(List<Boolean> isComponentEnabledList) {
@@ -159,4 +179,23 @@ public abstract class ToggleComponentsArrayAdapter extends ArrayAdapter<ResolveI
   protected Drawable getApplicationIcon(ApplicationInfo applicationInfo) {
     return mPackageManager.getApplicationIcon(applicationInfo);
   }
+
+  private String getIconKey(ResolveInfo resolveInfo, String packageName) {
+    // Keyed by adapter too, as subclasses may show another icon or name for the same component
+    ComponentInfo componentInfo = getComponentInfo(resolveInfo);
+    return packageName
+        + "/"
+        + (componentInfo == null ? "" : componentInfo.name)
+        + ":"
+        + getClass().getName();
+  }
+
+  private static String getPackageName(ResolveInfo resolveInfo) {
+    ComponentInfo componentInfo = getComponentInfo(resolveInfo);
+    return componentInfo != null ? componentInfo.packageName : resolveInfo.resolvePackageName;
+  }
+
+  private static ComponentInfo getComponentInfo(ResolveInfo resolveInfo) {
+    return resolveInfo.activityInfo != null ? resolveInfo.activityInfo : resolveInfo.serviceInfo;
+  }
 }
@@ -26,12 +26,16 @@ import android.os.Handler;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
 import android.util.Xml;
+import com.afwsamples.testdpc.DevicePolicyManagerGatewayImpl;
+import com.afwsamples.testdpc.PolicyBatch;
 import com.afwsamples.testdpc.common.PackageInstallationUtils;
 import com.afwsamples.testdpc.common.Util;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -123,43 +127,38 @@ import org.xmlpull.v1.XmlPullParserException;
     DevicePolicyManager dpm =
         (DevicePolicyManager) mContext.getSystemService(Context.DEVICE_POLICY_SERVICE);
 
-    try {
-      dpm.setLockTaskPackages(admin, getKioskApps());
-    } catch (SecurityException e) {
-      Log.d(CosuUtils.TAG, "Exception when setting lock task packages", e);
-      return false;
-    }
-
-    // hide apps
+    // Applied as a batch, so a failure doesn't leave the device half configured
+    PolicyBatch.Builder batch =
+        PolicyBatch.builder(new DevicePolicyManagerGatewayImpl(mContext))
+            .setLockTaskPackages(getKioskApps());
     for (String pkg : mHideApps) {
-      dpm.setApplicationHidden(admin, pkg, true);
+      batch.setApplicationHidden(pkg, true);
     }
-
-    // enable system apps
+    // Before the restrictions, which may prevent enabling apps (e.g. no_install_apps)
     for (String pkg : mEnableSystemApps) {
-      try {
-        dpm.enableSystemApp(admin, pkg);
-      } catch (IllegalArgumentException e) {
-        Log.w(
-            CosuUtils.TAG,
-            "Failed to enable " + pkg + ". Operation is only allowed for system apps.");
-      }
+      batch.enableSystemApp(pkg);
     }
-
-    // set user restrictions
+    Map<String, Boolean> userRestrictions = new HashMap<>();
     for (String userRestriction : mUserRestrictions) {
-      dpm.addUserRestriction(admin, userRestriction);
+      userRestrictions.put(userRestriction, true);
     }
-
+    batch.setUserRestrictions(userRestrictions);
+    batch.setCameraDisabled(mDisableCamera);
+    // These can't be rolled back, so they go last
     for (GlobalSetting globalSetting : mGlobalSettings) {
-      dpm.setGlobalSetting(admin, globalSetting.key, globalSetting.value);
+      batch.setGlobalSetting(globalSetting.key, globalSetting.value);
+    }
+    batch.setScreenCaptureDisabled(mDisableScreenCapture);
+
+    PolicyBatch.Result result = batch.build().apply();
+    if (!result.isSuccessful()) {
+      Log.d(CosuUtils.TAG, "Exception when applying policies: " + result, result.getError());
+      return false;
     }
 
     if (Util.SDK_INT >= VERSION_CODES.M) {
       disableKeyGuardAndStatusBar(dpm, admin);
     }
-    dpm.setScreenCaptureDisabled(admin, mDisableScreenCapture);
-    dpm.setCameraDisabled(admin, mDisableCamera);
 
     return true;
   }
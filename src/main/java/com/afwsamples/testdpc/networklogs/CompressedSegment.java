@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The index of a segment compressed by {@link NetworkLogRetention}, which is kept uncompressed in
+ * front of the compressed segment so searches can skip it without decompressing it. Numbers are
+ * little-endian, as in segments.
+ *
+ * <pre>
+ * index      magic (int), version (short), unused (short), index length (int),
+ *            batch token (long), creation time (long), record count (int), min timestamp (long),
+ *            max timestamp (long), string count (int), strings (as in the segment)
+ * segment    the whole segment (see {@link SegmentFormat}), gzip-compressed
+ * </pre>
+ */
+final class CompressedSegment {
+
+  static final int MAGIC = 0x5a4e4454; // "TDNZ"
+  static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 12;
+  // Way more than the strings of a batch take
+  private static final int MAX_INDEX_LENGTH = 16 * 1024 * 1024;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // A batch takes way less, larger segments are still read but the buffer has to grow
+  private static final int MAX_INITIAL_CAPACITY = 4 * 1024 * 1024;
+
+  private final File mFile;
+  private final int mIndexLength;
+  private final long mBatchToken;
+  private final long mCreatedMillis;
+  private final int mRecordCount;
+  private final long mMinTimestamp;
+  private final long mMaxTimestamp;
+  private final String[] mStrings;
+
+  private CompressedSegment(File file, int indexLength, ByteBuffer index) throws IOException {
+    mFile = file;
+    mIndexLength = indexLength;
+    try {
+      mBatchToken = index.getLong();
+      mCreatedMillis = index.getLong();
+      mRecordCount = index.getInt();
+      mMinTimestamp = index.getLong();
+      mMaxTimestamp = index.getLong();
+      int stringCount = index.getInt();
+      if (mRecordCount < 0 || stringCount < 0 || stringCount > index.remaining() / 2) {
+        throw new IOException("Corrupted compressed segment: " + file);
+      }
+      mStrings = new String[stringCount];
+      byte[] bytes = new byte[SegmentFormat.MAX_STRING_LENGTH];
+      for (int i = 0; i < stringCount; i++) {
+        int length = index.getShort() & 0xffff;
+        if (length > bytes.length) {
+          throw new IOException("Corrupted compressed segment: " + file);
+        }
+        index.get(bytes, 0, length);
+        mStrings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Corrupted compressed segment: " + file, e);
+    }
+  }
+
+  /** Reads the index of the given compressed segment, without decompressing it. */
+  static CompressedSegment read(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(SegmentFormat.BYTE_ORDER);
+      in.readFully(header.array());
+      int version = header.getShort(4);
+      int indexLength = header.getInt(8);
+      if (header.getInt(0) != MAGIC) {
+        throw new IOException("Not a compressed segment: " + file);
+      }
+      if (version != VERSION) {
+        throw new IOException("Unsupported compressed segment version " + version + ": " + file);
+      }
+      if (indexLength < HEADER_SIZE || indexLength > MAX_INDEX_LENGTH) {
+        throw new IOException("Corrupted compressed segment: " + file);
+      }
+      ByteBuffer index =
+          ByteBuffer.allocate(indexLength - HEADER_SIZE).order(SegmentFormat.BYTE_ORDER);
+      in.readFully(index.array());
+      return new CompressedSegment(file, indexLength, index);
+    } catch (EOFException e) {
+      throw new IOException("Truncated compressed segment: " + file, e);
+    }
+  }
+
+  /**
+   * Replaces the given segment with a compressed copy, written to a temporary file first so a
+   * partial copy is never left behind. The copy keeps the modification time of the segment, and its
+   * name with {@link SegmentFormat#COMPRESSED_FILE_SUFFIX} as the suffix.
+   *
+   * @return the compressed segment.
+   */
+  static File compress(File segment) throws IOException {
+    String name = segment.getName();
+    if (name.endsWith(SegmentFormat.FILE_SUFFIX)) {
+      name = name.substring(0, name.length() - SegmentFormat.FILE_SUFFIX.length());
+    }
+    File compressed =
+        new File(segment.getParentFile(), name + SegmentFormat.COMPRESSED_FILE_SUFFIX);
+    File tempFile = new File(compressed.getPath() + ".tmp");
+    byte[] index;
+    try (NetworkLogSegmentReader reader = NetworkLogSegmentReader.open(segment)) {
+      index = writeIndex(reader);
+    }
+    try (InputStream in = new FileInputStream(segment);
+        FileOutputStream stream = new FileOutputStream(tempFile)) {
+      stream.write(index);
+      GZIPOutputStream out = new GZIPOutputStream(stream, BUFFER_SIZE);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        out.write(buffer, 0, count);
+      }
+      out.finish();
+      stream.getFD().sync();
+    } catch (IOException e) {
+      tempFile.delete();
+      throw e;
+    }
+    // Kept, as it's the time the segment was written
+    tempFile.setLastModified(segment.lastModified());
+    if (!tempFile.renameTo(compressed)) {
+      tempFile.delete();
+      throw new IOException("Failed to rename " + tempFile + " to " + compressed);
+    }
+    segment.delete();
+    return compressed;
+  }
+
+  private static byte[] writeIndex(NetworkLogSegmentReader reader) {
+    byte[][] strings = new byte[reader.getStringCount()][];
+    int length = HEADER_SIZE + 40;
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = reader.getString(i).getBytes(StandardCharsets.UTF_8);
+      length += 2 + strings[i].length;
+    }
+    ByteBuffer index =
+        ByteBuffer.allocate(length)
+            .order(SegmentFormat.BYTE_ORDER)
+            .putInt(MAGIC)
+            .putShort((short) VERSION)
+            .putShort((short) 0)
+            .putInt(length)
+            .putLong(reader.getBatchToken())
+            .putLong(reader.getCreatedMillis())
+            .putInt(reader.getRecordCount())
+            .putLong(reader.getMinTimestamp())
+            .putLong(reader.getMaxTimestamp())
+            .putInt(strings.length);
+    for (byte[] string : strings) {
+      index.putShort((short) string.length).put(string);
+    }
+    return index.array();
+  }
+
+  File getFile() {
+    return mFile;
+  }
+
+  /** Returns the length of the index, which the compressed segment follows. */
+  int getIndexLength() {
+    return mIndexLength;
+  }
+
+  long getBatchToken() {
+    return mBatchToken;
+  }
+
+  long getCreatedMillis() {
+    return mCreatedMillis;
+  }
+
+  int getRecordCount() {
+    return mRecordCount;
+  }
+
+  long getMinTimestamp() {
+    return mMinTimestamp;
+  }
+
+  long getMaxTimestamp() {
+    return mMaxTimestamp;
+  }
+
+  /**
+   * Returns whether some records of the segment may match the given filter, i.e. it has records in
+   * its time range, and the package and hostname it's looking for.
+   */
+  boolean mayMatch(NetworkLogFilter filter) {
+    if (mRecordCount == 0 || !filter.overlaps(mMinTimestamp, mMaxTimestamp)) {
+      return false;
+    }
+    boolean anyPackage = filter.getPackageName() == null;
+    boolean anyHostname = filter.getHostname() == null;
+    for (int i = 0; i < mStrings.length && !(anyPackage && anyHostname); i++) {
+      anyPackage |= mStrings[i].equals(filter.getPackageName());
+      anyHostname |= filter.matchesHostname(mStrings[i]);
+    }
+    return anyPackage && anyHostname;
+  }
+
+  /** Returns the contents of the segment. */
+  byte[] decompress() throws IOException {
+    long length = getUncompressedLength(mFile);
+    // Only a hint, as the file may be corrupted
+    ByteArrayOutputStream bytes =
+        new ByteArrayOutputStream((int) Math.min(length, MAX_INITIAL_CAPACITY));
+    try (FileInputStream stream = new FileInputStream(mFile)) {
+      stream.getChannel().position(mIndexLength);
+      InputStream in = new GZIPInputStream(stream, BUFFER_SIZE);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        bytes.write(buffer, 0, count);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Returns the size of the contents of the given compressed segment, which gzip keeps (modulo
+   * 2^32) in the last 4 bytes of the file, little-endian.
+   */
+  static long getUncompressedLength(File file) throws IOException {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      if (randomAccessFile.length() < HEADER_SIZE + 4) {
+        throw new IOException("Not a compressed segment: " + file);
+      }
+      randomAccessFile.seek(randomAccessFile.length() - 4);
+      return Integer.reverseBytes(randomAccessFile.readInt()) & 0xffffffffL;
+    }
+  }
+}
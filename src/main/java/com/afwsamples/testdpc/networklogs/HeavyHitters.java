@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most frequent values added, counting at most a fixed number of them (the "Space-Saving"
+ * algorithm).
+ *
+ * <p>Once all the counters are taken, a new value replaces the least counted one and inherits its
+ * count, which is kept as the new value's possible overcount. Any value counted more than {@code
+ * total / capacity} times is guaranteed to have a counter.
+ */
+public final class HeavyHitters {
+
+  /** A counted value. */
+  public static final class Entry {
+    private final String mValue;
+    private long mCount;
+    private long mError;
+
+    private Entry(String value, long count, long error) {
+      mValue = value;
+      mCount = count;
+      mError = error;
+    }
+
+    public String getValue() {
+      return mValue;
+    }
+
+    /** Returns the number of times the value was counted, which may be over by the error. */
+    public long getCount() {
+      return mCount;
+    }
+
+    /** Returns by how much the count may be over. */
+    public long getError() {
+      return mError;
+    }
+  }
+
+  private final int mCapacity;
+  private final Map<String, Entry> mEntries;
+
+  HeavyHitters(int capacity) {
+    mCapacity = capacity;
+    mEntries = new HashMap<>(capacity * 2);
+  }
+
+  void add(String value) {
+    add(value, 1, 0);
+  }
+
+  /** Adds the values counted by {@code other} to this sketch. */
+  void merge(HeavyHitters other) {
+    for (Entry entry : other.mEntries.values()) {
+      add(entry.mValue, entry.mCount, entry.mError);
+    }
+  }
+
+  private void add(String value, long count, long error) {
+    Entry entry = mEntries.get(value);
+    if (entry != null) {
+      entry.mCount += count;
+      entry.mError += error;
+      return;
+    }
+    if (mEntries.size() < mCapacity) {
+      mEntries.put(value, new Entry(value, count, error));
+      return;
+    }
+    // A linear scan is fine for the few counters kept
+    Entry min = null;
+    for (Entry candidate : mEntries.values()) {
+      if (min == null || candidate.mCount < min.mCount) {
+        min = candidate;
+      }
+    }
+    mEntries.remove(min.mValue);
+    mEntries.put(value, new Entry(value, min.mCount + count, min.mCount + error));
+  }
+
+  /** Returns up to {@code count} of the most frequent values, most frequent first. */
+  public List<Entry> getTop(int count) {
+    List<Entry> entries = new ArrayList<>(mEntries.values());
+    // Can't use Comparator.comparing(): requires default interface methods (min_sdk >= 24).
+    Collections.sort(
+        entries,
+        (e1, e2) -> {
+          int byCount = Long.compare(e2.mCount, e1.mCount);
+          return byCount != 0 ? byCount : e1.mValue.compareTo(e2.mValue);
+        });
+    return entries.subList(0, Math.min(count, entries.size()));
+  }
+
+  void writeTo(DataOutput out) throws IOException {
+    out.writeInt(mEntries.size());
+    for (Entry entry : mEntries.values()) {
+      out.writeUTF(entry.mValue);
+      out.writeLong(entry.mCount);
+      out.writeLong(entry.mError);
+    }
+  }
+
+  static HeavyHitters readFrom(DataInput in, int capacity) throws IOException {
+    HeavyHitters sketch = new HeavyHitters(capacity);
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException("Invalid sketch size: " + count);
+    }
+    for (int i = 0; i < count; i++) {
+      sketch.add(in.readUTF(), in.readLong(), in.readLong());
+    }
+    return sketch;
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Estimates the number of distinct values added in a fixed 1 KB, with a standard error of about 3%.
+ *
+ * <p>Values are hashed to 64 bits; each of the 1024 registers keeps the highest rank (position of
+ * the first set bit) of the hashes routed to it. Sketches are merged by keeping the highest
+ * registers, so batches can be counted separately and merged afterwards.
+ */
+final class HyperLogLog {
+
+  private static final int PRECISION = 10;
+  private static final int REGISTER_COUNT = 1 << PRECISION;
+  private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTER_COUNT);
+
+  private final byte[] mRegisters = new byte[REGISTER_COUNT];
+  private int mNonZeroRegisters;
+
+  void add(String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    addHash(hash(bytes, bytes.length));
+  }
+
+  void add(byte[] value, int length) {
+    addHash(hash(value, length));
+  }
+
+  private void addHash(long hash) {
+    int register = (int) (hash >>> (Long.SIZE - PRECISION));
+    // The remaining bits, with a sentinel so the rank is at most 64 - PRECISION + 1
+    long bits = (hash << PRECISION) | (1L << (PRECISION - 1));
+    setRegister(register, (byte) (Long.numberOfLeadingZeros(bits) + 1));
+  }
+
+  private void setRegister(int register, byte rank) {
+    if (rank > mRegisters[register]) {
+      if (mRegisters[register] == 0) {
+        mNonZeroRegisters++;
+      }
+      mRegisters[register] = rank;
+    }
+  }
+
+  /** Adds the values counted by {@code other} to this sketch. */
+  void merge(HyperLogLog other) {
+    for (int i = 0; i < REGISTER_COUNT; i++) {
+      setRegister(i, other.mRegisters[i]);
+    }
+  }
+
+  /** Returns the estimated number of distinct values added. */
+  long estimate() {
+    if (mNonZeroRegisters == 0) {
+      return 0;
+    }
+    double sum = 0;
+    for (byte rank : mRegisters) {
+      sum += 1.0 / (1L << rank);
+    }
+    double estimate = ALPHA * REGISTER_COUNT * REGISTER_COUNT / sum;
+    int zeroRegisters = REGISTER_COUNT - mNonZeroRegisters;
+    if (estimate <= 2.5 * REGISTER_COUNT && zeroRegisters > 0) {
+      // Linear counting is more accurate for small cardinalities
+      estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / zeroRegisters);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * Writes the sketch. Sketches of few values (i.e. most registers are empty) only write their
+   * non-empty registers.
+   */
+  void writeTo(DataOutput out) throws IOException {
+    // 3 bytes per register when sparse
+    boolean sparse = mNonZeroRegisters * 3 < REGISTER_COUNT;
+    out.writeShort(sparse ? mNonZeroRegisters : REGISTER_COUNT);
+    if (!sparse) {
+      out.write(mRegisters);
+      return;
+    }
+    for (int i = 0; i < REGISTER_COUNT; i++) {
+      if (mRegisters[i] != 0) {
+        out.writeShort(i);
+        out.writeByte(mRegisters[i]);
+      }
+    }
+  }
+
+  static HyperLogLog readFrom(DataInput in) throws IOException {
+    HyperLogLog sketch = new HyperLogLog();
+    int count = in.readUnsignedShort();
+    if (count == REGISTER_COUNT) {
+      byte[] registers = new byte[REGISTER_COUNT];
+      in.readFully(registers);
+      for (int i = 0; i < REGISTER_COUNT; i++) {
+        sketch.setRegister(i, checkRank(registers[i]));
+      }
+      return sketch;
+    }
+    if (count * 3 >= REGISTER_COUNT) {
+      throw new IOException("Invalid sketch register count: " + count);
+    }
+    for (int i = 0; i < count; i++) {
+      int register = in.readUnsignedShort();
+      if (register >= REGISTER_COUNT) {
+        throw new IOException("Invalid sketch register: " + register);
+      }
+      sketch.setRegister(register, checkRank(in.readByte()));
+    }
+    return sketch;
+  }
+
+  private static byte checkRank(byte rank) throws IOException {
+    if (rank < 0 || rank > Long.SIZE - PRECISION + 1) {
+      throw new IOException("Invalid sketch rank: " + rank);
+    }
+    return rank;
+  }
+
+  /** 64-bit FNV-1a, with MurmurHash3's finalizer to spread the bits FNV leaves correlated. */
+  private static long hash(byte[] bytes, int length) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < length; i++) {
+      hash ^= bytes[i] & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import java.util.Locale;
+
+/**
+ * Selects network log records by package, hostname and time range. Immutable.
+ *
+ * <p>Only DNS lookups have a hostname, so connections never match a hostname filter.
+ */
+public final class NetworkLogFilter {
+
+  /** Matches all the records. */
+  public static final NetworkLogFilter ALL =
+      new NetworkLogFilter(null, null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+  private final String mPackageName;
+  private final String mHostname;
+  private final long mFromMillis;
+  private final long mToMillis;
+
+  /**
+   * @param packageName package the records must come from, or {@code null} for any.
+   * @param hostname part of the hostname looked up (ignoring case), or {@code null} for any.
+   * @param fromMillis time of the earliest record to match.
+   * @param toMillis time of the latest record to match.
+   */
+  public NetworkLogFilter(String packageName, String hostname, long fromMillis, long toMillis) {
+    mPackageName = isEmpty(packageName) ? null : packageName;
+    mHostname = isEmpty(hostname) ? null : hostname.toLowerCase(Locale.ROOT);
+    mFromMillis = fromMillis;
+    mToMillis = toMillis;
+  }
+
+  public String getPackageName() {
+    return mPackageName;
+  }
+
+  /** Returns the lower case part of the hostname to match, or {@code null} for any. */
+  public String getHostname() {
+    return mHostname;
+  }
+
+  public long getFromMillis() {
+    return mFromMillis;
+  }
+
+  public long getToMillis() {
+    return mToMillis;
+  }
+
+  /** Returns whether records between the given times may match. */
+  public boolean overlaps(long minMillis, long maxMillis) {
+    return minMillis <= mToMillis && maxMillis >= mFromMillis;
+  }
+
+  /** Returns whether all the records between the given times match the time range. */
+  public boolean covers(long minMillis, long maxMillis) {
+    return minMillis >= mFromMillis && maxMillis <= mToMillis;
+  }
+
+  public boolean matchesTime(long timestampMillis) {
+    return timestampMillis >= mFromMillis && timestampMillis <= mToMillis;
+  }
+
+  public boolean matchesHostname(String hostname) {
+    return mHostname == null
+        || (hostname != null && hostname.toLowerCase(Locale.ROOT).contains(mHostname));
+  }
+
+  @Override
+  public String toString() {
+    return "NetworkLogFilter(package="
+        + mPackageName
+        + ", hostname="
+        + mHostname
+        + ", from="
+        + mFromMillis
+        + ", to="
+        + mToMillis
+        + ")";
+  }
+
+  private static boolean isEmpty(String string) {
+    return string == null || string.isEmpty();
+  }
+}
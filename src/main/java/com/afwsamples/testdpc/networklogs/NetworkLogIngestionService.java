@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import android.annotation.TargetApi;
+import android.app.admin.DevicePolicyManager;
+import android.app.admin.NetworkEvent;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Toast;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.afwsamples.testdpc.R;
+import com.afwsamples.testdpc.util.LatencyHistogram;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retrieves and stores the network log batches queued by {@link #enqueue}, so the admin receiver
+ * doesn't have to do it on the main thread.
+ *
+ * <p>The batches are kept in a {@link NetworkLogQueue} until stored, and stored one at a time,
+ * lowest token first. A batch that fails to be stored holds up the ones after it: the job is
+ * rescheduled with an exponential backoff, and the batch given up on after {@value #MAX_ATTEMPTS}
+ * attempts. As the job is persisted, batches left in the queue when the process dies are stored
+ * once it's restarted (possibly twice, if it died right after storing one).
+ */
+@TargetApi(VERSION_CODES.O)
+public class NetworkLogIngestionService extends JobService {
+
+  private static final String TAG = "NetworkLogIngestion";
+
+  // Unique among the app's jobs
+  private static final int JOB_ID = 0x4e4c4a00;
+
+  private static final String QUEUE_FILE_NAME = "network_log_queue";
+
+  // The platform only keeps the last 5 batches for retrieval, older ones can't be stored anyway
+  private static final int QUEUE_CAPACITY = 5;
+
+  private static final int MAX_ATTEMPTS = 5;
+  private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static final ThreadPoolExecutor sExecutor = createExecutor();
+
+  private static NetworkLogQueue sQueue; // guarded by NetworkLogIngestionService.class
+  private static boolean sRunning; // guarded by NetworkLogIngestionService.class
+
+  // Since the process started
+  private static final LatencyHistogram sLagMillis = new LatencyHistogram();
+  private static final AtomicLong sStoredBatches = new AtomicLong();
+  private static final AtomicLong sStoredEvents = new AtomicLong();
+  private static final AtomicLong sRetries = new AtomicLong();
+  private static final AtomicLong sExpiredBatches = new AtomicLong();
+  private static final AtomicLong sDroppedBatches = new AtomicLong();
+  private static final AtomicLong sFailedBatches = new AtomicLong();
+
+  private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+  private volatile boolean mStopped;
+
+  /**
+   * Queues a batch announced as available, and makes sure a job is scheduled to store it. Only
+   * writes a small file, so it can be called on the main thread.
+   *
+   * @param admin the admin the batch was announced to, or {@code null} for a delegate.
+   */
+  public static void enqueue(
+      @NonNull Context context, @Nullable ComponentName admin, long batchToken, int eventCount) {
+    synchronized (NetworkLogIngestionService.class) {
+      try {
+        NetworkLogQueue.Entry dropped =
+            getQueue(context)
+                .add(
+                    batchToken,
+                    System.currentTimeMillis(),
+                    eventCount,
+                    admin == null ? null : admin.flattenToString());
+        if (dropped != null) {
+          sDroppedBatches.incrementAndGet();
+          Log.w(TAG, "Queue full, dropped network logs batch " + dropped.getBatchToken());
+        }
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to queue network logs batch " + batchToken, e);
+        return;
+      }
+      // A running job picks up the new batch by itself, scheduling it again would stop it
+      if (!sRunning) {
+        schedule(context);
+      }
+    }
+  }
+
+  private static void schedule(Context context) {
+    JobInfo job =
+        new JobInfo.Builder(JOB_ID, new ComponentName(context, NetworkLogIngestionService.class))
+            .setOverrideDeadline(0)
+            .setBackoffCriteria(INITIAL_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+            .setPersisted(true)
+            .build();
+    context.getSystemService(JobScheduler.class).schedule(job);
+  }
+
+  private static synchronized NetworkLogQueue getQueue(Context context) throws IOException {
+    if (sQueue == null) {
+      File file = new File(context.getFilesDir(), QUEUE_FILE_NAME);
+      try {
+        sQueue = NetworkLogQueue.load(file, QUEUE_CAPACITY);
+      } catch (IOException e) {
+        // The batches queued are lost, but the next ones shouldn't be
+        Log.e(TAG, "Failed to load network logs queue, starting over", e);
+        sQueue = NetworkLogQueue.create(file, QUEUE_CAPACITY);
+      }
+    }
+    return sQueue;
+  }
+
+  @Override
+  public boolean onStartJob(JobParameters params) {
+    synchronized (NetworkLogIngestionService.class) {
+      sRunning = true;
+    }
+    mStopped = false;
+    sExecutor.execute(
+        () -> {
+          boolean reschedule = true;
+          try {
+            reschedule = storeQueuedBatches();
+          } finally {
+            // Once stopped, the job may already be running again
+            if (!mStopped) {
+              synchronized (NetworkLogIngestionService.class) {
+                sRunning = false;
+              }
+              jobFinished(params, reschedule);
+            }
+          }
+        });
+    return true;
+  }
+
+  @Override
+  public boolean onStopJob(JobParameters params) {
+    mStopped = true;
+    synchronized (NetworkLogIngestionService.class) {
+      sRunning = false;
+    }
+    // Resumes from the first batch not stored yet
+    return true;
+  }
+
+  /** Stores the queued batches until the queue is empty, returning whether to retry later. */
+  private boolean storeQueuedBatches() {
+    DevicePolicyManager dpm = getSystemService(DevicePolicyManager.class);
+    NetworkLogStore store = new NetworkLogStore(this);
+    try {
+      NetworkLogQueue queue = getQueue(this);
+      while (!mStopped) {
+        NetworkLogQueue.Entry entry;
+        synchronized (NetworkLogIngestionService.class) {
+          entry = queue.peek();
+          if (entry == null) {
+            // Cleared along with the check, so a batch queued right after schedules a new job
+            sRunning = false;
+            return false;
+          }
+        }
+        // Merged once removed from the queue, as the batch is stored again if that fails
+        NetworkLogStats stats = new NetworkLogStats();
+        NetworkLogQueue.Attempt attempt =
+            queue.attempt(entry, (queued) -> storeBatch(dpm, store, queued, stats), MAX_ATTEMPTS);
+        if (!onAttemptFinished(entry, attempt, stats)) {
+          return true;
+        }
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to update network logs queue", e);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Retrieves and stores a batch.
+   *
+   * @param stats gets the stored events added to it.
+   * @return whether the batch was stored, or {@code false} if it can't be retrieved anymore.
+   */
+  private boolean storeBatch(
+      DevicePolicyManager dpm,
+      NetworkLogStore store,
+      NetworkLogQueue.Entry entry,
+      NetworkLogStats stats)
+      throws IOException {
+    long batchToken = entry.getBatchToken();
+    ComponentName admin =
+        entry.getAdmin() == null ? null : ComponentName.unflattenFromString(entry.getAdmin());
+    List<NetworkEvent> events = null;
+    try {
+      events = dpm.retrieveNetworkLogs(admin, batchToken);
+    } catch (SecurityException e) {
+      Log.e(TAG, "Exception while retrieving network logs batch with batchToken: " + batchToken, e);
+    }
+    if (events == null) {
+      return false;
+    }
+    store.writeBatch(batchToken, events, stats);
+    return true;
+  }
+
+  /**
+   * Records the outcome of an attempt to store a batch.
+   *
+   * @param stats the events stored by the attempt, merged only if the batch was stored.
+   * @return whether to carry on with the next batch, rather than retry this one later.
+   */
+  private boolean onAttemptFinished(
+      NetworkLogQueue.Entry entry, NetworkLogQueue.Attempt attempt, NetworkLogStats stats) {
+    long batchToken = entry.getBatchToken();
+    switch (attempt.getStatus()) {
+      case STORED:
+        NetworkLogStatsStore.get(this).add(stats);
+        sStoredEvents.addAndGet(entry.getEventCount());
+        sStoredBatches.incrementAndGet();
+        sLagMillis.record(System.currentTimeMillis() - entry.getAvailableMillis());
+        NetworkLogRetentionManager.get(this).enforceAsync();
+        showToast(getString(R.string.on_network_logs_available_success, batchToken));
+        return true;
+      case EXPIRED:
+        // Replaced by newer batches, or network logging was disabled: retrying won't help
+        Log.e(TAG, "Failed to retrieve network logs batch with batchToken: " + batchToken);
+        sExpiredBatches.incrementAndGet();
+        showToast(getString(R.string.on_network_logs_available_token_failure, batchToken));
+        return true;
+      case RETRY:
+        Log.w(
+            TAG,
+            "Failed saving network events of batch " + batchToken + ", will retry",
+            attempt.getFailure());
+        sRetries.incrementAndGet();
+        return false;
+      case GAVE_UP:
+      default:
+        Log.e(
+            TAG,
+            "Failed saving network events of batch " + batchToken + ", giving up",
+            attempt.getFailure());
+        sFailedBatches.incrementAndGet();
+        return true;
+    }
+  }
+
+  private void showToast(String message) {
+    String appName = getString(R.string.app_name);
+    mMainHandler.post(
+        () ->
+            Toast.makeText(this, String.format("[%s] %s", appName, message), Toast.LENGTH_LONG)
+                .show());
+  }
+
+  /** Prints the batches queued and how long the stored ones waited to be stored. */
+  public static void dump(@NonNull Context context, @NonNull PrintWriter writer) {
+    int queued;
+    boolean running;
+    synchronized (NetworkLogIngestionService.class) {
+      try {
+        queued = getQueue(context).size();
+      } catch (IOException e) {
+        queued = -1;
+      }
+      running = sRunning;
+    }
+    LatencyHistogram.Snapshot lag = sLagMillis.snapshot();
+    writer.printf(
+        "networkLogIngestion: %d queued (running: %b), %d batches stored (%d events), %d retries,"
+            + " %d expired, %d dropped, %d failed\n",
+        queued,
+        running,
+        sStoredBatches.get(),
+        sStoredEvents.get(),
+        sRetries.get(),
+        sExpiredBatches.get(),
+        sDroppedBatches.get(),
+        sFailedBatches.get());
+    writer.printf(
+        "  lag: p50=%dms p95=%dms max=%dms\n",
+        lag.getValueAtPercentile(50), lag.getValueAtPercentile(95), lag.getMax());
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            (runnable) -> new Thread(runnable, "NetworkLogIngestionThread"));
+    // Only used while a job runs, so there's no need to keep the thread around
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
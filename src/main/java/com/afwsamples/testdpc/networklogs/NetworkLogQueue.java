@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The network log batches announced as available but not stored yet, kept in a file so they're
+ * still retrieved if the process dies before getting to them.
+ *
+ * <p>Batches are handed out lowest token first. The queue holds at most a fixed number of batches:
+ * once full, adding a batch drops the oldest one, as the platform only keeps the last few batches
+ * around to be retrieved anyway. Every change is saved before returning (to a temporary file, which
+ * then replaces the previous one), so the file is never left half written.
+ */
+public final class NetworkLogQueue {
+
+  private static final int MAGIC = 0x514c4e54; // "TNLQ"
+  private static final int VERSION = 1;
+
+  /** A batch waiting to be stored. */
+  public static final class Entry {
+    private final long mBatchToken;
+    private final long mAvailableMillis;
+    private final int mEventCount;
+    private final String mAdmin; // null for a delegate
+    private int mAttempts;
+
+    Entry(long batchToken, long availableMillis, int eventCount, String admin, int attempts) {
+      mBatchToken = batchToken;
+      mAvailableMillis = availableMillis;
+      mEventCount = eventCount;
+      mAdmin = admin;
+      mAttempts = attempts;
+    }
+
+    public long getBatchToken() {
+      return mBatchToken;
+    }
+
+    /** Returns when the batch was announced as available. */
+    public long getAvailableMillis() {
+      return mAvailableMillis;
+    }
+
+    /** Returns the number of events announced for the batch. */
+    public int getEventCount() {
+      return mEventCount;
+    }
+
+    /**
+     * Returns the flattened component of the admin the batch was announced to, or {@code null} if
+     * it was announced to a delegate.
+     */
+    public String getAdmin() {
+      return mAdmin;
+    }
+
+    /** Returns the number of times storing the batch failed. */
+    public int getAttempts() {
+      return mAttempts;
+    }
+  }
+
+  /** Retrieves and stores the batches handed out by {@link #attempt}. */
+  public interface BatchStore {
+    /**
+     * Retrieves and stores the given batch.
+     *
+     * @return whether the batch was stored, or {@code false} if it can't be retrieved anymore.
+     */
+    boolean store(Entry entry) throws IOException;
+  }
+
+  /** What came out of an {@link #attempt} to store a batch. */
+  public static final class Attempt {
+
+    /** What happened to the batch. */
+    public enum Status {
+      /** Stored, and removed from the queue. */
+      STORED,
+      /** Couldn't be retrieved anymore, and removed from the queue. */
+      EXPIRED,
+      /** Failed to be stored, and left in the queue to be retried. */
+      RETRY,
+      /** Failed to be stored too many times, and removed from the queue. */
+      GAVE_UP
+    }
+
+    private final Status mStatus;
+    private final Exception mFailure;
+
+    Attempt(Status status, Exception failure) {
+      mStatus = status;
+      mFailure = failure;
+    }
+
+    public Status getStatus() {
+      return mStatus;
+    }
+
+    /** Returns why the batch failed to be stored, or {@code null} if it didn't. */
+    public Exception getFailure() {
+      return mFailure;
+    }
+  }
+
+  private final File mFile;
+  private final int mCapacity;
+  private final TreeMap<Long, Entry> mEntries = new TreeMap<>(); // guarded by this
+
+  private NetworkLogQueue(File file, int capacity) {
+    mFile = file;
+    mCapacity = capacity;
+  }
+
+  /**
+   * Loads the queue kept in the given file, which is empty if the file doesn't exist.
+   *
+   * @param capacity the maximum number of batches kept.
+   * @throws IOException if the file can't be read, or isn't a queue.
+   */
+  public static NetworkLogQueue load(File file, int capacity) throws IOException {
+    NetworkLogQueue queue = new NetworkLogQueue(file, capacity);
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      int magic = in.readInt();
+      int version = in.readInt();
+      if (magic != MAGIC || version != VERSION) {
+        throw new IOException("Not a network log queue: " + file);
+      }
+      int count = in.readInt();
+      if (count < 0) {
+        throw new IOException("Invalid queue size: " + count);
+      }
+      for (int i = 0; i < count; i++) {
+        long batchToken = in.readLong();
+        long availableMillis = in.readLong();
+        int eventCount = in.readInt();
+        String admin = in.readBoolean() ? in.readUTF() : null;
+        int attempts = in.readInt();
+        queue.mEntries.put(
+            batchToken, new Entry(batchToken, availableMillis, eventCount, admin, attempts));
+      }
+    } catch (FileNotFoundException e) {
+      // Nothing queued yet
+    }
+    return queue;
+  }
+
+  /** Creates an empty queue kept in the given file, replacing whatever the file contains. */
+  public static NetworkLogQueue create(File file, int capacity) throws IOException {
+    NetworkLogQueue queue = new NetworkLogQueue(file, capacity);
+    queue.save();
+    return queue;
+  }
+
+  /**
+   * Adds a batch to the queue. A batch already queued is left as it is.
+   *
+   * @return the oldest batch, if it had to be dropped to make room, or {@code null}.
+   */
+  public synchronized Entry add(long batchToken, long availableMillis, int eventCount, String admin)
+      throws IOException {
+    if (mEntries.containsKey(batchToken)) {
+      return null;
+    }
+    mEntries.put(batchToken, new Entry(batchToken, availableMillis, eventCount, admin, 0));
+    Entry dropped = null;
+    if (mEntries.size() > mCapacity) {
+      dropped = mEntries.pollFirstEntry().getValue();
+    }
+    save();
+    return dropped;
+  }
+
+  /** Returns the batch with the lowest token, or {@code null} if the queue is empty. */
+  public synchronized Entry peek() {
+    return mEntries.isEmpty() ? null : mEntries.firstEntry().getValue();
+  }
+
+  /** Removes the given batch, once stored or given up on. */
+  public synchronized void remove(long batchToken) throws IOException {
+    if (mEntries.remove(batchToken) != null) {
+      save();
+    }
+  }
+
+  /**
+   * Counts a failure to store the given batch.
+   *
+   * @return the number of failures so far, or 0 if the batch isn't queued.
+   */
+  public synchronized int recordFailure(long batchToken) throws IOException {
+    Entry entry = mEntries.get(batchToken);
+    if (entry == null) {
+      return 0;
+    }
+    entry.mAttempts++;
+    save();
+    return entry.mAttempts;
+  }
+
+  /**
+   * Stores the given batch, removing it from the queue unless it should be retried. Any exception
+   * thrown by {@code store} counts as a failed attempt, and the batch is given up on after {@code
+   * maxAttempts} of them.
+   *
+   * @throws IOException if the queue can't be updated.
+   */
+  public Attempt attempt(Entry entry, BatchStore store, int maxAttempts) throws IOException {
+    long batchToken = entry.getBatchToken();
+    boolean stored;
+    try {
+      stored = store.store(entry);
+    } catch (IOException | RuntimeException e) {
+      int attempts = recordFailure(batchToken);
+      // 0 if dropped in the meantime, so there's nothing to retry
+      if (attempts != 0 && attempts < maxAttempts) {
+        return new Attempt(Attempt.Status.RETRY, e);
+      }
+      remove(batchToken);
+      return new Attempt(Attempt.Status.GAVE_UP, e);
+    }
+    remove(batchToken);
+    return new Attempt(stored ? Attempt.Status.STORED : Attempt.Status.EXPIRED, null);
+  }
+
+  public synchronized int size() {
+    return mEntries.size();
+  }
+
+  /** Returns the queued batches, lowest token first. */
+  public synchronized List<Entry> getEntries() {
+    return new ArrayList<>(mEntries.values());
+  }
+
+  private void save() throws IOException {
+    File tempFile = new File(mFile.getPath() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(tempFile)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(mEntries.size());
+      for (Entry entry : mEntries.values()) {
+        out.writeLong(entry.mBatchToken);
+        out.writeLong(entry.mAvailableMillis);
+        out.writeInt(entry.mEventCount);
+        out.writeBoolean(entry.mAdmin != null);
+        if (entry.mAdmin != null) {
+          out.writeUTF(entry.mAdmin);
+        }
+        out.writeInt(entry.mAttempts);
+      }
+      out.flush();
+      stream.getFD().sync();
+    }
+    if (!tempFile.renameTo(mFile)) {
+      tempFile.delete();
+      throw new IOException("Failed to rename " + tempFile + " to " + mFile);
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A network log event, as stored in a segment.
+ *
+ * <p>Records are mutable so a single one can be reused to write or read a whole segment. DNS
+ * lookups keep up to {@value #MAX_ADDRESSES} of the addresses they resolved to (the platform logs
+ * fewer than that), and the total number of addresses they resolved to.
+ */
+public final class NetworkLogRecord {
+
+  public static final int TYPE_DNS = 1;
+  public static final int TYPE_CONNECT = 2;
+
+  /** Maximum length of an address (i.e. an IPv6 one). */
+  public static final int MAX_ADDRESS_LENGTH = 16;
+
+  /** Maximum number of addresses kept for a lookup, the others are only counted. */
+  public static final int MAX_ADDRESSES = 16;
+
+  private long mId;
+  private long mTimestampMillis;
+  private int mType;
+  private String mPackageName;
+  private String mHostname;
+  private final byte[] mAddresses = new byte[MAX_ADDRESSES * MAX_ADDRESS_LENGTH];
+  private final int[] mAddressLengths = new int[MAX_ADDRESSES];
+  private int mStoredAddressCount;
+  private int mAddressCount;
+  private int mPort;
+
+  public long getId() {
+    return mId;
+  }
+
+  public NetworkLogRecord setId(long id) {
+    mId = id;
+    return this;
+  }
+
+  public long getTimestampMillis() {
+    return mTimestampMillis;
+  }
+
+  public NetworkLogRecord setTimestampMillis(long timestampMillis) {
+    mTimestampMillis = timestampMillis;
+    return this;
+  }
+
+  /** Returns {@link #TYPE_DNS} or {@link #TYPE_CONNECT}. */
+  public int getType() {
+    return mType;
+  }
+
+  public NetworkLogRecord setType(int type) {
+    if (type != TYPE_DNS && type != TYPE_CONNECT) {
+      throw new IllegalArgumentException("Invalid type: " + type);
+    }
+    mType = type;
+    return this;
+  }
+
+  public String getPackageName() {
+    return mPackageName;
+  }
+
+  public NetworkLogRecord setPackageName(String packageName) {
+    mPackageName = packageName;
+    return this;
+  }
+
+  /** Returns the hostname looked up, or {@code null} for connections. */
+  public String getHostname() {
+    return mHostname;
+  }
+
+  public NetworkLogRecord setHostname(String hostname) {
+    mHostname = hostname;
+    return this;
+  }
+
+  /** Returns the length of the first address: 4 (IPv4), 16 (IPv6) or 0 (none). */
+  public int getAddressLength() {
+    return mStoredAddressCount == 0 ? 0 : mAddressLengths[0];
+  }
+
+  /** Returns the first address byte at the given index, which must be less than its length. */
+  public byte getAddressByte(int index) {
+    return getAddressByte(0, index);
+  }
+
+  /** Returns the address connected to, or the first one a lookup resolved to, if any. */
+  public InetAddress getAddress() {
+    return mStoredAddressCount == 0 ? null : getAddress(0);
+  }
+
+  /**
+   * Sets the address from its raw bytes, which may be {@code null} for none. Replaces all the
+   * addresses, more can then be added with {@link #addAddress}.
+   */
+  public NetworkLogRecord setAddress(byte[] address) {
+    return setAddress(address, 0, address == null ? 0 : address.length);
+  }
+
+  public NetworkLogRecord setAddress(byte[] address, int offset, int length) {
+    mStoredAddressCount = 0;
+    return length == 0 ? this : addAddress(address, offset, length);
+  }
+
+  /**
+   * Adds an address a lookup resolved to, from its raw bytes. Addresses past {@value
+   * #MAX_ADDRESSES} are ignored.
+   */
+  public NetworkLogRecord addAddress(byte[] address) {
+    return addAddress(address, 0, address.length);
+  }
+
+  public NetworkLogRecord addAddress(byte[] address, int offset, int length) {
+    if (length != 4 && length != MAX_ADDRESS_LENGTH) {
+      throw new IllegalArgumentException("Invalid address length: " + length);
+    }
+    if (mStoredAddressCount < MAX_ADDRESSES) {
+      System.arraycopy(
+          address, offset, mAddresses, mStoredAddressCount * MAX_ADDRESS_LENGTH, length);
+      mAddressLengths[mStoredAddressCount] = length;
+      mStoredAddressCount++;
+    }
+    return this;
+  }
+
+  /**
+   * Returns the number of addresses kept, which may be less than {@link #getAddressCount()} if the
+   * platform didn't log them all.
+   */
+  public int getStoredAddressCount() {
+    return mStoredAddressCount;
+  }
+
+  /** Returns the length of the given address, 4 (IPv4) or 16 (IPv6). */
+  public int getAddressLength(int address) {
+    checkAddress(address);
+    return mAddressLengths[address];
+  }
+
+  /** Returns the byte at the given index of the given address. */
+  public byte getAddressByte(int address, int index) {
+    if (index >= getAddressLength(address)) {
+      throw new IndexOutOfBoundsException(index + " >= " + mAddressLengths[address]);
+    }
+    return mAddresses[address * MAX_ADDRESS_LENGTH + index];
+  }
+
+  public InetAddress getAddress(int address) {
+    byte[] bytes = new byte[getAddressLength(address)];
+    System.arraycopy(mAddresses, address * MAX_ADDRESS_LENGTH, bytes, 0, bytes.length);
+    try {
+      return InetAddress.getByAddress(bytes);
+    } catch (UnknownHostException e) {
+      // Only thrown for invalid lengths, which addAddress() doesn't allow
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Returns the addresses kept, in the order they were added. */
+  public List<InetAddress> getAddresses() {
+    List<InetAddress> addresses = new ArrayList<>(mStoredAddressCount);
+    for (int i = 0; i < mStoredAddressCount; i++) {
+      addresses.add(getAddress(i));
+    }
+    return addresses;
+  }
+
+  /** Returns the number of addresses a lookup resolved to, or 1 for connections. */
+  public int getAddressCount() {
+    return mAddressCount;
+  }
+
+  public NetworkLogRecord setAddressCount(int addressCount) {
+    mAddressCount = addressCount;
+    return this;
+  }
+
+  /** Returns the port connected to, or 0 for lookups. */
+  public int getPort() {
+    return mPort;
+  }
+
+  public NetworkLogRecord setPort(int port) {
+    if (port < 0 || port > 0xffff) {
+      throw new IllegalArgumentException("Invalid port: " + port);
+    }
+    mPort = port;
+    return this;
+  }
+
+  /** Clears all the fields, so the record can be filled again. */
+  public NetworkLogRecord clear() {
+    mId = 0;
+    mTimestampMillis = 0;
+    mType = 0;
+    mPackageName = null;
+    mHostname = null;
+    mStoredAddressCount = 0;
+    mAddressCount = 0;
+    mPort = 0;
+    return this;
+  }
+
+  /** Same format as {@code NetworkEvent.toString()}, minus the addresses not logged. */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder(128);
+    InetAddress address = getAddress();
+    if (mType == TYPE_DNS) {
+      builder.append("DnsEvent(").append(mId).append(", ").append(mHostname).append(", [");
+      for (int i = 0; i < mStoredAddressCount; i++) {
+        builder.append(i == 0 ? "" : ", ").append(getAddress(i));
+      }
+      if (mAddressCount > mStoredAddressCount) {
+        builder.append(mStoredAddressCount == 0 ? "..." : ", ...");
+      }
+      builder.append("], ").append(mAddressCount);
+    } else {
+      builder
+          .append("ConnectEvent(")
+          .append(mId)
+          .append(", ")
+          .append(address == null ? null : address.getHostAddress())
+          .append(", ")
+          .append(mPort);
+    }
+    return builder
+        .append(", ")
+        .append(mTimestampMillis)
+        .append(", ")
+        .append(mPackageName)
+        .append(')')
+        .toString();
+  }
+
+  private void checkAddress(int address) {
+    if (address < 0 || address >= mStoredAddressCount) {
+      throw new IndexOutOfBoundsException(
+          "Address " + address + " out of bounds for " + mStoredAddressCount);
+    }
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the network log segments within a byte budget and an age limit.
+ *
+ * <p>Segments are gzip-compressed once they're older than a threshold (they're never modified after
+ * being closed), which typically makes them several times smaller, and deleted oldest first once
+ * older than the age limit, or for as long as all of them together exceed the budget. Recent
+ * segments are left uncompressed, as they're the ones searched the most and reading a compressed
+ * segment means decompressing it whole in memory. A compressed segment keeps the modification time
+ * of the original, and an uncompressed index of it (see {@link CompressedSegment}) so searches only
+ * decompress the ones that may match.
+ *
+ * <p>Other files (i.e. the text files batches were saved to before segments) are never compressed,
+ * but are deleted the same way.
+ */
+public final class NetworkLogRetention {
+
+  /** What {@link #enforce} did. */
+  public static final class Result {
+    private int mCompressedCount;
+    private int mDeletedCount;
+    private long mFreedBytes;
+    private int mFailureCount;
+
+    public int getCompressedCount() {
+      return mCompressedCount;
+    }
+
+    public int getDeletedCount() {
+      return mDeletedCount;
+    }
+
+    /** Returns the disk space freed, by compressing or deleting segments. */
+    public long getFreedBytes() {
+      return mFreedBytes;
+    }
+
+    /** Returns the number of segments that couldn't be compressed or deleted. */
+    public int getFailureCount() {
+      return mFailureCount;
+    }
+  }
+
+  /** The disk space used by a set of segments. */
+  public static final class Usage {
+    private int mSegmentCount;
+    private int mCompressedCount;
+    private long mTotalBytes;
+    private long mCompressedBytes;
+    private long mUncompressedBytes;
+    private long mOldestMillis;
+
+    public int getSegmentCount() {
+      return mSegmentCount;
+    }
+
+    public int getCompressedCount() {
+      return mCompressedCount;
+    }
+
+    /** Returns the disk space used by all the segments. */
+    public long getTotalBytes() {
+      return mTotalBytes;
+    }
+
+    /** Returns the disk space used by the compressed segments. */
+    public long getCompressedBytes() {
+      return mCompressedBytes;
+    }
+
+    /** Returns the size the compressed segments had before being compressed. */
+    public long getUncompressedBytes() {
+      return mUncompressedBytes;
+    }
+
+    /** Returns how many times smaller compressed segments are, or 0 if there are none. */
+    public double getCompressionRatio() {
+      return mCompressedBytes == 0 ? 0 : (double) mUncompressedBytes / mCompressedBytes;
+    }
+
+    /** Returns when the oldest segment was written, or 0 if there are no segments. */
+    public long getOldestMillis() {
+      return mOldestMillis;
+    }
+  }
+
+  private final long mMaxBytes;
+  private final long mMaxAgeMillis;
+  private final long mCompressAfterMillis;
+
+  /**
+   * @param maxBytes the disk space all the segments may use together.
+   * @param maxAgeMillis how long segments are kept after being written.
+   * @param compressAfterMillis how long segments are left uncompressed after being written.
+   */
+  public NetworkLogRetention(long maxBytes, long maxAgeMillis, long compressAfterMillis) {
+    mMaxBytes = maxBytes;
+    mMaxAgeMillis = maxAgeMillis;
+    mCompressAfterMillis = compressAfterMillis;
+  }
+
+  public long getMaxBytes() {
+    return mMaxBytes;
+  }
+
+  public long getMaxAgeMillis() {
+    return mMaxAgeMillis;
+  }
+
+  public long getCompressAfterMillis() {
+    return mCompressAfterMillis;
+  }
+
+  /**
+   * Compresses the segments old enough to be, then deletes segments until they're all within the
+   * age limit and the byte budget. Segments that fail to be compressed are left as they are (and
+   * still count towards the budget).
+   *
+   * @param segments all the segments (and legacy logs), oldest first.
+   * @param now the current time, which segments' age is relative to.
+   */
+  public Result enforce(List<File> segments, long now) {
+    Result result = new Result();
+    List<File> kept = new ArrayList<>(segments.size());
+    long totalBytes = 0;
+    for (File segment : segments) {
+      long age = now - segment.lastModified();
+      if (age > mMaxAgeMillis) {
+        delete(segment, result);
+        continue;
+      }
+      if (age >= mCompressAfterMillis && segment.getName().endsWith(SegmentFormat.FILE_SUFFIX)) {
+        long length = segment.length();
+        try {
+          File compressed = CompressedSegment.compress(segment);
+          result.mCompressedCount++;
+          result.mFreedBytes += length - compressed.length();
+          segment = compressed;
+        } catch (IOException e) {
+          result.mFailureCount++;
+        }
+      }
+      kept.add(segment);
+      totalBytes += segment.length();
+    }
+    for (int i = 0; i < kept.size() && totalBytes > mMaxBytes; i++) {
+      File segment = kept.get(i);
+      long length = segment.length();
+      if (delete(segment, result)) {
+        totalBytes -= length;
+      }
+    }
+    return result;
+  }
+
+  private static boolean delete(File segment, Result result) {
+    long length = segment.length();
+    if (!segment.delete()) {
+      result.mFailureCount++;
+      return false;
+    }
+    result.mDeletedCount++;
+    result.mFreedBytes += length;
+    return true;
+  }
+
+  /** Returns the disk space used by the given segments. */
+  public static Usage getUsage(List<File> segments) {
+    Usage usage = new Usage();
+    for (File segment : segments) {
+      long length = segment.length();
+      if (length == 0) {
+        // Deleted since being listed
+        continue;
+      }
+      usage.mSegmentCount++;
+      usage.mTotalBytes += length;
+      long modified = segment.lastModified();
+      if (usage.mOldestMillis == 0 || modified < usage.mOldestMillis) {
+        usage.mOldestMillis = modified;
+      }
+      if (isCompressed(segment)) {
+        try {
+          usage.mUncompressedBytes += CompressedSegment.getUncompressedLength(segment);
+          usage.mCompressedBytes += length;
+          usage.mCompressedCount++;
+        } catch (IOException e) {
+          // Only counted in the total
+        }
+      }
+    }
+    return usage;
+  }
+
+  public static boolean isCompressed(File segment) {
+    return segment.getName().endsWith(SegmentFormat.COMPRESSED_FILE_SUFFIX);
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build.VERSION_CODES;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies a {@link NetworkLogRetention} to the segments of the {@link NetworkLogStore} (and the
+ * text files batches were saved to before), with limits kept in the app's preferences, so the
+ * network logs don't fill up the device's storage.
+ */
+@TargetApi(VERSION_CODES.O)
+public final class NetworkLogRetentionManager {
+
+  private static final String TAG = "NetworkLogRetention";
+
+  private static final String MAX_BYTES_KEY = "network_log_retention_max_bytes";
+  private static final String MAX_AGE_MILLIS_KEY = "network_log_retention_max_age_millis";
+
+  public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+  public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+  // Recent segments are the ones searched the most, and searching compressed ones is slower
+  private static final long COMPRESS_AFTER_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static final ThreadPoolExecutor sExecutor = createExecutor();
+
+  // Guarded by NetworkLogRetentionManager.class
+  private static NetworkLogRetentionManager sInstance;
+
+  private final NetworkLogStore mStore;
+  private final SharedPreferences mPreferences;
+  private final AtomicBoolean mEnforcePending = new AtomicBoolean();
+
+  /** Returns the manager shared by the whole process. */
+  @NonNull
+  public static synchronized NetworkLogRetentionManager get(@NonNull Context context) {
+    if (sInstance == null) {
+      Context appContext = context.getApplicationContext();
+      sInstance =
+          new NetworkLogRetentionManager(
+              new NetworkLogStore(appContext),
+              PreferenceManager.getDefaultSharedPreferences(appContext));
+    }
+    return sInstance;
+  }
+
+  private NetworkLogRetentionManager(NetworkLogStore store, SharedPreferences preferences) {
+    mStore = store;
+    mPreferences = preferences;
+  }
+
+  @NonNull
+  public NetworkLogRetention getRetention() {
+    return new NetworkLogRetention(
+        mPreferences.getLong(MAX_BYTES_KEY, DEFAULT_MAX_BYTES),
+        mPreferences.getLong(MAX_AGE_MILLIS_KEY, DEFAULT_MAX_AGE_MILLIS),
+        COMPRESS_AFTER_MILLIS);
+  }
+
+  /**
+   * Changes the limits, which are applied the next time {@link #enforce()} runs.
+   *
+   * @throws IllegalArgumentException if a limit isn't positive, as it would delete every batch.
+   */
+  public void setLimits(long maxBytes, long maxAgeMillis) {
+    if (maxBytes <= 0 || maxAgeMillis <= 0) {
+      throw new IllegalArgumentException(
+          "Limits must be positive: maxBytes=" + maxBytes + ", maxAgeMillis=" + maxAgeMillis);
+    }
+    mPreferences
+        .edit()
+        .putLong(MAX_BYTES_KEY, maxBytes)
+        .putLong(MAX_AGE_MILLIS_KEY, maxAgeMillis)
+        .apply();
+  }
+
+  /**
+   * Runs {@link #enforce()} in the background, e.g. after a batch is stored. Calls made while one
+   * is pending only run it once.
+   */
+  public void enforceAsync() {
+    if (!mEnforcePending.compareAndSet(false, true)) {
+      return;
+    }
+    sExecutor.execute(
+        () -> {
+          mEnforcePending.set(false);
+          enforce();
+        });
+  }
+
+  /** Compresses and deletes segments as needed. Blocks on I/O, so shouldn't be called on the UI. */
+  public synchronized NetworkLogRetention.Result enforce() {
+    long start = System.nanoTime();
+    NetworkLogRetention.Result result =
+        getRetention().enforce(getFiles(), System.currentTimeMillis());
+    if (result.getCompressedCount() > 0
+        || result.getDeletedCount() > 0
+        || result.getFailureCount() > 0) {
+      Log.d(
+          TAG,
+          "Compressed "
+              + result.getCompressedCount()
+              + " and deleted "
+              + result.getDeletedCount()
+              + " network log segments ("
+              + result.getFailureCount()
+              + " failures), freeing "
+              + result.getFreedBytes()
+              + " bytes in "
+              + (System.nanoTime() - start) / 1_000_000
+              + "ms");
+    }
+    return result;
+  }
+
+  /** Returns the disk space used by the segments and legacy logs. */
+  @NonNull
+  public NetworkLogRetention.Usage getUsage() {
+    return NetworkLogRetention.getUsage(getFiles());
+  }
+
+  /** Returns the segments and legacy logs, oldest first. */
+  private List<File> getFiles() {
+    // Legacy logs were all written before the first segment
+    List<File> files = new ArrayList<>(mStore.getLegacyLogs());
+    files.addAll(mStore.getSegments());
+    return files;
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            (runnable) -> new Thread(runnable, "NetworkLogRetentionThread"));
+    // Only used after batches are stored, so there's no need to keep the thread around
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.NO_STRING;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The records of a list of segments matching a {@link NetworkLogFilter}, which can be read by
+ * position in any order (e.g. a page at a time).
+ *
+ * <p>Only the positions of the matching records are kept in memory (or nothing for the segments
+ * matching whole). They're found without decoding the records: packages and hostnames are matched
+ * against each segment's strings once, then compared by id, and the blocks out of the time range
+ * are skipped. Compressed segments are skipped without being decompressed when their index shows
+ * they can't match. Records are read from a few segments kept open at a time.
+ *
+ * <p>Not thread-safe.
+ */
+public final class NetworkLogSearch implements Closeable {
+
+  private static final int MAX_OPEN_READERS = 4;
+  private static final int[] NO_MATCHES = new int[0];
+
+  private final NetworkLogFilter mFilter;
+  private final List<File> mSegments;
+  // Indices of the matching records of each segment, or null if all of them match
+  private final List<int[]> mMatches;
+  // Position of the first match of each segment
+  private final int[] mStarts;
+  private final int mCount;
+  private final List<File> mUnreadableSegments;
+  // Least recently used first
+  private final LinkedHashMap<File, NetworkLogSegmentReader> mReaders =
+      new LinkedHashMap<>(MAX_OPEN_READERS * 2, 0.75f, /* accessOrder= */ true);
+
+  private NetworkLogSearch(
+      NetworkLogFilter filter,
+      List<File> segments,
+      List<int[]> matches,
+      int[] starts,
+      int count,
+      List<File> unreadableSegments) {
+    mFilter = filter;
+    mSegments = segments;
+    mMatches = matches;
+    mStarts = starts;
+    mCount = count;
+    mUnreadableSegments = unreadableSegments;
+  }
+
+  /**
+   * Finds the records of the given segments matching the given filter. Segments that can't be read
+   * are skipped (see {@link #getUnreadableSegments()}).
+   */
+  public static NetworkLogSearch open(List<File> segments, NetworkLogFilter filter) {
+    List<File> matchingSegments = new ArrayList<>();
+    List<int[]> matches = new ArrayList<>();
+    int[] starts = new int[segments.size()];
+    int count = 0;
+    List<File> unreadableSegments = new ArrayList<>();
+    for (File segment : segments) {
+      try {
+        if (NetworkLogRetention.isCompressed(segment)
+            && !CompressedSegment.read(segment).mayMatch(filter)) {
+          continue;
+        }
+      } catch (IOException e) {
+        unreadableSegments.add(segment);
+        continue;
+      }
+      try (NetworkLogSegmentReader reader = NetworkLogSegmentReader.open(segment)) {
+        int[] segmentMatches = findMatches(reader, filter);
+        int segmentCount = segmentMatches == null ? reader.getRecordCount() : segmentMatches.length;
+        if (segmentCount == 0) {
+          continue;
+        }
+        if (segmentCount > Integer.MAX_VALUE - count) {
+          // More than a list can show anyway
+          break;
+        }
+        starts[matchingSegments.size()] = count;
+        matchingSegments.add(segment);
+        matches.add(segmentMatches);
+        count += segmentCount;
+      } catch (IOException e) {
+        unreadableSegments.add(segment);
+      }
+    }
+    return new NetworkLogSearch(
+        filter,
+        matchingSegments,
+        matches,
+        Arrays.copyOf(starts, matchingSegments.size()),
+        count,
+        Collections.unmodifiableList(unreadableSegments));
+  }
+
+  public NetworkLogFilter getFilter() {
+    return mFilter;
+  }
+
+  /** Returns the number of matching records. */
+  public int getCount() {
+    return mCount;
+  }
+
+  /** Returns the number of segments with matching records. */
+  public int getSegmentCount() {
+    return mSegments.size();
+  }
+
+  public List<File> getUnreadableSegments() {
+    return mUnreadableSegments;
+  }
+
+  /**
+   * Reads the matching record at the given position into {@code record}, and returns it.
+   *
+   * @throws IOException if its segment can't be read anymore (e.g. it's been deleted since).
+   */
+  public NetworkLogRecord read(int position, NetworkLogRecord record) throws IOException {
+    if (position < 0 || position >= mCount) {
+      throw new IndexOutOfBoundsException("Position " + position + " out of bounds for " + mCount);
+    }
+    int segment = Arrays.binarySearch(mStarts, position);
+    if (segment < 0) {
+      // Within the segment before the insertion point
+      segment = -segment - 2;
+    }
+    int index = position - mStarts[segment];
+    int[] matches = mMatches.get(segment);
+    return getReader(mSegments.get(segment)).read(matches == null ? index : matches[index], record);
+  }
+
+  /** Reads up to {@code count} matching records, starting with the one at the given position. */
+  public List<NetworkLogRecord> readPage(int position, int count) throws IOException {
+    int end = (int) Math.min((long) position + count, mCount);
+    List<NetworkLogRecord> records = new ArrayList<>(Math.max(end - position, 0));
+    for (int i = position; i < end; i++) {
+      records.add(read(i, new NetworkLogRecord()));
+    }
+    return records;
+  }
+
+  @Override
+  public void close() {
+    for (NetworkLogSegmentReader reader : mReaders.values()) {
+      closeQuietly(reader);
+    }
+    mReaders.clear();
+  }
+
+  /**
+   * Returns the indices of the records of the given segment matching the given filter, or {@code
+   * null} if all of them do.
+   */
+  static int[] findMatches(NetworkLogSegmentReader reader, NetworkLogFilter filter) {
+    int recordCount = reader.getRecordCount();
+    if (recordCount == 0 || !filter.overlaps(reader.getMinTimestamp(), reader.getMaxTimestamp())) {
+      return NO_MATCHES;
+    }
+    int packageId = NO_STRING;
+    if (filter.getPackageName() != null) {
+      packageId = reader.findString(filter.getPackageName());
+      if (packageId == NO_STRING) {
+        return NO_MATCHES;
+      }
+    }
+    boolean[] hostnameIds = null;
+    if (filter.getHostname() != null) {
+      hostnameIds = new boolean[reader.getStringCount()];
+      boolean anyHostname = false;
+      for (int i = 0; i < hostnameIds.length; i++) {
+        hostnameIds[i] = filter.matchesHostname(reader.getString(i));
+        anyHostname |= hostnameIds[i];
+      }
+      if (!anyHostname) {
+        return NO_MATCHES;
+      }
+    }
+    if (packageId == NO_STRING
+        && hostnameIds == null
+        && filter.covers(reader.getMinTimestamp(), reader.getMaxTimestamp())) {
+      return null;
+    }
+
+    int[] matches = new int[recordCount];
+    int count = 0;
+    int blockSize = reader.getBlockSize();
+    for (int block = 0; block < reader.getBlockCount(); block++) {
+      long minTimestamp = reader.getBlockMinTimestamp(block);
+      long maxTimestamp = reader.getBlockMaxTimestamp(block);
+      if (!filter.overlaps(minTimestamp, maxTimestamp)) {
+        continue;
+      }
+      boolean checkTime = !filter.covers(minTimestamp, maxTimestamp);
+      int end = Math.min((block + 1) * blockSize, recordCount);
+      for (int i = block * blockSize; i < end; i++) {
+        if (checkTime && !filter.matchesTime(reader.getTimestamp(i))) {
+          continue;
+        }
+        if (packageId != NO_STRING && reader.getPackageId(i) != packageId) {
+          continue;
+        }
+        if (hostnameIds != null) {
+          int hostnameId = reader.getHostnameId(i);
+          if (hostnameId < 0 || hostnameId >= hostnameIds.length || !hostnameIds[hostnameId]) {
+            continue;
+          }
+        }
+        matches[count++] = i;
+      }
+    }
+    return count == recordCount ? null : Arrays.copyOf(matches, count);
+  }
+
+  private NetworkLogSegmentReader getReader(File segment) throws IOException {
+    NetworkLogSegmentReader reader = mReaders.get(segment);
+    if (reader != null) {
+      return reader;
+    }
+    if (mReaders.size() >= MAX_OPEN_READERS) {
+      Iterator<Map.Entry<File, NetworkLogSegmentReader>> eldest = mReaders.entrySet().iterator();
+      closeQuietly(eldest.next().getValue());
+      eldest.remove();
+    }
+    reader = NetworkLogSegmentReader.open(segment);
+    mReaders.put(segment, reader);
+    return reader;
+  }
+
+  private static void closeQuietly(NetworkLogSegmentReader reader) {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      // Only reading
+    }
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.ADDRESS_ENTRY_SIZE;
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.BLOCK_ENTRY_SIZE;
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.HEADER_SIZE;
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.NO_STRING;
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.RECORD_SIZE;
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.TRAILER_SIZE;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a network log segment (see {@link SegmentFormat}) through a memory mapping, so records are
+ * only paged in when they're read. Segments compressed by {@link NetworkLogRetention} are
+ * decompressed in memory instead.
+ *
+ * <p>Records can be read whole with {@link #read(int, NetworkLogRecord)}, or field by field (e.g.
+ * to filter them without decoding them). Packages and hostnames are referenced by their id in the
+ * segment's strings, which can be looked up with {@link #findString(String)}.
+ *
+ * <p>Not thread-safe, but readers are cheap to open: each thread can use its own.
+ */
+public final class NetworkLogSegmentReader implements Closeable {
+
+  private final File mFile;
+  private final RandomAccessFile mRandomAccessFile; // null if decompressed in memory
+  private final ByteBuffer mBuffer;
+  private final long mBatchToken;
+  private final long mCreatedMillis;
+  private final int mRecordCount;
+  private final int mBlockCount;
+  private final int mBlockSize;
+  private final long mMinTimestamp;
+  private final long mMaxTimestamp;
+  private final int mBlocksOffset;
+  private final int mExtraAddressCount;
+  private final String[] mStrings;
+  private Map<String, Integer> mStringIds; // Built on first use
+  private final byte[] mAddress = new byte[NetworkLogRecord.MAX_ADDRESS_LENGTH];
+
+  private NetworkLogSegmentReader(File file, RandomAccessFile randomAccessFile, ByteBuffer buffer)
+      throws IOException {
+    mFile = file;
+    mRandomAccessFile = randomAccessFile;
+    mBuffer = buffer;
+
+    if (buffer.capacity() < HEADER_SIZE + TRAILER_SIZE || buffer.getInt(0) != SegmentFormat.MAGIC) {
+      throw new IOException("Not a network log segment: " + file);
+    }
+    int version = buffer.getShort(SegmentFormat.HEADER_VERSION);
+    int recordSize = buffer.getShort(SegmentFormat.HEADER_RECORD_SIZE);
+    if (version != SegmentFormat.VERSION || recordSize != RECORD_SIZE) {
+      throw new IOException(
+          "Unsupported segment version " + version + " (record size " + recordSize + "): " + file);
+    }
+    mBatchToken = buffer.getLong(SegmentFormat.HEADER_BATCH_TOKEN);
+    mCreatedMillis = buffer.getLong(SegmentFormat.HEADER_CREATED_MILLIS);
+
+    int trailer = buffer.capacity() - TRAILER_SIZE;
+    if (buffer.getInt(trailer + SegmentFormat.TRAILER_MAGIC) != SegmentFormat.MAGIC) {
+      throw new IOException("Unfinished network log segment: " + file);
+    }
+    mRecordCount = buffer.getInt(trailer + SegmentFormat.TRAILER_RECORD_COUNT);
+    int stringCount = buffer.getInt(trailer + SegmentFormat.TRAILER_STRING_COUNT);
+    mBlockCount = buffer.getInt(trailer + SegmentFormat.TRAILER_BLOCK_COUNT);
+    mBlockSize = buffer.getInt(trailer + SegmentFormat.TRAILER_BLOCK_SIZE);
+    mMinTimestamp = buffer.getLong(trailer + SegmentFormat.TRAILER_MIN_TIMESTAMP);
+    mMaxTimestamp = buffer.getLong(trailer + SegmentFormat.TRAILER_MAX_TIMESTAMP);
+    long stringsOffset = buffer.getLong(trailer + SegmentFormat.TRAILER_STRINGS_OFFSET);
+    long blocksOffset = buffer.getLong(trailer + SegmentFormat.TRAILER_BLOCKS_OFFSET);
+    mExtraAddressCount = buffer.getInt(trailer + SegmentFormat.TRAILER_ADDRESS_COUNT);
+    if (mRecordCount < 0
+        || stringCount < 0
+        || mExtraAddressCount < 0
+        || mBlockSize <= 0
+        || mBlockCount != (mRecordCount + mBlockSize - 1) / mBlockSize
+        || stringsOffset
+            != HEADER_SIZE
+                + (long) mRecordCount * RECORD_SIZE
+                + (long) mExtraAddressCount * ADDRESS_ENTRY_SIZE
+        || blocksOffset < stringsOffset
+        || blocksOffset + (long) mBlockCount * BLOCK_ENTRY_SIZE != trailer) {
+      throw new IOException("Corrupted network log segment: " + file);
+    }
+    mBlocksOffset = (int) blocksOffset;
+    mStrings = readStrings((int) stringsOffset, stringCount, mBlocksOffset);
+  }
+
+  /** Opens the given segment, which must have been closed by its writer. */
+  public static NetworkLogSegmentReader open(File file) throws IOException {
+    if (NetworkLogRetention.isCompressed(file)) {
+      ByteBuffer buffer = ByteBuffer.wrap(CompressedSegment.read(file).decompress());
+      buffer.order(SegmentFormat.BYTE_ORDER);
+      return new NetworkLogSegmentReader(file, /* randomAccessFile= */ null, buffer);
+    }
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Segment too large: " + file);
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.order(SegmentFormat.BYTE_ORDER);
+      return new NetworkLogSegmentReader(file, randomAccessFile, buffer);
+    } catch (IOException | RuntimeException e) {
+      randomAccessFile.close();
+      throw e;
+    }
+  }
+
+  public File getFile() {
+    return mFile;
+  }
+
+  /** Returns the token of the network logs batch the records come from. */
+  public long getBatchToken() {
+    return mBatchToken;
+  }
+
+  /** Returns when the segment was written. */
+  public long getCreatedMillis() {
+    return mCreatedMillis;
+  }
+
+  public int getRecordCount() {
+    return mRecordCount;
+  }
+
+  /** Returns the timestamp of the earliest record, or 0 if there's none. */
+  public long getMinTimestamp() {
+    return mMinTimestamp;
+  }
+
+  /** Returns the timestamp of the latest record, or 0 if there's none. */
+  public long getMaxTimestamp() {
+    return mMaxTimestamp;
+  }
+
+  /** Returns the number of records summed up by each block (but maybe the last one). */
+  public int getBlockSize() {
+    return mBlockSize;
+  }
+
+  public int getBlockCount() {
+    return mBlockCount;
+  }
+
+  /** Returns the timestamp of the earliest record of the given block. */
+  public long getBlockMinTimestamp(int block) {
+    checkIndex(block, mBlockCount);
+    return mBuffer.getLong(mBlocksOffset + block * BLOCK_ENTRY_SIZE);
+  }
+
+  /** Returns the timestamp of the latest record of the given block. */
+  public long getBlockMaxTimestamp(int block) {
+    checkIndex(block, mBlockCount);
+    return mBuffer.getLong(mBlocksOffset + block * BLOCK_ENTRY_SIZE + 8);
+  }
+
+  public int getStringCount() {
+    return mStrings.length;
+  }
+
+  public String getString(int id) {
+    checkIndex(id, mStrings.length);
+    return mStrings[id];
+  }
+
+  /** Returns the id of the given string, or -1 if no record of the segment references it. */
+  public int findString(String string) {
+    if (mStringIds == null) {
+      mStringIds = new HashMap<>(mStrings.length * 2);
+      for (int i = 0; i < mStrings.length; i++) {
+        mStringIds.put(mStrings[i], i);
+      }
+    }
+    Integer id = mStringIds.get(string);
+    return id == null ? NO_STRING : id;
+  }
+
+  public long getId(int index) {
+    return mBuffer.getLong(recordOffset(index) + SegmentFormat.RECORD_ID);
+  }
+
+  public long getTimestamp(int index) {
+    return mBuffer.getLong(recordOffset(index) + SegmentFormat.RECORD_TIMESTAMP);
+  }
+
+  public int getType(int index) {
+    return mBuffer.get(recordOffset(index) + SegmentFormat.RECORD_TYPE);
+  }
+
+  /** Returns the string id of the package of the given record. */
+  public int getPackageId(int index) {
+    return mBuffer.getInt(recordOffset(index) + SegmentFormat.RECORD_PACKAGE);
+  }
+
+  /** Returns the string id of the hostname of the given record, or -1 if it has none. */
+  public int getHostnameId(int index) {
+    return mBuffer.getInt(recordOffset(index) + SegmentFormat.RECORD_HOSTNAME);
+  }
+
+  /** Reads the given record into {@code record}, and returns it. */
+  public NetworkLogRecord read(int index, NetworkLogRecord record) {
+    int offset = recordOffset(index);
+    int hostnameId = mBuffer.getInt(offset + SegmentFormat.RECORD_HOSTNAME);
+    int addressLength =
+        readAddress(
+            offset + SegmentFormat.RECORD_ADDRESS_LENGTH,
+            offset + SegmentFormat.RECORD_ADDRESS,
+            index);
+    record
+        .setId(mBuffer.getLong(offset + SegmentFormat.RECORD_ID))
+        .setTimestampMillis(mBuffer.getLong(offset + SegmentFormat.RECORD_TIMESTAMP))
+        .setType(mBuffer.get(offset + SegmentFormat.RECORD_TYPE))
+        .setPackageName(getString(mBuffer.getInt(offset + SegmentFormat.RECORD_PACKAGE)))
+        .setHostname(hostnameId == NO_STRING ? null : getString(hostnameId))
+        .setAddress(mAddress, 0, addressLength)
+        .setAddressCount(mBuffer.getInt(offset + SegmentFormat.RECORD_ADDRESS_COUNT))
+        .setPort(mBuffer.getShort(offset + SegmentFormat.RECORD_PORT) & 0xffff);
+
+    int firstExtraAddress = mBuffer.getInt(offset + SegmentFormat.RECORD_EXTRA_ADDRESSES);
+    int extraAddressCount = mBuffer.getInt(offset + SegmentFormat.RECORD_EXTRA_ADDRESS_COUNT);
+    if (extraAddressCount != 0
+        && (addressLength == 0
+            || firstExtraAddress < 0
+            || extraAddressCount < 0
+            || extraAddressCount >= NetworkLogRecord.MAX_ADDRESSES
+            || firstExtraAddress > mExtraAddressCount - extraAddressCount)) {
+      throw new IllegalStateException("Corrupted record " + index + " in " + mFile);
+    }
+    int addressesOffset = HEADER_SIZE + mRecordCount * RECORD_SIZE;
+    for (int i = 0; i < extraAddressCount; i++) {
+      int entry = addressesOffset + (firstExtraAddress + i) * ADDRESS_ENTRY_SIZE;
+      record.addAddress(mAddress, 0, readAddress(entry, entry + 1, index));
+    }
+    return record;
+  }
+
+  /** Closes the file. The mapping itself is released once the reader is garbage collected. */
+  @Override
+  public void close() throws IOException {
+    if (mRandomAccessFile != null) {
+      mRandomAccessFile.close();
+    }
+  }
+
+  private int recordOffset(int index) {
+    checkIndex(index, mRecordCount);
+    return HEADER_SIZE + index * RECORD_SIZE;
+  }
+
+  /** Reads the address at the given offsets into {@link #mAddress}, returning its length. */
+  private int readAddress(int lengthOffset, int offset, int index) {
+    int length = mBuffer.get(lengthOffset);
+    if (length < 0 || length > mAddress.length) {
+      throw new IllegalStateException("Corrupted record " + index + " in " + mFile);
+    }
+    for (int i = 0; i < length; i++) {
+      mAddress[i] = mBuffer.get(offset + i);
+    }
+    return length;
+  }
+
+  private String[] readStrings(int offset, int count, int end) throws IOException {
+    String[] strings = new String[count];
+    ByteBuffer buffer = mBuffer.duplicate().order(SegmentFormat.BYTE_ORDER);
+    buffer.position(offset).limit(end);
+    byte[] bytes = new byte[SegmentFormat.MAX_STRING_LENGTH];
+    try {
+      for (int i = 0; i < count; i++) {
+        int length = buffer.getShort() & 0xffff;
+        if (length > bytes.length) {
+          throw new IOException("Corrupted network log segment: " + mFile);
+        }
+        buffer.get(bytes, 0, length);
+        strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Corrupted network log segment: " + mFile, e);
+    }
+    return strings;
+  }
+
+  private static void checkIndex(int index, int size) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size);
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.ADDRESS_ENTRY_SIZE;
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.BLOCK_SIZE;
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.NO_STRING;
+import static com.afwsamples.testdpc.networklogs.SegmentFormat.RECORD_SIZE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a network log segment (see {@link SegmentFormat}).
+ *
+ * <p>Records are appended through a buffer to a temporary file, which is only renamed to the
+ * segment's name once {@link #close()} has written its strings and index, so readers never see a
+ * partial segment. A writer that fails (or is {@link #abort() aborted}) leaves nothing behind.
+ *
+ * <p>Not thread-safe.
+ */
+public final class NetworkLogSegmentWriter implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File mFile;
+  private final File mTempFile;
+  private final FileOutputStream mStream;
+  private final FileChannel mChannel;
+  private final ByteBuffer mBuffer =
+      ByteBuffer.allocateDirect(BUFFER_SIZE).order(SegmentFormat.BYTE_ORDER);
+
+  private final Map<String, Integer> mStringIds = new HashMap<>();
+  private final List<String> mStrings = new ArrayList<>();
+  // Addresses of lookups past their first one, written when the segment is closed
+  private final ByteArrayOutputStream mExtraAddresses = new ByteArrayOutputStream();
+  private int mExtraAddressCount;
+  // Min and max timestamps of each block, interleaved
+  private long[] mBlocks = new long[16];
+
+  private int mRecordCount;
+  private long mMinTimestamp = Long.MAX_VALUE;
+  private long mMaxTimestamp = Long.MIN_VALUE;
+  private boolean mClosed;
+
+  /**
+   * Starts writing a segment to the given file, which must not exist yet.
+   *
+   * @param batchToken token of the network logs batch the records come from.
+   */
+  public NetworkLogSegmentWriter(File file, long batchToken) throws IOException {
+    if (file.exists()) {
+      throw new IOException("Segment already exists: " + file);
+    }
+    mFile = file;
+    mTempFile = new File(file.getPath() + ".tmp");
+    mStream = new FileOutputStream(mTempFile);
+    mChannel = mStream.getChannel();
+    mBuffer
+        .putInt(SegmentFormat.MAGIC)
+        .putShort((short) SegmentFormat.VERSION)
+        .putShort((short) RECORD_SIZE)
+        .putLong(batchToken)
+        .putLong(System.currentTimeMillis());
+  }
+
+  /** Returns the file the segment is written to once closed. */
+  public File getFile() {
+    return mFile;
+  }
+
+  public int getRecordCount() {
+    return mRecordCount;
+  }
+
+  /** Appends the given record, which can be reused right away. */
+  public void append(NetworkLogRecord record) throws IOException {
+    checkNotClosed();
+    if (record.getPackageName() == null) {
+      throw new IllegalArgumentException("Record without package: " + record);
+    }
+    if (mBuffer.remaining() < RECORD_SIZE) {
+      flush();
+    }
+    int start = mBuffer.position();
+    mBuffer
+        .putLong(record.getId())
+        .putLong(record.getTimestampMillis())
+        .putInt(intern(record.getPackageName()))
+        .putInt(record.getHostname() == null ? NO_STRING : intern(record.getHostname()))
+        .put((byte) record.getType())
+        .put((byte) record.getAddressLength())
+        .putShort((short) record.getPort())
+        .putInt(record.getAddressCount());
+    for (int i = 0; i < record.getAddressLength(); i++) {
+      mBuffer.put(record.getAddressByte(i));
+    }
+    // Pads the address to its maximum length, so all records have the same size
+    int extraAddressCount = Math.max(record.getStoredAddressCount() - 1, 0);
+    mBuffer
+        .position(start + SegmentFormat.RECORD_EXTRA_ADDRESSES)
+        .putInt(mExtraAddressCount)
+        .putInt(extraAddressCount);
+    for (int i = 1; i <= extraAddressCount; i++) {
+      int length = record.getAddressLength(i);
+      mExtraAddresses.write(length);
+      for (int j = 0; j < NetworkLogRecord.MAX_ADDRESS_LENGTH; j++) {
+        mExtraAddresses.write(j < length ? record.getAddressByte(i, j) : 0);
+      }
+    }
+    mExtraAddressCount += extraAddressCount;
+
+    long timestamp = record.getTimestampMillis();
+    int block = mRecordCount / BLOCK_SIZE;
+    if (mRecordCount % BLOCK_SIZE == 0) {
+      if (mBlocks.length < (block + 1) * 2) {
+        mBlocks = Arrays.copyOf(mBlocks, mBlocks.length * 2);
+      }
+      mBlocks[block * 2] = timestamp;
+      mBlocks[block * 2 + 1] = timestamp;
+    } else {
+      mBlocks[block * 2] = Math.min(mBlocks[block * 2], timestamp);
+      mBlocks[block * 2 + 1] = Math.max(mBlocks[block * 2 + 1], timestamp);
+    }
+    mMinTimestamp = Math.min(mMinTimestamp, timestamp);
+    mMaxTimestamp = Math.max(mMaxTimestamp, timestamp);
+    mRecordCount++;
+  }
+
+  /**
+   * Writes the strings and index of the segment, syncs it to disk and gives it its final name. The
+   * segment is deleted if any of that fails.
+   */
+  @Override
+  public void close() throws IOException {
+    if (mClosed) {
+      return;
+    }
+    boolean finished = false;
+    try {
+      finish();
+      finished = true;
+    } finally {
+      mClosed = true;
+      mStream.close();
+      if (!finished) {
+        mTempFile.delete();
+      }
+    }
+    if (!mTempFile.renameTo(mFile)) {
+      mTempFile.delete();
+      throw new IOException("Failed to rename " + mTempFile + " to " + mFile);
+    }
+  }
+
+  /** Stops writing the segment, deleting what was written so far. */
+  public void abort() {
+    if (mClosed) {
+      return;
+    }
+    mClosed = true;
+    try {
+      mStream.close();
+    } catch (IOException e) {
+      // Deleted anyway
+    }
+    mTempFile.delete();
+  }
+
+  private void finish() throws IOException {
+    byte[] extraAddresses = mExtraAddresses.toByteArray();
+    for (int offset = 0; offset < extraAddresses.length; offset += ADDRESS_ENTRY_SIZE) {
+      if (mBuffer.remaining() < ADDRESS_ENTRY_SIZE) {
+        flush();
+      }
+      mBuffer.put(extraAddresses, offset, ADDRESS_ENTRY_SIZE);
+    }
+
+    long stringsOffset = mChannel.position() + mBuffer.position();
+    for (String string : mStrings) {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      if (mBuffer.remaining() < 2 + bytes.length) {
+        flush();
+      }
+      mBuffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    long blocksOffset = mChannel.position() + mBuffer.position();
+    int blockCount = (mRecordCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    for (int i = 0; i < blockCount * 2; i++) {
+      if (mBuffer.remaining() < 8) {
+        flush();
+      }
+      mBuffer.putLong(mBlocks[i]);
+    }
+
+    if (mBuffer.remaining() < SegmentFormat.TRAILER_SIZE) {
+      flush();
+    }
+    boolean empty = mRecordCount == 0;
+    mBuffer
+        .putInt(mRecordCount)
+        .putInt(mStrings.size())
+        .putInt(blockCount)
+        .putInt(BLOCK_SIZE)
+        .putLong(empty ? 0 : mMinTimestamp)
+        .putLong(empty ? 0 : mMaxTimestamp)
+        .putLong(stringsOffset)
+        .putLong(blocksOffset)
+        .putInt(mExtraAddressCount)
+        .putInt(SegmentFormat.MAGIC);
+    flush();
+    mChannel.force(/* metaData= */ true);
+  }
+
+  private int intern(String string) {
+    Integer id = mStringIds.get(string);
+    if (id == null) {
+      if (string.length() > SegmentFormat.MAX_STRING_LENGTH / 3
+          && string.getBytes(StandardCharsets.UTF_8).length > SegmentFormat.MAX_STRING_LENGTH) {
+        throw new IllegalArgumentException("String too long: " + string.length() + " chars");
+      }
+      id = mStrings.size();
+      mStrings.add(string);
+      mStringIds.put(string, id);
+    }
+    return id;
+  }
+
+  private void flush() throws IOException {
+    mBuffer.flip();
+    while (mBuffer.hasRemaining()) {
+      mChannel.write(mBuffer);
+    }
+    mBuffer.clear();
+  }
+
+  private void checkNotClosed() {
+    if (mClosed) {
+      throw new IllegalStateException("Segment already closed: " + mFile);
+    }
+  }
+}
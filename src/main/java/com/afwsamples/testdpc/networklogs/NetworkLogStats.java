@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates of network log records, updated as records are added so they never need to be computed
+ * from the stored logs:
+ *
+ * <ul>
+ *   <li>DNS lookups and connections of each package, in total and for each of the last {@link
+ *       #MAX_HOURS} hours.
+ *   <li>The most looked up hostnames (see {@link HeavyHitters}).
+ *   <li>The number of distinct hostnames looked up and addresses connected to, overall and by each
+ *       package (see {@link HyperLogLog}).
+ * </ul>
+ *
+ * <p>Stats of separate batches can be {@link #merge(NetworkLogStats) merged}. Not thread-safe.
+ */
+public final class NetworkLogStats {
+
+  /** Number of hours counted separately, older ones are dropped. */
+  public static final int MAX_HOURS = 7 * 24;
+
+  /** Number of hostnames counted by the most looked up ones. */
+  static final int TOP_HOSTNAMES_CAPACITY = 100;
+
+  private static final int VERSION = 1;
+  private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /** Counts of a package, or of a given hour. */
+  public static class Counts {
+    long mDnsLookups;
+    long mConnects;
+
+    public long getDnsLookups() {
+      return mDnsLookups;
+    }
+
+    public long getConnects() {
+      return mConnects;
+    }
+
+    void add(Counts other) {
+      mDnsLookups += other.mDnsLookups;
+      mConnects += other.mConnects;
+    }
+  }
+
+  /** Stats of a package. */
+  public static final class PackageStats extends Counts {
+    private final String mPackageName;
+    // Keyed by the start of the hour, in milliseconds since epoch
+    private final TreeMap<Long, Counts> mHours = new TreeMap<>();
+    private final HyperLogLog mHostnames = new HyperLogLog();
+    private final HyperLogLog mAddresses = new HyperLogLog();
+
+    private PackageStats(String packageName) {
+      mPackageName = packageName;
+    }
+
+    public String getPackageName() {
+      return mPackageName;
+    }
+
+    /** Returns the counts of each hour kept, keyed by the start of the hour. */
+    public SortedMap<Long, Counts> getHourlyCounts() {
+      return Collections.unmodifiableSortedMap(mHours);
+    }
+
+    /** Returns the counts of the hours since the given time. */
+    public Counts getCountsSince(long sinceMillis) {
+      Counts counts = new Counts();
+      for (Counts hour : mHours.tailMap(toHour(sinceMillis)).values()) {
+        counts.add(hour);
+      }
+      return counts;
+    }
+
+    /** Returns the estimated number of distinct hostnames looked up. */
+    public long getDistinctHostnames() {
+      return mHostnames.estimate();
+    }
+
+    /** Returns the estimated number of distinct addresses connected to. */
+    public long getDistinctAddresses() {
+      return mAddresses.estimate();
+    }
+
+    private Counts getHour(long hour) {
+      Counts counts = mHours.get(hour);
+      if (counts == null) {
+        counts = new Counts();
+        mHours.put(hour, counts);
+      }
+      return counts;
+    }
+
+    private void merge(PackageStats other) {
+      add(other);
+      for (Map.Entry<Long, Counts> hour : other.mHours.entrySet()) {
+        getHour(hour.getKey()).add(hour.getValue());
+      }
+      mHostnames.merge(other.mHostnames);
+      mAddresses.merge(other.mAddresses);
+    }
+  }
+
+  private final Map<String, PackageStats> mPackages = new HashMap<>();
+  private final Counts mTotals = new Counts();
+  private final HeavyHitters mTopHostnames = new HeavyHitters(TOP_HOSTNAMES_CAPACITY);
+  private final HyperLogLog mHostnames = new HyperLogLog();
+  private final HyperLogLog mAddresses = new HyperLogLog();
+  private long mBatchCount;
+  private long mLastBatchToken = -1;
+  private long mFirstTimestamp = Long.MAX_VALUE;
+  private long mLastTimestamp = Long.MIN_VALUE;
+  private final byte[] mAddress = new byte[NetworkLogRecord.MAX_ADDRESS_LENGTH];
+
+  /** Counts the given record. */
+  public void add(NetworkLogRecord record) {
+    PackageStats stats = getOrCreatePackage(record.getPackageName());
+    Counts hour = stats.getHour(toHour(record.getTimestampMillis()));
+    if (record.getType() == NetworkLogRecord.TYPE_DNS) {
+      stats.mDnsLookups++;
+      hour.mDnsLookups++;
+      mTotals.mDnsLookups++;
+      if (record.getHostname() != null) {
+        stats.mHostnames.add(record.getHostname());
+        mHostnames.add(record.getHostname());
+        mTopHostnames.add(record.getHostname());
+      }
+    } else {
+      stats.mConnects++;
+      hour.mConnects++;
+      mTotals.mConnects++;
+      int length = record.getAddressLength();
+      if (length > 0) {
+        for (int i = 0; i < length; i++) {
+          mAddress[i] = record.getAddressByte(i);
+        }
+        stats.mAddresses.add(mAddress, length);
+        mAddresses.add(mAddress, length);
+      }
+    }
+    mFirstTimestamp = Math.min(mFirstTimestamp, record.getTimestampMillis());
+    mLastTimestamp = Math.max(mLastTimestamp, record.getTimestampMillis());
+  }
+
+  /** Counts a batch, once its records were added. */
+  public void addBatch(long batchToken) {
+    mBatchCount++;
+    mLastBatchToken = batchToken;
+  }
+
+  /** Adds the stats of {@code other} (e.g. of a new batch) to these ones. */
+  public void merge(NetworkLogStats other) {
+    for (PackageStats stats : other.mPackages.values()) {
+      getOrCreatePackage(stats.mPackageName).merge(stats);
+    }
+    mTotals.add(other.mTotals);
+    mTopHostnames.merge(other.mTopHostnames);
+    mHostnames.merge(other.mHostnames);
+    mAddresses.merge(other.mAddresses);
+    mBatchCount += other.mBatchCount;
+    if (other.mBatchCount > 0) {
+      mLastBatchToken = other.mLastBatchToken;
+    }
+    mFirstTimestamp = Math.min(mFirstTimestamp, other.mFirstTimestamp);
+    mLastTimestamp = Math.max(mLastTimestamp, other.mLastTimestamp);
+    dropOldHours();
+  }
+
+  public Counts getTotals() {
+    return mTotals;
+  }
+
+  /** Returns the counts of all the packages in the hours since the given time. */
+  public Counts getCountsSince(long sinceMillis) {
+    Counts counts = new Counts();
+    for (PackageStats stats : mPackages.values()) {
+      counts.add(stats.getCountsSince(sinceMillis));
+    }
+    return counts;
+  }
+
+  public long getBatchCount() {
+    return mBatchCount;
+  }
+
+  /** Returns the token of the last batch counted, or -1 if none was. */
+  public long getLastBatchToken() {
+    return mLastBatchToken;
+  }
+
+  /** Returns the time of the earliest record counted, or {@link Long#MAX_VALUE} if none was. */
+  public long getFirstTimestamp() {
+    return mFirstTimestamp;
+  }
+
+  /** Returns the time of the latest record counted, or {@link Long#MIN_VALUE} if none was. */
+  public long getLastTimestamp() {
+    return mLastTimestamp;
+  }
+
+  /** Returns the stats of each package, the most active first. */
+  public List<PackageStats> getPackages() {
+    List<PackageStats> packages = new ArrayList<>(mPackages.values());
+    // Can't use Comparator.comparing(): requires default interface methods (min_sdk >= 24).
+    Collections.sort(
+        packages,
+        (p1, p2) -> {
+          int byEvents = Long.compare(p2.mDnsLookups + p2.mConnects, p1.mDnsLookups + p1.mConnects);
+          return byEvents != 0 ? byEvents : p1.mPackageName.compareTo(p2.mPackageName);
+        });
+    return packages;
+  }
+
+  /** Returns the stats of the given package, or {@code null} if it has none. */
+  public PackageStats findPackage(String packageName) {
+    return mPackages.get(packageName);
+  }
+
+  /** Returns up to {@code count} of the most looked up hostnames, most frequent first. */
+  public List<HeavyHitters.Entry> getTopHostnames(int count) {
+    return mTopHostnames.getTop(count);
+  }
+
+  /** Returns the estimated number of distinct hostnames looked up. */
+  public long getDistinctHostnames() {
+    return mHostnames.estimate();
+  }
+
+  /** Returns the estimated number of distinct addresses connected to. */
+  public long getDistinctAddresses() {
+    return mAddresses.estimate();
+  }
+
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(VERSION);
+    out.writeLong(mBatchCount);
+    out.writeLong(mLastBatchToken);
+    out.writeLong(mFirstTimestamp);
+    out.writeLong(mLastTimestamp);
+    mTopHostnames.writeTo(out);
+    mHostnames.writeTo(out);
+    mAddresses.writeTo(out);
+    out.writeInt(mPackages.size());
+    for (PackageStats stats : mPackages.values()) {
+      out.writeUTF(stats.mPackageName);
+      out.writeLong(stats.mDnsLookups);
+      out.writeLong(stats.mConnects);
+      stats.mHostnames.writeTo(out);
+      stats.mAddresses.writeTo(out);
+      out.writeInt(stats.mHours.size());
+      for (Map.Entry<Long, Counts> hour : stats.mHours.entrySet()) {
+        out.writeLong(hour.getKey());
+        out.writeLong(hour.getValue().mDnsLookups);
+        out.writeLong(hour.getValue().mConnects);
+      }
+    }
+  }
+
+  /** Reads stats written by {@link #writeTo(DataOutput)}. */
+  public static NetworkLogStats readFrom(DataInput in) throws IOException {
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported network log stats version: " + version);
+    }
+    NetworkLogStats stats = new NetworkLogStats();
+    stats.mBatchCount = in.readLong();
+    stats.mLastBatchToken = in.readLong();
+    stats.mFirstTimestamp = in.readLong();
+    stats.mLastTimestamp = in.readLong();
+    stats.mTopHostnames.merge(HeavyHitters.readFrom(in, TOP_HOSTNAMES_CAPACITY));
+    stats.mHostnames.merge(HyperLogLog.readFrom(in));
+    stats.mAddresses.merge(HyperLogLog.readFrom(in));
+    int packageCount = readCount(in);
+    for (int i = 0; i < packageCount; i++) {
+      PackageStats packageStats = stats.getOrCreatePackage(in.readUTF());
+      packageStats.mDnsLookups = in.readLong();
+      packageStats.mConnects = in.readLong();
+      packageStats.mHostnames.merge(HyperLogLog.readFrom(in));
+      packageStats.mAddresses.merge(HyperLogLog.readFrom(in));
+      int hourCount = readCount(in);
+      for (int j = 0; j < hourCount; j++) {
+        Counts hour = packageStats.getHour(in.readLong());
+        hour.mDnsLookups = in.readLong();
+        hour.mConnects = in.readLong();
+      }
+      stats.mTotals.add(packageStats);
+    }
+    return stats;
+  }
+
+  private PackageStats getOrCreatePackage(String packageName) {
+    PackageStats stats = mPackages.get(packageName);
+    if (stats == null) {
+      stats = new PackageStats(packageName);
+      mPackages.put(packageName, stats);
+    }
+    return stats;
+  }
+
+  private void dropOldHours() {
+    if (mLastTimestamp == Long.MIN_VALUE) {
+      return;
+    }
+    long oldestHour = toHour(mLastTimestamp) - (MAX_HOURS - 1) * HOUR_MILLIS;
+    for (PackageStats stats : mPackages.values()) {
+      Iterator<Long> hours = stats.mHours.keySet().iterator();
+      while (hours.hasNext() && hours.next() < oldestHour) {
+        hours.remove();
+      }
+    }
+  }
+
+  private static long toHour(long timestampMillis) {
+    // Can't use Math.floorDiv(): requires min_sdk >= 24, and log times are after the epoch anyway
+    return timestampMillis / HOUR_MILLIS * HOUR_MILLIS;
+  }
+
+  private static int readCount(DataInput in) throws IOException {
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException("Invalid network log stats count: " + count);
+    }
+    return count;
+  }
+}
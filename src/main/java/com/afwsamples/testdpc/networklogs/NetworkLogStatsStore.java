@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the {@link NetworkLogStats} of all the batches retrieved, in a file of the app's private
+ * storage so they survive restarts.
+ *
+ * <p>The stats are loaded on first use and saved whenever a batch is added. Thread-safe, but the
+ * methods may block on I/O, so they should be called in the background.
+ */
+public final class NetworkLogStatsStore {
+
+  private static final String TAG = "NetworkLogStatsStore";
+
+  private static final String FILE_NAME = "network_log_stats";
+
+  private static NetworkLogStatsStore sInstance; // guarded by NetworkLogStatsStore.class
+
+  private final AtomicFile mFile;
+  private NetworkLogStats mStats; // guarded by this, null until loaded
+
+  /** Returns the store shared by the whole process. */
+  @NonNull
+  public static synchronized NetworkLogStatsStore get(@NonNull Context context) {
+    if (sInstance == null) {
+      sInstance = new NetworkLogStatsStore(new File(context.getFilesDir(), FILE_NAME));
+    }
+    return sInstance;
+  }
+
+  private NetworkLogStatsStore(File file) {
+    mFile = new AtomicFile(file);
+  }
+
+  /** Adds the stats of a batch to the ones kept, and saves them. */
+  public synchronized void add(NetworkLogStats batchStats) {
+    NetworkLogStats stats = load();
+    stats.merge(batchStats);
+    save(stats);
+  }
+
+  /** Returns a copy of the stats kept, which can be used without holding up updates. */
+  @NonNull
+  public synchronized NetworkLogStats getStats() {
+    NetworkLogStats stats = new NetworkLogStats();
+    stats.merge(load());
+    return stats;
+  }
+
+  /** Clears the stats kept. */
+  public synchronized void reset() {
+    mStats = new NetworkLogStats();
+    mFile.delete();
+  }
+
+  private NetworkLogStats load() {
+    if (mStats != null) {
+      return mStats;
+    }
+    long start = System.nanoTime();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(mFile.openRead()))) {
+      mStats = NetworkLogStats.readFrom(in);
+      Log.d(
+          TAG,
+          "Loaded stats of "
+              + mStats.getBatchCount()
+              + " batches in "
+              + (System.nanoTime() - start) / 1_000_000
+              + "ms");
+    } catch (FileNotFoundException e) {
+      mStats = new NetworkLogStats();
+    } catch (IOException e) {
+      // Better to start over than to stop counting
+      Log.e(TAG, "Failed to load network log stats, resetting them", e);
+      mStats = new NetworkLogStats();
+    }
+    return mStats;
+  }
+
+  private void save(NetworkLogStats stats) {
+    FileOutputStream stream = null;
+    try {
+      stream = mFile.startWrite();
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+      stats.writeTo(out);
+      out.flush();
+      mFile.finishWrite(stream);
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to save network log stats", e);
+      if (stream != null) {
+        mFile.failWrite(stream);
+      }
+    }
+  }
+}
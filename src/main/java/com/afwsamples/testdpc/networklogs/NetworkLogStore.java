@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import android.annotation.TargetApi;
+import android.app.admin.ConnectEvent;
+import android.app.admin.DnsEvent;
+import android.app.admin.NetworkEvent;
+import android.content.Context;
+import android.os.Build.VERSION_CODES;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.afwsamples.testdpc.common.Util;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores network log batches, one segment file per batch (see {@link NetworkLogSegmentWriter}), in
+ * the app's external files directory.
+ *
+ * <p>Segments are named {@code network_logs_<batch token>_<write time>.seg}, like the text files
+ * batches used to be saved to (see {@link #getLegacyLogs()}), with {@code .segz} as the suffix once
+ * compressed by {@link NetworkLogRetention}.
+ */
+@TargetApi(VERSION_CODES.O)
+public final class NetworkLogStore {
+
+  private static final String TAG = "NetworkLogStore";
+
+  public static final String SEGMENT_PREFIX = "network_logs_";
+  public static final String SEGMENT_SUFFIX = SegmentFormat.FILE_SUFFIX;
+  public static final String COMPRESSED_SEGMENT_SUFFIX = SegmentFormat.COMPRESSED_FILE_SUFFIX;
+  public static final String LEGACY_LOG_SUFFIX = ".txt";
+
+  @Nullable private final File mDirectory;
+
+  public NetworkLogStore(Context context) {
+    this(context.getExternalFilesDir(null));
+  }
+
+  /** Creates a store keeping its segments in the given directory, or nowhere if it's null. */
+  public NetworkLogStore(@Nullable File directory) {
+    mDirectory = directory;
+  }
+
+  /** Returns the directory the segments are in, or {@code null} if storage isn't available. */
+  @Nullable
+  public File getDirectory() {
+    return mDirectory;
+  }
+
+  /**
+   * Writes the given batch to a new segment.
+   *
+   * @param stats if not {@code null}, gets the records written (and the batch) added to it.
+   * @return the segment written.
+   */
+  public File writeBatch(
+      long batchToken, List<NetworkEvent> events, @Nullable NetworkLogStats stats)
+      throws IOException {
+    if (mDirectory == null) {
+      throw new IOException("External storage isn't available");
+    }
+    long start = System.nanoTime();
+    long now = System.currentTimeMillis();
+    File file = new File(mDirectory, SEGMENT_PREFIX + batchToken + "_" + now + SEGMENT_SUFFIX);
+    NetworkLogSegmentWriter writer = new NetworkLogSegmentWriter(file, batchToken);
+    try {
+      NetworkLogRecord record = new NetworkLogRecord();
+      for (int i = 0; i < events.size(); i++) {
+        if (toRecord(events.get(i), i, record)) {
+          writer.append(record);
+          if (stats != null) {
+            stats.add(record);
+          }
+        }
+      }
+      writer.close();
+      if (stats != null) {
+        stats.addBatch(batchToken);
+      }
+    } catch (IOException | RuntimeException e) {
+      writer.abort();
+      throw e;
+    }
+    Log.d(
+        TAG,
+        "Saved "
+            + writer.getRecordCount()
+            + " network events to "
+            + file.getName()
+            + " ("
+            + file.length()
+            + " bytes) in "
+            + (System.nanoTime() - start) / 1_000_000
+            + "ms");
+    return file;
+  }
+
+  /** Returns all the segments, oldest first. */
+  public List<File> getSegments() {
+    return listFiles(SEGMENT_SUFFIX, COMPRESSED_SEGMENT_SUFFIX);
+  }
+
+  /**
+   * Returns the text files batches were saved to before they were stored in segments, oldest first.
+   * They can't be searched, but still count towards the retention limits.
+   */
+  public List<File> getLegacyLogs() {
+    return listFiles(LEGACY_LOG_SUFFIX);
+  }
+
+  private List<File> listFiles(String... suffixes) {
+    File[] files =
+        mDirectory == null
+            ? null
+            : mDirectory.listFiles((File dir, String name) -> parseName(name, suffixes) != null);
+    if (files == null) {
+      return Collections.emptyList();
+    }
+    List<File> sorted = new ArrayList<>(Arrays.asList(files));
+    // Can't use Comparator.comparing(): requires default interface methods (min_sdk >= 24).
+    Collections.sort(
+        sorted,
+        (f1, f2) -> {
+          int byWriteTime = Long.compare(getWriteTime(f1), getWriteTime(f2));
+          return byWriteTime != 0
+              ? byWriteTime
+              : Long.compare(getBatchToken(f1), getBatchToken(f2));
+        });
+    return sorted;
+  }
+
+  /** Returns the token of the batch in the given segment or legacy log, or -1 if it's neither. */
+  public static long getBatchToken(File segment) {
+    return parseNameField(segment.getName(), 0);
+  }
+
+  /** Returns when the given segment or legacy log was written, or -1 if it's neither. */
+  public static long getWriteTime(File segment) {
+    return parseNameField(segment.getName(), 1);
+  }
+
+  private static long parseNameField(String name, int field) {
+    long[] fields = parseName(name, SEGMENT_SUFFIX, COMPRESSED_SEGMENT_SUFFIX, LEGACY_LOG_SUFFIX);
+    return fields == null ? -1 : fields[field];
+  }
+
+  /** Returns the batch token and write time in the given file name, or null if it has neither. */
+  private static long[] parseName(String name, String... suffixes) {
+    if (!name.startsWith(SEGMENT_PREFIX)) {
+      return null;
+    }
+    for (String suffix : suffixes) {
+      if (!name.endsWith(suffix)) {
+        continue;
+      }
+      String[] fields =
+          name.substring(SEGMENT_PREFIX.length(), name.length() - suffix.length()).split("_");
+      try {
+        return fields.length == 2
+            ? new long[] {Long.parseLong(fields[0]), Long.parseLong(fields[1])}
+            : null;
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Fills {@code record} with the given event.
+   *
+   * @param index index of the event in its batch, used as its id before Android P.
+   * @return whether the event could be stored.
+   */
+  private static boolean toRecord(NetworkEvent event, int index, NetworkLogRecord record) {
+    if (event.getPackageName() == null) {
+      // Can't be stored, skipped rather than failing (and retrying) the whole batch
+      Log.w(TAG, "Skipping network event without package: " + event);
+      return false;
+    }
+    record
+        .clear()
+        .setPackageName(event.getPackageName())
+        .setId(Util.SDK_INT >= VERSION_CODES.P ? event.getId() : index)
+        .setTimestampMillis(event.getTimestamp());
+    if (event instanceof DnsEvent) {
+      DnsEvent dnsEvent = (DnsEvent) event;
+      record
+          .setType(NetworkLogRecord.TYPE_DNS)
+          .setHostname(dnsEvent.getHostname())
+          .setAddressCount(dnsEvent.getTotalResolvedAddressCount());
+      for (InetAddress address : dnsEvent.getInetAddresses()) {
+        record.addAddress(address.getAddress());
+      }
+      return true;
+    }
+    if (event instanceof ConnectEvent) {
+      ConnectEvent connectEvent = (ConnectEvent) event;
+      record
+          .setType(NetworkLogRecord.TYPE_CONNECT)
+          .setAddress(connectEvent.getInetAddress().getAddress())
+          .setAddressCount(1)
+          .setPort(connectEvent.getPort());
+      return true;
+    }
+    Log.w(TAG, "Skipping unknown network event: " + event);
+    return false;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of network log segment files. All numbers are little-endian.
+ *
+ * <pre>
+ * header     magic (int), version (short), record size (short), batch token (long),
+ *            creation time (long)
+ * records    record count * RECORD_SIZE bytes, see the RECORD_* offsets
+ * addresses  address count * (length (byte), address padded to 16 bytes)
+ * strings    string count * (UTF-8 length (unsigned short), UTF-8 bytes)
+ * blocks     block count * (min timestamp (long), max timestamp (long)), for each BLOCK_SIZE
+ *            records
+ * trailer    record count (int), string count (int), block count (int), block size (int),
+ *            min timestamp (long), max timestamp (long), strings offset (long),
+ *            blocks offset (long), address count (int), magic (int)
+ * </pre>
+ *
+ * <p>Packages and hostnames are stored once in the strings section and referenced by their index in
+ * it. Records keep their first address inline, and reference the other addresses of a lookup (up to
+ * {@link NetworkLogRecord#MAX_ADDRESSES} in all) by their index in the addresses section. The
+ * addresses, strings, blocks and trailer are only written when the segment is closed, so a segment
+ * without a trailer was never finished.
+ */
+final class SegmentFormat {
+
+  static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  static final int MAGIC = 0x4c4e4454; // "TDNL"
+  static final int VERSION = 2;
+
+  static final String FILE_SUFFIX = ".seg";
+
+  /** Suffix of the segments compressed by {@link NetworkLogRetention}. */
+  static final String COMPRESSED_FILE_SUFFIX = ".segz";
+
+  static final int HEADER_SIZE = 24;
+  static final int HEADER_VERSION = 4;
+  static final int HEADER_RECORD_SIZE = 6;
+  static final int HEADER_BATCH_TOKEN = 8;
+  static final int HEADER_CREATED_MILLIS = 16;
+
+  static final int RECORD_SIZE = 56;
+  static final int RECORD_ID = 0;
+  static final int RECORD_TIMESTAMP = 8;
+  static final int RECORD_PACKAGE = 16;
+  static final int RECORD_HOSTNAME = 20;
+  static final int RECORD_TYPE = 24;
+  static final int RECORD_ADDRESS_LENGTH = 25;
+  static final int RECORD_PORT = 26;
+  static final int RECORD_ADDRESS_COUNT = 28;
+  static final int RECORD_ADDRESS = 32;
+  static final int RECORD_EXTRA_ADDRESSES = 48;
+  static final int RECORD_EXTRA_ADDRESS_COUNT = 52;
+
+  static final int ADDRESS_ENTRY_SIZE = 17;
+
+  /** Used for records without a hostname (i.e. connections). */
+  static final int NO_STRING = -1;
+
+  /** Maximum UTF-8 length of a string, way more than packages and hostnames can take. */
+  static final int MAX_STRING_LENGTH = 4096;
+
+  /** Number of records summed up by each block, so readers can skip the ones out of range. */
+  static final int BLOCK_SIZE = 256;
+
+  static final int BLOCK_ENTRY_SIZE = 16;
+
+  static final int TRAILER_SIZE = 56;
+  static final int TRAILER_RECORD_COUNT = 0;
+  static final int TRAILER_STRING_COUNT = 4;
+  static final int TRAILER_BLOCK_COUNT = 8;
+  static final int TRAILER_BLOCK_SIZE = 12;
+  static final int TRAILER_MIN_TIMESTAMP = 16;
+  static final int TRAILER_MAX_TIMESTAMP = 24;
+  static final int TRAILER_STRINGS_OFFSET = 32;
+  static final int TRAILER_BLOCKS_OFFSET = 40;
+  static final int TRAILER_ADDRESS_COUNT = 48;
+  static final int TRAILER_MAGIC = 52;
+
+  private SegmentFormat() {}
+}
@@ -65,7 +65,7 @@ public class AvailableComponentsInfoArrayAdapter extends ToggleComponentsArrayAd
   @Override
   protected boolean canModifyComponent(int position) {
     // Components in a system package are always enabled.
-    return !isSystemApp(getApplicationInfo(position));
+    return !isSystemApp(getItem(position).serviceInfo.applicationInfo);
   }
 
   public ArrayList<String> getSelectedComponents() {
@@ -79,11 +79,6 @@ public class AvailableComponentsInfoArrayAdapter extends ToggleComponentsArrayAd
     return selectedComponentsArrayList;
   }
 
-  @Override
-  protected ApplicationInfo getApplicationInfo(int position) {
-    return getItem(position).serviceInfo.applicationInfo;
-  }
-
   @Override
   @TargetApi(VERSION_CODES.LOLLIPOP_MR1)
   protected Drawable getApplicationIcon(ApplicationInfo applicationInfo) {
@@ -107,7 +102,7 @@ public class AvailableComponentsInfoArrayAdapter extends ToggleComponentsArrayAd
   }
 
   @Override
-  public CharSequence getDisplayName(int position) {
-    return getItem(position).loadLabel(mPackageManager);
+  public CharSequence getDisplayName(ResolveInfo resolveInfo, ApplicationInfo applicationInfo) {
+    return resolveInfo.loadLabel(mPackageManager);
   }
 }
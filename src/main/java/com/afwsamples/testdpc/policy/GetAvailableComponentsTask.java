@@ -18,7 +18,6 @@ package com.afwsamples.testdpc.policy;
 
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.os.AsyncTask;
 import android.view.View;
@@ -26,8 +25,8 @@ import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.ListView;
 import com.afwsamples.testdpc.R;
+import com.afwsamples.testdpc.common.AppLabelSorter;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public abstract class GetAvailableComponentsTask<T> extends AsyncTask<Void, Void, List<T>> {
@@ -74,9 +73,7 @@ public abstract class GetAvailableComponentsTask<T> extends AsyncTask<Void, Void
     }
     final List<ResolveInfo> availableComponentsResolveInfoList =
         getResolveInfoListFromAvailableComponents(availableComponentsList);
-    PackageManager packageManager = mActivity.getPackageManager();
-    Collections.sort(
-        availableComponentsResolveInfoList, new ResolveInfo.DisplayNameComparator(packageManager));
+    AppLabelSorter.get(mActivity).sortResolveInfos(availableComponentsResolveInfoList);
     final List<String> permittedComponentsList = getPermittedComponentsList();
     final AvailableComponentsInfoArrayAdapter availableComponentsInfoArrayAdapter =
         new AvailableComponentsInfoArrayAdapter(
@@ -20,6 +20,7 @@ import android.annotation.TargetApi;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
 import androidx.collection.ArraySet;
+import com.afwsamples.testdpc.CachingDevicePolicyManagerGateway;
 import com.afwsamples.testdpc.DevicePolicyManagerGateway;
 import com.afwsamples.testdpc.DevicePolicyManagerGatewayImpl;
 import com.afwsamples.testdpc.R;
@@ -46,7 +47,8 @@ public class ManageAffiliationIdsFragment extends BaseStringItemsFragment {
   public void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
 
-    mDevicePolicyManagerGateway = new DevicePolicyManagerGatewayImpl(getActivity());
+    mDevicePolicyManagerGateway =
+        new CachingDevicePolicyManagerGateway(new DevicePolicyManagerGatewayImpl(getActivity()));
   }
 
   @TargetApi(VERSION_CODES.O)
@@ -19,10 +19,8 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.os.Build.VERSION_CODES;
-import android.util.Log;
 import android.widget.Toast;
 import com.afwsamples.testdpc.DeviceAdminReceiver;
 import com.afwsamples.testdpc.R;
@@ -33,7 +31,6 @@ import java.util.List;
 
 public class MeteredDataRestrictionInfoAdapter extends ToggleComponentsArrayAdapter
     implements DialogInterface.OnClickListener {
-  private static final String TAG = MeteredDataRestrictionInfoAdapter.class.getSimpleName();
 
   private final Context mContext;
   private final List<String> mRestrictedPkgs;
@@ -51,17 +48,6 @@ public class MeteredDataRestrictionInfoAdapter extends ToggleComponentsArrayAdap
     return mRestrictedPkgs.contains(resolveInfo.resolvePackageName);
   }
 
-  @Override
-  protected ApplicationInfo getApplicationInfo(int position) {
-    try {
-      return mPackageManager.getApplicationInfo(
-          getItem(position).resolvePackageName, 0 /* Default flags */);
-    } catch (PackageManager.NameNotFoundException e) {
-      Log.e(TAG, "getApplicationInfo: ", e);
-    }
-    return null;
-  }
-
   private List<Boolean> createIsComponentEnabledList() {
     final List<Boolean> isComponentEnabledList = new ArrayList<>();
     int size = getCount();
@@ -77,8 +63,8 @@ public class MeteredDataRestrictionInfoAdapter extends ToggleComponentsArrayAdap
   }
 
   @Override
-  public CharSequence getDisplayName(int position) {
-    return mPackageManager.getApplicationLabel(getApplicationInfo(position));
+  public CharSequence getDisplayName(ResolveInfo resolveInfo, ApplicationInfo applicationInfo) {
+    return mPackageManager.getApplicationLabel(applicationInfo);
   }
 
   @Override
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.policy;
+
+import android.annotation.TargetApi;
+import android.app.ListFragment;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Build.VERSION_CODES;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.TextView;
+import com.afwsamples.testdpc.R;
+import com.afwsamples.testdpc.networklogs.HeavyHitters;
+import com.afwsamples.testdpc.networklogs.NetworkLogStats;
+import com.afwsamples.testdpc.networklogs.NetworkLogStatsStore;
+import com.afwsamples.testdpc.util.MainThreadExecutor;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Display the stats aggregated from all the retrieved batches of NetworkEvents (see {@link
+ * NetworkLogStats}): totals, most looked up hostnames and the counts of each app.
+ */
+@TargetApi(VERSION_CODES.O)
+public class NetworkLogStatsFragment extends ListFragment {
+
+  private static final String TAG = "NetworkLogStatsFragment";
+
+  private static final int TOP_HOSTNAMES = 10;
+
+  private ListenableFuture<List<Row>> mRowsFuture;
+
+  /** A line of the list, with an optional second line. */
+  private static final class Row {
+    final String mTitle;
+    final String mSummary;
+
+    Row(String title, String summary) {
+      mTitle = title;
+      mSummary = summary;
+    }
+  }
+
+  @Override
+  public void onActivityCreated(Bundle savedInstanceState) {
+    super.onActivityCreated(savedInstanceState);
+    RowAdapter adapter = new RowAdapter(getActivity());
+    setListAdapter(adapter);
+    setEmptyText(getString(R.string.network_log_stats_none));
+    setListShown(false);
+
+    Context context = getActivity().getApplicationContext();
+    ListenableFutureTask<List<Row>> task =
+        ListenableFutureTask.create(
+            () -> createRows(context, NetworkLogStatsStore.get(context).getStats()));
+    AsyncTask.THREAD_POOL_EXECUTOR.execute(task);
+    mRowsFuture = task;
+    Futures.addCallback(
+        mRowsFuture,
+        new FutureCallback<List<Row>>() {
+          @Override
+          public void onSuccess(List<Row> rows) {
+            mRowsFuture = null;
+            adapter.addAll(rows);
+            setListShown(true);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (t instanceof CancellationException) {
+              return;
+            }
+            Log.e(TAG, "Failed to load network log stats", t);
+            mRowsFuture = null;
+            setListShown(true);
+          }
+        },
+        new MainThreadExecutor());
+  }
+
+  @Override
+  public void onDestroyView() {
+    if (mRowsFuture != null) {
+      mRowsFuture.cancel(false);
+      mRowsFuture = null;
+    }
+    super.onDestroyView();
+  }
+
+  private static List<Row> createRows(Context context, NetworkLogStats stats) {
+    List<Row> rows = new ArrayList<>();
+    if (stats.getBatchCount() == 0) {
+      return rows;
+    }
+    long dayAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+    NetworkLogStats.Counts totals = stats.getTotals();
+    NetworkLogStats.Counts lastDay = stats.getCountsSince(dayAgo);
+    rows.add(
+        new Row(
+            context.getString(R.string.network_log_stats_all_apps, stats.getBatchCount()),
+            context.getString(
+                R.string.network_log_stats_counts,
+                totals.getDnsLookups(),
+                totals.getConnects(),
+                lastDay.getDnsLookups(),
+                lastDay.getConnects(),
+                stats.getDistinctHostnames(),
+                stats.getDistinctAddresses())));
+
+    List<HeavyHitters.Entry> topHostnames = stats.getTopHostnames(TOP_HOSTNAMES);
+    if (!topHostnames.isEmpty()) {
+      rows.add(new Row(context.getString(R.string.network_log_stats_top_hostnames), null));
+      for (HeavyHitters.Entry entry : topHostnames) {
+        rows.add(
+            new Row(
+                entry.getValue(),
+                context.getString(R.string.network_log_stats_top_hostname, entry.getCount())));
+      }
+    }
+
+    rows.add(new Row(context.getString(R.string.network_log_stats_apps), null));
+    for (NetworkLogStats.PackageStats packageStats : stats.getPackages()) {
+      lastDay = packageStats.getCountsSince(dayAgo);
+      rows.add(
+          new Row(
+              packageStats.getPackageName(),
+              context.getString(
+                  R.string.network_log_stats_counts,
+                  packageStats.getDnsLookups(),
+                  packageStats.getConnects(),
+                  lastDay.getDnsLookups(),
+                  lastDay.getConnects(),
+                  packageStats.getDistinctHostnames(),
+                  packageStats.getDistinctAddresses())));
+    }
+    return rows;
+  }
+
+  private static class RowAdapter extends ArrayAdapter<Row> {
+
+    RowAdapter(Context context) {
+      super(context, android.R.layout.simple_list_item_2);
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+      View view =
+          convertView != null
+              ? convertView
+              : LayoutInflater.from(getContext())
+                  .inflate(android.R.layout.simple_list_item_2, parent, false);
+      Row row = getItem(position);
+      ((TextView) view.findViewById(android.R.id.text1)).setText(row.mTitle);
+      TextView summaryView = view.findViewById(android.R.id.text2);
+      summaryView.setText(row.mSummary);
+      summaryView.setVisibility(row.mSummary == null ? View.GONE : View.VISIBLE);
+      return view;
+    }
+  }
+}
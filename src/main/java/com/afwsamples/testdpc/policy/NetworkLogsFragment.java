@@ -16,124 +16,339 @@
 
 package com.afwsamples.testdpc.policy;
 
-import static com.afwsamples.testdpc.CommonReceiverOperations.NETWORK_LOGS_FILE_PREFIX;
-
 import android.annotation.TargetApi;
 import android.app.ListFragment;
+import android.content.Context;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
 import android.util.Log;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.EditText;
+import android.widget.Spinner;
+import android.widget.TextView;
 import com.afwsamples.testdpc.R;
-import java.io.BufferedReader;
+import com.afwsamples.testdpc.networklogs.NetworkLogFilter;
+import com.afwsamples.testdpc.networklogs.NetworkLogRecord;
+import com.afwsamples.testdpc.networklogs.NetworkLogSearch;
+import com.afwsamples.testdpc.networklogs.NetworkLogStore;
+import com.afwsamples.testdpc.util.MainThreadExecutor;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.PatternSyntaxException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-/** Display the last retrieved batch of NetworkEvents. */
+/**
+ * Display the NetworkEvents of all the retrieved batches, optionally filtered by package, hostname
+ * and time range.
+ *
+ * <p>The logs are searched in the background (see {@link NetworkLogSearch}), then read a page at a
+ * time as the list is scrolled, keeping only the pages around the visible ones in memory.
+ */
 @TargetApi(VERSION_CODES.O)
-public class NetworkLogsFragment extends ListFragment {
+public class NetworkLogsFragment extends ListFragment implements View.OnClickListener {
 
   private static final String TAG = "NetworkLogsFragment";
 
-  private List<String> mLogs = new ArrayList<>();
-  private ArrayAdapter<String> mAdapter;
+  private static final int PAGE_SIZE = 100;
+  private static final int MAX_PAGES = 5;
+  private static final long KEEP_ALIVE_SECONDS = 30;
+  // Matching the entries of R.array.network_logs_time_ranges
+  private static final long[] TIME_RANGES_MILLIS = {
+    Long.MAX_VALUE, TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(7)
+  };
+
+  // Searches and reads the logs, one task at a time, so a search is only used by one thread
+  private static final ListeningExecutorService sExecutor =
+      MoreExecutors.listeningDecorator(createExecutor());
+
+  private EditText mPackageView;
+  private EditText mHostnameView;
+  private Spinner mTimeRangeView;
+  private TextView mSummaryView;
+  private View mProgressView;
+  private PagedAdapter mAdapter;
+
+  // Null until searched
+  private NetworkLogSearch mSearch;
+  private ListenableFuture<NetworkLogSearch> mSearchFuture;
+  // Page last shown by the list, so pages scrolled past by the time they're read can be skipped
+  private volatile int mLastRequestedPage;
 
   @Override
-  public void onCreate(Bundle savedInstanceState) {
-    super.onCreate(savedInstanceState);
-    mAdapter =
-        new ArrayAdapter<>(
-            getActivity(), android.R.layout.simple_list_item_1, android.R.id.text1, mLogs);
-    setListAdapter(mAdapter);
+  public View onCreateView(
+      LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+    View view = inflater.inflate(R.layout.network_logs, container, false);
+    mPackageView = view.findViewById(R.id.network_logs_package);
+    mHostnameView = view.findViewById(R.id.network_logs_hostname);
+    mTimeRangeView = view.findViewById(R.id.network_logs_time_range);
+    mSummaryView = view.findViewById(R.id.network_logs_summary);
+    mProgressView = view.findViewById(R.id.network_logs_progress);
+    view.findViewById(R.id.network_logs_search).setOnClickListener(this);
+    return view;
   }
 
   @Override
   public void onActivityCreated(Bundle savedInstanceState) {
     super.onActivityCreated(savedInstanceState);
-    mLogs = fetchEvents();
-    showEvents(mLogs);
+    mAdapter = new PagedAdapter(getActivity());
+    setListAdapter(mAdapter);
+    search();
+  }
+
+  @Override
+  public void onDestroyView() {
+    super.onDestroyView();
+    mPackageView = null;
+    mHostnameView = null;
+    mTimeRangeView = null;
+    mSummaryView = null;
+    mProgressView = null;
   }
 
-  private List<String> fetchEvents() {
-    File logsFile = findLastBatch();
-    if (logsFile == null) {
-      return Collections.emptyList();
+  @Override
+  public void onDestroy() {
+    super.onDestroy();
+    if (mSearchFuture != null) {
+      mSearchFuture.cancel(false);
+      // So a search that completed before being cancelled is closed by its callback
+      mSearchFuture = null;
     }
-    BufferedReader reader = null;
-    try {
-      long batchToken = determineBatchToken(logsFile.getName());
-      mAdapter.add(getContext().getString(R.string.on_network_logs_available_success, batchToken));
-      reader = new BufferedReader(new FileReader(logsFile));
-      ArrayList<String> events = new ArrayList<>();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        Log.v(TAG, "found line: " + line);
-        events.add(line);
-      }
-      return events;
-    } catch (NumberFormatException | IOException e) {
-      mAdapter.add(getString(R.string.on_network_logs_available_failure));
-    } finally {
-      try {
-        if (reader != null) {
-          reader.close();
-        }
-      } catch (IOException e) {
-        // no-op
-      }
+    closeSearch();
+  }
+
+  @Override
+  public void onClick(View v) {
+    if (v.getId() == R.id.network_logs_search) {
+      search();
     }
-    return Collections.emptyList();
   }
 
-  private void showEvents(List<String> logs) {
-    if (logs == null) {
-      Log.w(TAG, "logs == null, are you polling too early?");
-      mAdapter.add(getString(R.string.on_network_logs_available_failure));
-    } else {
-      Log.d(TAG, "Incoming logs size: " + logs.size());
-      mAdapter.addAll(mLogs);
-      ListView listView = NetworkLogsFragment.this.getListView();
-      listView.setSelection(listView.getCount() - 1);
+  private void search() {
+    if (mSearchFuture != null) {
+      mSearchFuture.cancel(false);
     }
+    closeSearch();
+    mAdapter.clear();
+    mSummaryView.setText(null);
+    mProgressView.setVisibility(View.VISIBLE);
+
+    NetworkLogFilter filter = createFilter();
+    NetworkLogStore store = new NetworkLogStore(getActivity());
+    long start = System.nanoTime();
+    ListenableFuture<NetworkLogSearch> future =
+        sExecutor.submit(() -> NetworkLogSearch.open(store.getSegments(), filter));
+    mSearchFuture = future;
+    Futures.addCallback(
+        future,
+        new FutureCallback<NetworkLogSearch>() {
+          @Override
+          public void onSuccess(NetworkLogSearch search) {
+            // Completed before it could be cancelled, by a new search or the fragment's destruction
+            if (mSearchFuture != future) {
+              sExecutor.execute(search::close);
+              return;
+            }
+            Log.d(
+                TAG,
+                "Found "
+                    + search.getCount()
+                    + " events matching "
+                    + filter
+                    + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                    + "ms");
+            mSearchFuture = null;
+            mSearch = search;
+            showSearch();
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (t instanceof CancellationException || mSearchFuture != future) {
+              return;
+            }
+            Log.e(TAG, "Failed to search network logs", t);
+            mSearchFuture = null;
+            if (mSummaryView != null) {
+              mProgressView.setVisibility(View.GONE);
+              mSummaryView.setText(R.string.network_logs_search_failure);
+            }
+          }
+        },
+        new MainThreadExecutor());
   }
 
-  private File findLastBatch() {
-    File path = getContext().getExternalFilesDir(null);
-    if (path == null) {
-      return null;
+  private NetworkLogFilter createFilter() {
+    long range = TIME_RANGES_MILLIS[mTimeRangeView.getSelectedItemPosition()];
+    long from = range == Long.MAX_VALUE ? Long.MIN_VALUE : System.currentTimeMillis() - range;
+    return new NetworkLogFilter(
+        mPackageView.getText().toString().trim(),
+        mHostnameView.getText().toString().trim(),
+        from,
+        Long.MAX_VALUE);
+  }
+
+  private void showSearch() {
+    if (mSummaryView == null) {
+      return;
+    }
+    mProgressView.setVisibility(View.GONE);
+    String summary =
+        getString(R.string.network_logs_summary, mSearch.getCount(), mSearch.getSegmentCount());
+    List<File> unreadableSegments = mSearch.getUnreadableSegments();
+    if (!unreadableSegments.isEmpty()) {
+      Log.w(TAG, "Could not read " + unreadableSegments);
+      summary += "\n" + getString(R.string.network_logs_unreadable, unreadableSegments.size());
     }
-    File[] networkLogsFiles =
-        path.listFiles((File file, String s) -> s.startsWith(NETWORK_LOGS_FILE_PREFIX));
-    if (networkLogsFiles == null || networkLogsFiles.length == 0) {
-      return null;
+    mSummaryView.setText(summary);
+    mAdapter.setSearch(mSearch);
+    // Newest events last, like the logs themselves
+    getListView().setSelection(mSearch.getCount() - 1);
+  }
+
+  private void closeSearch() {
+    if (mSearch != null) {
+      NetworkLogSearch search = mSearch;
+      mSearch = null;
+      // Pages may still be read from it meanwhile
+      sExecutor.execute(search::close);
     }
-    // Get the most recent batch. Batches are sorted by the timestamp they were last modified
-    // in, also corresponding to the last value in their file names.
-    return Collections.max(
-        // Can't use Comparator.comparing(): requires default interface methods (min_sdk >= 24).
-        Arrays.asList(networkLogsFiles),
-        (f1, f2) -> Long.signum(f1.lastModified() - f2.lastModified()));
   }
 
-  private long determineBatchToken(String fileName) throws NumberFormatException {
-    // Name should be "network_logs_X_Y.txt", where X is the batch token
-    String[] fileNameArr = fileName.split("_");
-    if (fileNameArr.length <= 2) {
-      throw new NumberFormatException("Failed parsing the batch from file: " + fileName);
+  /** Shows the events of a search, reading the pages of those visible in the background. */
+  private class PagedAdapter extends BaseAdapter {
+
+    private final LayoutInflater mInflater;
+    // Least recently shown first
+    private final Map<Integer, List<String>> mPages =
+        new LinkedHashMap<Integer, List<String>>(MAX_PAGES * 2, 0.75f, /* accessOrder= */ true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Integer, List<String>> eldest) {
+            return size() > MAX_PAGES;
+          }
+        };
+    private final Set<Integer> mLoadingPages = new HashSet<>();
+    private NetworkLogSearch mAdapterSearch;
+
+    PagedAdapter(Context context) {
+      mInflater = LayoutInflater.from(context);
+    }
+
+    void setSearch(NetworkLogSearch search) {
+      mAdapterSearch = search;
+      mPages.clear();
+      mLoadingPages.clear();
+      notifyDataSetChanged();
+    }
+
+    void clear() {
+      setSearch(null);
+    }
+
+    @Override
+    public int getCount() {
+      return mAdapterSearch == null ? 0 : mAdapterSearch.getCount();
+    }
+
+    /** Returns the event at the given position, or {@code null} if its page isn't read yet. */
+    @Override
+    public String getItem(int position) {
+      int page = position / PAGE_SIZE;
+      List<String> events = mPages.get(page);
+      if (events == null) {
+        loadPage(page);
+        return null;
+      }
+      return events.get(position % PAGE_SIZE);
+    }
+
+    @Override
+    public long getItemId(int position) {
+      return position;
     }
-    long batchToken;
-    try {
-      batchToken = Long.parseLong(fileNameArr[2]);
-    } catch (PatternSyntaxException e) {
-      throw new NumberFormatException("Failed parsing the batch from file: " + fileName);
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+      TextView view =
+          convertView != null
+              ? (TextView) convertView
+              : (TextView) mInflater.inflate(android.R.layout.simple_list_item_1, parent, false);
+      String event = getItem(position);
+      view.setText(event != null ? event : getString(R.string.network_logs_loading));
+      return view;
     }
-    return batchToken;
+
+    private void loadPage(int page) {
+      mLastRequestedPage = page;
+      if (!mLoadingPages.add(page)) {
+        return;
+      }
+      NetworkLogSearch search = mAdapterSearch;
+      ListenableFuture<List<String>> future =
+          sExecutor.submit(
+              () -> {
+                if (Math.abs(page - mLastRequestedPage) > MAX_PAGES / 2) {
+                  // Scrolled past already, read again if scrolled back
+                  return null;
+                }
+                List<NetworkLogRecord> records = search.readPage(page * PAGE_SIZE, PAGE_SIZE);
+                List<String> events = new ArrayList<>(records.size());
+                for (NetworkLogRecord record : records) {
+                  events.add(record.toString());
+                }
+                return events;
+              });
+      Futures.addCallback(
+          future,
+          new FutureCallback<List<String>>() {
+            @Override
+            public void onSuccess(List<String> events) {
+              if (search != mAdapterSearch) {
+                return;
+              }
+              mLoadingPages.remove(page);
+              if (events != null) {
+                mPages.put(page, events);
+                notifyDataSetChanged();
+              }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              // Left among the pages loading, so it isn't read again on every scroll
+              Log.e(TAG, "Failed to read network logs page " + page, t);
+            }
+          },
+          new MainThreadExecutor());
+    }
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            (runnable) -> new Thread(runnable, "NetworkLogsThread"));
+    // Only used while the logs are shown, so there's no need to keep the thread around
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 }
@@ -103,15 +103,18 @@ import com.afwsamples.testdpc.DeviceAdminReceiver;
 import com.afwsamples.testdpc.DevicePolicyManagerGateway;
 import com.afwsamples.testdpc.DevicePolicyManagerGateway.FailedOperationException;
 import com.afwsamples.testdpc.DevicePolicyManagerGatewayImpl;
+import com.afwsamples.testdpc.InstrumentedDevicePolicyManagerGateway;
 import com.afwsamples.testdpc.R;
 import com.afwsamples.testdpc.SetupManagementActivity;
 import com.afwsamples.testdpc.common.AccountArrayAdapter;
 import com.afwsamples.testdpc.common.AppInfoArrayAdapter;
+import com.afwsamples.testdpc.common.AppLabelSorter;
 import com.afwsamples.testdpc.common.BaseSearchablePolicyPreferenceFragment;
 import com.afwsamples.testdpc.common.CertificateUtil;
 import com.afwsamples.testdpc.common.Dumpable;
 import com.afwsamples.testdpc.common.MediaDisplayFragment;
 import com.afwsamples.testdpc.common.PackageInstallationUtils;
+import com.afwsamples.testdpc.common.PackageSnapshot;
 import com.afwsamples.testdpc.common.ReflectionUtil;
 import com.afwsamples.testdpc.common.ReflectionUtil.ReflectionIsTemporaryException;
 import com.afwsamples.testdpc.common.UserArrayAdapter;
@@ -170,7 +173,6 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -350,6 +352,7 @@ public class PolicyManagementFragment extends BaseSearchablePolicyPreferenceFrag
   private static final String EPHEMERAL_USER_KEY = "ephemeral_user";
   private static final String REQUEST_BUGREPORT_KEY = "request_bugreport";
   private static final String REQUEST_NETWORK_LOGS = "request_network_logs";
+  private static final String NETWORK_LOG_STATS = "network_log_stats";
   private static final String REQUEST_SECURITY_LOGS = "request_security_logs";
   private static final String REQUEST_PRE_REBOOT_SECURITY_LOGS = "request_pre_reboot_security_logs";
   private static final String RESET_PASSWORD_KEY = "reset_password";
@@ -574,12 +577,14 @@ public class PolicyManagementFragment extends BaseSearchablePolicyPreferenceFrag
     mUserManager = context.getSystemService(UserManager.class);
     mPackageManager = context.getPackageManager();
     mDevicePolicyManagerGateway =
-        new DevicePolicyManagerGatewayImpl(
-            mDevicePolicyManager,
-            mUserManager,
-            mPackageManager,
-            context.getSystemService(LocationManager.class),
-            mAdminComponentName);
+        new InstrumentedDevicePolicyManagerGateway(
+            new DevicePolicyManagerGatewayImpl(
+                mDevicePolicyManager,
+                mUserManager,
+                mPackageManager,
+                context.getSystemService(LocationManager.class),
+                mAdminComponentName,
+                PackageSnapshot.get(context)));
     mIsProfileOwner = mDevicePolicyManagerGateway.isProfileOwnerApp();
     mIsOrganizationOwnedProfileOwner =
         Util.SDK_INT >= VERSION_CODES.R
@@ -725,6 +730,7 @@ public class PolicyManagementFragment extends BaseSearchablePolicyPreferenceFrag
     final CustomConstraint networkLoggingChecker =
         () -> isNetworkLoggingEnabled() ? NO_CUSTOM_CONSTRAINT : R.string.requires_network_logs;
     mRequestNetworkLogsPreference.setCustomConstraint(networkLoggingChecker);
+    findPreference(NETWORK_LOG_STATS).setOnPreferenceClickListener(this);
     findPreference(SET_ACCESSIBILITY_SERVICES_KEY).setOnPreferenceClickListener(this);
     findPreference(SET_INPUT_METHODS_KEY).setOnPreferenceClickListener(this);
     findPreference(SET_INPUT_METHODS_ON_PARENT_KEY).setOnPreferenceClickListener(this);
@@ -1089,6 +1095,9 @@ public class PolicyManagementFragment extends BaseSearchablePolicyPreferenceFrag
     } else if (REQUEST_NETWORK_LOGS.equals(key)) {
       showFragment(new NetworkLogsFragment());
       return true;
+    } else if (NETWORK_LOG_STATS.equals(key)) {
+      showFragment(new NetworkLogStatsFragment());
+      return true;
     } else if (REQUEST_SECURITY_LOGS.equals(key)) {
       showFragment(SecurityLogsFragment.newInstance(false /* preReboot */));
       return true;
@@ -1958,7 +1967,7 @@ public class PolicyManagementFragment extends BaseSearchablePolicyPreferenceFrag
     if (primaryUserAppList.isEmpty()) {
       showToast(R.string.no_primary_app_available);
     } else {
-      Collections.sort(primaryUserAppList, new ResolveInfo.DisplayNameComparator(mPackageManager));
+      AppLabelSorter.get(getActivity()).sortResolveInfos(primaryUserAppList);
       final LockTaskAppInfoArrayAdapter appInfoArrayAdapter =
           new LockTaskAppInfoArrayAdapter(getActivity(), R.id.pkg_name, primaryUserAppList);
       ListView listView = new ListView(getActivity());
@@ -3503,18 +3512,15 @@ public class PolicyManagementFragment extends BaseSearchablePolicyPreferenceFrag
       return;
     }
 
-    List<ApplicationInfo> applicationInfoList =
-        mPackageManager.getInstalledApplications(0 /* No flag */);
+    // Ignore system apps because they can't be uninstalled.
+    List<String> packageNames =
+        PackageSnapshot.get(activity)
+            .getPackageNames((app) -> app.isEnabled() && !app.isSystemApp());
     List<ResolveInfo> resolveInfoList = new ArrayList<ResolveInfo>();
-    Collections.sort(
-        applicationInfoList, new ApplicationInfo.DisplayNameComparator(mPackageManager));
-    for (ApplicationInfo applicationInfo : applicationInfoList) {
-      // Ignore system apps because they can't be uninstalled.
-      if ((applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) == 0) {
-        ResolveInfo resolveInfo = new ResolveInfo();
-        resolveInfo.resolvePackageName = applicationInfo.packageName;
-        resolveInfoList.add(resolveInfo);
-      }
+    for (String packageName : packageNames) {
+      ResolveInfo resolveInfo = new ResolveInfo();
+      resolveInfo.resolvePackageName = packageName;
+      resolveInfoList.add(resolveInfo);
     }
 
     final BlockUninstallationInfoArrayAdapter blockUninstallationInfoArrayAdapter =
@@ -3824,13 +3830,12 @@ public class PolicyManagementFragment extends BaseSearchablePolicyPreferenceFrag
       return;
     }
 
-    final List<ApplicationInfo> applicationInfos =
-        mPackageManager.getInstalledApplications(0 /* flags */);
+    final List<String> packageNames =
+        PackageSnapshot.get(activity).getPackageNames((app) -> app.isEnabled());
     final List<ResolveInfo> resolveInfos = new ArrayList<>();
-    Collections.sort(applicationInfos, new ApplicationInfo.DisplayNameComparator(mPackageManager));
-    for (ApplicationInfo applicationInfo : applicationInfos) {
+    for (String packageName : packageNames) {
       final ResolveInfo resolveInfo = new ResolveInfo();
-      resolveInfo.resolvePackageName = applicationInfo.packageName;
+      resolveInfo.resolvePackageName = packageName;
       resolveInfos.add(resolveInfo);
     }
     final MeteredDataRestrictionInfoAdapter meteredDataRestrictionInfoAdapter =
@@ -3905,16 +3910,12 @@ public class PolicyManagementFragment extends BaseSearchablePolicyPreferenceFrag
     final Intent launcherIntent = Util.getLauncherIntent(getActivity());
     final List<ResolveInfo> launcherIntentResolvers =
         mPackageManager.queryIntentActivities(launcherIntent, 0);
-    Collections.sort(
-        launcherIntentResolvers, new ResolveInfo.DisplayNameComparator(mPackageManager));
+    AppLabelSorter.get(getActivity()).sortResolveInfos(launcherIntentResolvers);
     return launcherIntentResolvers;
   }
 
   private List<ApplicationInfo> getAllInstalledApplicationsSorted() {
-    List<ApplicationInfo> allApps =
-        mPackageManager.getInstalledApplications(PackageManager.GET_UNINSTALLED_PACKAGES);
-    Collections.sort(allApps, new ApplicationInfo.DisplayNameComparator(mPackageManager));
-    return allApps;
+    return PackageSnapshot.get(getActivity()).getApplicationInfos((app) -> true);
   }
 
   private void showToast(int msgId, Object... args) {
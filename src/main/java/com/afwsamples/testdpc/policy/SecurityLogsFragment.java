@@ -168,6 +168,19 @@ public class SecurityLogsFragment extends ListFragment {
     return sTagNames.getOrDefault(eventId, "UNKNOWN(" + eventId + ")");
   }
 
+  /**
+   * Returns the id of the given event tag name (as returned by {@link #getStringEventTagFromId}),
+   * or {@code -1} if there is no such tag.
+   */
+  public static int getEventTagIdFromString(String tagName) {
+    for (Map.Entry<Integer, String> entry : sTagNames.entrySet()) {
+      if (entry.getValue().equalsIgnoreCase(tagName)) {
+        return entry.getKey();
+      }
+    }
+    return -1;
+  }
+
   public static void printData(StringBuilder sb, Object data) {
     if (data instanceof Integer
         || data instanceof Long
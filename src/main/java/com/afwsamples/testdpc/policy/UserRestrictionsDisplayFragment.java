@@ -28,8 +28,8 @@ import android.util.Log;
 import android.widget.Toast;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceScreen;
+import com.afwsamples.testdpc.AsyncDevicePolicyManagerGateway;
 import com.afwsamples.testdpc.DeviceAdminReceiver;
-import com.afwsamples.testdpc.DevicePolicyManagerGateway;
 import com.afwsamples.testdpc.DevicePolicyManagerGatewayImpl;
 import com.afwsamples.testdpc.R;
 import com.afwsamples.testdpc.common.BaseSearchablePolicyPreferenceFragment;
@@ -37,12 +37,14 @@ import com.afwsamples.testdpc.common.Util;
 import com.afwsamples.testdpc.common.preference.DpcPreferenceBase;
 import com.afwsamples.testdpc.common.preference.DpcPreferenceHelper;
 import com.afwsamples.testdpc.common.preference.DpcSwitchPreference;
+import java.util.HashMap;
+import java.util.Map;
 
 public class UserRestrictionsDisplayFragment extends BaseSearchablePolicyPreferenceFragment
     implements Preference.OnPreferenceChangeListener {
   private static final String TAG = "UserRestrictions";
 
-  private DevicePolicyManagerGateway mDevicePolicyManagerGateway;
+  private AsyncDevicePolicyManagerGateway mAsyncDevicePolicyManagerGateway;
 
   public static UserRestrictionsDisplayFragment newInstance() {
     UserRestrictionsDisplayFragment fragment = new UserRestrictionsDisplayFragment();
@@ -51,11 +53,18 @@ public class UserRestrictionsDisplayFragment extends BaseSearchablePolicyPrefere
 
   @Override
   public void onCreate(Bundle savedInstanceState) {
-    mDevicePolicyManagerGateway = new DevicePolicyManagerGatewayImpl(getActivity());
+    mAsyncDevicePolicyManagerGateway =
+        new AsyncDevicePolicyManagerGateway(new DevicePolicyManagerGatewayImpl(getActivity()));
     super.onCreate(savedInstanceState);
     getActivity().getActionBar().setTitle(R.string.user_restrictions_management_title);
   }
 
+  @Override
+  public void onDestroy() {
+    mAsyncDevicePolicyManagerGateway.close();
+    super.onDestroy();
+  }
+
   @Override
   public void onCreatePreferences(Bundle bundle, String rootkey) {
     PreferenceScreen preferenceScreen =
@@ -90,39 +99,64 @@ public class UserRestrictionsDisplayFragment extends BaseSearchablePolicyPrefere
   public boolean onPreferenceChange(Preference preference, Object newValue) {
     String restriction = preference.getKey();
     boolean enabled = newValue.equals(true);
-    try {
-      mDevicePolicyManagerGateway.setUserRestriction(restriction, enabled);
-      if (!enabled) {
-        if (DISALLOW_INSTALL_UNKNOWN_SOURCES.equals(restriction)
-            || UserManager.DISALLOW_INSTALL_UNKNOWN_SOURCES_GLOBALLY.equals(restriction)) {
-          new AlertDialog.Builder(getActivity())
-              .setMessage(R.string.check_setting_disallow_install_unknown_sources)
-              .setPositiveButton(R.string.check_setting_ok, null)
+    // Made in the background after the reads already submitted, which are then delivered first,
+    // so they can't override the switch with the value from before the change
+    mAsyncDevicePolicyManagerGateway.<Void>call(
+        (gateway, onSuccess, onError) ->
+            gateway.setUserRestriction(restriction, enabled, onSuccess, onError),
+        (v) -> onUserRestrictionChanged(restriction, enabled),
+        (e) -> {
+          Toast.makeText(getActivity(), R.string.user_restriction_error_msg, Toast.LENGTH_SHORT)
               .show();
-        }
-      }
-      updateUserRestriction(restriction);
-      if (UserManager.DISALLOW_UNIFIED_PASSWORD.equals(restriction)) {
-        DeviceAdminReceiver.sendPasswordRequirementsChanged(getActivity());
+          Log.e(TAG, "Error occurred while updating user restriction: " + restriction, e);
+        });
+    updateUserRestriction(restriction);
+    // Updated by updateUserRestriction() once the change is made
+    return false;
+  }
+
+  private void onUserRestrictionChanged(String restriction, boolean enabled) {
+    if (!enabled) {
+      if (DISALLOW_INSTALL_UNKNOWN_SOURCES.equals(restriction)
+          || UserManager.DISALLOW_INSTALL_UNKNOWN_SOURCES_GLOBALLY.equals(restriction)) {
+        new AlertDialog.Builder(getActivity())
+            .setMessage(R.string.check_setting_disallow_install_unknown_sources)
+            .setPositiveButton(R.string.check_setting_ok, null)
+            .show();
       }
-      return true;
-    } catch (SecurityException e) {
-      Toast.makeText(getActivity(), R.string.user_restriction_error_msg, Toast.LENGTH_SHORT).show();
-      Log.e(TAG, "Error occurred while updating user restriction: " + restriction, e);
-      return false;
+    }
+    if (UserManager.DISALLOW_UNIFIED_PASSWORD.equals(restriction)) {
+      DeviceAdminReceiver.sendPasswordRequirementsChanged(getActivity());
     }
   }
 
   private void updateAllUserRestrictions() {
-    for (UserRestriction restriction : UserRestriction.ALL_USER_RESTRICTIONS) {
-      updateUserRestriction(restriction.key);
-    }
+    // Reading each restriction is a binder call, so they're read in the background
+    mAsyncDevicePolicyManagerGateway.read(
+        (gateway) -> {
+          Map<String, Boolean> disallowed = new HashMap<>();
+          for (UserRestriction restriction : UserRestriction.ALL_USER_RESTRICTIONS) {
+            disallowed.put(restriction.key, gateway.hasUserRestriction(restriction.key));
+          }
+          return disallowed;
+        },
+        (disallowed) -> {
+          for (Map.Entry<String, Boolean> entry : disallowed.entrySet()) {
+            DpcSwitchPreference preference = (DpcSwitchPreference) findPreference(entry.getKey());
+            preference.setChecked(entry.getValue());
+          }
+        },
+        (e) -> Log.e(TAG, "Error reading user restrictions", e));
   }
 
   private void updateUserRestriction(String userRestriction) {
-    DpcSwitchPreference preference = (DpcSwitchPreference) findPreference(userRestriction);
-    boolean disallowed = mDevicePolicyManagerGateway.hasUserRestriction(userRestriction);
-    preference.setChecked(disallowed);
+    mAsyncDevicePolicyManagerGateway.read(
+        (gateway) -> gateway.hasUserRestriction(userRestriction),
+        (disallowed) -> {
+          DpcSwitchPreference preference = (DpcSwitchPreference) findPreference(userRestriction);
+          preference.setChecked(disallowed);
+        },
+        (e) -> Log.e(TAG, "Error reading user restriction: " + userRestriction, e));
   }
 
   private void constrainPreferences() {
@@ -19,9 +19,7 @@ package com.afwsamples.testdpc.policy.blockuninstallation;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.CheckBox;
@@ -64,17 +62,6 @@ public class BlockUninstallationInfoArrayAdapter extends ToggleComponentsArrayAd
     return view;
   }
 
-  @Override
-  protected ApplicationInfo getApplicationInfo(int position) {
-    try {
-      return mPackageManager.getApplicationInfo(
-          getItem(position).resolvePackageName, 0 /* Default flags */);
-    } catch (PackageManager.NameNotFoundException e) {
-      Log.e(TAG, "getApplicationInfo: ", e);
-    }
-    return null;
-  }
-
   private List<Boolean> createIsComponentEnabledList() {
     List<Boolean> isComponentEnabledList = new ArrayList<>();
     int size = getCount();
@@ -97,7 +84,7 @@ public class BlockUninstallationInfoArrayAdapter extends ToggleComponentsArrayAd
   }
 
   @Override
-  public CharSequence getDisplayName(int position) {
-    return mPackageManager.getApplicationLabel(getApplicationInfo(position));
+  public CharSequence getDisplayName(ResolveInfo resolveInfo, ApplicationInfo applicationInfo) {
+    return mPackageManager.getApplicationLabel(applicationInfo);
   }
 }
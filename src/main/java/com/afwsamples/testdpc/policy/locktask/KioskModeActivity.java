@@ -30,7 +30,6 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
@@ -44,12 +43,17 @@ import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.TextView;
 import com.afwsamples.testdpc.DeviceAdminReceiver;
+import com.afwsamples.testdpc.DevicePolicyManagerGateway;
+import com.afwsamples.testdpc.DevicePolicyManagerGatewayImpl;
 import com.afwsamples.testdpc.PolicyManagementActivity;
 import com.afwsamples.testdpc.R;
+import com.afwsamples.testdpc.common.AppIconLoader;
 import com.afwsamples.testdpc.common.Util;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Shows the list of apps passed in the {@link #LOCKED_APP_PACKAGE_LIST} extra (or previously saved
@@ -87,6 +91,7 @@ public class KioskModeActivity extends Activity {
   private ComponentName mAdminComponentName;
   private ArrayList<String> mKioskPackages;
   private DevicePolicyManager mDevicePolicyManager;
+  private DevicePolicyManagerGateway mDevicePolicyManagerGateway;
   private PackageManager mPackageManager;
 
   @Override
@@ -95,6 +100,7 @@ public class KioskModeActivity extends Activity {
 
     mAdminComponentName = DeviceAdminReceiver.getComponentName(this);
     mDevicePolicyManager = (DevicePolicyManager) getSystemService(Context.DEVICE_POLICY_SERVICE);
+    mDevicePolicyManagerGateway = new DevicePolicyManagerGatewayImpl(this);
     mPackageManager = getPackageManager();
 
     // check if a new list of apps was sent, otherwise fall back to saved list
@@ -166,23 +172,22 @@ public class KioskModeActivity extends Activity {
     startActivity(new Intent(this, PolicyManagementActivity.class));
   }
 
-  private void setUserRestriction(String restriction, boolean disallow) {
-    if (disallow) {
-      mDevicePolicyManager.addUserRestriction(mAdminComponentName, restriction);
-    } else {
-      mDevicePolicyManager.clearUserRestriction(mAdminComponentName, restriction);
-    }
+  private void setUserRestrictions(Map<String, Boolean> restrictions) {
+    mDevicePolicyManagerGateway.setUserRestrictions(
+        restrictions,
+        (changed) -> Log.d(TAG, "Changed user restrictions: " + changed),
+        (e) -> Log.e(TAG, "Error setting user restrictions " + restrictions, e));
   }
 
   private void setDefaultKioskPolicies(boolean active) {
     // restore or save previous configuration
     if (active) {
       saveCurrentConfiguration();
-      setUserRestriction(DISALLOW_SAFE_BOOT, active);
-      setUserRestriction(DISALLOW_FACTORY_RESET, active);
-      setUserRestriction(DISALLOW_ADD_USER, active);
-      setUserRestriction(DISALLOW_MOUNT_PHYSICAL_MEDIA, active);
-      setUserRestriction(DISALLOW_ADJUST_VOLUME, active);
+      Map<String, Boolean> restrictions = new HashMap<>();
+      for (String userRestriction : KIOSK_USER_RESTRICTIONS) {
+        restrictions.put(userRestriction, true);
+      }
+      setUserRestrictions(restrictions);
     } else {
       restorePreviousConfiguration();
     }
@@ -220,10 +225,12 @@ public class KioskModeActivity extends Activity {
       SharedPreferences sharedPreferences =
           getSharedPreferences(KIOSK_PREFERENCE_FILE, MODE_PRIVATE);
 
+      Map<String, Boolean> restrictions = new HashMap<>();
       for (String userRestriction : KIOSK_USER_RESTRICTIONS) {
         boolean prevSettingValue = sharedPreferences.getBoolean(userRestriction, false);
-        setUserRestriction(userRestriction, prevSettingValue);
+        restrictions.put(userRestriction, prevSettingValue);
       }
+      setUserRestrictions(restrictions);
     }
   }
 
@@ -236,26 +243,21 @@ public class KioskModeActivity extends Activity {
 
     @Override
     public View getView(final int position, View convertView, ViewGroup parent) {
-      ApplicationInfo applicationInfo;
-      try {
-        applicationInfo = mPackageManager.getApplicationInfo(getItem(position), 0);
-      } catch (PackageManager.NameNotFoundException e) {
-        Log.e(TAG, "Fail to retrieve application info for the entry: " + position, e);
-        return null;
-      }
-
       if (convertView == null) {
         convertView =
             LayoutInflater.from(getContext()).inflate(R.layout.kiosk_mode_item, parent, false);
       }
       ImageView iconImageView = (ImageView) convertView.findViewById(R.id.pkg_icon);
-      iconImageView.setImageDrawable(applicationInfo.loadIcon(mPackageManager));
       TextView pkgNameTextView = (TextView) convertView.findViewById(R.id.pkg_name);
+      AppIconLoader appIconLoader = AppIconLoader.get(getContext());
       if (getPackageName().equals(getItem(position))) {
         // back door
         pkgNameTextView.setText(getString(R.string.stop_kiosk_mode));
+        appIconLoader.load(iconImageView, null /* labelView */, getItem(position), 0);
       } else {
-        pkgNameTextView.setText(applicationInfo.loadLabel(mPackageManager));
+        // Shown until the label is loaded
+        pkgNameTextView.setText(getItem(position));
+        appIconLoader.load(iconImageView, pkgNameTextView, getItem(position), 0);
       }
       return convertView;
     }
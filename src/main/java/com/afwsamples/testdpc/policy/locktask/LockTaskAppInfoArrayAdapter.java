@@ -63,11 +63,6 @@ public class LockTaskAppInfoArrayAdapter extends ToggleComponentsArrayAdapter {
     return lockTaskPackages.toArray(new String[0]);
   }
 
-  @Override
-  protected ApplicationInfo getApplicationInfo(int position) {
-    return getItem(position).activityInfo.applicationInfo;
-  }
-
   private List<Boolean> createIsComponentEnabledList() {
     List<Boolean> isComponentEnabledList = new ArrayList<>();
     int size = getCount();
@@ -84,7 +79,7 @@ public class LockTaskAppInfoArrayAdapter extends ToggleComponentsArrayAdapter {
   }
 
   @Override
-  public CharSequence getDisplayName(int position) {
-    return getItem(position).loadLabel(mPackageManager);
+  public CharSequence getDisplayName(ResolveInfo resolveInfo, ApplicationInfo applicationInfo) {
+    return resolveInfo.loadLabel(mPackageManager);
   }
 }
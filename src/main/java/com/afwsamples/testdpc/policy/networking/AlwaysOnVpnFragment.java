@@ -98,9 +98,9 @@ public class AlwaysOnVpnFragment extends SelectAppFragment {
   }
 
   @Override
-  protected List<String> createAppList() {
+  protected List<String> createAppList(Context context) {
     Set<String> apps = new HashSet<>();
-    PackageManager pm = getActivity().getPackageManager();
+    PackageManager pm = context.getPackageManager();
     List<ResolveInfo> serviceInfos = pm.queryIntentServices(VPN_INTENT, 0);
     for (ResolveInfo serviceInfo : serviceInfos) {
       if (serviceInfo.serviceInfo == null) {
@@ -48,6 +48,7 @@ import android.widget.ListView;
 import android.widget.Spinner;
 import android.widget.TextView;
 import com.afwsamples.testdpc.R;
+import com.afwsamples.testdpc.common.AppIconLoader;
 import com.afwsamples.testdpc.common.OnBackPressedHandler;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -406,43 +407,22 @@ public class NetworkUsageStatsFragment extends ListFragment
         break;
       default:
         {
+          // Shown until the app is loaded, or if no app has this uid
           title.setText(getString(R.string.network_stats_uid, uid));
-          icon = mPackageManager.getDefaultActivityIcon();
-          final String[] packageNames = mPackageManager.getPackagesForUid(uid);
-          final int length = packageNames != null ? packageNames.length : 0;
-          try {
-            if (length == 1) {
-              final String pkgName = packageNames[0];
-              final ApplicationInfo info =
-                  mPackageManager.getApplicationInfo(pkgName, 0 /* no flags */);
-              if (info != null) {
-                title.setText(info.loadLabel(mPackageManager));
-                icon = info.loadIcon(mPackageManager);
-              }
-            } else {
-              for (int i = 0; i < length; i++) {
-                final String packageName = packageNames[i];
-                final PackageInfo packageInfo =
-                    mPackageManager.getPackageInfo(packageName, 0 /* no flags */);
-                final ApplicationInfo appInfo =
-                    mPackageManager.getApplicationInfo(packageName, 0 /* no flags */);
-
-                if (appInfo != null && packageInfo != null) {
-                  if (packageInfo.sharedUserLabel != 0) {
-                    title.setText(
-                        mPackageManager.getText(
-                            packageName, packageInfo.sharedUserLabel, packageInfo.applicationInfo));
-                    icon = appInfo.loadIcon(mPackageManager);
-                  }
-                }
-              }
-            }
-          } catch (PackageManager.NameNotFoundException e) {
-            // keep the default activity icon
-          }
+          icon = null;
+          AppIconLoader.get(getActivity())
+              .load(
+                  imageView,
+                  title,
+                  AppIconLoader.getUidKey(uid),
+                  (packageManager) -> loadApp(packageManager, uid));
         }
     }
-    imageView.setImageDrawable(icon);
+    if (icon != null) {
+      // Drops any load this view was waiting for, as it was recycled from an app's row
+      AppIconLoader.get(getActivity()).cancel(imageView);
+      imageView.setImageDrawable(icon);
+    }
     final int bucketsCount = item.size();
     if (bucketsCount == 1) {
       summary.setText(formatSize(bucket.getRxBytes() + bucket.getTxBytes()));
@@ -478,6 +458,44 @@ public class NetworkUsageStatsFragment extends ListFragment
     return Formatter.formatFileSize(getActivity(), sizeBytes);
   }
 
+  /** Loads the icon and label of the app (or shared user) with the given uid. */
+  private static AppIconLoader.AppIcon loadApp(PackageManager packageManager, int uid) {
+    Drawable icon = packageManager.getDefaultActivityIcon();
+    CharSequence label = null;
+    final String[] packageNames = packageManager.getPackagesForUid(uid);
+    final int length = packageNames != null ? packageNames.length : 0;
+    try {
+      if (length == 1) {
+        final String pkgName = packageNames[0];
+        final ApplicationInfo info = packageManager.getApplicationInfo(pkgName, 0 /* no flags */);
+        if (info != null) {
+          label = info.loadLabel(packageManager);
+          icon = info.loadIcon(packageManager);
+        }
+      } else {
+        for (int i = 0; i < length; i++) {
+          final String packageName = packageNames[i];
+          final PackageInfo packageInfo =
+              packageManager.getPackageInfo(packageName, 0 /* no flags */);
+          final ApplicationInfo appInfo =
+              packageManager.getApplicationInfo(packageName, 0 /* no flags */);
+
+          if (appInfo != null && packageInfo != null) {
+            if (packageInfo.sharedUserLabel != 0) {
+              label =
+                  packageManager.getText(
+                      packageName, packageInfo.sharedUserLabel, packageInfo.applicationInfo);
+              icon = appInfo.loadIcon(packageManager);
+            }
+          }
+        }
+      }
+    } catch (PackageManager.NameNotFoundException e) {
+      // keep the default activity icon
+    }
+    return new AppIconLoader.AppIcon(icon, label);
+  }
+
   private static class ViewHolder {
     public final TextView title;
     public final TextView summary;
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations, which can be recorded from any number of threads.
+ *
+ * <p>Values are counted in log-linear buckets: each power of two is split into {@value
+ * #SUB_BUCKET_COUNT} buckets of equal width, so percentiles are accurate to within 12.5% (values
+ * below {@value #SUB_BUCKET_COUNT} are exact) while the whole {@code long} range fits in a few
+ * hundred counters. The maximum is tracked exactly.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong mMax = new AtomicLong();
+
+  /** Records a duration; negative values (e.g. from a clock going backwards) are recorded as 0. */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    mCounts.incrementAndGet(bucketIndex(value));
+
+    long max = mMax.get();
+    while (value > max && !mMax.compareAndSet(max, value)) {
+      max = mMax.get();
+    }
+  }
+
+  /**
+   * Clears the recorded values. Values recorded concurrently with the reset may or may not be
+   * cleared.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      mCounts.set(i, 0);
+    }
+    mMax.set(0);
+  }
+
+  /**
+   * Returns a copy of the recorded values. The buckets and the maximum are read one at a time while
+   * other threads may keep recording, so the values recorded meanwhile may only be partly included
+   * (e.g. in the maximum but not in the counts).
+   */
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKET_COUNT];
+    long totalCount = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = mCounts.get(i);
+      totalCount += counts[i];
+    }
+    return new Snapshot(counts, totalCount, mMax.get());
+  }
+
+  /** The values recorded by a {@link LatencyHistogram} at a given time. */
+  public static final class Snapshot {
+    private final long[] mCounts;
+    private final long mCount;
+    private final long mMax;
+
+    private Snapshot(long[] counts, long count, long max) {
+      mCounts = counts;
+      mCount = count;
+      mMax = max;
+    }
+
+    public long getCount() {
+      return mCount;
+    }
+
+    public long getMax() {
+      return mMax;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the values fall, rounded up to the end
+     * of its bucket, or 0 if no value was recorded.
+     *
+     * @param percentile A number between 0 and 100.
+     */
+    public long getValueAtPercentile(double percentile) {
+      if (mCount == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(mCount * Math.min(percentile, 100) / 100));
+      long seen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        seen += mCounts[i];
+        if (seen >= rank) {
+          return Math.min(bucketUpperBound(i), mMax);
+        }
+      }
+      return mMax;
+    }
+  }
+
+  private static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  private static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    long lowerBound = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
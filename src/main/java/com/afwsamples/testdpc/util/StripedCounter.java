@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that can be updated from many threads without them contending on a single memory
+ * location (a minimal {@code LongAdder}, which is only available from API 24).
+ *
+ * <p>Each thread updates one of {@value #STRIPES} cells, chosen by its id and padded to its own
+ * cache line, and reads add all of them up. Updates don't allocate.
+ */
+public final class StripedCounter {
+  private static final int STRIPES = 4;
+  // Longs per 64-byte cache line, so that two stripes are never updated through the same line
+  private static final int CELL_SIZE = 8;
+
+  private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * CELL_SIZE);
+
+  public void increment() {
+    add(1);
+  }
+
+  public void add(long delta) {
+    mCells.addAndGet(cellIndex(), delta);
+  }
+
+  /**
+   * Returns the sum of all the updates. Updates made concurrently with the call may or may not be
+   * included.
+   */
+  public long get() {
+    long sum = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      sum += mCells.get(i * CELL_SIZE);
+    }
+    return sum;
+  }
+
+  /**
+   * Sets the counter to 0. Updates made concurrently with the reset may or may not be cleared.
+   */
+  public void reset() {
+    for (int i = 0; i < STRIPES; i++) {
+      mCells.set(i * CELL_SIZE, 0);
+    }
+  }
+
+  private static int cellIndex() {
+    long id = Thread.currentThread().getId();
+    return ((int) (id ^ (id >>> 32)) & (STRIPES - 1)) * CELL_SIZE;
+  }
+}
@@ -17,9 +17,11 @@
 package com.afwsamples.testdpc.util.flags;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -27,6 +29,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 // Command registration methods are replicated 16 times to ensure parameter types match the function
 // signature for compile-time type safety.
@@ -37,18 +40,33 @@ import java.util.Set;
 public final class Flags {
   private static class InvalidCommandInvocationException extends RuntimeException {
     private final String message;
+    private final boolean showUsage;
 
-    InvalidCommandInvocationException(String message) {
+    InvalidCommandInvocationException(String message, boolean showUsage) {
       this.message = message;
+      this.showUsage = showUsage;
     }
 
     public String message() {
       return message;
     }
+
+    /** Whether {@link Flags#run} should print the full usage text along with the message. */
+    public boolean showUsage() {
+      return showUsage;
+    }
   }
 
   private static RuntimeException commandInvocationException(String message, Object... args) {
-    return new InvalidCommandInvocationException(String.format(message, args));
+    return new InvalidCommandInvocationException(String.format(message, args), true);
+  }
+
+  /**
+   * Creates an exception for a command name that could not be resolved. The message already lists
+   * the closest matches, so {@link Flags#run} does not print the full usage text.
+   */
+  private static InvalidCommandInvocationException commandLookupException(String message) {
+    return new InvalidCommandInvocationException(message, false);
   }
 
   private static RuntimeException usageException(String message, Object... args) {
@@ -65,6 +83,21 @@ public final class Flags {
     R apply(T1 t1, T2 t2);
   }
 
+  /**
+   * Wraps the execution of every command, e.g. to measure it; see {@link
+   * Flags#setCommandInterceptor}.
+   */
+  public interface CommandInterceptor {
+    /**
+     * Called once the arguments of a command were parsed; must call {@code command.run()} to
+     * actually execute it.
+     *
+     * @param commandName The full name of the command, even if it was invoked by an abbreviation.
+     * @param parseNanos The time spent resolving the command and parsing its arguments.
+     */
+    void intercept(String commandName, long parseNanos, Runnable command);
+  }
+
   interface Param<T> {
     boolean isOrdinal();
 
@@ -249,25 +282,40 @@ public final class Flags {
   private static final class Params {
     private final List<Param<?>> ordinalParams;
     private final Map<String, Param<?>> namedParams;
-
-    private Params(List<Param<?>> ordinalParams, Map<String, Param<?>> namedParams) {
-      this.ordinalParams = ordinalParams;
-      this.namedParams = namedParams;
-    }
-
-    private static Params create(Iterable<Param<?>> params) {
-      List<Param<?>> ordinalParams = new ArrayList<>();
-      Map<String, Param<?>> namedParams = new LinkedHashMap<>();
-
-      for (Param<?> param : params) {
+    // All params, indexed in the order they are passed to the command callback
+    private final Param<?>[] params;
+    private final int[] ordinalParamIndexes;
+    private final int[] namedParamIndexes;
+    // Empty arrays of the type of each repeated param, used to create their values
+    private final Object[][] emptyArrays;
+
+    private Params(List<Param<?>> params) {
+      this.params = params.toArray(new Param<?>[0]);
+      this.ordinalParams = new ArrayList<>();
+      this.namedParams = new LinkedHashMap<>();
+      this.emptyArrays = new Object[this.params.length][];
+
+      List<Integer> ordinalParamIndexes = new ArrayList<>();
+      List<Integer> namedParamIndexes = new ArrayList<>();
+      for (int index = 0; index < this.params.length; ++index) {
+        Param<?> param = this.params[index];
         if (param.isOrdinal()) {
           ordinalParams.add(param);
+          ordinalParamIndexes.add(index);
         } else {
           namedParams.put(param.name(), param);
+          namedParamIndexes.add(index);
+        }
+        if (param.acceptsMultipleValues()) {
+          emptyArrays[index] = (Object[]) Array.newInstance(boxedType(param.dataType()), 0);
         }
       }
+      this.ordinalParamIndexes = toIntArray(ordinalParamIndexes);
+      this.namedParamIndexes = toIntArray(namedParamIndexes);
+    }
 
-      return new Params(ordinalParams, namedParams);
+    private static Params create(List<Param<?>> params) {
+      return new Params(params);
     }
 
     private List<Param<?>> ordinalParams() {
@@ -277,6 +325,76 @@ public final class Flags {
     private Map<String, Param<?>> namedParams() {
       return namedParams;
     }
+
+    private Param<?> param(int index) {
+      return params[index];
+    }
+
+    private int ordinalParamIndex(int ordinal) {
+      return ordinalParamIndexes[ordinal];
+    }
+
+    /**
+     * Finds the named param whose name is the given argument from {@code offset} on, without
+     * creating a substring.
+     *
+     * @return the index of the param, or {@code -1} if there is no such param.
+     */
+    private int namedParamIndex(String arg, int offset) {
+      int nameLength = arg.length() - offset;
+      for (int index : namedParamIndexes) {
+        String name = params[index].name();
+        if (name.length() == nameLength && arg.startsWith(name, offset)) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    private int[] namedParamIndexes() {
+      return namedParamIndexes;
+    }
+
+    private Object[] emptyArray(int index) {
+      return emptyArrays[index];
+    }
+
+    private static int[] toIntArray(List<Integer> values) {
+      int[] array = new int[values.size()];
+      for (int index = 0; index < array.length; ++index) {
+        array[index] = values.get(index);
+      }
+      return array;
+    }
+
+    /** Gets the type of the arrays of a repeated param, whose values can't be primitives. */
+    private static Class<?> boxedType(Class<?> type) {
+      if (!type.isPrimitive()) {
+        return type;
+      }
+      if (type == boolean.class) {
+        return Boolean.class;
+      }
+      if (type == char.class) {
+        return Character.class;
+      }
+      if (type == byte.class) {
+        return Byte.class;
+      }
+      if (type == short.class) {
+        return Short.class;
+      }
+      if (type == int.class) {
+        return Integer.class;
+      }
+      if (type == long.class) {
+        return Long.class;
+      }
+      if (type == float.class) {
+        return Float.class;
+      }
+      return Double.class;
+    }
   }
 
   interface CommandMethod {
@@ -288,6 +406,9 @@ public final class Flags {
     private final String description;
     private final Params params;
     private final CommandMethod commandMethod;
+    // Usage entry rendered for the most recently requested line length; commands can be shared
+    // between threads through a CommandTable
+    private volatile RenderedUsage renderedUsage;
 
     private RegisteredCommand(Builder builder) {
       this.name = builder.name;
@@ -312,6 +433,16 @@ public final class Flags {
       return commandMethod;
     }
 
+    /** Returns the usage entry of this command, wrapped to the given line length. */
+    private String usage(int lineLength) {
+      RenderedUsage usage = renderedUsage;
+      if (usage == null || usage.lineLength != lineLength) {
+        usage = new RenderedUsage(lineLength, UsagePrinter.render(this, lineLength));
+        renderedUsage = usage;
+      }
+      return usage.text;
+    }
+
     private static RegisteredCommand.Builder builder() {
       return new Builder().setDescription("");
     }
@@ -417,16 +548,21 @@ public final class Flags {
   }
 
   private static final class TypeParser {
-    private final Map<Class<?>, ArgumentParser<?>> parsers;
+    private final Map<Class<?>, ArgumentParser<?>> customParsers;
 
-    private TypeParser(Map<Class<?>, ArgumentParser<?>> parsers) {
-      this.parsers = parsers;
+    private TypeParser(Map<Class<?>, ArgumentParser<?>> customParsers) {
+      this.customParsers = customParsers;
     }
 
     // Forced by type parameters for external calls and validated by tests for internal calls
     @SuppressWarnings("unchecked")
     private <T> T parse(Param<T> param, String value) {
-      ArgumentParser<T> parser = (ArgumentParser<T>) parsers.get(param.dataType());
+      ArgumentParser<T> parser = (ArgumentParser<T>) parserFor(customParsers, param.dataType());
+      if (parser == null) {
+        throw usageException(
+            "No custom parser registered for data type '%s' of param '%s'.",
+            param.dataType(), param.name());
+      }
       Validator.ValidationResult<T> result = parser.parserFunc().apply(value, parser.validator());
 
       if (!result.isValid()) {
@@ -443,101 +579,173 @@ public final class Flags {
 
       return result.value();
     }
+
+    /**
+     * Parses the value of a single-valued param into {@code args}. Values of primitive types are
+     * parsed by the default parsers straight into their primitive slot, so they are not boxed.
+     */
+    private void parseInto(ArgsContainer args, int index, Param<?> param, String value) {
+      Class<?> type = param.dataType();
+      if (!type.isPrimitive() || customParsers.containsKey(type)) {
+        args.setObject(index, parse(param, value));
+        return;
+      }
+
+      try {
+        if (type == int.class) {
+          args.setLong(index, Integer.parseInt(value));
+          return;
+        }
+        if (type == long.class) {
+          args.setLong(index, Long.parseLong(value));
+          return;
+        }
+        if (type == boolean.class) {
+          if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            args.setLong(index, value.equalsIgnoreCase("true") ? 1 : 0);
+            return;
+          }
+        } else if (type == short.class) {
+          args.setLong(index, Short.parseShort(value));
+          return;
+        } else if (type == byte.class) {
+          args.setLong(index, Byte.parseByte(value));
+          return;
+        } else if (type == char.class) {
+          if (value.length() == 1) {
+            args.setLong(index, value.charAt(0));
+            return;
+          }
+        } else if (type == float.class) {
+          args.setDouble(index, Float.parseFloat(value));
+          return;
+        } else if (type == double.class) {
+          args.setDouble(index, Double.parseDouble(value));
+          return;
+        }
+      } catch (NumberFormatException e) {
+        // Handled below, like the default parsers do
+      }
+
+      throw commandInvocationException(
+          "Parameter '%s' could not be parsed as '%s'.", param.name(), type.getSimpleName());
+    }
   }
 
+  /**
+   * Parses the arguments of a command into an {@link ArgsContainer}.
+   *
+   * <p>Each {@link Flags} instance reuses the same parser (and container) for all its commands.
+   * That is safe even if a command runs other commands, as {@link CommandMethod} implementations
+   * retrieve all the arguments before invoking the callback.
+   */
   private static final class CommandLineParser {
-    private final Map<Param<?>, Object> parsedParams = new HashMap<>();
-
-    private final Set<Param<?>> parsedOrdinalParams = new HashSet<>();
+    private final ArgsContainer parsedArgs = new ArgsContainer();
 
     private final TypeParser typeParser;
 
-    private final String[] args;
+    // Holds the values of a repeated param while they are parsed
+    private Object[] repeatedValues = new Object[8];
+
+    private String[] args;
 
-    private int currentIndex = 1;
+    private int currentIndex;
 
-    private CommandLineParser(TypeParser typeParser, String[] args) {
+    private int parsedOrdinalParamsCount;
+
+    private CommandLineParser(TypeParser typeParser) {
       this.typeParser = typeParser;
-      this.args = args;
     }
 
-    private ArgsContainer parse(Params params) {
+    private ArgsContainer parse(Params params, String[] args) {
+      this.args = args;
+      currentIndex = 1;
+      parsedOrdinalParamsCount = 0;
+      parsedArgs.reset(params);
+
       while (hasNextValue()) {
         String currentArg = peekNextValue();
 
         if (isNamedArg(currentArg)) {
           advance();
 
-          String argName = namedArgValueToName(currentArg);
+          int index = params.namedParamIndex(currentArg, "--".length());
 
-          if (!params.namedParams().containsKey(argName)) {
-            throw commandInvocationException("Named argument '%s' does not exist.", argName);
+          if (index < 0) {
+            throw commandInvocationException(
+                "Named argument '%s' does not exist.", namedArgValueToName(currentArg));
           }
 
-          Param<?> param = params.namedParams().get(argName);
+          Param<?> param = params.param(index);
 
-          if (parsedParams.containsKey(param)) {
-            throw commandInvocationException("Named argument '%s' was called repeatedly.", argName);
+          if (parsedArgs.isSet(index)) {
+            throw commandInvocationException(
+                "Named argument '%s' was called repeatedly.", param.name());
           }
 
           if (param.acceptsMultipleValues()) {
-            parseMultipleValues(param);
+            parseMultipleValues(params, index);
+          } else if (isBooleanType(param.dataType())
+              && (!hasNextValue() || isNamedArg(peekNextValue()))) {
+            // Boolean arguments can be passed as flags, e.g. "--verbose" for "--verbose true"
+            typeParser.parseInto(parsedArgs, index, param, "true");
           } else {
             if (!hasNextValue()) {
               throw commandInvocationException(
-                  "Expected value for parameter '%s' but it was not provided.", argName);
+                  "Expected value for parameter '%s' but it was not provided.", param.name());
             }
 
-            parseSingleValue(param, getNextValue());
+            typeParser.parseInto(parsedArgs, index, param, getNextValue());
           }
         } else {
-          if (!hasOrdinalParamForCurrentArg(params)) {
+          if (parsedOrdinalParamsCount >= params.ordinalParams().size()) {
             throw commandInvocationException(
                 "More ordinal parameters were provided than the command accepts.");
           }
 
-          Param<?> param = getCurrentOrdinalParam(params);
+          int index = params.ordinalParamIndex(parsedOrdinalParamsCount);
+          Param<?> param = params.param(index);
 
           if (param.acceptsMultipleValues()) {
-            parseMultipleValues(param);
+            parseMultipleValues(params, index);
           } else {
-            parseSingleValue(param, currentArg);
+            typeParser.parseInto(parsedArgs, index, param, currentArg);
           }
 
-          parsedOrdinalParams.add(param);
+          ++parsedOrdinalParamsCount;
 
           advance();
         }
       }
 
-      if (parsedOrdinalParams.size() < params.ordinalParams().size()) {
-        for (Param<?> param : params.ordinalParams()) {
-          if (!parsedOrdinalParams.contains(param) && !param.acceptsMultipleValues()) {
-            throw commandInvocationException(
-                "Ordinal parameter '%s' was not provided.", param.name());
-          }
+      for (int ordinal = parsedOrdinalParamsCount;
+          ordinal < params.ordinalParams().size();
+          ++ordinal) {
+        Param<?> param = params.param(params.ordinalParamIndex(ordinal));
+        if (!param.acceptsMultipleValues()) {
+          throw commandInvocationException(
+              "Ordinal parameter '%s' was not provided.", param.name());
         }
       }
 
-      int parsedNamedParamsCount = parsedParams.size() - parsedOrdinalParams.size();
-      if (parsedNamedParamsCount < params.namedParams().size()) {
-        for (Param<?> param : params.namedParams().values()) {
-          if (!parsedParams.containsKey(param)
-              && !param.isOptional()
-              && !param.acceptsMultipleValues()) {
-            throw commandInvocationException(
-                "Named parameter '%s' was not provided.", param.name());
-          }
+      for (int index : params.namedParamIndexes()) {
+        Param<?> param = params.param(index);
+        if (!parsedArgs.isSet(index) && !param.isOptional() && !param.acceptsMultipleValues()) {
+          throw commandInvocationException("Named parameter '%s' was not provided.", param.name());
         }
       }
 
-      return new ArgsContainer(parsedParams);
+      return parsedArgs;
     }
 
     private void advance() {
       ++currentIndex;
     }
 
+    private static boolean isBooleanType(Class<?> type) {
+      return type == boolean.class || type == Boolean.class;
+    }
+
     private boolean hasNextValue() {
       return currentIndex < args.length;
     }
@@ -550,26 +758,23 @@ public final class Flags {
       return args[currentIndex];
     }
 
-    private boolean hasOrdinalParamForCurrentArg(Params params) {
-      return parsedOrdinalParams.size() < params.ordinalParams().size();
-    }
-
-    private Param<?> getCurrentOrdinalParam(Params params) {
-      return params.ordinalParams().get(parsedOrdinalParams.size());
-    }
-
-    private void parseSingleValue(Param<?> param, String value) {
-      parsedParams.put(param, typeParser.parse(param, value));
-    }
-
-    private void parseMultipleValues(Param<?> param) {
-      List<Object> value = new ArrayList<>();
+    private void parseMultipleValues(Params params, int index) {
+      Param<?> param = params.param(index);
+      int count = 0;
 
       while (hasNextValue() && !isNamedArg(peekNextValue())) {
-        value.add(typeParser.parse(param, getNextValue()));
+        if (count == repeatedValues.length) {
+          repeatedValues = Arrays.copyOf(repeatedValues, count * 2);
+        }
+        repeatedValues[count++] = typeParser.parse(param, getNextValue());
       }
 
-      parsedParams.put(param, asArray(param.dataType(), value));
+      // Copying the (typed) empty array creates an array of the param type without reflection
+      Object[] values = Arrays.copyOf(params.emptyArray(index), count);
+      System.arraycopy(repeatedValues, 0, values, 0, count);
+      Arrays.fill(repeatedValues, 0, count, null);
+
+      parsedArgs.setObject(index, values);
     }
 
     private static boolean isNamedArg(String value) {
@@ -579,52 +784,130 @@ public final class Flags {
     private static String namedArgValueToName(String arg) {
       return arg.substring("--".length());
     }
+  }
 
-    private static Object asArray(Class<?> type, List<Object> values) {
-      Object array = Array.newInstance(type, values.size());
+  /**
+   * Holds the parsed arguments of a command, by the index of their param.
+   *
+   * <p>Values of primitive params parsed by the default parsers are kept in primitive slots
+   * (floating-point ones as their raw bits), so they are only boxed when passed to the command
+   * callback, where {@code valueOf()} caches the most common values.
+   */
+  private static final class ArgsContainer {
+    // Commands have up to 16 params, see the Flags#command() overloads
+    private static final int MAX_PARAMS = 16;
 
-      for (int index = 0; index < values.size(); ++index) {
-        Array.set(array, index, values.get(index));
-      }
+    private final long[] primitives = new long[MAX_PARAMS];
+    private final Object[] objects = new Object[MAX_PARAMS];
+    private Params params;
+    // Bit masks (by param index) of the params that were set, and of the values kept in objects
+    private int setParams;
+    private int objectParams;
 
-      return array;
+    private void reset(Params params) {
+      this.params = params;
+      Arrays.fill(primitives, 0);
+      Arrays.fill(objects, null);
+      setParams = 0;
+      objectParams = 0;
     }
-  }
 
-  private static final class ArgsContainer {
-    private static final Map<Class<?>, Object> primitiveTypeDefaultValues = new HashMap<>();
+    private boolean isSet(int index) {
+      return (setParams & (1 << index)) != 0;
+    }
 
-    static {
-      primitiveTypeDefaultValues.put(boolean.class, false);
-      primitiveTypeDefaultValues.put(char.class, '\0');
-      primitiveTypeDefaultValues.put(float.class, 0f);
-      primitiveTypeDefaultValues.put(double.class, 0d);
-      primitiveTypeDefaultValues.put(byte.class, (byte) 0);
-      primitiveTypeDefaultValues.put(short.class, (short) 0);
-      primitiveTypeDefaultValues.put(int.class, 0);
-      primitiveTypeDefaultValues.put(long.class, 0L);
+    private void setObject(int index, Object value) {
+      objects[index] = value;
+      setParams |= 1 << index;
+      objectParams |= 1 << index;
     }
 
-    private final Map<Param<?>, Object> args;
+    private void setLong(int index, long value) {
+      primitives[index] = value;
+      setParams |= 1 << index;
+    }
 
-    private ArgsContainer(Map<Param<?>, Object> args) {
-      this.args = args;
+    private void setDouble(int index, double value) {
+      setLong(index, Double.doubleToRawLongBits(value));
     }
 
-    private Object get(Param<?> param) {
-      Object value = args.get(param);
+    private boolean getBoolean(int index) {
+      return primitives[index] != 0;
+    }
 
-      if (value == null) {
-        if (param.acceptsMultipleValues()) {
-          return Array.newInstance(param.dataType(), 0);
-        }
+    private char getChar(int index) {
+      return (char) primitives[index];
+    }
 
-        if (param.dataType().isPrimitive()) {
-          return primitiveTypeDefaultValues.get(param.dataType());
-        }
+    private byte getByte(int index) {
+      return (byte) primitives[index];
+    }
+
+    private short getShort(int index) {
+      return (short) primitives[index];
+    }
+
+    private int getInt(int index) {
+      return (int) primitives[index];
+    }
+
+    private long getLong(int index) {
+      return primitives[index];
+    }
+
+    private float getFloat(int index) {
+      return (float) getDouble(index);
+    }
+
+    private double getDouble(int index) {
+      return Double.longBitsToDouble(primitives[index]);
+    }
+
+    // All parser functions must provide the correct type - verified by unit tests and type
+    // constraints.
+    @SuppressWarnings("unchecked")
+    private <T> T get(Param<T> param, int index) {
+      return (T) get(index);
+    }
+
+    private Object get(int index) {
+      if ((objectParams & (1 << index)) != 0) {
+        return objects[index];
+      }
+
+      Param<?> param = params.param(index);
+
+      if (param.acceptsMultipleValues()) {
+        return params.emptyArray(index);
       }
 
-      return value;
+      // Primitive values (or their default value, if not set) are boxed here
+      Class<?> type = param.dataType();
+      if (!type.isPrimitive()) {
+        return null;
+      }
+      if (type == int.class) {
+        return getInt(index);
+      }
+      if (type == long.class) {
+        return getLong(index);
+      }
+      if (type == boolean.class) {
+        return getBoolean(index);
+      }
+      if (type == short.class) {
+        return getShort(index);
+      }
+      if (type == byte.class) {
+        return getByte(index);
+      }
+      if (type == char.class) {
+        return getChar(index);
+      }
+      if (type == float.class) {
+        return getFloat(index);
+      }
+      return getDouble(index);
     }
   }
 
@@ -653,9 +936,294 @@ public final class Flags {
     }
   }
 
+  private static final class RenderedUsage {
+    private final int lineLength;
+    private final String text;
+
+    private RenderedUsage(int lineLength, String text) {
+      this.lineLength = lineLength;
+      this.text = text;
+    }
+  }
+
+  /**
+   * A sorted index of command names, used to resolve abbreviated names, list completions and
+   * suggest alternatives for unknown names without walking every registered command.
+   *
+   * <p>Names are abbreviated segment by segment, where segments are separated by {@code '-'}: each
+   * segment of the abbreviation must be a prefix of the corresponding segment of the name, and
+   * trailing segments may be left out. For example, {@code retr-net} and {@code retrieve-network}
+   * both abbreviate {@code retrieve-network-logs}. Lookups binary search the names sharing the
+   * first segment of the abbreviation, so they only compare against likely candidates.
+   */
+  private static final class CommandIndex {
+    private static final char SEGMENT_SEPARATOR = '-';
+    private static final int MAX_LISTED_MATCHES = 10;
+    private static final int MAX_SUGGESTIONS = 5;
+    // Unknown names sharing a shorter prefix with every command are not worth a suggestion
+    private static final int MIN_SUGGESTION_PREFIX_LENGTH = 2;
+
+    private final String[] names;
+    private final RegisteredCommand[] commands;
+
+    private CommandIndex(Iterable<RegisteredCommand> registeredCommands) {
+      List<RegisteredCommand> sortedCommands = new ArrayList<>();
+      for (RegisteredCommand command : registeredCommands) {
+        sortedCommands.add(command);
+      }
+      Collections.sort(sortedCommands, (first, second) -> first.name().compareTo(second.name()));
+
+      this.commands = sortedCommands.toArray(new RegisteredCommand[0]);
+      this.names = new String[commands.length];
+      for (int i = 0; i < commands.length; i++) {
+        names[i] = commands[i].name();
+      }
+    }
+
+    /**
+     * Resolves a command from its full or abbreviated name.
+     *
+     * @throws InvalidCommandInvocationException if the name matches no command or more than one.
+     */
+    private RegisteredCommand resolve(String name) {
+      int exactIndex = Arrays.binarySearch(names, name);
+      if (exactIndex >= 0) {
+        return commands[exactIndex];
+      }
+
+      List<Integer> matches = matchingIndexes(name);
+      if (matches.size() == 1) {
+        return commands[matches.get(0)];
+      }
+
+      StringBuilder message = new StringBuilder();
+      if (matches.isEmpty()) {
+        message.append(String.format("Command '%s' was not found.", name));
+        List<Integer> suggestions = suggestedIndexes(name);
+        if (!suggestions.isEmpty()) {
+          message.append("\nDid you mean: ");
+          appendNames(message, suggestions, MAX_SUGGESTIONS);
+          message.append('?');
+        }
+      } else {
+        message.append(String.format("Command '%s' is ambiguous; it matches: ", name));
+        appendNames(message, matches, MAX_LISTED_MATCHES);
+        message.append('.');
+      }
+      throw commandLookupException(message.toString());
+    }
+
+    /** Returns the names of the commands that the given abbreviation matches, in sorted order. */
+    private List<String> complete(String abbreviation) {
+      List<String> completions = new ArrayList<>();
+      for (int index : matchingIndexes(abbreviation)) {
+        completions.add(names[index]);
+      }
+      return completions;
+    }
+
+    private List<Integer> matchingIndexes(String abbreviation) {
+      int separatorIndex = abbreviation.indexOf(SEGMENT_SEPARATOR);
+      String firstSegment =
+          separatorIndex < 0 ? abbreviation : abbreviation.substring(0, separatorIndex);
+
+      List<Integer> matches = new ArrayList<>();
+      for (int i = lowerBound(firstSegment);
+          i < names.length && names[i].startsWith(firstSegment);
+          i++) {
+        if (matchesAbbreviation(names[i], abbreviation)) {
+          matches.add(i);
+        }
+      }
+      return matches;
+    }
+
+    /**
+     * Returns the commands sharing the longest prefix with an unknown name. As the names are
+     * sorted, that prefix is shared with one of the neighbours of the position the name would be
+     * inserted at, and the commands sharing it are contiguous.
+     */
+    private List<Integer> suggestedIndexes(String name) {
+      int insertionIndex = lowerBound(name);
+      int prefixLength = 0;
+      if (insertionIndex > 0) {
+        prefixLength = commonPrefixLength(name, names[insertionIndex - 1]);
+      }
+      if (insertionIndex < names.length) {
+        prefixLength = Math.max(prefixLength, commonPrefixLength(name, names[insertionIndex]));
+      }
+      if (prefixLength < MIN_SUGGESTION_PREFIX_LENGTH) {
+        return Collections.emptyList();
+      }
+
+      String prefix = name.substring(0, prefixLength);
+      List<Integer> suggestions = new ArrayList<>();
+      for (int i = lowerBound(prefix);
+          i < names.length && names[i].startsWith(prefix) && suggestions.size() < MAX_SUGGESTIONS;
+          i++) {
+        suggestions.add(i);
+      }
+      return suggestions;
+    }
+
+    /** Returns the index of the first name that is not less than {@code key}. */
+    private int lowerBound(String key) {
+      int index = Arrays.binarySearch(names, key);
+      return index >= 0 ? index : -(index + 1);
+    }
+
+    private void appendNames(StringBuilder builder, List<Integer> indexes, int limit) {
+      for (int i = 0; i < indexes.size() && i < limit; i++) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        builder.append(names[indexes.get(i)]);
+      }
+      if (indexes.size() > limit) {
+        builder.append(String.format(", and %d more", indexes.size() - limit));
+      }
+    }
+
+    private static boolean matchesAbbreviation(String name, String abbreviation) {
+      int nameIndex = 0;
+      for (int i = 0; i < abbreviation.length(); i++) {
+        char c = abbreviation.charAt(i);
+        if (c == SEGMENT_SEPARATOR) {
+          // Skip the rest of the current segment of the name
+          nameIndex = name.indexOf(SEGMENT_SEPARATOR, nameIndex);
+          if (nameIndex < 0) {
+            return false;
+          }
+        } else if (nameIndex >= name.length() || name.charAt(nameIndex) != c) {
+          return false;
+        }
+        nameIndex++;
+      }
+      return true;
+    }
+
+    private static int commonPrefixLength(String first, String second) {
+      int length = Math.min(first.length(), second.length());
+      int i = 0;
+      while (i < length && first.charAt(i) == second.charAt(i)) {
+        i++;
+      }
+      return i;
+    }
+  }
+
+  /**
+   * An immutable set of validated commands that can be shared by any number of {@link Flags}
+   * instances.
+   *
+   * <p>Commands are validated once, when they are added to the {@link Builder}, so creating a
+   * {@link Flags} instance from a table (see {@link Flags#Flags(PrintWriter, CommandTable)}) costs
+   * the same regardless of how many commands it contains. Parsers for custom types are not part of
+   * the table, as they are usually bound to per-invocation state; each {@link Flags} instance must
+   * register a parser for every type declared through {@link Builder#declareCustomType(Class)}.
+   */
+  public static final class CommandTable {
+    private final Map<String, RegisteredCommand> commands;
+    private final Set<Class<?>> customTypes;
+    private final CommandIndex index;
+    // Full usage text by line length
+    private final Map<Integer, String> usageCache = new ConcurrentHashMap<>();
+
+    private CommandTable(Builder builder) {
+      this.commands = Collections.unmodifiableMap(new LinkedHashMap<>(builder.commands));
+      this.customTypes = Collections.unmodifiableSet(new HashSet<>(builder.customTypes));
+      this.index = new CommandIndex(commands.values());
+    }
+
+    public static Builder builder() {
+      return new Builder();
+    }
+
+    /** Builds a {@link CommandTable}, validating each command as it is added. */
+    public static final class Builder {
+      private final Map<String, RegisteredCommand> commands = new LinkedHashMap<>();
+      private final Set<Class<?>> customTypes = new HashSet<>();
+
+      private Builder() {
+        addBuiltInCommands(commands);
+      }
+
+      /**
+       * Declares a type that has no default parser; {@link Flags} instances using the table must
+       * register a parser for it with {@link Flags#registerCustomParser}.
+       */
+      public Builder declareCustomType(Class<?> type) {
+        customTypes.add(type);
+        return this;
+      }
+
+      /**
+       * Adds a command to the table.
+       *
+       * @throws UnsupportedOperationException if the command fails validation (see {@link
+       *     Flags#addCommand}).
+       */
+      public Builder addCommand(RegisteredCommand.Builder commandBuilder) {
+        RegisteredCommand command = commandBuilder.build();
+        validateCommand(
+            command,
+            commands::containsKey,
+            (type) -> DEFAULT_PARSERS.containsKey(type) || customTypes.contains(type));
+        commands.put(command.name(), command);
+        return this;
+      }
+
+      public CommandTable build() {
+        return new CommandTable(this);
+      }
+    }
+  }
+
+  private static final int DEFAULT_USAGE_LINE_LENGTH = 80;
+  // Leaves room for at least one word after the padding of wrapped lines
+  private static final int MIN_USAGE_LINE_LENGTH = 20;
+
+  private static final Map<Class<?>, ArgumentParser<?>> DEFAULT_PARSERS =
+      Collections.unmodifiableMap(createDefaultArgumentParsers());
+
+  private static final RepeatedOrdinalParam<String[]> HELP_COMMANDS_PARAM =
+      repeated(ordinalParam(String.class, "command"));
+
+  private static final RegisteredCommand HELP_COMMAND =
+      RegisteredCommand.builder()
+          .setName("help")
+          .setParams(Params.create(Collections.singletonList(HELP_COMMANDS_PARAM)))
+          .setCommandMethod((flags, args) -> flags.showHelp(args.get(HELP_COMMANDS_PARAM, 0)))
+          .setDescription("Prints this help text, or only the entries of the given commands.")
+          .build();
+
+  private static final OrdinalParam<String> COMPLETE_PREFIX_PARAM =
+      ordinalParam(String.class, "prefix");
+
+  private static final RegisteredCommand COMPLETE_COMMAND =
+      RegisteredCommand.builder()
+          .setName("complete")
+          .setParams(Params.create(Collections.singletonList(COMPLETE_PREFIX_PARAM)))
+          .setCommandMethod(
+              (flags, args) -> flags.printCompletions(args.get(COMPLETE_PREFIX_PARAM, 0)))
+          .setDescription(
+              "Prints the commands matching the given prefix or abbreviation, one per line.")
+          .build();
+
   private final PrintWriter printWriter;
+  // Only holds parsers registered through registerCustomParser(); see parserFor()
   private final Map<Class<?>, ArgumentParser<?>> parsers = new HashMap<>();
+  private final CommandLineParser commandLineParser =
+      new CommandLineParser(new TypeParser(parsers));
   private final Map<String, RegisteredCommand> commands = new LinkedHashMap<>();
+  // Null unless created with Flags(PrintWriter, CommandTable)
+  private final CommandTable commandTable;
+  // Built on the first lookup that misses an exact name; reset whenever a command is added
+  private CommandIndex commandIndex;
+  // Full usage text by line length; reset whenever a command is added
+  private Map<Integer, String> usageCache;
+  private int usageLineLength = DEFAULT_USAGE_LINE_LENGTH;
+  private CommandInterceptor commandInterceptor;
 
   /**
    * Creates a Flags instance that prints usage and error messages to the {@link System#out} stream.
@@ -670,9 +1238,20 @@ public final class Flags {
    */
   public Flags(PrintWriter printWriter) {
     this.printWriter = printWriter;
-    registerDefaultArgumentParsers();
-    addCommand(
-        command("help", () -> usagePrinter().showUsage()).setDescription("Prints this help text."));
+    this.commandTable = null;
+    addBuiltInCommands(commands);
+  }
+
+  /**
+   * Creates a Flags instance that prints usage and error messages to the specified {@code
+   * PrintWriter} and runs the commands of a prebuilt {@link CommandTable}.
+   *
+   * <p>Additional commands can still be added through {@link #addCommand}, but they are only
+   * visible to this instance.
+   */
+  public Flags(PrintWriter printWriter, CommandTable commandTable) {
+    this.printWriter = printWriter;
+    this.commandTable = commandTable;
   }
 
   /**
@@ -691,51 +1270,207 @@ public final class Flags {
    * Runs the registered commands and their parameters against the provided command-line arguments.
    */
   public void run(String[] args) {
+    checkCustomParsersRegistered();
+
     if ((args == null) || (args.length == 0)) {
-      usagePrinter().showUsage();
+      showUsage();
       return;
     }
 
     try {
       execute(args);
     } catch (InvalidCommandInvocationException e) {
-      usagePrinter().showUsage(e.message());
+      if (e.showUsage()) {
+        printWriter.println(e.message());
+        printWriter.println();
+        showUsage();
+      } else {
+        printWriter.println(e.message());
+        printWriter.println("Run 'help' to list all commands.");
+        printWriter.flush();
+      }
     }
   }
 
-  private UsagePrinter usagePrinter() {
-    return new UsagePrinter(printWriter, commands.values());
+  /**
+   * Runs a single command against the provided command-line arguments, like {@link #run}, but only
+   * prints the error message (rather than the whole usage text) when the command does not exist or
+   * its arguments are invalid.
+   *
+   * @return whether the command was executed.
+   */
+  public boolean runCommand(String[] args) {
+    checkCustomParsersRegistered();
+
+    if ((args == null) || (args.length == 0)) {
+      printWriter.println("No command was provided.");
+      return false;
+    }
+
+    try {
+      execute(args);
+      return true;
+    } catch (InvalidCommandInvocationException e) {
+      printWriter.println(e.message());
+      return false;
+    }
   }
 
-  private void execute(String[] args) {
-    String commandName = args[0];
+  private void checkCustomParsersRegistered() {
+    if (commandTable == null) {
+      return;
+    }
+    for (Class<?> type : commandTable.customTypes) {
+      if (!parsers.containsKey(type)) {
+        throw usageException("No custom parser registered for data type '%s'.", type);
+      }
+    }
+  }
 
-    if (!commands.containsKey(commandName)) {
-      throw commandInvocationException("Command '%s' was not found.", commandName);
+  /**
+   * Sets the line length that the usage text is wrapped to, e.g. the width of the terminal it is
+   * printed on. Defaults to {@value #DEFAULT_USAGE_LINE_LENGTH} characters.
+   *
+   * @throws UnsupportedOperationException if the line length is shorter than {@value
+   *     #MIN_USAGE_LINE_LENGTH} characters.
+   */
+  public void setUsageLineLength(int lineLength) {
+    if (lineLength < MIN_USAGE_LINE_LENGTH) {
+      throw usageException(
+          "Usage line length must be at least %d characters, was %d.",
+          MIN_USAGE_LINE_LENGTH, lineLength);
     }
+    usageLineLength = lineLength;
+  }
+
+  /** Sets the interceptor that wraps the execution of every command, or removes it if null. */
+  public void setCommandInterceptor(CommandInterceptor commandInterceptor) {
+    this.commandInterceptor = commandInterceptor;
+  }
+
+  private void showUsage() {
+    printWriter.print(usageText());
+    printWriter.flush();
+  }
 
+  private void showHelp(String[] commandNames) {
+    if (commandNames.length == 0) {
+      showUsage();
+      return;
+    }
+
+    // Resolve every name first, so that nothing is printed if any of them is invalid
+    RegisteredCommand[] commands = new RegisteredCommand[commandNames.length];
+    for (int i = 0; i < commandNames.length; i++) {
+      commands[i] = resolveCommand(commandNames[i]);
+    }
+
+    printWriter.println(UsagePrinter.USAGE_HEADER);
+    for (RegisteredCommand command : commands) {
+      printWriter.print(command.usage(usageLineLength));
+    }
+    printWriter.flush();
+  }
+
+  /** Returns the usage text of every command, rendering it only once per line length. */
+  private String usageText() {
+    if (usageCache == null) {
+      usageCache =
+          (commandTable != null && commands.isEmpty()) ? commandTable.usageCache : new HashMap<>();
+    }
+
+    String usage = usageCache.get(usageLineLength);
+    if (usage == null) {
+      usage = UsagePrinter.render(registeredCommands(), usageLineLength);
+      usageCache.put(usageLineLength, usage);
+    }
+    return usage;
+  }
+
+  private Iterable<RegisteredCommand> registeredCommands() {
+    if (commandTable == null) {
+      return commands.values();
+    }
+    List<RegisteredCommand> allCommands = new ArrayList<>(commandTable.commands.values());
+    allCommands.addAll(commands.values());
+    return allCommands;
+  }
+
+  private RegisteredCommand findCommand(String commandName) {
     RegisteredCommand command = commands.get(commandName);
-    command
-        .commandMethod()
-        .execute(
-            this, new CommandLineParser(new TypeParser(parsers), args).parse(command.params()));
+    if (command == null && commandTable != null) {
+      command = commandTable.commands.get(commandName);
+    }
+    return command;
+  }
+
+  private boolean hasCommand(String commandName) {
+    return findCommand(commandName) != null;
   }
 
-  // All parser functions must provide the correct type - verified by unit tests and type
-  // constraints.
-  @SuppressWarnings("unchecked")
-  private <T> T retrieveArg(Param<T> param, ArgsContainer args) {
-    return (T) args.get(param);
+  /**
+   * Finds a command from its full or abbreviated name.
+   *
+   * @throws InvalidCommandInvocationException if the name matches no command or more than one.
+   */
+  private RegisteredCommand resolveCommand(String commandName) {
+    RegisteredCommand command = findCommand(commandName);
+    return command != null ? command : commandIndex().resolve(commandName);
+  }
+
+  private CommandIndex commandIndex() {
+    if (commandIndex == null) {
+      commandIndex =
+          (commandTable != null && commands.isEmpty())
+              ? commandTable.index
+              : new CommandIndex(registeredCommands());
+    }
+    return commandIndex;
+  }
+
+  private void printCompletions(String prefix) {
+    for (String name : commandIndex().complete(prefix)) {
+      printWriter.println(name);
+    }
+    printWriter.flush();
+  }
+
+  private static void addBuiltInCommands(Map<String, RegisteredCommand> commands) {
+    commands.put(HELP_COMMAND.name(), HELP_COMMAND);
+    commands.put(COMPLETE_COMMAND.name(), COMPLETE_COMMAND);
+  }
+
+  private static ArgumentParser<?> parserFor(
+      Map<Class<?>, ArgumentParser<?>> customParsers, Class<?> type) {
+    ArgumentParser<?> parser = customParsers.get(type);
+    return parser != null ? parser : DEFAULT_PARSERS.get(type);
+  }
+
+  private void execute(String[] args) {
+    if (commandInterceptor == null) {
+      RegisteredCommand command = resolveCommand(args[0]);
+      command.commandMethod().execute(this, commandLineParser.parse(command.params(), args));
+      return;
+    }
+
+    long startNanos = System.nanoTime();
+    RegisteredCommand command = resolveCommand(args[0]);
+    ArgsContainer parsedArgs = commandLineParser.parse(command.params(), args);
+    commandInterceptor.intercept(
+        command.name(),
+        System.nanoTime() - startNanos,
+        () -> command.commandMethod().execute(this, parsedArgs));
   }
 
   private static final class UsagePrinter {
     private static final class LineLengthFormatter {
-      private static final int LINE_LENGTH_LIMIT_CHARS = 80;
-
+      private final int lineLengthLimitChars;
       private final String paddingOnAdditionalLine;
       private final String lineWrapSeparator;
 
-      private LineLengthFormatter(String paddingOnAdditionalLine, String lineWrapSeparator) {
+      private LineLengthFormatter(
+          int lineLengthLimitChars, String paddingOnAdditionalLine, String lineWrapSeparator) {
+        this.lineLengthLimitChars = lineLengthLimitChars;
         this.paddingOnAdditionalLine = paddingOnAdditionalLine;
         this.lineWrapSeparator = lineWrapSeparator;
       }
@@ -743,9 +1478,9 @@ public final class Flags {
       private void printText(PrintWriter printWriter, StringBuilder text) {
         int textLength = text.length();
 
-        if (textLength > LINE_LENGTH_LIMIT_CHARS) {
+        if (textLength > lineLengthLimitChars) {
           int textLastCharIndex = textLength - 1;
-          int lineLastCharIndex = LINE_LENGTH_LIMIT_CHARS - 1;
+          int lineLastCharIndex = lineLengthLimitChars - 1;
 
           int currentLineStartIndex = 0;
           int currentLineEndIndex = lineLastCharIndex;
@@ -811,57 +1546,70 @@ public final class Flags {
     private static final String DESCRIPTION_PADDING = "    ";
     private static final String COMMAND_WRAP_SEPARATOR = " \\";
 
+    private static final String USAGE_HEADER = "Usage:";
+
     private final PrintWriter printWriter;
-    private final Iterable<RegisteredCommand> commands;
+    private final int lineLength;
 
     private final StringBuilder lineBuilder = new StringBuilder();
 
-    private UsagePrinter(PrintWriter printWriter, Iterable<RegisteredCommand> commands) {
+    private UsagePrinter(PrintWriter printWriter, int lineLength) {
       this.printWriter = printWriter;
-      this.commands = commands;
+      this.lineLength = lineLength;
     }
 
-    private void showUsage(String message) {
-      printWriter.println(message);
-      printWriter.println();
-      showUsage();
+    /** Renders the usage text of the given commands, starting with the usage header. */
+    private static String render(Iterable<RegisteredCommand> commands, int lineLength) {
+      StringWriter stringWriter = new StringWriter();
+      PrintWriter usageWriter = new PrintWriter(stringWriter);
+      usageWriter.println(USAGE_HEADER);
+      for (RegisteredCommand command : commands) {
+        usageWriter.print(command.usage(lineLength));
+      }
+      usageWriter.flush();
+      return stringWriter.toString();
     }
 
-    private void showUsage() {
-      printWriter.println("Usage:");
-      for (RegisteredCommand command : commands) {
-        lineBuilder.append(COMMAND_PADDING);
-        lineBuilder.append(command.name());
-        for (Param<?> param : command.params().ordinalParams()) {
-          appendFormat(" <%s>", param.name());
-          if (param.acceptsMultipleValues()) {
-            lineBuilder.append("...");
-          }
+    /** Renders the usage entry of a single command, followed by a blank line. */
+    private static String render(RegisteredCommand command, int lineLength) {
+      StringWriter stringWriter = new StringWriter();
+      UsagePrinter usagePrinter = new UsagePrinter(new PrintWriter(stringWriter), lineLength);
+      usagePrinter.printCommand(command);
+      usagePrinter.printWriter.flush();
+      return stringWriter.toString();
+    }
+
+    private void printCommand(RegisteredCommand command) {
+      lineBuilder.append(COMMAND_PADDING);
+      lineBuilder.append(command.name());
+      for (Param<?> param : command.params().ordinalParams()) {
+        appendFormat(" <%s>", param.name());
+        if (param.acceptsMultipleValues()) {
+          lineBuilder.append("...");
         }
-        for (Param<?> param : command.params().namedParams().values()) {
-          lineBuilder.append(" ");
-          if (param.isOptional()) {
-            lineBuilder.append("[");
-          }
-          appendFormat("--%s <value>", param.name());
-          if (param.acceptsMultipleValues()) {
-            lineBuilder.append("...");
-          }
-          if (param.isOptional()) {
-            lineBuilder.append("]");
-          }
+      }
+      for (Param<?> param : command.params().namedParams().values()) {
+        lineBuilder.append(" ");
+        if (param.isOptional()) {
+          lineBuilder.append("[");
         }
-        printCommandLine();
-
-        if (command.description().length() > 0) {
-          lineBuilder.append(DESCRIPTION_PADDING);
-          lineBuilder.append(command.description());
-          printDescriptionLine();
+        appendFormat("--%s <value>", param.name());
+        if (param.acceptsMultipleValues()) {
+          lineBuilder.append("...");
         }
+        if (param.isOptional()) {
+          lineBuilder.append("]");
+        }
+      }
+      printCommandLine();
 
-        printWriter.println();
+      if (command.description().length() > 0) {
+        lineBuilder.append(DESCRIPTION_PADDING);
+        lineBuilder.append(command.description());
+        printDescriptionLine();
       }
-      printWriter.flush();
+
+      printWriter.println();
     }
 
     private void appendFormat(String format, Object... args) {
@@ -869,13 +1617,13 @@ public final class Flags {
     }
 
     private void printCommandLine() {
-      new LineLengthFormatter(COMMAND_WRAP_PADDING, COMMAND_WRAP_SEPARATOR)
+      new LineLengthFormatter(lineLength, COMMAND_WRAP_PADDING, COMMAND_WRAP_SEPARATOR)
           .printText(printWriter, lineBuilder);
       clearLine();
     }
 
     private void printDescriptionLine() {
-      new LineLengthFormatter(DESCRIPTION_PADDING, /* lineWrapSeparator= */ "")
+      new LineLengthFormatter(lineLength, DESCRIPTION_PADDING, /* lineWrapSeparator= */ "")
           .printText(printWriter, lineBuilder);
       clearLine();
     }
@@ -885,7 +1633,9 @@ public final class Flags {
     }
   }
 
-  private void registerDefaultArgumentParsers() {
+  private static Map<Class<?>, ArgumentParser<?>> createDefaultArgumentParsers() {
+    Map<Class<?>, ArgumentParser<?>> parsers = new HashMap<>();
+
     ArgumentParser<?> booleanParser =
         ArgumentParser.create(
             (string, validator) -> {
@@ -942,6 +1692,8 @@ public final class Flags {
 
     parsers.put(
         String.class, ArgumentParser.create((string, validator) -> validator.valid(string)));
+
+    return parsers;
   }
 
   @SuppressWarnings("ReturnValueIgnored")
@@ -1032,12 +1784,17 @@ public final class Flags {
    */
   public void addCommand(RegisteredCommand.Builder commandBuilder) {
     RegisteredCommand command = commandBuilder.build();
-    validateCommand(command);
+    validateCommand(command, this::hasCommand, (type) -> parserFor(parsers, type) != null);
     commands.put(command.name(), command);
+    commandIndex = null;
+    usageCache = null;
   }
 
-  private void validateCommand(RegisteredCommand command) {
-    if (commands.containsKey(command.name())) {
+  private static void validateCommand(
+      RegisteredCommand command,
+      Function<String, Boolean> isCommandRegistered,
+      Function<Class<?>, Boolean> hasParser) {
+    if (isCommandRegistered.apply(command.name())) {
       throw usageException("Duplicate command name '%s'.", command.name());
     }
 
@@ -1055,19 +1812,20 @@ public final class Flags {
 
     Set<String> paramNames = new HashSet<>();
     for (Param<?> param : ordinalParams) {
-      validateParam(param, paramNames);
+      validateParam(param, paramNames, hasParser);
     }
     for (Param<?> param : namedParams.values()) {
-      validateParam(param, paramNames);
+      validateParam(param, paramNames, hasParser);
     }
   }
 
-  private void validateParam(Param<?> param, Set<String> paramNames) {
+  private static void validateParam(
+      Param<?> param, Set<String> paramNames, Function<Class<?>, Boolean> hasParser) {
     if (paramNames.contains(param.name())) {
       throw usageException("Duplicate parameter name '%s'.", param.name());
     }
 
-    if (!parsers.containsKey(param.dataType())) {
+    if (!hasParser.apply(param.dataType())) {
       throw usageException(
           "No custom parser registered for data type '%s' of param '%s'.",
           param.dataType(), param.name());
@@ -1608,7 +2366,7 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
+      T1 arg1 = args.get(param1, 0);
 
       callback.execute(arg1);
     }
@@ -1629,8 +2387,8 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
 
       callback.execute(arg1, arg2);
     }
@@ -1656,9 +2414,9 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
 
       callback.execute(arg1, arg2, arg3);
     }
@@ -1687,10 +2445,10 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
 
       callback.execute(arg1, arg2, arg3, arg4);
     }
@@ -1722,11 +2480,11 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
 
       callback.execute(arg1, arg2, arg3, arg4, arg5);
     }
@@ -1761,12 +2519,12 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
 
       callback.execute(arg1, arg2, arg3, arg4, arg5, arg6);
     }
@@ -1805,13 +2563,13 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
-      T7 arg7 = flags.retrieveArg(param7, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
+      T7 arg7 = args.get(param7, 6);
 
       callback.execute(arg1, arg2, arg3, arg4, arg5, arg6, arg7);
     }
@@ -1853,14 +2611,14 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
-      T7 arg7 = flags.retrieveArg(param7, args);
-      T8 arg8 = flags.retrieveArg(param8, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
+      T7 arg7 = args.get(param7, 6);
+      T8 arg8 = args.get(param8, 7);
 
       callback.execute(arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8);
     }
@@ -1905,15 +2663,15 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
-      T7 arg7 = flags.retrieveArg(param7, args);
-      T8 arg8 = flags.retrieveArg(param8, args);
-      T9 arg9 = flags.retrieveArg(param9, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
+      T7 arg7 = args.get(param7, 6);
+      T8 arg8 = args.get(param8, 7);
+      T9 arg9 = args.get(param9, 8);
 
       callback.execute(arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9);
     }
@@ -1961,16 +2719,16 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
-      T7 arg7 = flags.retrieveArg(param7, args);
-      T8 arg8 = flags.retrieveArg(param8, args);
-      T9 arg9 = flags.retrieveArg(param9, args);
-      T10 arg10 = flags.retrieveArg(param10, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
+      T7 arg7 = args.get(param7, 6);
+      T8 arg8 = args.get(param8, 7);
+      T9 arg9 = args.get(param9, 8);
+      T10 arg10 = args.get(param10, 9);
 
       callback.execute(arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10);
     }
@@ -2021,17 +2779,17 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
-      T7 arg7 = flags.retrieveArg(param7, args);
-      T8 arg8 = flags.retrieveArg(param8, args);
-      T9 arg9 = flags.retrieveArg(param9, args);
-      T10 arg10 = flags.retrieveArg(param10, args);
-      T11 arg11 = flags.retrieveArg(param11, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
+      T7 arg7 = args.get(param7, 6);
+      T8 arg8 = args.get(param8, 7);
+      T9 arg9 = args.get(param9, 8);
+      T10 arg10 = args.get(param10, 9);
+      T11 arg11 = args.get(param11, 10);
 
       callback.execute(arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11);
     }
@@ -2086,18 +2844,18 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
-      T7 arg7 = flags.retrieveArg(param7, args);
-      T8 arg8 = flags.retrieveArg(param8, args);
-      T9 arg9 = flags.retrieveArg(param9, args);
-      T10 arg10 = flags.retrieveArg(param10, args);
-      T11 arg11 = flags.retrieveArg(param11, args);
-      T12 arg12 = flags.retrieveArg(param12, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
+      T7 arg7 = args.get(param7, 6);
+      T8 arg8 = args.get(param8, 7);
+      T9 arg9 = args.get(param9, 8);
+      T10 arg10 = args.get(param10, 9);
+      T11 arg11 = args.get(param11, 10);
+      T12 arg12 = args.get(param12, 11);
 
       callback.execute(arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12);
     }
@@ -2156,19 +2914,19 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
-      T7 arg7 = flags.retrieveArg(param7, args);
-      T8 arg8 = flags.retrieveArg(param8, args);
-      T9 arg9 = flags.retrieveArg(param9, args);
-      T10 arg10 = flags.retrieveArg(param10, args);
-      T11 arg11 = flags.retrieveArg(param11, args);
-      T12 arg12 = flags.retrieveArg(param12, args);
-      T13 arg13 = flags.retrieveArg(param13, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
+      T7 arg7 = args.get(param7, 6);
+      T8 arg8 = args.get(param8, 7);
+      T9 arg9 = args.get(param9, 8);
+      T10 arg10 = args.get(param10, 9);
+      T11 arg11 = args.get(param11, 10);
+      T12 arg12 = args.get(param12, 11);
+      T13 arg13 = args.get(param13, 12);
 
       callback.execute(
           arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13);
@@ -2233,20 +2991,20 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
-      T7 arg7 = flags.retrieveArg(param7, args);
-      T8 arg8 = flags.retrieveArg(param8, args);
-      T9 arg9 = flags.retrieveArg(param9, args);
-      T10 arg10 = flags.retrieveArg(param10, args);
-      T11 arg11 = flags.retrieveArg(param11, args);
-      T12 arg12 = flags.retrieveArg(param12, args);
-      T13 arg13 = flags.retrieveArg(param13, args);
-      T14 arg14 = flags.retrieveArg(param14, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
+      T7 arg7 = args.get(param7, 6);
+      T8 arg8 = args.get(param8, 7);
+      T9 arg9 = args.get(param9, 8);
+      T10 arg10 = args.get(param10, 9);
+      T11 arg11 = args.get(param11, 10);
+      T12 arg12 = args.get(param12, 11);
+      T13 arg13 = args.get(param13, 12);
+      T14 arg14 = args.get(param14, 13);
 
       callback.execute(
           arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13, arg14);
@@ -2314,21 +3072,21 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
-      T7 arg7 = flags.retrieveArg(param7, args);
-      T8 arg8 = flags.retrieveArg(param8, args);
-      T9 arg9 = flags.retrieveArg(param9, args);
-      T10 arg10 = flags.retrieveArg(param10, args);
-      T11 arg11 = flags.retrieveArg(param11, args);
-      T12 arg12 = flags.retrieveArg(param12, args);
-      T13 arg13 = flags.retrieveArg(param13, args);
-      T14 arg14 = flags.retrieveArg(param14, args);
-      T15 arg15 = flags.retrieveArg(param15, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
+      T7 arg7 = args.get(param7, 6);
+      T8 arg8 = args.get(param8, 7);
+      T9 arg9 = args.get(param9, 8);
+      T10 arg10 = args.get(param10, 9);
+      T11 arg11 = args.get(param11, 10);
+      T12 arg12 = args.get(param12, 11);
+      T13 arg13 = args.get(param13, 12);
+      T14 arg14 = args.get(param14, 13);
+      T15 arg15 = args.get(param15, 14);
 
       callback.execute(
           arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13, arg14,
@@ -2401,22 +3159,22 @@ public final class Flags {
 
     @Override
     public void execute(Flags flags, ArgsContainer args) {
-      T1 arg1 = flags.retrieveArg(param1, args);
-      T2 arg2 = flags.retrieveArg(param2, args);
-      T3 arg3 = flags.retrieveArg(param3, args);
-      T4 arg4 = flags.retrieveArg(param4, args);
-      T5 arg5 = flags.retrieveArg(param5, args);
-      T6 arg6 = flags.retrieveArg(param6, args);
-      T7 arg7 = flags.retrieveArg(param7, args);
-      T8 arg8 = flags.retrieveArg(param8, args);
-      T9 arg9 = flags.retrieveArg(param9, args);
-      T10 arg10 = flags.retrieveArg(param10, args);
-      T11 arg11 = flags.retrieveArg(param11, args);
-      T12 arg12 = flags.retrieveArg(param12, args);
-      T13 arg13 = flags.retrieveArg(param13, args);
-      T14 arg14 = flags.retrieveArg(param14, args);
-      T15 arg15 = flags.retrieveArg(param15, args);
-      T16 arg16 = flags.retrieveArg(param16, args);
+      T1 arg1 = args.get(param1, 0);
+      T2 arg2 = args.get(param2, 1);
+      T3 arg3 = args.get(param3, 2);
+      T4 arg4 = args.get(param4, 3);
+      T5 arg5 = args.get(param5, 4);
+      T6 arg6 = args.get(param6, 5);
+      T7 arg7 = args.get(param7, 6);
+      T8 arg8 = args.get(param8, 7);
+      T9 arg9 = args.get(param9, 8);
+      T10 arg10 = args.get(param10, 9);
+      T11 arg11 = args.get(param11, 10);
+      T12 arg12 = args.get(param12, 11);
+      T13 arg13 = args.get(param13, 12);
+      T14 arg14 = args.get(param14, 13);
+      T15 arg15 = args.get(param15, 14);
+      T16 arg16 = args.get(param16, 15);
 
       callback.execute(
           arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13, arg14,
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentName;
+import android.os.UserManager;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class AsyncDevicePolicyManagerGatewayTest {
+
+  private static final ComponentName ADMIN =
+      new ComponentName("com.afwsamples.testdpc", "com.afwsamples.testdpc.DeviceAdminReceiver");
+  private static final String RESTRICTION = UserManager.DISALLOW_SMS;
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private final FakeDevicePolicyManagerGateway mGateway = new FakeDevicePolicyManagerGateway(ADMIN);
+  // Stands for the main thread: results are only delivered when runCallbacks() is called
+  private final BlockingQueue<Runnable> mCallbacks = new LinkedBlockingQueue<>();
+  private final AsyncDevicePolicyManagerGateway mAsyncGateway =
+      new AsyncDevicePolicyManagerGateway(mGateway, mCallbacks::add);
+  private final List<String> mDelivered = new ArrayList<>();
+  // Released once the first call may go on, so the next ones are queued behind it
+  private final CountDownLatch mRelease = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    mRelease.countDown();
+    mAsyncGateway.close();
+  }
+
+  @Test
+  public void writeAfterPendingRead_deliveredInOrder() throws Exception {
+    mAsyncGateway.read(
+        (gateway) -> {
+          mRelease.await();
+          return gateway.hasUserRestriction(RESTRICTION);
+        },
+        (disallowed) -> mDelivered.add("read before: " + disallowed),
+        (e) -> mDelivered.add("read before failed"));
+    mAsyncGateway.<Void>call(
+        (gateway, onSuccess, onError) ->
+            gateway.setUserRestriction(RESTRICTION, true, onSuccess, onError),
+        (v) -> mDelivered.add("write"),
+        (e) -> mDelivered.add("write failed"));
+    mAsyncGateway.read(
+        (gateway) -> gateway.hasUserRestriction(RESTRICTION),
+        (disallowed) -> mDelivered.add("read after: " + disallowed),
+        (e) -> mDelivered.add("read after failed"));
+
+    mRelease.countDown();
+    runCallbacks(3);
+
+    // The last result delivered is the one reflecting the write
+    assertThat(mDelivered)
+        .containsExactly("read before: false", "write", "read after: true")
+        .inOrder();
+  }
+
+  @Test
+  public void failedCall_deliversError() throws Exception {
+    mAsyncGateway.<Void>call(
+        (gateway, onSuccess, onError) ->
+            gateway.setApplicationHidden("com.example.missing", true, onSuccess, onError),
+        (v) -> mDelivered.add("hidden"),
+        (e) -> mDelivered.add("failed: " + e.getClass().getSimpleName()));
+
+    runCallbacks(1);
+
+    assertThat(mDelivered).containsExactly("failed: FailedOperationException");
+  }
+
+  @Test
+  public void close_cancelsPendingCallsAndDropsResults() throws Exception {
+    mAsyncGateway.read(
+        (gateway) -> {
+          mRelease.await();
+          return true;
+        },
+        (result) -> mDelivered.add("running"),
+        (e) -> mDelivered.add("running failed"));
+    ListenableFuture<Void> pending =
+        mAsyncGateway.call(
+            (gateway, onSuccess, onError) ->
+                gateway.setUserRestriction(RESTRICTION, true, onSuccess, onError),
+            (v) -> mDelivered.add("pending"),
+            (e) -> mDelivered.add("pending failed"));
+
+    mAsyncGateway.close();
+    mRelease.countDown();
+    // Queued behind the calls above, as all instances share the same thread
+    new AsyncDevicePolicyManagerGateway(mGateway, Runnable::run)
+        .read((gateway) -> null)
+        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    for (Runnable callback = mCallbacks.poll(); callback != null; callback = mCallbacks.poll()) {
+      callback.run();
+    }
+
+    assertThat(pending.isCancelled()).isTrue();
+    assertThat(mDelivered).isEmpty();
+    assertThat(mGateway.getUserRestrictions()).isEmpty();
+    assertThat(mAsyncGateway.read((gateway) -> true).isCancelled()).isTrue();
+  }
+
+  /** Runs the given number of callbacks, in the order they were posted. */
+  private void runCallbacks(int count) throws InterruptedException {
+    for (int i = 0; i < count; i++) {
+      Runnable callback = mCallbacks.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      assertThat(callback).isNotNull();
+      callback.run();
+    }
+  }
+}
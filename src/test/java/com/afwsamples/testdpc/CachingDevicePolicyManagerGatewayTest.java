@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentName;
+import android.os.UserManager;
+import androidx.annotation.NonNull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class CachingDevicePolicyManagerGatewayTest {
+
+  private static final ComponentName ADMIN =
+      new ComponentName("com.afwsamples.testdpc", "com.afwsamples.testdpc.DeviceAdminReceiver");
+  private static final ComponentName OTHER_ADMIN =
+      new ComponentName("com.example.dpc", "com.example.dpc.DeviceAdminReceiver");
+  private static final String DELEGATE_PACKAGE = "com.example.delegate";
+
+  private final CountingGateway mGateway =
+      new CountingGateway(new FakeDevicePolicyManagerGateway(ADMIN));
+
+  @Before
+  public void setUp() {
+    // Versions are per process, so left over by the previous tests
+    CachingDevicePolicyManagerGateway.invalidateAll();
+  }
+
+  @After
+  public void tearDown() {
+    CachingDevicePolicyManagerGateway.setBypassed(false);
+  }
+
+  @Test
+  public void getter_calledTwice_hitsCache() {
+    CachingDevicePolicyManagerGateway caching = new CachingDevicePolicyManagerGateway(mGateway);
+
+    caching.getUserRestrictions();
+    caching.getUserRestrictions();
+
+    assertThat(mGateway.mUserRestrictionsReads).isEqualTo(1);
+  }
+
+  @Test
+  public void getter_calledOnOtherInstance_misses() {
+    new CachingDevicePolicyManagerGateway(mGateway).getUserRestrictions();
+    // Not seen by the cache, which is why it only lives as long as its instance
+    mGateway.setUserRestriction(UserManager.DISALLOW_SMS, true);
+
+    Set<String> restrictions =
+        new CachingDevicePolicyManagerGateway(mGateway).getUserRestrictions();
+
+    assertThat(restrictions).containsExactly(UserManager.DISALLOW_SMS);
+    assertThat(mGateway.mUserRestrictionsReads).isEqualTo(2);
+  }
+
+  @Test
+  public void getter_calledForOtherAdmin_misses() {
+    CountingGateway other = new CountingGateway(new FakeDevicePolicyManagerGateway(OTHER_ADMIN));
+    other.setUserRestriction(UserManager.DISALLOW_SMS, true);
+    new CachingDevicePolicyManagerGateway(mGateway).getUserRestrictions();
+
+    Set<String> restrictions = new CachingDevicePolicyManagerGateway(other).getUserRestrictions();
+
+    assertThat(restrictions).containsExactly(UserManager.DISALLOW_SMS);
+    assertThat(other.mUserRestrictionsReads).isEqualTo(1);
+  }
+
+  @Test
+  public void setter_onOtherInstance_invalidates() {
+    CachingDevicePolicyManagerGateway caching = new CachingDevicePolicyManagerGateway(mGateway);
+    caching.getUserRestrictions();
+
+    new CachingDevicePolicyManagerGateway(mGateway)
+        .setUserRestriction(UserManager.DISALLOW_SMS, true, (v) -> {}, (e) -> {});
+
+    assertThat(caching.getUserRestrictions()).containsExactly(UserManager.DISALLOW_SMS);
+    assertThat(mGateway.mUserRestrictionsReads).isEqualTo(2);
+  }
+
+  @Test
+  public void setter_onlyInvalidatesItsValue() {
+    CachingDevicePolicyManagerGateway caching = new CachingDevicePolicyManagerGateway(mGateway);
+    caching.getUserRestrictions();
+    caching.getDelegatedScopes(DELEGATE_PACKAGE);
+
+    caching.setDelegatedScopes(
+        DELEGATE_PACKAGE, Arrays.asList("delegation-app-restrictions"), (v) -> {}, (e) -> {});
+    caching.getUserRestrictions();
+
+    assertThat(caching.getDelegatedScopes(DELEGATE_PACKAGE))
+        .containsExactly("delegation-app-restrictions");
+    assertThat(mGateway.mUserRestrictionsReads).isEqualTo(1);
+    assertThat(mGateway.mDelegatedScopesReads).isEqualTo(2);
+  }
+
+  @Test
+  public void setUserRestrictions_failed_invalidates() {
+    CachingDevicePolicyManagerGateway caching = new CachingDevicePolicyManagerGateway(mGateway);
+    caching.getUserRestrictions();
+    mGateway.mFailSetUserRestrictions = true;
+
+    caching.setUserRestrictions(
+        Collections.singletonMap(UserManager.DISALLOW_SMS, true), (v) -> {}, (e) -> {});
+    caching.getUserRestrictions();
+
+    assertThat(mGateway.mUserRestrictionsReads).isEqualTo(2);
+  }
+
+  @Test
+  public void adminBroadcast_invalidatesAll() {
+    CachingDevicePolicyManagerGateway caching = new CachingDevicePolicyManagerGateway(mGateway);
+    caching.getUserRestrictions();
+
+    CachingDevicePolicyManagerGateway.onAdminBroadcast(
+        DeviceAdminReceiver.ACTION_DEVICE_ADMIN_DISABLED);
+    caching.getUserRestrictions();
+
+    assertThat(mGateway.mUserRestrictionsReads).isEqualTo(2);
+  }
+
+  @Test
+  public void bypassed_alwaysCallsDelegate() {
+    CachingDevicePolicyManagerGateway caching = new CachingDevicePolicyManagerGateway(mGateway);
+    CachingDevicePolicyManagerGateway.setBypassed(true);
+
+    caching.getUserRestrictions();
+    caching.getUserRestrictions();
+
+    assertThat(mGateway.mUserRestrictionsReads).isEqualTo(2);
+  }
+
+  @Test
+  public void getter_returnsCopy() {
+    CachingDevicePolicyManagerGateway caching = new CachingDevicePolicyManagerGateway(mGateway);
+
+    caching.getUserRestrictions().add(UserManager.DISALLOW_SMS);
+
+    assertThat(caching.getUserRestrictions()).isEmpty();
+  }
+
+  /** Counts the calls to the getters, and can make {@link #setUserRestrictions} fail. */
+  private static final class CountingGateway extends ForwardingDevicePolicyManagerGateway {
+    private int mUserRestrictionsReads;
+    private int mDelegatedScopesReads;
+    private boolean mFailSetUserRestrictions;
+
+    private CountingGateway(DevicePolicyManagerGateway delegate) {
+      super(delegate);
+    }
+
+    @NonNull
+    @Override
+    public Set<String> getUserRestrictions() {
+      mUserRestrictionsReads++;
+      return new HashSet<>(mDelegate.getUserRestrictions());
+    }
+
+    @Override
+    public void setUserRestrictions(
+        @NonNull Map<String, Boolean> userRestrictions,
+        @NonNull Consumer<Set<String>> onSuccess,
+        @NonNull Consumer<Exception> onError) {
+      if (mFailSetUserRestrictions) {
+        onError.accept(new IllegalStateException("setUserRestrictions()"));
+        return;
+      }
+      mDelegate.setUserRestrictions(userRestrictions, onSuccess, onError);
+    }
+
+    @NonNull
+    @Override
+    public List<String> getDelegatedScopes(@NonNull String delegatePackage) {
+      mDelegatedScopesReads++;
+      return mDelegate.getDelegatedScopes(delegatePackage);
+    }
+  }
+}
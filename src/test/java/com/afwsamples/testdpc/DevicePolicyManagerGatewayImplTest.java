@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.admin.DevicePolicyManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.UserManager;
+import androidx.test.core.app.ApplicationProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowDevicePolicyManager;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = DevicePolicyManagerGatewayImplTest.ShadowCountingDevicePolicyManager.class)
+public class DevicePolicyManagerGatewayImplTest {
+
+  private static final ComponentName ADMIN =
+      new ComponentName("com.afwsamples.testdpc", "com.afwsamples.testdpc.DeviceAdminReceiver");
+
+  private final Context mContext = ApplicationProvider.getApplicationContext();
+  private final DevicePolicyManager mDevicePolicyManager =
+      mContext.getSystemService(DevicePolicyManager.class);
+  private final ShadowCountingDevicePolicyManager mShadow = Shadow.extract(mDevicePolicyManager);
+  private final DevicePolicyManagerGatewayImpl mGateway =
+      new DevicePolicyManagerGatewayImpl(
+          mDevicePolicyManager,
+          mContext.getSystemService(UserManager.class),
+          mContext.getPackageManager(),
+          mContext.getSystemService(LocationManager.class),
+          ADMIN);
+  private final List<Set<String>> mChanged = new ArrayList<>();
+  private final List<Exception> mErrors = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    shadowOf(mDevicePolicyManager).setActiveAdmin(ADMIN);
+    shadowOf(mDevicePolicyManager).setDeviceOwner(ADMIN);
+  }
+
+  @Test
+  public void setUserRestrictions_onlyWritesChangedRestrictions() {
+    mDevicePolicyManager.addUserRestriction(ADMIN, UserManager.DISALLOW_SMS);
+    mShadow.mWrites = 0;
+    Map<String, Boolean> restrictions = new LinkedHashMap<>();
+    restrictions.put(UserManager.DISALLOW_SMS, true);
+    restrictions.put(UserManager.DISALLOW_CAMERA, true);
+    restrictions.put(UserManager.DISALLOW_INSTALL_APPS, false);
+
+    mGateway.setUserRestrictions(restrictions, mChanged::add, mErrors::add);
+
+    assertThat(mErrors).isEmpty();
+    assertThat(mChanged).containsExactly(Collections.singleton(UserManager.DISALLOW_CAMERA));
+    assertThat(mShadow.mReads).isEqualTo(1);
+    assertThat(mShadow.mWrites).isEqualTo(1);
+    assertThat(mGateway.getUserRestrictions())
+        .containsExactly(UserManager.DISALLOW_SMS, UserManager.DISALLOW_CAMERA);
+  }
+
+  @Test
+  public void setUserRestrictions_nothingChanged_noWrites() {
+    mDevicePolicyManager.addUserRestriction(ADMIN, UserManager.DISALLOW_SMS);
+    mShadow.mWrites = 0;
+    Map<String, Boolean> restrictions = new LinkedHashMap<>();
+    restrictions.put(UserManager.DISALLOW_SMS, true);
+    restrictions.put(UserManager.DISALLOW_CAMERA, false);
+
+    mGateway.setUserRestrictions(restrictions, mChanged::add, mErrors::add);
+
+    assertThat(mChanged).containsExactly(Collections.emptySet());
+    assertThat(mShadow.mReads).isEqualTo(1);
+    assertThat(mShadow.mWrites).isEqualTo(0);
+  }
+
+  @Test
+  public void setUserRestrictions_failure_revertsChangedRestrictions() {
+    mDevicePolicyManager.addUserRestriction(ADMIN, UserManager.DISALLOW_INSTALL_APPS);
+    mShadow.mFailingRestrictions.add(UserManager.DISALLOW_CAMERA);
+    Map<String, Boolean> restrictions = new LinkedHashMap<>();
+    restrictions.put(UserManager.DISALLOW_SMS, true);
+    restrictions.put(UserManager.DISALLOW_INSTALL_APPS, false);
+    restrictions.put(UserManager.DISALLOW_CAMERA, true);
+
+    mGateway.setUserRestrictions(restrictions, mChanged::add, mErrors::add);
+
+    assertThat(mChanged).isEmpty();
+    assertThat(mErrors).hasSize(1);
+    assertThat(mErrors.get(0).getSuppressed()).isEmpty();
+    assertThat(mGateway.getUserRestrictions()).containsExactly(UserManager.DISALLOW_INSTALL_APPS);
+  }
+
+  @Test
+  public void setUserRestrictions_revertFailure_addedAsSuppressed() {
+    mDevicePolicyManager.addUserRestriction(ADMIN, UserManager.DISALLOW_SMS);
+    // DISALLOW_SMS is cleared, but can't be added back once DISALLOW_CAMERA fails
+    mShadow.mFailingRestrictions.add(UserManager.DISALLOW_SMS);
+    mShadow.mFailingRestrictions.add(UserManager.DISALLOW_CAMERA);
+    Map<String, Boolean> restrictions = new LinkedHashMap<>();
+    restrictions.put(UserManager.DISALLOW_SMS, false);
+    restrictions.put(UserManager.DISALLOW_CAMERA, true);
+
+    mGateway.setUserRestrictions(restrictions, mChanged::add, mErrors::add);
+
+    assertThat(mErrors).hasSize(1);
+    assertThat(mErrors.get(0).getSuppressed()).hasLength(1);
+    assertThat(mGateway.getUserRestrictions()).isEmpty();
+  }
+
+  @Test
+  public void setUserRestrictions_callbackThrows_keepsRestrictions() {
+    Map<String, Boolean> restrictions = new LinkedHashMap<>();
+    restrictions.put(UserManager.DISALLOW_SMS, true);
+
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            mGateway.setUserRestrictions(
+                restrictions,
+                (changed) -> {
+                  throw new IllegalStateException("callback");
+                },
+                mErrors::add));
+
+    assertThat(mErrors).isEmpty();
+    assertThat(mGateway.getUserRestrictions()).containsExactly(UserManager.DISALLOW_SMS);
+  }
+
+  /** Counts the restriction reads and writes, and fails to add {@link #mFailingRestrictions}. */
+  @Implements(DevicePolicyManager.class)
+  public static class ShadowCountingDevicePolicyManager extends ShadowDevicePolicyManager {
+    private int mReads;
+    private int mWrites;
+    private final Set<String> mFailingRestrictions = new HashSet<>();
+
+    @Implementation
+    @Override
+    protected Bundle getUserRestrictions(ComponentName admin) {
+      mReads++;
+      return super.getUserRestrictions(admin);
+    }
+
+    @Implementation
+    @Override
+    protected void addUserRestriction(ComponentName admin, String key) {
+      if (mFailingRestrictions.contains(key)) {
+        throw new IllegalStateException("addUserRestriction(" + key + ")");
+      }
+      mWrites++;
+      super.addUserRestriction(admin, key);
+    }
+
+    @Implementation
+    @Override
+    protected void clearUserRestriction(ComponentName admin, String key) {
+      mWrites++;
+      super.clearUserRestriction(admin, key);
+    }
+  }
+}
@@ -0,0 +1,1250 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import android.app.admin.DevicePolicyManager;
+import android.app.admin.NetworkEvent;
+import android.app.admin.SecurityLog.SecurityEvent;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.PersistableBundle;
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.security.AttestedKeyPair;
+import android.security.keystore.KeyGenParameterSpec;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.afwsamples.testdpc.DevicePolicyManagerGateway.FailedOperationException;
+import com.afwsamples.testdpc.DevicePolicyManagerGateway.FailedUserOperationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory {@link DevicePolicyManagerGateway}, which keeps the state a real device would
+ * (users, restrictions, packages, logs, etc.) so that {@link ShellCommand} and the policy logic can
+ * be exercised on a JVM.
+ *
+ * <p>Setters succeed (or fail) synchronously, like {@link DevicePolicyManagerGatewayImpl}; calls
+ * that can't be emulated (like {@link #getDevicePolicyManager()} or {@link #generateKeyPair}) fail
+ * with {@link UnsupportedOperationException}. All methods can be called from any thread.
+ */
+public final class FakeDevicePolicyManagerGateway implements DevicePolicyManagerGateway {
+
+  private static final int FIRST_SECONDARY_USER_ID = 10;
+
+  private final ComponentName mAdmin;
+  private boolean mDeviceOwner;
+  private boolean mProfileOwner;
+
+  // Users, by serial number; the system user (0) always exists
+  private final Map<Long, UserHandle> mUsers = new TreeMap<>();
+  private final Set<UserHandle> mRunningUsers = new LinkedHashSet<>();
+  private UserHandle mForegroundUser;
+  private int mNextUserId = FIRST_SECONDARY_USER_ID;
+  private long mNextSerialNumber = FIRST_SECONDARY_USER_ID;
+  @Nullable private Bitmap mUserIcon;
+  @Nullable private CharSequence mStartUserSessionMessage;
+  @Nullable private CharSequence mEndUserSessionMessage;
+  private boolean mLogoutEnabled;
+  private Set<String> mAffiliationIds = new LinkedHashSet<>();
+
+  private final Set<String> mUserRestrictions = new LinkedHashSet<>();
+
+  // Packages installed for the user, and their state
+  private final Set<String> mInstalledPackages = new LinkedHashSet<>();
+  private final Set<String> mDisabledSystemApps = new LinkedHashSet<>();
+  private final Set<String> mHiddenPackages = new LinkedHashSet<>();
+  private final Set<String> mSuspendedPackages = new LinkedHashSet<>();
+  private final Set<String> mUninstallBlockedPackages = new LinkedHashSet<>();
+  private final Map<String, Bundle> mApplicationRestrictions = new HashMap<>();
+  private final Map<String, Integer> mPermissionGrantStates = new HashMap<>();
+  private final Map<String, List<String>> mDelegatedScopes = new LinkedHashMap<>();
+  private final Map<String, List<IntentFilter>> mPersistentPreferredActivities = new HashMap<>();
+  private List<String> mUserControlDisabledPackages = new ArrayList<>();
+  private Set<String> mCrossProfilePackages = new LinkedHashSet<>();
+  private List<String> mMeteredDataDisabledPackages = new ArrayList<>();
+  @Nullable private List<String> mPermittedInputMethods;
+  private String[] mLockTaskPackages = new String[0];
+  private int mLockTaskFeatures = DevicePolicyManager.LOCK_TASK_FEATURE_GLOBAL_ACTIONS;
+  private Bundle mSelfRestrictions = new Bundle();
+
+  private final List<NetworkEvent> mNetworkEvents = new ArrayList<>();
+  private final List<SecurityEvent> mSecurityEvents = new ArrayList<>();
+  private final List<SecurityEvent> mPreRebootSecurityEvents = new ArrayList<>();
+  private boolean mNetworkLoggingEnabled;
+  private boolean mSecurityLoggingEnabled;
+  private long mLastNetworkLogRetrievalTime = -1;
+  private long mLastSecurityLogRetrievalTime = -1;
+  private long mLastBugReportRequestTime = -1;
+
+  @Nullable private CharSequence mOrganizationName;
+  @Nullable private CharSequence mDeviceOwnerLockScreenInfo;
+  private int mPasswordQuality = DevicePolicyManager.PASSWORD_QUALITY_UNSPECIFIED;
+  private int mRequiredPasswordComplexity = DevicePolicyManager.PASSWORD_COMPLEXITY_NONE;
+  private int mKeyguardDisabledFeatures;
+  private int mMaximumFailedPasswordsForWipe;
+  private boolean mUsbDataSignalingEnabled = true;
+  private boolean mPreferentialNetworkServiceEnabled = true;
+  private boolean mPersonalAppsSuspended;
+  private boolean mLocationEnabled = true;
+  private boolean mKeyguardDisabled;
+  private boolean mCameraDisabled;
+  private boolean mStatusBarDisabled;
+  private boolean mScreenCaptureDisabled;
+  private final Map<String, String> mSecureSettings = new HashMap<>();
+  private final Map<String, String> mGlobalSettings = new HashMap<>();
+
+  // Grants of each key pair, by uid
+  private final Map<String, Map<Integer, Set<String>>> mKeyPairs = new HashMap<>();
+
+  /** Creates a fake for a device owner with no secondary users and no packages installed. */
+  public FakeDevicePolicyManagerGateway(@NonNull ComponentName admin) {
+    mAdmin = admin;
+    mDeviceOwner = true;
+    UserHandle systemUser = UserHandle.of(0);
+    mUsers.put(0L, systemUser);
+    mRunningUsers.add(systemUser);
+    mForegroundUser = systemUser;
+    mInstalledPackages.add(admin.getPackageName());
+  }
+
+  /** Makes the admin a device owner (the default) or a profile owner. */
+  public synchronized FakeDevicePolicyManagerGateway setDeviceOwner(boolean deviceOwner) {
+    mDeviceOwner = deviceOwner;
+    mProfileOwner = !deviceOwner;
+    return this;
+  }
+
+  /** Adds installed packages; system apps can also be {@link #addDisabledSystemApps disabled}. */
+  public synchronized FakeDevicePolicyManagerGateway addInstalledPackages(String... packageNames) {
+    mInstalledPackages.addAll(Arrays.asList(packageNames));
+    return this;
+  }
+
+  /** Adds system apps that are disabled for the user, which can be enabled later. */
+  public synchronized FakeDevicePolicyManagerGateway addDisabledSystemApps(String... packageNames) {
+    mDisabledSystemApps.addAll(Arrays.asList(packageNames));
+    return this;
+  }
+
+  /** Adds events returned by the next {@link #retrieveNetworkLogs(long)} call. */
+  public synchronized FakeDevicePolicyManagerGateway addNetworkEvents(List<NetworkEvent> events) {
+    mNetworkEvents.addAll(events);
+    return this;
+  }
+
+  /** Adds events returned by the next {@link #retrieveSecurityLogs()} call. */
+  public synchronized FakeDevicePolicyManagerGateway addSecurityEvents(List<SecurityEvent> events) {
+    mSecurityEvents.addAll(events);
+    return this;
+  }
+
+  /**
+   * Returns the value of a setting set by {@link #setSecureSetting} or {@link #setGlobalSetting}.
+   */
+  @Nullable
+  public synchronized String getSetting(String setting) {
+    String value = mGlobalSettings.get(setting);
+    return value != null ? value : mSecureSettings.get(setting);
+  }
+
+  public synchronized boolean isKeyguardDisabled() {
+    return mKeyguardDisabled;
+  }
+
+  public synchronized boolean isStatusBarDisabled() {
+    return mStatusBarDisabled;
+  }
+
+  public synchronized boolean isScreenCaptureDisabled() {
+    return mScreenCaptureDisabled;
+  }
+
+  @NonNull
+  @Override
+  public ComponentName getAdmin() {
+    return mAdmin;
+  }
+
+  @NonNull
+  @Override
+  public DevicePolicyManager getDevicePolicyManager() {
+    throw new UnsupportedOperationException("FakeDevicePolicyManagerGateway has no DPM");
+  }
+
+  @Override
+  public synchronized boolean isDeviceOwnerApp() {
+    return mDeviceOwner;
+  }
+
+  @Override
+  public synchronized boolean isProfileOwnerApp() {
+    return mProfileOwner;
+  }
+
+  @Override
+  public boolean isOrganizationOwnedDeviceWithManagedProfile() {
+    return false;
+  }
+
+  @Override
+  public boolean isHeadlessSystemUserMode() {
+    return false;
+  }
+
+  @Override
+  public synchronized boolean isUserForeground() {
+    return mForegroundUser.equals(Process.myUserHandle());
+  }
+
+  @NonNull
+  @Override
+  public synchronized List<UserHandle> listForegroundAffiliatedUsers() {
+    return mAffiliationIds.isEmpty()
+        ? Collections.emptyList()
+        : Collections.singletonList(mForegroundUser);
+  }
+
+  @Override
+  public synchronized void createAndManageUser(
+      @Nullable String name,
+      int flags,
+      @NonNull Consumer<UserHandle> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (mUserRestrictions.contains(UserManager.DISALLOW_ADD_USER)) {
+      onError.accept(new UserManager.UserOperationException("DISALLOW_ADD_USER is set", 0));
+      return;
+    }
+    UserHandle user = UserHandle.of(mNextUserId++);
+    mUsers.put(mNextSerialNumber++, user);
+    onSuccess.accept(user);
+  }
+
+  @Override
+  public synchronized void setUserIcon(
+      @NonNull Bitmap icon,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mUserIcon = icon;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void setStartUserSessionMessage(
+      @Nullable CharSequence message,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mStartUserSessionMessage = message;
+    onSuccess.accept(null);
+  }
+
+  @Nullable
+  @Override
+  public synchronized CharSequence getStartUserSessionMessage() {
+    return mStartUserSessionMessage;
+  }
+
+  @Override
+  public synchronized void setEndUserSessionMessage(
+      @Nullable CharSequence message,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mEndUserSessionMessage = message;
+    onSuccess.accept(null);
+  }
+
+  @Nullable
+  @Override
+  public synchronized CharSequence getEndUserSessionMessage() {
+    return mEndUserSessionMessage;
+  }
+
+  @Nullable
+  @Override
+  public synchronized UserHandle getUserHandle(long serialNumber) {
+    return mUsers.get(serialNumber);
+  }
+
+  @Override
+  public synchronized long getSerialNumber(@NonNull UserHandle user) {
+    for (Map.Entry<Long, UserHandle> entry : mUsers.entrySet()) {
+      if (entry.getValue().equals(user)) {
+        return entry.getKey();
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public synchronized void removeUser(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    long serialNumber = getSerialNumber(userHandle);
+    if (serialNumber <= 0 || mForegroundUser.equals(userHandle)) {
+      onError.accept(new FailedOperationException("removeUser(%s)", userHandle));
+      return;
+    }
+    mUsers.remove(serialNumber);
+    mRunningUsers.remove(userHandle);
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void switchUser(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (getSerialNumber(userHandle) < 0) {
+      onError.accept(new FailedOperationException("switchUser(%s)", userHandle));
+      return;
+    }
+    mForegroundUser = userHandle;
+    mRunningUsers.add(userHandle);
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void startUserInBackground(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Integer> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (getSerialNumber(userHandle) < 0) {
+      onError.accept(
+          new FailedUserOperationException(
+              UserManager.USER_OPERATION_ERROR_UNKNOWN, "startUserInBackground(%s)", userHandle));
+      return;
+    }
+    mRunningUsers.add(userHandle);
+    onSuccess.accept(UserManager.USER_OPERATION_SUCCESS);
+  }
+
+  @Override
+  public synchronized void stopUser(
+      @NonNull UserHandle userHandle,
+      @NonNull Consumer<Integer> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (mForegroundUser.equals(userHandle)) {
+      onError.accept(
+          new FailedUserOperationException(
+              UserManager.USER_OPERATION_ERROR_CURRENT_USER, "stopUser(%s)", userHandle));
+      return;
+    }
+    mRunningUsers.remove(userHandle);
+    onSuccess.accept(UserManager.USER_OPERATION_SUCCESS);
+  }
+
+  @Override
+  public synchronized boolean isLogoutEnabled() {
+    return mLogoutEnabled;
+  }
+
+  @Override
+  public synchronized void setLogoutEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mLogoutEnabled = enabled;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void logoutUser(
+      @NonNull Consumer<Integer> onSuccess, @NonNull Consumer<Exception> onError) {
+    if (!mLogoutEnabled) {
+      onError.accept(
+          new FailedUserOperationException(
+              UserManager.USER_OPERATION_ERROR_UNKNOWN, "logoutUser(%s)", mForegroundUser));
+      return;
+    }
+    mForegroundUser = mUsers.get(0L);
+    onSuccess.accept(UserManager.USER_OPERATION_SUCCESS);
+  }
+
+  @Override
+  public synchronized boolean isAffiliatedUser() {
+    return !mAffiliationIds.isEmpty();
+  }
+
+  @Override
+  public synchronized void setAffiliationIds(@NonNull Set<String> ids) {
+    mAffiliationIds = new LinkedHashSet<>(ids);
+  }
+
+  @NonNull
+  @Override
+  public synchronized Set<String> getAffiliationIds() {
+    return new LinkedHashSet<>(mAffiliationIds);
+  }
+
+  @NonNull
+  @Override
+  public synchronized Set<String> getUserRestrictions() {
+    return new LinkedHashSet<>(mUserRestrictions);
+  }
+
+  @Override
+  public synchronized void setUserRestriction(
+      @NonNull String userRestriction,
+      boolean enabled,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (enabled) {
+      mUserRestrictions.add(userRestriction);
+    } else {
+      mUserRestrictions.remove(userRestriction);
+    }
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public void setUserRestriction(@NonNull String userRestriction, boolean enabled) {
+    setUserRestriction(userRestriction, enabled, (v) -> {}, (e) -> {});
+  }
+
+  @Override
+  public synchronized void setUserRestrictions(
+      @NonNull Map<String, Boolean> userRestrictions,
+      @NonNull Consumer<Set<String>> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    Set<String> changedRestrictions = new LinkedHashSet<>();
+    for (Map.Entry<String, Boolean> entry : userRestrictions.entrySet()) {
+      boolean changed =
+          entry.getValue()
+              ? mUserRestrictions.add(entry.getKey())
+              : mUserRestrictions.remove(entry.getKey());
+      if (changed) {
+        changedRestrictions.add(entry.getKey());
+      }
+    }
+    onSuccess.accept(changedRestrictions);
+  }
+
+  @Override
+  public synchronized boolean hasUserRestriction(@NonNull String userRestriction) {
+    return mUserRestrictions.contains(userRestriction);
+  }
+
+  @Override
+  public void lockNow(@NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public void lockNow(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void reboot(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    if (!mDeviceOwner) {
+      onError.accept(new SecurityException("Only the device owner can reboot"));
+      return;
+    }
+    // Security events logged before the reboot are only available as pre-reboot events
+    mPreRebootSecurityEvents.clear();
+    mPreRebootSecurityEvents.addAll(mSecurityEvents);
+    mSecurityEvents.clear();
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public void wipeData(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    onError.accept(
+        new UnsupportedOperationException("FakeDevicePolicyManagerGateway is not wiped"));
+  }
+
+  @Override
+  public void wipeDevice(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    onError.accept(
+        new UnsupportedOperationException("FakeDevicePolicyManagerGateway is not wiped"));
+  }
+
+  @Override
+  public synchronized void requestBugreport(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mLastBugReportRequestTime = System.currentTimeMillis();
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized long getLastBugReportRequestTime() {
+    return mLastBugReportRequestTime;
+  }
+
+  @Override
+  public synchronized void setNetworkLoggingEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mNetworkLoggingEnabled = enabled;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public void setNetworkLoggingEnabled(boolean enabled) {
+    setNetworkLoggingEnabled(enabled, (v) -> {}, (e) -> {});
+  }
+
+  @Override
+  public synchronized boolean isNetworkLoggingEnabled() {
+    return mNetworkLoggingEnabled;
+  }
+
+  @Override
+  public synchronized long getLastNetworkLogRetrievalTime() {
+    return mLastNetworkLogRetrievalTime;
+  }
+
+  @Nullable
+  @Override
+  public synchronized List<NetworkEvent> retrieveNetworkLogs(long batchToken) {
+    if (!mNetworkLoggingEnabled) {
+      return null;
+    }
+    mLastNetworkLogRetrievalTime = System.currentTimeMillis();
+    List<NetworkEvent> events = new ArrayList<>(mNetworkEvents);
+    mNetworkEvents.clear();
+    return events;
+  }
+
+  @Override
+  public synchronized void setSecurityLoggingEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mSecurityLoggingEnabled = enabled;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized boolean isSecurityLoggingEnabled() {
+    return mSecurityLoggingEnabled;
+  }
+
+  @Override
+  public synchronized long getLastSecurityLogRetrievalTime() {
+    return mLastSecurityLogRetrievalTime;
+  }
+
+  @Nullable
+  @Override
+  public synchronized List<SecurityEvent> retrieveSecurityLogs() {
+    if (!mSecurityLoggingEnabled) {
+      return null;
+    }
+    mLastSecurityLogRetrievalTime = System.currentTimeMillis();
+    List<SecurityEvent> events = new ArrayList<>(mSecurityEvents);
+    mSecurityEvents.clear();
+    return events;
+  }
+
+  @Nullable
+  @Override
+  public synchronized List<SecurityEvent> retrievePreRebootSecurityLogs() {
+    return mSecurityLoggingEnabled ? new ArrayList<>(mPreRebootSecurityEvents) : null;
+  }
+
+  @Override
+  public synchronized void setOrganizationName(
+      @Nullable CharSequence title,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mOrganizationName = title;
+    onSuccess.accept(null);
+  }
+
+  @Nullable
+  @Override
+  public synchronized CharSequence getOrganizationName() {
+    return mOrganizationName;
+  }
+
+  @Override
+  public synchronized void setUserControlDisabledPackages(
+      @Nullable List<String> packages,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mUserControlDisabledPackages = packages == null ? new ArrayList<>() : new ArrayList<>(packages);
+    onSuccess.accept(null);
+  }
+
+  @NonNull
+  @Override
+  public synchronized List<String> getUserControlDisabledPackages() {
+    return new ArrayList<>(mUserControlDisabledPackages);
+  }
+
+  @Override
+  public synchronized void setCrossProfilePackages(
+      @NonNull Set<String> packages,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mCrossProfilePackages = new LinkedHashSet<>(packages);
+    onSuccess.accept(null);
+  }
+
+  @NonNull
+  @Override
+  public synchronized Set<String> getCrossProfilePackages() {
+    return new LinkedHashSet<>(mCrossProfilePackages);
+  }
+
+  @Override
+  public synchronized boolean setPermittedInputMethods(
+      List<String> packageNames,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mPermittedInputMethods = packageNames == null ? null : new ArrayList<>(packageNames);
+    onSuccess.accept(null);
+    return true;
+  }
+
+  @Override
+  public boolean setPermittedInputMethods(List<String> packageNames) {
+    return setPermittedInputMethods(packageNames, (v) -> {}, (e) -> {});
+  }
+
+  @Override
+  public synchronized void removeActiveAdmin(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    if (mDeviceOwner || mProfileOwner) {
+      onError.accept(new SecurityException("Cannot remove the device or profile owner"));
+      return;
+    }
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void clearDeviceOwnerApp(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    if (!mDeviceOwner) {
+      onError.accept(new SecurityException("Not the device owner"));
+      return;
+    }
+    mDeviceOwner = false;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void clearProfileOwner(
+      @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    if (!mProfileOwner) {
+      onError.accept(new SecurityException("Not the profile owner"));
+      return;
+    }
+    mProfileOwner = false;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void setPasswordQuality(
+      int quality, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mPasswordQuality = quality;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized int getPasswordQuality() {
+    return mPasswordQuality;
+  }
+
+  @Override
+  public synchronized void setRequiredPasswordComplexity(
+      int quality, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mRequiredPasswordComplexity = quality;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized int getRequiredPasswordComplexity() {
+    return mRequiredPasswordComplexity;
+  }
+
+  @Override
+  public synchronized boolean isActivePasswordSufficient() {
+    // There is no password, so only the lack of requirements is satisfied
+    return mPasswordQuality == DevicePolicyManager.PASSWORD_QUALITY_UNSPECIFIED
+        && mRequiredPasswordComplexity == DevicePolicyManager.PASSWORD_COMPLEXITY_NONE;
+  }
+
+  @Override
+  public boolean isActivePasswordSufficientForDeviceRequirement() {
+    return isActivePasswordSufficient();
+  }
+
+  @Override
+  public synchronized void transferOwnership(
+      @NonNull ComponentName target,
+      @Nullable PersistableBundle bundle,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (!mInstalledPackages.contains(target.getPackageName())) {
+      onError.accept(new IllegalArgumentException("Unknown admin: " + target));
+      return;
+    }
+    mDeviceOwner = false;
+    mProfileOwner = false;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void setUsbDataSignalingEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mUsbDataSignalingEnabled = enabled;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public void setUsbDataSignalingEnabled(boolean enabled) {
+    setUsbDataSignalingEnabled(enabled, (v) -> {}, (e) -> {});
+  }
+
+  @Override
+  public boolean canUsbDataSignalingBeDisabled() {
+    return true;
+  }
+
+  @Override
+  public synchronized void setPreferentialNetworkServiceEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mPreferentialNetworkServiceEnabled = enabled;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized boolean isPreferentialNetworkServiceEnabled() {
+    return mPreferentialNetworkServiceEnabled;
+  }
+
+  @Override
+  public synchronized void setPackagesSuspended(
+      String[] packageNames,
+      boolean suspended,
+      @NonNull Consumer<String[]> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    List<String> failed = new ArrayList<>();
+    for (String packageName : packageNames) {
+      if (!mInstalledPackages.contains(packageName)
+          || packageName.equals(mAdmin.getPackageName())) {
+        failed.add(packageName);
+      } else if (suspended) {
+        mSuspendedPackages.add(packageName);
+      } else {
+        mSuspendedPackages.remove(packageName);
+      }
+    }
+    onSuccess.accept(failed.toArray(new String[0]));
+  }
+
+  @Override
+  public synchronized boolean isPackageSuspended(String packageName) throws NameNotFoundException {
+    if (!mInstalledPackages.contains(packageName)) {
+      throw new NameNotFoundException(packageName);
+    }
+    return mSuspendedPackages.contains(packageName);
+  }
+
+  @Override
+  public synchronized void setApplicationHidden(
+      String packageName,
+      boolean suspended,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (!mInstalledPackages.contains(packageName)) {
+      onError.accept(new FailedOperationException("setApplicationHidden(%s)", packageName));
+      return;
+    }
+    if (suspended) {
+      mHiddenPackages.add(packageName);
+    } else {
+      mHiddenPackages.remove(packageName);
+    }
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized boolean isApplicationHidden(String packageName) throws NameNotFoundException {
+    return mHiddenPackages.contains(packageName);
+  }
+
+  @Override
+  public synchronized void setPersonalAppsSuspended(
+      boolean suspended, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mPersonalAppsSuspended = suspended;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized int getPersonalAppsSuspendedReasons() {
+    return mPersonalAppsSuspended
+        ? DevicePolicyManager.PERSONAL_APPS_SUSPENDED_EXPLICITLY
+        : DevicePolicyManager.PERSONAL_APPS_NOT_SUSPENDED;
+  }
+
+  @Override
+  public synchronized void enableSystemApp(
+      String packageName, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    if (!mDisabledSystemApps.remove(packageName)) {
+      onError.accept(new IllegalArgumentException("Only system apps can be enabled this way."));
+      return;
+    }
+    mInstalledPackages.add(packageName);
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void enableSystemApp(
+      Intent intent, @NonNull Consumer<Integer> onSuccess, @NonNull Consumer<Exception> onError) {
+    String packageName = intent.getPackage();
+    if (packageName != null && mDisabledSystemApps.remove(packageName)) {
+      mInstalledPackages.add(packageName);
+      onSuccess.accept(1);
+    } else {
+      onSuccess.accept(0);
+    }
+  }
+
+  @NonNull
+  @Override
+  public synchronized List<String> getDisabledSystemApps() {
+    return new ArrayList<>(mDisabledSystemApps);
+  }
+
+  @Override
+  public synchronized void setLockTaskPackages(
+      String[] packages, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mLockTaskPackages = packages.clone();
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized String[] getLockTaskPackages() {
+    return mLockTaskPackages.clone();
+  }
+
+  @Override
+  public synchronized void setLockTaskFeatures(
+      int flags, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mLockTaskFeatures = flags;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized int getLockTaskFeatures() {
+    return mLockTaskFeatures;
+  }
+
+  @Override
+  public synchronized boolean isLockTaskPermitted(String packageName) {
+    return Arrays.asList(mLockTaskPackages).contains(packageName);
+  }
+
+  @Override
+  public synchronized void setApplicationRestrictions(
+      String packageName,
+      Bundle settings,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (settings == null || settings.isEmpty()) {
+      mApplicationRestrictions.remove(packageName);
+    } else {
+      mApplicationRestrictions.put(packageName, new Bundle(settings));
+    }
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized Bundle getApplicationRestrictions(String packageName) {
+    Bundle settings = mApplicationRestrictions.get(packageName);
+    return settings == null ? new Bundle() : new Bundle(settings);
+  }
+
+  @Override
+  public synchronized Bundle getSelfRestrictions() {
+    Bundle settings = mApplicationRestrictions.get(mAdmin.getPackageName());
+    return settings == null ? new Bundle(mSelfRestrictions) : new Bundle(settings);
+  }
+
+  @Override
+  public synchronized void setPermissionGrantState(
+      String packageName,
+      String permission,
+      int grantState,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (!mInstalledPackages.contains(packageName)) {
+      onError.accept(
+          new FailedOperationException(
+              "setPermissionGrantState(%s, %s, %d)", packageName, permission, grantState));
+      return;
+    }
+    mPermissionGrantStates.put(packageName + '/' + permission, grantState);
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized int getPermissionGrantState(String packageName, String permission) {
+    Integer grantState = mPermissionGrantStates.get(packageName + '/' + permission);
+    return grantState == null ? DevicePolicyManager.PERMISSION_GRANT_STATE_DEFAULT : grantState;
+  }
+
+  @Override
+  public boolean canAdminGrantSensorsPermissions() {
+    return true;
+  }
+
+  @Override
+  public synchronized void setLocationEnabled(
+      boolean enabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mLocationEnabled = enabled;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized boolean isLocationEnabled() {
+    return mLocationEnabled;
+  }
+
+  @Override
+  public synchronized void setDeviceOwnerLockScreenInfo(
+      CharSequence info, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mDeviceOwnerLockScreenInfo = info;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized CharSequence getDeviceOwnerLockScreenInfo() {
+    return mDeviceOwnerLockScreenInfo;
+  }
+
+  @Override
+  public synchronized void setKeyguardDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mKeyguardDisabled = disabled;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void setKeyguardDisabledFeatures(
+      int which, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mKeyguardDisabledFeatures = which;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized int getKeyguardDisabledFeatures() {
+    return mKeyguardDisabledFeatures;
+  }
+
+  @Override
+  public synchronized void setCameraDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mCameraDisabled = disabled;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized boolean getCameraDisabled() {
+    return mCameraDisabled;
+  }
+
+  @Override
+  public boolean getCameraDisabledByAnyAdmin() {
+    return getCameraDisabled();
+  }
+
+  @Override
+  public synchronized void setStatusBarDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mStatusBarDisabled = disabled;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void setScreenCaptureDisabled(
+      boolean disabled, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mScreenCaptureDisabled = disabled;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void setMaximumFailedPasswordsForWipe(
+      int max, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    mMaximumFailedPasswordsForWipe = max;
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized int getMaximumFailedPasswordsForWipe() {
+    return mMaximumFailedPasswordsForWipe;
+  }
+
+  @Override
+  public synchronized void installExistingPackage(
+      String packageName, @NonNull Consumer<Void> onSuccess, @NonNull Consumer<Exception> onError) {
+    if (!mInstalledPackages.contains(packageName)) {
+      onError.accept(new FailedOperationException("installExistingPackage(%s)", packageName));
+      return;
+    }
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void setUninstallBlocked(
+      @NonNull String packageName,
+      boolean uninstallBlocked,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (uninstallBlocked) {
+      mUninstallBlockedPackages.add(packageName);
+    } else {
+      mUninstallBlockedPackages.remove(packageName);
+    }
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized boolean isUninstallBlocked(@NonNull String packageName) {
+    return mUninstallBlockedPackages.contains(packageName);
+  }
+
+  @Override
+  public synchronized void setSecureSetting(
+      String setting,
+      String value,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    mSecureSettings.put(setting, value);
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public synchronized void setGlobalSetting(
+      String setting,
+      String value,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (!mDeviceOwner) {
+      onError.accept(new SecurityException("Only the device owner can set global settings"));
+      return;
+    }
+    mGlobalSettings.put(setting, value);
+    onSuccess.accept(null);
+  }
+
+  @Override
+  public boolean isDeviceIdAttestationSupported() {
+    return false;
+  }
+
+  @Override
+  public boolean isUniqueDeviceAttestationSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized boolean hasKeyPair(String alias) {
+    return mKeyPairs.containsKey(alias);
+  }
+
+  @Override
+  public void generateKeyPair(
+      @NonNull String algorithm,
+      @NonNull KeyGenParameterSpec keySpec,
+      int idAttestationFlags,
+      @NonNull Consumer<AttestedKeyPair> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    onError.accept(
+        new UnsupportedOperationException("FakeDevicePolicyManagerGateway has no keystore"));
+  }
+
+  /** Adds a key pair, as {@link #generateKeyPair} can't create one. */
+  public synchronized FakeDevicePolicyManagerGateway addKeyPair(String alias) {
+    mKeyPairs.put(alias, new HashMap<>());
+    return this;
+  }
+
+  @Override
+  public synchronized void removeKeyPair(
+      @NonNull String alias,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    onSuccess.accept(mKeyPairs.remove(alias) != null);
+  }
+
+  @Override
+  public synchronized void grantKeyPairToApp(
+      @NonNull String alias,
+      @NonNull String packageName,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    Map<Integer, Set<String>> grants = mKeyPairs.get(alias);
+    if (grants == null || !mInstalledPackages.contains(packageName)) {
+      onSuccess.accept(false);
+      return;
+    }
+    int uid = uidOf(packageName);
+    Set<String> packages = grants.get(uid);
+    if (packages == null) {
+      packages = new LinkedHashSet<>();
+      grants.put(uid, packages);
+    }
+    packages.add(packageName);
+    onSuccess.accept(true);
+  }
+
+  @NonNull
+  @Override
+  public synchronized Map<Integer, Set<String>> getKeyPairGrants(@NonNull String alias) {
+    Map<Integer, Set<String>> grants = mKeyPairs.get(alias);
+    Map<Integer, Set<String>> copy = new HashMap<>();
+    if (grants != null) {
+      for (Map.Entry<Integer, Set<String>> entry : grants.entrySet()) {
+        copy.put(entry.getKey(), new LinkedHashSet<>(entry.getValue()));
+      }
+    }
+    return copy;
+  }
+
+  @Override
+  public synchronized void revokeKeyPairFromApp(
+      @NonNull String alias,
+      @NonNull String packageName,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    Map<Integer, Set<String>> grants = mKeyPairs.get(alias);
+    int uid = uidOf(packageName);
+    if (grants == null || grants.get(uid) == null || !grants.get(uid).remove(packageName)) {
+      onSuccess.accept(false);
+      return;
+    }
+    if (grants.get(uid).isEmpty()) {
+      grants.remove(uid);
+    }
+    onSuccess.accept(true);
+  }
+
+  @Override
+  public synchronized void setDelegatedScopes(
+      @NonNull String delegatePackage,
+      @NonNull List<String> scopes,
+      @NonNull Consumer<Void> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    if (scopes.isEmpty()) {
+      mDelegatedScopes.remove(delegatePackage);
+    } else {
+      mDelegatedScopes.put(delegatePackage, new ArrayList<>(scopes));
+    }
+    onSuccess.accept(null);
+  }
+
+  @NonNull
+  @Override
+  public synchronized List<String> getDelegatedScopes(@NonNull String delegatePackage) {
+    List<String> scopes = mDelegatedScopes.get(delegatePackage);
+    return scopes == null ? new ArrayList<>() : new ArrayList<>(scopes);
+  }
+
+  @NonNull
+  @Override
+  public synchronized List<String> getDelegatePackages(@NonNull String delegationScope) {
+    List<String> packages = new ArrayList<>();
+    for (Map.Entry<String, List<String>> entry : mDelegatedScopes.entrySet()) {
+      if (entry.getValue().contains(delegationScope)) {
+        packages.add(entry.getKey());
+      }
+    }
+    return packages;
+  }
+
+  @Override
+  public synchronized void setMeteredDataDisabledPackages(
+      @NonNull List<String> packageNames,
+      @NonNull Consumer<List<String>> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    List<String> failed = new ArrayList<>();
+    List<String> disabled = new ArrayList<>();
+    for (String packageName : packageNames) {
+      if (mInstalledPackages.contains(packageName)) {
+        disabled.add(packageName);
+      } else {
+        failed.add(packageName);
+      }
+    }
+    mMeteredDataDisabledPackages = disabled;
+    onSuccess.accept(failed);
+  }
+
+  @NonNull
+  @Override
+  public synchronized List<String> getMeteredDataDisabledPackages() {
+    return new ArrayList<>(mMeteredDataDisabledPackages);
+  }
+
+  @NonNull
+  @Override
+  public synchronized List<UserHandle> getSecondaryUsers() {
+    List<UserHandle> users = new ArrayList<>();
+    for (UserHandle user : mUsers.values()) {
+      if (user.getIdentifier() != 0) {
+        users.add(user);
+      }
+    }
+    return users;
+  }
+
+  @Override
+  public synchronized void addPersistentPreferredActivity(
+      ComponentName activityComponentName,
+      IntentFilter filter,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    String packageName = activityComponentName.getPackageName();
+    List<IntentFilter> filters = mPersistentPreferredActivities.get(packageName);
+    if (filters == null) {
+      filters = new ArrayList<>();
+      mPersistentPreferredActivities.put(packageName, filters);
+    }
+    filters.add(filter);
+    onSuccess.accept(true);
+  }
+
+  @Override
+  public synchronized void clearPackagePersistentPreferredActivities(
+      @NonNull String packageName,
+      @NonNull Consumer<Boolean> onSuccess,
+      @NonNull Consumer<Exception> onError) {
+    onSuccess.accept(mPersistentPreferredActivities.remove(packageName) != null);
+  }
+
+  /** Returns a stable, fake uid for the given package. */
+  private static int uidOf(String packageName) {
+    return Process.FIRST_APPLICATION_UID + (packageName.hashCode() & 0xFFFF);
+  }
+}
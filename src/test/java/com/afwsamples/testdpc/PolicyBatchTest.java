@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentName;
+import android.os.UserManager;
+import androidx.annotation.NonNull;
+import com.afwsamples.testdpc.DevicePolicyManagerGateway.FailedOperationException;
+import com.afwsamples.testdpc.PolicyBatch.Status;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class PolicyBatchTest {
+
+  private static final ComponentName ADMIN =
+      new ComponentName("com.afwsamples.testdpc", "com.afwsamples.testdpc.DeviceAdminReceiver");
+  private static final String INSTALLED_PACKAGE = "com.example.mail";
+  private static final String MISSING_PACKAGE = "com.example.missing";
+
+  private final FakeDevicePolicyManagerGateway mGateway =
+      new FakeDevicePolicyManagerGateway(ADMIN).addInstalledPackages(INSTALLED_PACKAGE);
+
+  @Test
+  public void apply_allSucceed() {
+    PolicyBatch.Result result =
+        PolicyBatch.builder(mGateway)
+            .setUserRestriction(UserManager.DISALLOW_SMS, true)
+            .setApplicationHidden(INSTALLED_PACKAGE, true)
+            .build()
+            .apply();
+
+    assertThat(result.isSuccessful()).isTrue();
+    assertThat(getStatuses(result)).containsExactly(Status.APPLIED, Status.APPLIED).inOrder();
+    assertThat(mGateway.getUserRestrictions()).containsExactly(UserManager.DISALLOW_SMS);
+  }
+
+  @Test
+  public void apply_failure_rollsBackAppliedOperations() throws Exception {
+    mGateway.setCameraDisabled(true, (v) -> {}, (e) -> {});
+
+    PolicyBatch.Result result =
+        PolicyBatch.builder(mGateway)
+            .setUserRestriction(UserManager.DISALLOW_SMS, true)
+            .setCameraDisabled(false)
+            .setApplicationHidden(MISSING_PACKAGE, true)
+            .setLockTaskPackages(new String[] {INSTALLED_PACKAGE})
+            .build()
+            .apply();
+
+    assertThat(result.isSuccessful()).isFalse();
+    assertThat(result.getError()).isInstanceOf(FailedOperationException.class);
+    assertThat(getStatuses(result))
+        .containsExactly(Status.ROLLED_BACK, Status.ROLLED_BACK, Status.FAILED, Status.SKIPPED)
+        .inOrder();
+    assertThat(mGateway.getUserRestrictions()).isEmpty();
+    assertThat(mGateway.getCameraDisabled()).isTrue();
+    assertThat(mGateway.getLockTaskPackages()).isEmpty();
+  }
+
+  @Test
+  public void apply_partialFailure_rollsBackFailedOperation() {
+    mGateway.setUserRestriction(UserManager.DISALLOW_CAMERA, true);
+    Map<String, Boolean> restrictions = new LinkedHashMap<>();
+    restrictions.put(UserManager.DISALLOW_SMS, true);
+    restrictions.put(UserManager.DISALLOW_CAMERA, false);
+    restrictions.put(UserManager.DISALLOW_INSTALL_APPS, true);
+    // Applies the first restriction of each call, then fails
+    DevicePolicyManagerGateway gateway =
+        new ForwardingDevicePolicyManagerGateway(mGateway) {
+          @Override
+          public void setUserRestrictions(
+              @NonNull Map<String, Boolean> userRestrictions,
+              @NonNull Consumer<Set<String>> onSuccess,
+              @NonNull Consumer<Exception> onError) {
+            Map.Entry<String, Boolean> first = userRestrictions.entrySet().iterator().next();
+            mDelegate.setUserRestriction(first.getKey(), first.getValue());
+            onError.accept(new FailedOperationException("setUserRestrictions()"));
+          }
+        };
+
+    PolicyBatch.Result result =
+        PolicyBatch.builder(gateway)
+            .setUserRestrictions(restrictions)
+            .setCameraDisabled(true)
+            .build()
+            .apply();
+
+    assertThat(getStatuses(result)).containsExactly(Status.FAILED, Status.SKIPPED).inOrder();
+    // Restored by the rollback, which only applies the first restriction too
+    assertThat(mGateway.getUserRestrictions()).containsExactly(UserManager.DISALLOW_CAMERA);
+    assertThat(result.getOperations().get(0).getError().getSuppressed()).hasLength(1);
+  }
+
+  @Test
+  public void apply_interrupted_failsAndKeepsInterrupt() {
+    // Never invokes its callbacks, so the batch waits for them
+    DevicePolicyManagerGateway gateway =
+        new ForwardingDevicePolicyManagerGateway(mGateway) {
+          @Override
+          public void setCameraDisabled(
+              boolean disabled,
+              @NonNull Consumer<Void> onSuccess,
+              @NonNull Consumer<Exception> onError) {}
+        };
+
+    Thread.currentThread().interrupt();
+    PolicyBatch.Result result;
+    try {
+      result =
+          PolicyBatch.builder(gateway)
+              .setUserRestriction(UserManager.DISALLOW_SMS, true)
+              .setCameraDisabled(true)
+              .build()
+              .apply();
+    } finally {
+      assertThat(Thread.interrupted()).isTrue();
+    }
+
+    assertThat(result.getError()).isInstanceOf(InterruptedException.class);
+    assertThat(getStatuses(result)).containsExactly(Status.ROLLED_BACK, Status.FAILED).inOrder();
+    assertThat(mGateway.getUserRestrictions()).isEmpty();
+  }
+
+  @Test
+  public void apply_rollbackDisabled_keepsAppliedOperations() {
+    PolicyBatch.Result result =
+        PolicyBatch.builder(mGateway)
+            .setRollbackOnFailure(false)
+            .setUserRestriction(UserManager.DISALLOW_SMS, true)
+            .setApplicationHidden(MISSING_PACKAGE, true)
+            .build()
+            .apply();
+
+    assertThat(getStatuses(result)).containsExactly(Status.APPLIED, Status.FAILED).inOrder();
+    assertThat(mGateway.getUserRestrictions()).containsExactly(UserManager.DISALLOW_SMS);
+  }
+
+  @Test
+  public void enableSystemApp_notSystemApp_doesNotFailBatch() {
+    mGateway.addDisabledSystemApps("com.example.camera");
+
+    PolicyBatch.Result result =
+        PolicyBatch.builder(mGateway)
+            .enableSystemApp("com.example.camera")
+            .enableSystemApp(INSTALLED_PACKAGE)
+            .build()
+            .apply();
+
+    assertThat(result.isSuccessful()).isTrue();
+    assertThat(mGateway.getDisabledSystemApps()).isEmpty();
+  }
+
+  private static List<Status> getStatuses(PolicyBatch.Result result) {
+    List<Status> statuses = new ArrayList<>();
+    for (PolicyBatch.OperationResult operation : result.getOperations()) {
+      statuses.add(operation.getStatus());
+    }
+    return statuses;
+  }
+}
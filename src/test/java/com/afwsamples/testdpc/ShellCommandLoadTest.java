@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.os.UserManager;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Benchmark of {@link ShellCommand}: drives scripted workloads through a {@link
+ * FakeDevicePolicyManagerGateway} and prints the time and allocation per command of each one.
+ *
+ * <p>Each workload is a list of command lines run one {@code ShellCommand} invocation at a time (as
+ * {@code adb shell dumpsys} would), after a warm-up. Only the results of the commands are checked:
+ * the numbers depend too much on the machine to fail on, so they're meant to be compared between
+ * runs on the same one. The number of iterations can be changed with {@code
+ * -Dtestdpc.loadtest.iterations=N}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ShellCommandLoadTest {
+
+  private static final int ITERATIONS = Integer.getInteger("testdpc.loadtest.iterations", 200);
+  private static final int WARMUP_ITERATIONS = Math.max(1, ITERATIONS / 10);
+
+  private static final String[] PACKAGES = {
+    "com.example.mail", "com.example.browser", "com.example.maps", "com.example.notes"
+  };
+
+  private static final String[][] RESTRICTIONS_WORKLOAD = {
+    {"set-user-restriction", UserManager.DISALLOW_INSTALL_APPS, "true"},
+    {"set-user-restriction", UserManager.DISALLOW_INSTALL_APPS, "false"},
+    {
+      "set-user-restrictions",
+      UserManager.DISALLOW_CAMERA + "=true",
+      UserManager.DISALLOW_SMS + "=true",
+      UserManager.DISALLOW_USB_FILE_TRANSFER + "=false"
+    },
+    {"list-user-restrictions"},
+    {"--format=json", "list-user-restrictions"},
+  };
+
+  private static final String[][] PACKAGES_WORKLOAD = {
+    {"set-suspended-packages", "true", PACKAGES[0], PACKAGES[1]},
+    {"is-suspended-packages", PACKAGES[0], PACKAGES[1], PACKAGES[2]},
+    {"set-suspended-packages", "false", PACKAGES[0], PACKAGES[1]},
+    {"set-hidden-package", PACKAGES[2], "true"},
+    {"is-hidden-package", PACKAGES[2]},
+    {"set-hidden-package", PACKAGES[2], "false"},
+    {"set-lock-task-packages", PACKAGES[0], PACKAGES[3]},
+    {"is-lock-task-permitted", PACKAGES[0], PACKAGES[1]},
+    {"set-app-restrictions", PACKAGES[3], "server=example.com", "sync=true"},
+    {"get-app-restrictions", PACKAGES[3], PACKAGES[1]},
+  };
+
+  private static final String[][] SCRIPT_WORKLOAD = {
+    {
+      "run-commands",
+      "set-user-restriction " + UserManager.DISALLOW_CONFIG_WIFI + " true",
+      "get-lock-task-packages",
+      "set-organization-name Example",
+      "get-affiliation-ids",
+      "set-user-restriction " + UserManager.DISALLOW_CONFIG_WIFI + " false",
+    },
+  };
+
+  private static final String[][] DIAGNOSTICS_WORKLOAD = {{"help"}, {"dump"}, {"stats"}};
+
+  private final Context mContext = ApplicationProvider.getApplicationContext();
+  private FakeDevicePolicyManagerGateway mGateway;
+
+  @Before
+  public void setUp() {
+    mGateway =
+        new FakeDevicePolicyManagerGateway(DeviceAdminReceiver.getComponentName(mContext))
+            .addInstalledPackages(PACKAGES);
+  }
+
+  @Test
+  public void restrictionsWorkload() {
+    String output = runWorkload("restrictions", RESTRICTIONS_WORKLOAD);
+
+    assertThat(output).contains(UserManager.DISALLOW_CAMERA);
+    assertThat(mGateway.getUserRestrictions())
+        .containsExactly(UserManager.DISALLOW_CAMERA, UserManager.DISALLOW_SMS);
+  }
+
+  @Test
+  public void packagesWorkload() throws Exception {
+    String output = runWorkload("packages", PACKAGES_WORKLOAD);
+
+    assertThat(output).contains("server");
+    assertThat(mGateway.isPackageSuspended(PACKAGES[0])).isFalse();
+    assertThat(mGateway.isApplicationHidden(PACKAGES[2])).isFalse();
+    assertThat(mGateway.getLockTaskPackages()).asList().containsExactly(PACKAGES[0], PACKAGES[3]);
+  }
+
+  @Test
+  public void scriptWorkload() {
+    runWorkload("run-commands", SCRIPT_WORKLOAD);
+
+    assertThat(mGateway.getOrganizationName().toString()).isEqualTo("Example");
+    assertThat(mGateway.getUserRestrictions()).isEmpty();
+  }
+
+  @Test
+  public void diagnosticsWorkload() {
+    String output = runWorkload("diagnostics", DIAGNOSTICS_WORKLOAD);
+
+    assertThat(output).contains("gatewayCalls");
+  }
+
+  /**
+   * Runs the workload (after a warm-up), prints its time and allocation per command, and returns
+   * the output of its last iteration.
+   */
+  private String runWorkload(String name, String[][] workload) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      runOnce(workload, new PrintWriter(new StringWriter()));
+    }
+
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS - 1; i++) {
+      runOnce(workload, new PrintWriter(new StringWriter()));
+    }
+    StringWriter lastOutput = new StringWriter();
+    runOnce(workload, new PrintWriter(lastOutput));
+    long elapsedNanos = System.nanoTime() - start;
+    long allocatedAfter = allocatedBytes();
+    long allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+
+    long commands = (long) ITERATIONS * workload.length;
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "%s: %,d commands in %,d ms: %,.0f commands/s, %,d ns/command, %s/command",
+            name,
+            commands,
+            elapsedNanos / 1_000_000,
+            commands * 1e9 / elapsedNanos,
+            elapsedNanos / commands,
+            allocated < 0 ? "(allocation not supported)" : (allocated / commands) + " bytes"));
+    return lastOutput.toString();
+  }
+
+  private void runOnce(String[][] workload, PrintWriter writer) {
+    for (String[] args : workload) {
+      new ShellCommand(mContext, writer, args, mGateway).run();
+    }
+    writer.flush();
+  }
+
+  /** Returns the bytes allocated by this thread so far, or -1 if the JVM doesn't track them. */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+    return threadBean.isThreadAllocatedMemoryEnabled()
+        ? threadBean.getThreadAllocatedBytes(Thread.currentThread().getId())
+        : -1;
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.afwsamples.testdpc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.afwsamples.testdpc.ShellOutput.Format;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ShellOutputTest {
+
+  private final StringWriter mWriter = new StringWriter();
+
+  @Test
+  public void fromName_ignoresCase() {
+    assertThat(Format.fromName("Json")).isEqualTo(Format.JSON);
+    assertThrows(IllegalArgumentException.class, () -> Format.fromName("xml"));
+  }
+
+  @Test
+  public void json_escapesStrings() {
+    ShellOutput output = create(Format.JSON);
+
+    output.beginRecords("app", "name", "label", "count", "hidden");
+    output.beginRecord();
+    output.value("com.example\"quoted\\").value("a\tb\nc\u0001").value(3).value(true);
+    output.endRecord();
+    output.close();
+
+    assertThat(mWriter.toString())
+        .isEqualTo(
+            "{\"type\":\"app\",\"name\":\"com.example\\\"quoted\\\\\","
+                + "\"label\":\"a\\tb\\nc\\u0001\",\"count\":3,\"hidden\":true}\n");
+  }
+
+  @Test
+  public void json_nullValue() {
+    ShellOutput output = create(Format.JSON);
+
+    output.beginRecords("app", "name");
+    output.beginRecord();
+    output.value((CharSequence) null);
+    output.endRecord();
+    output.close();
+
+    assertThat(mWriter.toString()).isEqualTo("{\"type\":\"app\",\"name\":null}\n");
+  }
+
+  @Test
+  public void csv_quotesOnlyWhenNeeded() {
+    ShellOutput output = create(Format.CSV);
+
+    output.beginRecords("app", "name", "label");
+    output.beginRecord();
+    output.value("plain").value("a,b \"c\"\nd");
+    output.endRecord();
+    output.close();
+
+    assertThat(mWriter.toString())
+        .isEqualTo("type,name,label\n" + "app,plain,\"a,b \"\"c\"\"\nd\"\n");
+  }
+
+  @Test
+  public void csv_nullValueIsEmpty() {
+    ShellOutput output = create(Format.CSV);
+
+    output.beginRecords("app", "name", "count");
+    output.beginRecord();
+    output.value((CharSequence) null).value(-1);
+    output.endRecord();
+    output.close();
+
+    assertThat(mWriter.toString()).isEqualTo("type,name,count\napp,,-1\n");
+  }
+
+  @Test
+  public void tsv_escapesWithBackslashes() {
+    ShellOutput output = create(Format.TSV);
+
+    output.beginRecords("app", "label");
+    output.beginRecord();
+    output.value("a\tb\nc\\d,\"e\"");
+    output.endRecord();
+    output.close();
+
+    assertThat(mWriter.toString()).isEqualTo("type\tlabel\napp\ta\\tb\\nc\\\\d,\"e\"\n");
+  }
+
+  @Test
+  public void csv_headerWrittenWhenTypeChanges() {
+    ShellOutput output = create(Format.CSV);
+
+    output.beginRecords("app", "name");
+    writeRecord(output, "first");
+    output.beginRecords("app", "name");
+    writeRecord(output, "second");
+    output.beginRecords("user", "id");
+    writeRecord(output, "10");
+    output.close();
+
+    assertThat(mWriter.toString())
+        .isEqualTo("type,name\napp,first\napp,second\ntype,id\nuser,10\n");
+  }
+
+  @Test
+  public void csv_textConvertedToRecords() {
+    ShellOutput output = create(Format.CSV);
+    PrintWriter writer = new PrintWriter(output);
+
+    writer.println("Hello, \"world\"");
+    writer.print("\r\n");
+    output.beginRecords("app", "name");
+    writeRecord(output, "com.example");
+    writer.print("no newline");
+    writer.flush();
+    output.close();
+
+    assertThat(mWriter.toString())
+        .isEqualTo(
+            "type,text\n"
+                + "text,\"Hello, \"\"world\"\"\"\n"
+                + "text,\"\"\n"
+                + "type,name\n"
+                + "app,com.example\n"
+                + "type,text\n"
+                + "text,\"no newline\"\n");
+  }
+
+  @Test
+  public void json_textConvertedToRecords() {
+    ShellOutput output = create(Format.JSON);
+    PrintWriter writer = new PrintWriter(output);
+
+    writer.print("tab\there");
+    output.beginRecords("app", "name");
+    writeRecord(output, "com.example");
+    writer.println("\"done\"");
+    writer.flush();
+    output.close();
+
+    assertThat(mWriter.toString())
+        .isEqualTo(
+            "{\"type\":\"text\",\"text\":\"tab\\there\"}\n"
+                + "{\"type\":\"app\",\"name\":\"com.example\"}\n"
+                + "{\"type\":\"text\",\"text\":\"\\\"done\\\"\"}\n");
+  }
+
+  @Test
+  public void text_writesTextAsIs() {
+    ShellOutput output = create(Format.TEXT);
+    PrintWriter writer = new PrintWriter(output);
+
+    writer.println("Hello, \"world\"");
+    output.beginRecords("app", "name", "hidden");
+    output.beginRecord();
+    output.value("com.example").value(false);
+    output.endRecord();
+    writer.flush();
+    output.close();
+
+    assertThat(output.isText()).isTrue();
+    assertThat(mWriter.toString()).isEqualTo("Hello, \"world\"\nname=com.example hidden=false\n");
+  }
+
+  @Test
+  public void endRecord_missingValues_throws() {
+    ShellOutput output = create(Format.JSON);
+    output.beginRecords("app", "name", "label");
+    output.beginRecord();
+    output.value("com.example");
+
+    assertThrows(IllegalStateException.class, output::endRecord);
+  }
+
+  @Test
+  public void value_tooMany_throws() {
+    ShellOutput output = create(Format.CSV);
+    output.beginRecords("app", "name");
+    output.beginRecord();
+    output.value("com.example");
+
+    assertThrows(IllegalStateException.class, () -> output.value("extra"));
+  }
+
+  @Test
+  public void write_insideRecord_throws() {
+    ShellOutput output = create(Format.TSV);
+    output.beginRecords("app", "name");
+    output.beginRecord();
+
+    assertThrows(IllegalStateException.class, () -> output.write('x'));
+  }
+
+  private ShellOutput create(Format format) {
+    return ShellOutput.create(new PrintWriter(mWriter), format);
+  }
+
+  private static void writeRecord(ShellOutput output, String value) {
+    output.beginRecord();
+    output.value(value);
+    output.endRecord();
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class NetworkLogQueueTest {
+
+  private static final String ADMIN = "com.afwsamples.testdpc/.DeviceAdminReceiver";
+
+  @Rule public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void peek_returnsLowestTokenFirst() throws Exception {
+    NetworkLogQueue queue = NetworkLogQueue.load(newFile(), 5);
+    queue.add(3, 300, 30, ADMIN);
+    queue.add(1, 100, 10, ADMIN);
+    queue.add(2, 200, 20, null);
+
+    assertThat(queue.peek().getBatchToken()).isEqualTo(1);
+    queue.remove(1);
+    assertThat(queue.peek().getBatchToken()).isEqualTo(2);
+    queue.remove(2);
+    queue.remove(3);
+    assertThat(queue.peek()).isNull();
+  }
+
+  @Test
+  public void add_whenFull_dropsOldest() throws Exception {
+    NetworkLogQueue queue = NetworkLogQueue.load(newFile(), 2);
+    assertThat(queue.add(1, 100, 10, ADMIN)).isNull();
+    assertThat(queue.add(2, 200, 20, ADMIN)).isNull();
+    // Already queued
+    assertThat(queue.add(2, 250, 25, ADMIN)).isNull();
+
+    NetworkLogQueue.Entry dropped = queue.add(3, 300, 30, ADMIN);
+
+    assertThat(dropped.getBatchToken()).isEqualTo(1);
+    assertThat(queue.size()).isEqualTo(2);
+    assertThat(queue.peek().getAvailableMillis()).isEqualTo(200);
+  }
+
+  @Test
+  public void load_keepsEntriesAndAttempts() throws Exception {
+    File file = newFile();
+    NetworkLogQueue queue = NetworkLogQueue.load(file, 5);
+    queue.add(1, 100, 10, ADMIN);
+    queue.add(2, 200, 20, null);
+    assertThat(queue.recordFailure(1)).isEqualTo(1);
+    assertThat(queue.recordFailure(1)).isEqualTo(2);
+    assertThat(queue.recordFailure(7)).isEqualTo(0);
+
+    NetworkLogQueue read = NetworkLogQueue.load(file, 5);
+
+    assertThat(read.size()).isEqualTo(2);
+    NetworkLogQueue.Entry first = read.getEntries().get(0);
+    assertThat(first.getBatchToken()).isEqualTo(1);
+    assertThat(first.getAvailableMillis()).isEqualTo(100);
+    assertThat(first.getEventCount()).isEqualTo(10);
+    assertThat(first.getAdmin()).isEqualTo(ADMIN);
+    assertThat(first.getAttempts()).isEqualTo(2);
+    assertThat(read.getEntries().get(1).getAdmin()).isNull();
+  }
+
+  @Test
+  public void load_invalidFile_throws() throws Exception {
+    File file = newFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+    }
+
+    assertThrows(Exception.class, () -> NetworkLogQueue.load(file, 5));
+    NetworkLogQueue queue = NetworkLogQueue.create(file, 5);
+    assertThat(queue.size()).isEqualTo(0);
+    assertThat(NetworkLogQueue.load(file, 5).size()).isEqualTo(0);
+  }
+
+  @Test
+  public void attempt_storedOrExpired_removesBatch() throws Exception {
+    NetworkLogQueue queue = NetworkLogQueue.load(newFile(), 5);
+    queue.add(1, 100, 10, ADMIN);
+    queue.add(2, 200, 20, ADMIN);
+
+    NetworkLogQueue.Attempt stored = queue.attempt(queue.peek(), (entry) -> true, 3);
+    NetworkLogQueue.Attempt expired = queue.attempt(queue.peek(), (entry) -> false, 3);
+
+    assertThat(stored.getStatus()).isEqualTo(NetworkLogQueue.Attempt.Status.STORED);
+    assertThat(expired.getStatus()).isEqualTo(NetworkLogQueue.Attempt.Status.EXPIRED);
+    assertThat(expired.getFailure()).isNull();
+    assertThat(queue.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void attempt_throwingBatch_isRetriedThenGivenUp() throws Exception {
+    File file = newFile();
+    NetworkLogQueue queue = NetworkLogQueue.load(file, 5);
+    queue.add(1, 100, 10, ADMIN);
+    queue.add(2, 200, 20, ADMIN);
+    NetworkLogQueue.BatchStore store =
+        (entry) -> {
+          throw new IllegalArgumentException("Record without package");
+        };
+
+    NetworkLogQueue.Attempt first = queue.attempt(queue.peek(), store, 3);
+    NetworkLogQueue.Attempt second =
+        queue.attempt(
+            queue.peek(),
+            (entry) -> {
+              throw new IOException("No space left");
+            },
+            3);
+
+    assertThat(first.getStatus()).isEqualTo(NetworkLogQueue.Attempt.Status.RETRY);
+    assertThat(first.getFailure()).isInstanceOf(IllegalArgumentException.class);
+    assertThat(second.getStatus()).isEqualTo(NetworkLogQueue.Attempt.Status.RETRY);
+    assertThat(NetworkLogQueue.load(file, 5).peek().getAttempts()).isEqualTo(2);
+
+    NetworkLogQueue.Attempt last = queue.attempt(queue.peek(), store, 3);
+
+    assertThat(last.getStatus()).isEqualTo(NetworkLogQueue.Attempt.Status.GAVE_UP);
+    assertThat(queue.peek().getBatchToken()).isEqualTo(2);
+  }
+
+  private File newFile() {
+    return new File(mTemporaryFolder.getRoot(), "queue");
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class NetworkLogRetentionTest {
+
+  private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+  // A whole second, as some file systems only keep modification times to the second
+  private static final long NOW_MILLIS = 1_700_000_000_000L;
+  private static final int RECORD_COUNT = 1000;
+
+  @Rule public final TemporaryFolder mFolder = new TemporaryFolder();
+
+  @Test
+  public void compressedSegment_canBeRead() throws Exception {
+    File segment = writeSegment(1, NOW_MILLIS);
+    long length = segment.length();
+
+    File compressed = CompressedSegment.compress(segment);
+
+    assertThat(segment.exists()).isFalse();
+    assertThat(compressed.getName()).isEqualTo("segment_1.segz");
+    assertThat(compressed.lastModified()).isEqualTo(NOW_MILLIS);
+    assertThat(compressed.length()).isLessThan(length);
+    try (NetworkLogSegmentReader reader = NetworkLogSegmentReader.open(compressed)) {
+      assertThat(reader.getBatchToken()).isEqualTo(1);
+      assertThat(reader.getRecordCount()).isEqualTo(RECORD_COUNT);
+      NetworkLogRecord record = reader.read(RECORD_COUNT - 1, new NetworkLogRecord());
+      assertThat(record.getHostname()).isEqualTo("host" + (RECORD_COUNT - 1) % 10 + ".example.com");
+    }
+  }
+
+  @Test
+  public void compressedSegment_indexMatchesSegment() throws Exception {
+    File compressed = CompressedSegment.compress(writeSegment(1, NOW_MILLIS));
+
+    CompressedSegment index = CompressedSegment.read(compressed);
+
+    assertThat(index.getBatchToken()).isEqualTo(1);
+    assertThat(index.getRecordCount()).isEqualTo(RECORD_COUNT);
+    assertThat(index.getMinTimestamp()).isEqualTo(NOW_MILLIS);
+    assertThat(index.getMaxTimestamp()).isEqualTo(NOW_MILLIS + RECORD_COUNT - 1);
+    assertThat(index.mayMatch(NetworkLogFilter.ALL)).isTrue();
+    assertThat(index.mayMatch(filter("com.example.mail", "HOST3"))).isTrue();
+    assertThat(index.mayMatch(filter("com.example.maps", null))).isFalse();
+    assertThat(index.mayMatch(filter(null, "other.example.com"))).isFalse();
+  }
+
+  @Test
+  public void enforce_compressesOldSegmentsAndDeletesExpiredOnes() throws Exception {
+    File expired = writeSegment(1, NOW_MILLIS - 10 * DAY_MILLIS);
+    File old = writeSegment(2, NOW_MILLIS - 2 * DAY_MILLIS);
+    File recent = writeSegment(3, NOW_MILLIS - 1000);
+    NetworkLogRetention retention =
+        new NetworkLogRetention(Long.MAX_VALUE, 7 * DAY_MILLIS, DAY_MILLIS);
+
+    NetworkLogRetention.Result result =
+        retention.enforce(Arrays.asList(expired, old, recent), NOW_MILLIS);
+
+    assertThat(result.getDeletedCount()).isEqualTo(1);
+    assertThat(result.getCompressedCount()).isEqualTo(1);
+    assertThat(result.getFailureCount()).isEqualTo(0);
+    assertThat(mFolder.getRoot().list())
+        .asList()
+        .containsExactly("segment_2.segz", "segment_3.seg");
+  }
+
+  @Test
+  public void enforce_appliesLimitsToLegacyLogs() throws Exception {
+    File expired = writeLegacyLog(1, NOW_MILLIS - 10 * DAY_MILLIS, 10);
+    File large = writeLegacyLog(2, NOW_MILLIS - 2 * DAY_MILLIS, 1024 * 1024);
+    File small = writeLegacyLog(3, NOW_MILLIS - DAY_MILLIS, 10);
+    File segment = writeSegment(4, NOW_MILLIS);
+    NetworkLogRetention retention =
+        new NetworkLogRetention(512 * 1024, 7 * DAY_MILLIS, /* compressAfterMillis= */ 0);
+
+    NetworkLogRetention.Result result =
+        retention.enforce(Arrays.asList(expired, large, small, segment), NOW_MILLIS);
+
+    // Legacy logs aren't compressed, so the large one has to go
+    assertThat(result.getCompressedCount()).isEqualTo(1);
+    assertThat(result.getDeletedCount()).isEqualTo(2);
+    assertThat(mFolder.getRoot().list())
+        .asList()
+        .containsExactly("network_logs_3_0.txt", "segment_4.segz");
+  }
+
+  @Test
+  public void enforce_deletesOldestSegmentsOverBudget() throws Exception {
+    List<File> segments = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      segments.add(writeSegment(i, NOW_MILLIS - (4 - i) * 1000));
+    }
+    File sample = CompressedSegment.compress(writeSegment(9, NOW_MILLIS));
+    // Room for 2 compressed segments and a bit
+    long budget = sample.length() * 5 / 2;
+    sample.delete();
+    NetworkLogRetention retention =
+        new NetworkLogRetention(budget, DAY_MILLIS, /* compressAfterMillis= */ 0);
+
+    NetworkLogRetention.Result result = retention.enforce(segments, NOW_MILLIS);
+
+    assertThat(result.getCompressedCount()).isEqualTo(4);
+    assertThat(result.getDeletedCount()).isEqualTo(2);
+    assertThat(mFolder.getRoot().list())
+        .asList()
+        .containsExactly("segment_2.segz", "segment_3.segz");
+  }
+
+  @Test
+  public void getUsage_reportsCompressionRatio() throws Exception {
+    File plain = writeSegment(1, NOW_MILLIS - 1000);
+    File segment = writeSegment(2, NOW_MILLIS);
+    long uncompressedLength = segment.length();
+    File compressed = CompressedSegment.compress(segment);
+
+    NetworkLogRetention.Usage usage =
+        NetworkLogRetention.getUsage(Arrays.asList(plain, compressed));
+
+    assertThat(usage.getSegmentCount()).isEqualTo(2);
+    assertThat(usage.getCompressedCount()).isEqualTo(1);
+    assertThat(usage.getTotalBytes()).isEqualTo(plain.length() + compressed.length());
+    assertThat(usage.getUncompressedBytes()).isEqualTo(uncompressedLength);
+    assertThat(usage.getCompressionRatio())
+        .isWithin(0.001)
+        .of((double) uncompressedLength / compressed.length());
+    assertThat(usage.getOldestMillis()).isEqualTo(NOW_MILLIS - 1000);
+  }
+
+  private File writeSegment(long batchToken, long modifiedMillis) throws Exception {
+    File file = new File(mFolder.getRoot(), "segment_" + batchToken + ".seg");
+    try (NetworkLogSegmentWriter writer = new NetworkLogSegmentWriter(file, batchToken)) {
+      NetworkLogRecord record = new NetworkLogRecord();
+      for (int i = 0; i < RECORD_COUNT; i++) {
+        writer.append(
+            record
+                .clear()
+                .setId(i)
+                .setType(NetworkLogRecord.TYPE_DNS)
+                .setPackageName("com.example.mail")
+                .setHostname("host" + i % 10 + ".example.com")
+                .setTimestampMillis(NOW_MILLIS + i));
+      }
+    }
+    file.setLastModified(modifiedMillis);
+    return file;
+  }
+
+  private File writeLegacyLog(long batchToken, long modifiedMillis, int length) throws Exception {
+    File file = new File(mFolder.getRoot(), "network_logs_" + batchToken + "_0.txt");
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[length]);
+    }
+    file.setLastModified(modifiedMillis);
+    return file;
+  }
+
+  private static NetworkLogFilter filter(String packageName, String hostname) {
+    return new NetworkLogFilter(packageName, hostname, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+}
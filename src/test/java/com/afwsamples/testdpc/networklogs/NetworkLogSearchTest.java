@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class NetworkLogSearchTest {
+
+  private static final long START_MILLIS = 1_700_000_000_000L;
+  private static final int RECORDS_PER_SEGMENT = SegmentFormat.BLOCK_SIZE * 3;
+  private static final byte[] ADDRESS = {10, 0, 0, 1};
+
+  @Rule public final TemporaryFolder mFolder = new TemporaryFolder();
+
+  private final List<File> mSegments = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    // Two segments of consecutive records, alternating between a lookup by the mail app and a
+    // connection by the maps app
+    for (int segment = 0; segment < 2; segment++) {
+      File file = new File(mFolder.getRoot(), "segment" + segment + ".seg");
+      try (NetworkLogSegmentWriter writer = new NetworkLogSegmentWriter(file, segment)) {
+        for (int i = 0; i < RECORDS_PER_SEGMENT; i++) {
+          long id = (long) segment * RECORDS_PER_SEGMENT + i;
+          NetworkLogRecord record =
+              new NetworkLogRecord().setId(id).setTimestampMillis(START_MILLIS + id);
+          if (i % 2 == 0) {
+            record
+                .setType(NetworkLogRecord.TYPE_DNS)
+                .setPackageName("com.example.mail")
+                .setHostname(i % 4 == 0 ? "imap.example.com" : "smtp.example.com");
+          } else {
+            record
+                .setType(NetworkLogRecord.TYPE_CONNECT)
+                .setPackageName("com.example.maps")
+                .setAddress(ADDRESS)
+                .setPort(443);
+          }
+          writer.append(record);
+        }
+      }
+      mSegments.add(file);
+    }
+  }
+
+  @Test
+  public void noFilter_readsAllInOrder() throws Exception {
+    try (NetworkLogSearch search = NetworkLogSearch.open(mSegments, NetworkLogFilter.ALL)) {
+      assertThat(search.getCount()).isEqualTo(RECORDS_PER_SEGMENT * 2);
+      assertThat(search.getSegmentCount()).isEqualTo(2);
+      for (int i = 0; i < search.getCount(); i++) {
+        assertThat(search.read(i, new NetworkLogRecord()).getId()).isEqualTo(i);
+      }
+    }
+  }
+
+  @Test
+  public void packageFilter() throws Exception {
+    NetworkLogFilter filter =
+        new NetworkLogFilter("com.example.maps", null, Long.MIN_VALUE, Long.MAX_VALUE);
+    try (NetworkLogSearch search = NetworkLogSearch.open(mSegments, filter)) {
+      assertThat(search.getCount()).isEqualTo(RECORDS_PER_SEGMENT);
+      for (NetworkLogRecord record : search.readPage(0, search.getCount())) {
+        assertThat(record.getPackageName()).isEqualTo("com.example.maps");
+      }
+    }
+  }
+
+  @Test
+  public void unknownPackage_matchesNothing() throws Exception {
+    NetworkLogFilter filter =
+        new NetworkLogFilter("com.example.notes", null, Long.MIN_VALUE, Long.MAX_VALUE);
+    try (NetworkLogSearch search = NetworkLogSearch.open(mSegments, filter)) {
+      assertThat(search.getCount()).isEqualTo(0);
+      assertThat(search.getSegmentCount()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void hostnameFilter_matchesPartIgnoringCase() throws Exception {
+    NetworkLogFilter filter = new NetworkLogFilter(null, "IMAP", Long.MIN_VALUE, Long.MAX_VALUE);
+    try (NetworkLogSearch search = NetworkLogSearch.open(mSegments, filter)) {
+      assertThat(search.getCount()).isEqualTo(RECORDS_PER_SEGMENT / 2);
+      for (NetworkLogRecord record : search.readPage(0, search.getCount())) {
+        assertThat(record.getHostname()).isEqualTo("imap.example.com");
+      }
+    }
+  }
+
+  @Test
+  public void timeRange_acrossSegmentsAndBlocks() throws Exception {
+    long from = START_MILLIS + RECORDS_PER_SEGMENT - 10;
+    long to = START_MILLIS + RECORDS_PER_SEGMENT + SegmentFormat.BLOCK_SIZE + 5;
+    NetworkLogFilter filter = new NetworkLogFilter(null, null, from, to);
+    try (NetworkLogSearch search = NetworkLogSearch.open(mSegments, filter)) {
+      assertThat(search.getCount()).isEqualTo(to - from + 1);
+      assertThat(search.read(0, new NetworkLogRecord()).getTimestampMillis()).isEqualTo(from);
+      assertThat(search.read(search.getCount() - 1, new NetworkLogRecord()).getTimestampMillis())
+          .isEqualTo(to);
+    }
+  }
+
+  @Test
+  public void readPage_stopsAtEnd() throws Exception {
+    try (NetworkLogSearch search = NetworkLogSearch.open(mSegments, NetworkLogFilter.ALL)) {
+      List<NetworkLogRecord> page = search.readPage(search.getCount() - 3, 10);
+
+      assertThat(page).hasSize(3);
+      assertThat(page.get(2).getId()).isEqualTo(search.getCount() - 1);
+    }
+  }
+
+  @Test
+  public void unreadableSegment_isSkipped() throws Exception {
+    File corrupted = mFolder.newFile("corrupted.seg");
+    try (FileOutputStream stream = new FileOutputStream(corrupted)) {
+      stream.write(new byte[128]);
+    }
+    List<File> segments = new ArrayList<>(mSegments);
+    segments.add(1, corrupted);
+
+    try (NetworkLogSearch search = NetworkLogSearch.open(segments, NetworkLogFilter.ALL)) {
+      assertThat(search.getCount()).isEqualTo(RECORDS_PER_SEGMENT * 2);
+      assertThat(search.getUnreadableSegments()).isEqualTo(Arrays.asList(corrupted));
+    }
+  }
+
+  @Test
+  public void compressedSegments_onlyDecompressedIfTheyMayMatch() throws Exception {
+    List<File> segments = new ArrayList<>();
+    for (File segment : mSegments) {
+      segments.add(CompressedSegment.compress(segment));
+    }
+    // Only the index of the second segment is left, so decompressing it would fail
+    File truncated = segments.get(1);
+    int indexLength = CompressedSegment.read(truncated).getIndexLength();
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(truncated, "rw")) {
+      randomAccessFile.setLength(indexLength + 16);
+    }
+    NetworkLogFilter firstSegment =
+        new NetworkLogFilter(null, null, START_MILLIS, START_MILLIS + RECORDS_PER_SEGMENT - 1);
+
+    try (NetworkLogSearch search = NetworkLogSearch.open(segments, firstSegment)) {
+      assertThat(search.getCount()).isEqualTo(RECORDS_PER_SEGMENT);
+      assertThat(search.getUnreadableSegments()).isEmpty();
+      assertThat(search.read(0, new NetworkLogRecord()).getId()).isEqualTo(0);
+    }
+    try (NetworkLogSearch search = NetworkLogSearch.open(segments, NetworkLogFilter.ALL)) {
+      assertThat(search.getCount()).isEqualTo(RECORDS_PER_SEGMENT);
+      assertThat(search.getUnreadableSegments()).containsExactly(truncated);
+    }
+  }
+}
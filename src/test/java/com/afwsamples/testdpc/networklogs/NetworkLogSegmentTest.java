@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class NetworkLogSegmentTest {
+
+  private static final long BATCH_TOKEN = 42;
+  private static final long START_MILLIS = 1_700_000_000_000L;
+  private static final byte[] IPV4_ADDRESS = {(byte) 192, (byte) 168, 0, 1};
+  private static final byte[] IPV6_ADDRESS = {
+    0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1
+  };
+
+  @Rule public final TemporaryFolder mFolder = new TemporaryFolder();
+
+  @Test
+  public void readsWhatWasWritten() throws Exception {
+    File file = new File(mFolder.getRoot(), "segment.seg");
+    try (NetworkLogSegmentWriter writer = new NetworkLogSegmentWriter(file, BATCH_TOKEN)) {
+      writer.append(dns(1, "com.example.mail", "mail.example.com", IPV4_ADDRESS, 3));
+      writer.append(connect(2, "com.example.mail", IPV6_ADDRESS, 443));
+      writer.append(dns(3, "com.example.maps", "maps.example.com", null, 0));
+    }
+
+    try (NetworkLogSegmentReader reader = NetworkLogSegmentReader.open(file)) {
+      assertThat(reader.getBatchToken()).isEqualTo(BATCH_TOKEN);
+      assertThat(reader.getRecordCount()).isEqualTo(3);
+      assertThat(reader.getMinTimestamp()).isEqualTo(START_MILLIS + 1);
+      assertThat(reader.getMaxTimestamp()).isEqualTo(START_MILLIS + 3);
+      // Each package and hostname is stored once
+      assertThat(reader.getStringCount()).isEqualTo(4);
+
+      NetworkLogRecord record = reader.read(0, new NetworkLogRecord());
+      assertThat(record.getId()).isEqualTo(1);
+      assertThat(record.getType()).isEqualTo(NetworkLogRecord.TYPE_DNS);
+      assertThat(record.getPackageName()).isEqualTo("com.example.mail");
+      assertThat(record.getHostname()).isEqualTo("mail.example.com");
+      assertThat(record.getAddress().getAddress()).isEqualTo(IPV4_ADDRESS);
+      assertThat(record.getAddressCount()).isEqualTo(3);
+
+      reader.read(1, record);
+      assertThat(record.getType()).isEqualTo(NetworkLogRecord.TYPE_CONNECT);
+      assertThat(record.getHostname()).isNull();
+      assertThat(record.getAddress().getAddress()).isEqualTo(IPV6_ADDRESS);
+      assertThat(record.getPort()).isEqualTo(443);
+
+      reader.read(2, record);
+      assertThat(record.getAddress()).isNull();
+      assertThat(record.getTimestampMillis()).isEqualTo(START_MILLIS + 3);
+    }
+  }
+
+  @Test
+  public void lookups_keepAllTheirAddresses() throws Exception {
+    File file = new File(mFolder.getRoot(), "segment.seg");
+    byte[] otherAddress = {10, 0, 0, 1};
+    NetworkLogRecord many = dns(1, "com.example.mail", "mail.example.com", IPV4_ADDRESS, 40);
+    for (int i = 1; i < NetworkLogRecord.MAX_ADDRESSES + 5; i++) {
+      many.addAddress(i % 2 == 0 ? otherAddress : IPV6_ADDRESS);
+    }
+    try (NetworkLogSegmentWriter writer = new NetworkLogSegmentWriter(file, BATCH_TOKEN)) {
+      writer.append(dns(0, "com.example.mail", "mail.example.com", IPV4_ADDRESS, 1));
+      writer.append(many);
+      writer.append(
+          dns(2, "com.example.maps", "maps.example.com", IPV6_ADDRESS, 2).addAddress(otherAddress));
+    }
+
+    try (NetworkLogSegmentReader reader = NetworkLogSegmentReader.open(file)) {
+      NetworkLogRecord record = reader.read(1, new NetworkLogRecord());
+      assertThat(record.getAddressCount()).isEqualTo(40);
+      assertThat(record.getStoredAddressCount()).isEqualTo(NetworkLogRecord.MAX_ADDRESSES);
+      assertThat(record.getAddress(0).getAddress()).isEqualTo(IPV4_ADDRESS);
+      assertThat(record.getAddress(1).getAddress()).isEqualTo(IPV6_ADDRESS);
+      assertThat(record.getAddress(2).getAddress()).isEqualTo(otherAddress);
+      assertThat(record.toString()).contains(", ...], 40,");
+
+      reader.read(2, record);
+      assertThat(record.getAddresses()).hasSize(2);
+      assertThat(record.getAddress(1).getAddress()).isEqualTo(otherAddress);
+
+      reader.read(0, record);
+      assertThat(record.getStoredAddressCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void fieldAccessors_matchRecords() throws Exception {
+    File file = new File(mFolder.getRoot(), "segment.seg");
+    try (NetworkLogSegmentWriter writer = new NetworkLogSegmentWriter(file, BATCH_TOKEN)) {
+      writer.append(dns(1, "com.example.mail", "mail.example.com", IPV4_ADDRESS, 1));
+      writer.append(connect(2, "com.example.maps", IPV4_ADDRESS, 80));
+    }
+
+    try (NetworkLogSegmentReader reader = NetworkLogSegmentReader.open(file)) {
+      int maps = reader.findString("com.example.maps");
+      assertThat(reader.getPackageId(1)).isEqualTo(maps);
+      assertThat(reader.getHostnameId(1)).isEqualTo(-1);
+      assertThat(reader.getString(reader.getHostnameId(0))).isEqualTo("mail.example.com");
+      assertThat(reader.findString("com.example.notes")).isEqualTo(-1);
+      assertThat(reader.getId(1)).isEqualTo(2);
+      assertThat(reader.getTimestamp(1)).isEqualTo(START_MILLIS + 2);
+    }
+  }
+
+  @Test
+  public void blocks_summarizeTimestamps() throws Exception {
+    int recordCount = SegmentFormat.BLOCK_SIZE * 2 + 10;
+    File file = new File(mFolder.getRoot(), "segment.seg");
+    try (NetworkLogSegmentWriter writer = new NetworkLogSegmentWriter(file, BATCH_TOKEN)) {
+      for (int i = 0; i < recordCount; i++) {
+        writer.append(connect(i, "com.example.mail", IPV4_ADDRESS, 443));
+      }
+    }
+
+    try (NetworkLogSegmentReader reader = NetworkLogSegmentReader.open(file)) {
+      assertThat(reader.getRecordCount()).isEqualTo(recordCount);
+      assertThat(reader.getBlockCount()).isEqualTo(3);
+      assertThat(reader.getBlockMinTimestamp(1)).isEqualTo(START_MILLIS + SegmentFormat.BLOCK_SIZE);
+      assertThat(reader.getBlockMaxTimestamp(2)).isEqualTo(START_MILLIS + recordCount - 1);
+    }
+  }
+
+  @Test
+  public void emptySegment() throws Exception {
+    File file = new File(mFolder.getRoot(), "segment.seg");
+    new NetworkLogSegmentWriter(file, BATCH_TOKEN).close();
+
+    try (NetworkLogSegmentReader reader = NetworkLogSegmentReader.open(file)) {
+      assertThat(reader.getRecordCount()).isEqualTo(0);
+      assertThat(reader.getBlockCount()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void abortedSegment_isDeleted() throws Exception {
+    File file = new File(mFolder.getRoot(), "segment.seg");
+    NetworkLogSegmentWriter writer = new NetworkLogSegmentWriter(file, BATCH_TOKEN);
+    writer.append(connect(1, "com.example.mail", IPV4_ADDRESS, 443));
+    writer.abort();
+
+    assertThat(mFolder.getRoot().list()).isEmpty();
+  }
+
+  @Test
+  public void truncatedSegment_isRejected() throws Exception {
+    File file = new File(mFolder.getRoot(), "segment.seg");
+    try (NetworkLogSegmentWriter writer = new NetworkLogSegmentWriter(file, BATCH_TOKEN)) {
+      writer.append(connect(1, "com.example.mail", IPV4_ADDRESS, 443));
+    }
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.setLength(file.length() - 1);
+    }
+
+    assertThrows(IOException.class, () -> NetworkLogSegmentReader.open(file));
+  }
+
+  private static NetworkLogRecord dns(
+      long id, String packageName, String hostname, byte[] address, int addressCount) {
+    return new NetworkLogRecord()
+        .setId(id)
+        .setTimestampMillis(START_MILLIS + id)
+        .setType(NetworkLogRecord.TYPE_DNS)
+        .setPackageName(packageName)
+        .setHostname(hostname)
+        .setAddress(address)
+        .setAddressCount(addressCount);
+  }
+
+  private static NetworkLogRecord connect(long id, String packageName, byte[] address, int port) {
+    return new NetworkLogRecord()
+        .setId(id)
+        .setTimestampMillis(START_MILLIS + id)
+        .setType(NetworkLogRecord.TYPE_CONNECT)
+        .setPackageName(packageName)
+        .setAddress(address)
+        .setAddressCount(1)
+        .setPort(port);
+  }
+}
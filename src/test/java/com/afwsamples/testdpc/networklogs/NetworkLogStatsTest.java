@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.networklogs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class NetworkLogStatsTest {
+
+  private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+  // The start of an hour
+  private static final long START_MILLIS = 1_700_000_000_000L / HOUR_MILLIS * HOUR_MILLIS;
+
+  @Test
+  public void hyperLogLog_estimatesDistinctValues() throws Exception {
+    HyperLogLog sketch = new HyperLogLog();
+    for (int i = 0; i < 50_000; i++) {
+      // Each value added twice
+      sketch.add("host" + (i % 25_000) + ".example.com");
+    }
+
+    assertThat((double) sketch.estimate()).isWithin(25_000 * 0.1).of(25_000);
+    assertThat(roundTrip(sketch).estimate()).isEqualTo(sketch.estimate());
+  }
+
+  @Test
+  public void hyperLogLog_smallCountsAreAccurate() throws Exception {
+    HyperLogLog sketch = new HyperLogLog();
+    for (int i = 0; i < 10; i++) {
+      sketch.add("host" + i);
+    }
+
+    // Off by one at most, when two values share a register
+    assertThat((double) sketch.estimate()).isWithin(1).of(10);
+    // Written sparse
+    assertThat(roundTrip(sketch).estimate()).isEqualTo(sketch.estimate());
+  }
+
+  @Test
+  public void heavyHitters_findsFrequentValues() {
+    HeavyHitters sketch = new HeavyHitters(10);
+    for (int i = 0; i < 1000; i++) {
+      sketch.add(i % 2 == 0 ? "frequent.example.com" : "rare" + i + ".example.com");
+      if (i % 4 == 0) {
+        sketch.add("common.example.com");
+      }
+    }
+
+    List<HeavyHitters.Entry> top = sketch.getTop(2);
+    assertThat(top.get(0).getValue()).isEqualTo("frequent.example.com");
+    assertThat(top.get(0).getCount() - top.get(0).getError()).isAtMost(500);
+    assertThat(top.get(0).getCount()).isAtLeast(500);
+    assertThat(top.get(1).getValue()).isEqualTo("common.example.com");
+  }
+
+  @Test
+  public void stats_countByPackageAndHour() {
+    NetworkLogStats stats = new NetworkLogStats();
+    stats.add(dns("com.example.mail", "imap.example.com", START_MILLIS));
+    stats.add(dns("com.example.mail", "imap.example.com", START_MILLIS + 1));
+    stats.add(connect("com.example.mail", 1, START_MILLIS + HOUR_MILLIS));
+    stats.add(connect("com.example.maps", 2, START_MILLIS));
+    stats.addBatch(7);
+
+    assertThat(stats.getTotals().getDnsLookups()).isEqualTo(2);
+    assertThat(stats.getTotals().getConnects()).isEqualTo(2);
+    assertThat(stats.getBatchCount()).isEqualTo(1);
+    assertThat(stats.getLastBatchToken()).isEqualTo(7);
+    NetworkLogStats.PackageStats mail = stats.getPackages().get(0);
+    assertThat(mail.getPackageName()).isEqualTo("com.example.mail");
+    assertThat(mail.getHourlyCounts().keySet())
+        .containsExactly(START_MILLIS, START_MILLIS + HOUR_MILLIS)
+        .inOrder();
+    assertThat(mail.getHourlyCounts().get(START_MILLIS).getDnsLookups()).isEqualTo(2);
+    assertThat(mail.getCountsSince(START_MILLIS + HOUR_MILLIS).getConnects()).isEqualTo(1);
+    assertThat(mail.getDistinctHostnames()).isEqualTo(1);
+    assertThat(stats.getDistinctAddresses()).isEqualTo(2);
+    assertThat(stats.getTopHostnames(10).get(0).getCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void stats_mergeAndRoundTrip() throws Exception {
+    NetworkLogStats stats = new NetworkLogStats();
+    NetworkLogStats batch = new NetworkLogStats();
+    batch.add(dns("com.example.mail", "imap.example.com", START_MILLIS));
+    batch.addBatch(1);
+    stats.merge(batch);
+    batch = new NetworkLogStats();
+    batch.add(dns("com.example.mail", "smtp.example.com", START_MILLIS));
+    batch.add(connect("com.example.maps", 1, START_MILLIS));
+    batch.addBatch(2);
+    stats.merge(batch);
+
+    NetworkLogStats read = roundTrip(stats);
+
+    assertThat(read.getBatchCount()).isEqualTo(2);
+    assertThat(read.getLastBatchToken()).isEqualTo(2);
+    assertThat(read.getTotals().getDnsLookups()).isEqualTo(2);
+    assertThat(read.getTotals().getConnects()).isEqualTo(1);
+    assertThat(read.getDistinctHostnames()).isEqualTo(2);
+    NetworkLogStats.PackageStats mail = read.findPackage("com.example.mail");
+    assertThat(mail.getDnsLookups()).isEqualTo(2);
+    assertThat(mail.getHourlyCounts().get(START_MILLIS).getDnsLookups()).isEqualTo(2);
+    assertThat(read.getFirstTimestamp()).isEqualTo(START_MILLIS);
+  }
+
+  @Test
+  public void stats_dropOldHours() {
+    NetworkLogStats stats = new NetworkLogStats();
+    NetworkLogStats batch = new NetworkLogStats();
+    batch.add(dns("com.example.mail", "imap.example.com", START_MILLIS));
+    stats.merge(batch);
+    batch = new NetworkLogStats();
+    batch.add(dns("com.example.mail", "imap.example.com", START_MILLIS + 200 * HOUR_MILLIS));
+    stats.merge(batch);
+
+    NetworkLogStats.PackageStats mail = stats.findPackage("com.example.mail");
+    assertThat(mail.getHourlyCounts().keySet()).containsExactly(START_MILLIS + 200 * HOUR_MILLIS);
+    // Totals are kept
+    assertThat(mail.getDnsLookups()).isEqualTo(2);
+  }
+
+  private static NetworkLogRecord dns(String packageName, String hostname, long timestamp) {
+    return new NetworkLogRecord()
+        .setType(NetworkLogRecord.TYPE_DNS)
+        .setPackageName(packageName)
+        .setHostname(hostname)
+        .setTimestampMillis(timestamp);
+  }
+
+  private static NetworkLogRecord connect(String packageName, int host, long timestamp) {
+    return new NetworkLogRecord()
+        .setType(NetworkLogRecord.TYPE_CONNECT)
+        .setPackageName(packageName)
+        .setAddress(new byte[] {10, 0, 0, (byte) host})
+        .setPort(443)
+        .setTimestampMillis(timestamp);
+  }
+
+  private static HyperLogLog roundTrip(HyperLogLog sketch) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    sketch.writeTo(new DataOutputStream(bytes));
+    return HyperLogLog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  private static NetworkLogStats roundTrip(NetworkLogStats stats) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    stats.writeTo(new DataOutputStream(bytes));
+    return NetworkLogStats.readFrom(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+}
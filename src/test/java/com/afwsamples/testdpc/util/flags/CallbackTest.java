@@ -37,7 +37,12 @@ import com.afwsamples.testdpc.util.flags.Utils.Callback6Arg;
 import com.afwsamples.testdpc.util.flags.Utils.Callback7Arg;
 import com.afwsamples.testdpc.util.flags.Utils.Callback8Arg;
 import com.afwsamples.testdpc.util.flags.Utils.Callback9Arg;
+import com.afwsamples.testdpc.util.flags.Utils.IntCallback;
 import com.afwsamples.testdpc.util.flags.Utils.NoArgsCallback;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -55,6 +60,41 @@ public class CallbackTest {
     assertThat(callback.wasCalled).isTrue();
   }
 
+  @Test
+  public void commandInterceptor_wrapsExecution() {
+    List<String> events = new ArrayList<>();
+    Flags flags = new Flags();
+    flags.addCommand(command("command", () -> events.add("executed")));
+    flags.setCommandInterceptor(
+        (commandName, parseNanos, command) -> {
+          events.add("before " + commandName);
+          command.run();
+          events.add("after " + commandName);
+        });
+
+    flags.run(asArgs("comm"));
+
+    assertThat(events).containsExactly("before command", "executed", "after command").inOrder();
+  }
+
+  @Test
+  public void commandInterceptor_notCalledForInvalidInvocation() {
+    IntCallback callback = new IntCallback();
+    List<String> intercepted = new ArrayList<>();
+    Flags flags = new Flags(new PrintWriter(new StringWriter()));
+    flags.addCommand(command("command", callback::callback, ordinalParam(int.class, "arg")));
+    flags.setCommandInterceptor(
+        (commandName, parseNanos, command) -> {
+          intercepted.add(commandName);
+          command.run();
+        });
+
+    flags.run(asArgs("command not-an-int"));
+
+    assertThat(intercepted).isEmpty();
+    assertThat(callback.wasCalled).isFalse();
+  }
+
   @Test
   public void callback1Arg_isInvoked() {
     Callback1Arg callback = new Callback1Arg();
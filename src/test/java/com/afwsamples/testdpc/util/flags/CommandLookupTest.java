@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.util.flags;
+
+import static com.afwsamples.testdpc.util.flags.Flags.command;
+import static com.afwsamples.testdpc.util.flags.Flags.ordinalParam;
+import static com.afwsamples.testdpc.util.flags.Utils.asArgs;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.afwsamples.testdpc.util.flags.Utils.NoArgsCallback;
+import com.afwsamples.testdpc.util.flags.Utils.StringCallback;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CommandLookupTest {
+  private final StringWriter stringWriter = new StringWriter();
+  private final Flags flags = new Flags(new PrintWriter(stringWriter));
+  private final NoArgsCallback networkLogsCallback = new NoArgsCallback();
+  private final NoArgsCallback securityLogsCallback = new NoArgsCallback();
+  private final NoArgsCallback preRebootSecurityLogsCallback = new NoArgsCallback();
+
+  @Before
+  public void setUp() {
+    flags.addCommand(command("retrieve-network-logs", networkLogsCallback::callback));
+    flags.addCommand(command("retrieve-security-logs", securityLogsCallback::callback));
+    flags.addCommand(
+        command("retrieve-pre-reboot-security-logs", preRebootSecurityLogsCallback::callback));
+  }
+
+  @Test
+  public void uniquePrefix_runsCommand() {
+    flags.run(asArgs("retrieve-n"));
+
+    assertThat(networkLogsCallback.wasCalled).isTrue();
+    assertThat(securityLogsCallback.wasCalled).isFalse();
+  }
+
+  @Test
+  public void abbreviatedSegments_runsCommand() {
+    flags.run(asArgs("retr-net"));
+
+    assertThat(networkLogsCallback.wasCalled).isTrue();
+  }
+
+  @Test
+  public void abbreviationSkippingTrailingSegments_runsCommand() {
+    flags.run(asArgs("r-p"));
+
+    assertThat(preRebootSecurityLogsCallback.wasCalled).isTrue();
+  }
+
+  @Test
+  public void abbreviation_passesArguments() {
+    StringCallback callback = new StringCallback();
+    flags.addCommand(
+        command("set-organization-name", callback::callback, ordinalParam(String.class, "name")));
+
+    flags.run(asArgs("set-org Example"));
+
+    assertThat(callback.value).isEqualTo("Example");
+  }
+
+  @Test
+  public void exactName_winsOverLongerMatches() {
+    NoArgsCallback callback = new NoArgsCallback();
+    flags.addCommand(command("retrieve", callback::callback));
+
+    flags.run(asArgs("retrieve"));
+
+    assertThat(callback.wasCalled).isTrue();
+    assertThat(networkLogsCallback.wasCalled).isFalse();
+  }
+
+  @Test
+  public void ambiguousAbbreviation_listsMatchesWithoutRunning() {
+    flags.run(asArgs("retr-s"));
+    flags.run(asArgs("retr"));
+
+    assertThat(securityLogsCallback.wasCalled).isTrue();
+    assertThat(networkLogsCallback.wasCalled).isFalse();
+    assertThat(stringWriter.getBuffer().toString())
+        .isEqualTo(
+            "Command 'retr' is ambiguous; it matches: retrieve-network-logs,"
+                + " retrieve-pre-reboot-security-logs, retrieve-security-logs.\n"
+                + "Run 'help' to list all commands.\n");
+  }
+
+  @Test
+  public void unknownCommand_suggestsClosestCommands() {
+    boolean executed = flags.runCommand(asArgs("retreive-network-logs"));
+
+    assertThat(executed).isFalse();
+    assertThat(stringWriter.getBuffer().toString())
+        .isEqualTo(
+            "Command 'retreive-network-logs' was not found.\n"
+                + "Did you mean: retrieve-network-logs, retrieve-pre-reboot-security-logs,"
+                + " retrieve-security-logs?\n");
+  }
+
+  @Test
+  public void unknownCommand_doesNotPrintUsage() {
+    flags.run(asArgs("hepl"));
+
+    assertThat(stringWriter.getBuffer().toString())
+        .isEqualTo(
+            "Command 'hepl' was not found.\n"
+                + "Did you mean: help?\n"
+                + "Run 'help' to list all commands.\n");
+  }
+
+  @Test
+  public void complete_printsMatchingCommandsInOrder() {
+    flags.run(asArgs("complete retrieve"));
+
+    assertThat(stringWriter.getBuffer().toString())
+        .isEqualTo(
+            "retrieve-network-logs\n"
+                + "retrieve-pre-reboot-security-logs\n"
+                + "retrieve-security-logs\n");
+  }
+
+  @Test
+  public void complete_acceptsAbbreviations() {
+    flags.run(asArgs("complete r-s"));
+
+    assertThat(stringWriter.getBuffer().toString()).isEqualTo("retrieve-security-logs\n");
+  }
+
+  @Test
+  public void complete_noMatches_printsNothing() {
+    flags.run(asArgs("complete unknown"));
+
+    assertThat(stringWriter.getBuffer().toString()).isEmpty();
+  }
+
+  @Test
+  public void complete_includesCommandsAddedAfterLookup() {
+    flags.run(asArgs("complete retrieve-n"));
+    flags.addCommand(command("retrieve-network-stats", () -> {}));
+
+    flags.run(asArgs("complete retrieve-n"));
+
+    assertThat(stringWriter.getBuffer().toString())
+        .isEqualTo("retrieve-network-logs\nretrieve-network-logs\nretrieve-network-stats\n");
+  }
+
+  @Test
+  public void sharedTable_resolvesAbbreviations() {
+    NoArgsCallback callback = new NoArgsCallback();
+    Flags.CommandTable table =
+        Flags.CommandTable.builder()
+            .addCommand(command("clear-device-owner", callback::callback))
+            .build();
+
+    new Flags(new PrintWriter(stringWriter), table).run(asArgs("clear-dev"));
+
+    assertThat(callback.wasCalled).isTrue();
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.afwsamples.testdpc.util.flags;
+
+import static com.afwsamples.testdpc.util.flags.Flags.command;
+import static com.afwsamples.testdpc.util.flags.Flags.ordinalParam;
+import static com.afwsamples.testdpc.util.flags.Utils.asArgs;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.afwsamples.testdpc.util.flags.Utils.IntCallback;
+import com.afwsamples.testdpc.util.flags.Utils.KeyValueCallback;
+import com.afwsamples.testdpc.util.flags.Utils.KeyValueType;
+import com.afwsamples.testdpc.util.flags.Utils.NoArgsCallback;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CommandTableTest {
+  @Test
+  public void sharedTable_runsCommandsOnEachInstance() {
+    IntCallback callback = new IntCallback();
+    Flags.CommandTable table =
+        Flags.CommandTable.builder()
+            .addCommand(command("command", callback::callback, ordinalParam(int.class, "arg")))
+            .build();
+
+    new Flags(new PrintWriter(new StringWriter()), table).run(asArgs("command 1"));
+    assertThat(callback.value).isEqualTo(1);
+
+    new Flags(new PrintWriter(new StringWriter()), table).run(asArgs("command 2"));
+    assertThat(callback.value).isEqualTo(2);
+  }
+
+  @Test
+  public void sharedTable_customParserBoundPerInstance() {
+    KeyValueCallback callback = new KeyValueCallback();
+    Flags.CommandTable table =
+        Flags.CommandTable.builder()
+            .declareCustomType(KeyValueType.class)
+            .addCommand(
+                command("command", callback::callback, ordinalParam(KeyValueType.class, "arg")))
+            .build();
+
+    Flags flags = new Flags(new PrintWriter(new StringWriter()), table);
+    flags.registerCustomParser(
+        KeyValueType.class,
+        (string, validator) -> validator.valid(new KeyValueType("bound", string)));
+    flags.run(asArgs("command value"));
+
+    assertThat(callback.value.key).isEqualTo("bound");
+    assertThat(callback.value.value).isEqualTo("value");
+  }
+
+  @Test
+  public void sharedTable_customParserNotRegistered_throwsException() {
+    Flags.CommandTable table =
+        Flags.CommandTable.builder()
+            .declareCustomType(KeyValueType.class)
+            .addCommand(command("command", (a) -> {}, ordinalParam(KeyValueType.class, "arg")))
+            .build();
+    Flags flags = new Flags(new PrintWriter(new StringWriter()), table);
+
+    assertThrows(UnsupportedOperationException.class, () -> flags.run(asArgs("command value")));
+  }
+
+  @Test
+  public void undeclaredCustomType_throwsException() {
+    Flags.CommandTable.Builder builder = Flags.CommandTable.builder();
+
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> builder.addCommand(command("command", (a) -> {}, ordinalParam(Object.class, "arg"))));
+  }
+
+  @Test
+  public void duplicateCommandName_throwsException() {
+    Flags.CommandTable.Builder builder =
+        Flags.CommandTable.builder().addCommand(command("command", () -> {}));
+
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> builder.addCommand(command("command", () -> {})));
+  }
+
+  @Test
+  public void instanceCommand_duplicatesTableCommand_throwsException() {
+    Flags.CommandTable table =
+        Flags.CommandTable.builder().addCommand(command("command", () -> {})).build();
+    Flags flags = new Flags(new PrintWriter(new StringWriter()), table);
+
+    assertThrows(
+        UnsupportedOperationException.class, () -> flags.addCommand(command("command", () -> {})));
+  }
+
+  @Test
+  public void instanceCommand_isNotAddedToTable() {
+    NoArgsCallback callback = new NoArgsCallback();
+    Flags.CommandTable table = Flags.CommandTable.builder().build();
+    new Flags(new PrintWriter(new StringWriter()), table)
+        .addCommand(command("command", callback::callback));
+
+    new Flags(new PrintWriter(new StringWriter()), table).run(asArgs("command"));
+
+    assertThat(callback.wasCalled).isFalse();
+  }
+
+  @Test
+  public void sharedTable_generatesDocumentation() {
+    StringWriter stringWriter = new StringWriter();
+    Flags.CommandTable table =
+        Flags.CommandTable.builder()
+            .addCommand(command("say-hello", () -> {}).setDescription("Says hello."))
+            .build();
+    Flags flags = new Flags(new PrintWriter(stringWriter), table);
+
+    flags.run(asArgs("help"));
+
+    String output = stringWriter.getBuffer().toString();
+    assertThat(output).contains("  help <command>...\n");
+    assertThat(output).contains("  say-hello\n    Says hello.\n\n");
+  }
+}
@@ -23,6 +23,7 @@ import static com.afwsamples.testdpc.util.flags.Flags.ordinalParam;
 import static com.afwsamples.testdpc.util.flags.Flags.repeated;
 import static com.afwsamples.testdpc.util.flags.Utils.asArgs;
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
 import com.afwsamples.testdpc.util.flags.Utils.KeyValueCallback;
 import com.afwsamples.testdpc.util.flags.Utils.KeyValueType;
@@ -290,7 +291,13 @@ public class HelpTextGenerationTest {
     flags.run(new String[0]);
 
     assertThat(stringWriter.getBuffer().toString())
-        .isEqualTo("Usage:\n  help\n    Prints this help text.\n\n");
+        .isEqualTo(
+            "Usage:\n"
+                + "  help <command>...\n"
+                + "    Prints this help text, or only the entries of the given commands.\n\n"
+                + "  complete <prefix>\n"
+                + "    Prints the commands matching the given prefix or abbreviation, one per"
+                + " line.\n\n");
   }
 
   @Test
@@ -315,6 +322,103 @@ public class HelpTextGenerationTest {
     assertThat(stringWriter.getBuffer().toString()).contains("  say-hello\n    Says hello.\n\n");
   }
 
+  @Test
+  public void helpCommandWithCommandName_printsOnlyThatEntry() {
+    StringWriter stringWriter = new StringWriter();
+    Flags flags = new Flags(new PrintWriter(stringWriter));
+    flags.addCommand(command("say-hello", () -> {}).setDescription("Says hello."));
+    flags.addCommand(command("say-goodbye", () -> {}).setDescription("Says goodbye."));
+
+    flags.run(asArgs("help say-goodbye"));
+
+    assertThat(stringWriter.getBuffer().toString())
+        .isEqualTo("Usage:\n  say-goodbye\n    Says goodbye.\n\n");
+  }
+
+  @Test
+  public void helpCommandWithAbbreviatedNames_printsTheirEntries() {
+    StringWriter stringWriter = new StringWriter();
+    Flags flags = new Flags(new PrintWriter(stringWriter));
+    flags.addCommand(command("say-hello", () -> {}).setDescription("Says hello."));
+    flags.addCommand(command("say-goodbye", () -> {}).setDescription("Says goodbye."));
+
+    flags.run(asArgs("help s-h s-g"));
+
+    assertThat(stringWriter.getBuffer().toString())
+        .isEqualTo("Usage:\n  say-hello\n    Says hello.\n\n  say-goodbye\n    Says goodbye.\n\n");
+  }
+
+  @Test
+  public void helpCommandWithUnknownName_printsOnlyError() {
+    StringWriter stringWriter = new StringWriter();
+    Flags flags = new Flags(new PrintWriter(stringWriter));
+    flags.addCommand(command("say-hello", () -> {}).setDescription("Says hello."));
+
+    flags.run(asArgs("help say-hello shout"));
+
+    assertThat(stringWriter.getBuffer().toString())
+        .isEqualTo("Command 'shout' was not found.\nRun 'help' to list all commands.\n");
+  }
+
+  @Test
+  public void usageLineLength_wrapsToGivenLength() {
+    StringWriter stringWriter = new StringWriter();
+    Flags flags = new Flags(new PrintWriter(stringWriter));
+    flags.addCommand(
+        command("say-hello", (a) -> {}, ordinalParam(String.class, "name"))
+            .setDescription("Says hello to the given name, then waits for an answer."));
+    flags.setUsageLineLength(40);
+
+    flags.run(asArgs("help say-hello"));
+
+    assertThat(stringWriter.getBuffer().toString())
+        .isEqualTo(
+            "Usage:\n"
+                + "  say-hello <name>\n"
+                + "    Says hello to the given name, then\n"
+                + "    waits for an answer.\n\n");
+  }
+
+  @Test
+  public void usageLineLength_changedAfterHelp_rewrapsText() {
+    StringWriter stringWriter = new StringWriter();
+    Flags flags = new Flags(new PrintWriter(stringWriter));
+    flags.addCommand(
+        command("say-hello", () -> {})
+            .setDescription("Says hello to the given name, then waits for an answer."));
+
+    flags.run(asArgs("help"));
+    flags.setUsageLineLength(40);
+    flags.run(asArgs("help"));
+
+    assertThat(stringWriter.getBuffer().toString())
+        .contains("    Says hello to the given name, then waits for an answer.\n");
+    assertThat(stringWriter.getBuffer().toString())
+        .contains("    Says hello to the given name, then\n    waits for an answer.\n");
+  }
+
+  @Test
+  public void usageLineLength_tooShort_throwsException() {
+    Flags flags = new Flags(new PrintWriter(new StringWriter()));
+
+    assertThrows(UnsupportedOperationException.class, () -> flags.setUsageLineLength(10));
+  }
+
+  @Test
+  public void commandAddedAfterHelp_includedInHelpText() {
+    StringWriter stringWriter = new StringWriter();
+    Flags flags = new Flags(new PrintWriter(stringWriter));
+    flags.addCommand(command("say-hello", () -> {}).setDescription("Says hello."));
+    flags.run(asArgs("help"));
+    stringWriter.getBuffer().setLength(0);
+
+    flags.addCommand(command("say-goodbye", () -> {}).setDescription("Says goodbye."));
+    flags.run(asArgs("help"));
+
+    assertThat(stringWriter.getBuffer().toString())
+        .contains("  say-hello\n    Says hello.\n\n  say-goodbye\n    Says goodbye.\n\n");
+  }
+
   @Test
   public void helpTextPrinted_flushesWriter() {
     CustomPrintWriter printWriter = new CustomPrintWriter();
@@ -135,16 +135,56 @@ public class InvalidCallsTest {
   }
 
   @Test
-  public void unregisteredCommandCalled_commandShortCircuitsWithHelpText() {
+  public void unregisteredCommandCalled_commandShortCircuitsWithoutHelpText() {
     StringWriter stringWriter = new StringWriter();
     Flags flags = new Flags(new PrintWriter(stringWriter));
     StringCallback callback = new StringCallback();
     flags.addCommand(command("command", callback::callback, ordinalParam(String.class, "arg")));
 
-    flags.run(asArgs("hello command"));
+    flags.run(asArgs("unknown command"));
 
     assertThat(callback.wasCalled).isFalse();
     assertThat(stringWriter.getBuffer().toString())
-        .startsWith("Command 'hello' was not found.\n\nUsage:");
+        .isEqualTo("Command 'unknown' was not found.\nRun 'help' to list all commands.\n");
+  }
+
+  @Test
+  public void runCommand_invalidCall_printsOnlyErrorMessage() {
+    StringWriter stringWriter = new StringWriter();
+    Flags flags = new Flags(new PrintWriter(stringWriter));
+    IntCallback callback = new IntCallback();
+    flags.addCommand(command("command", callback::callback, ordinalParam(int.class, "arg")));
+
+    boolean executed = flags.runCommand(asArgs("command"));
+
+    assertThat(executed).isFalse();
+    assertThat(callback.wasCalled).isFalse();
+    assertThat(stringWriter.getBuffer().toString())
+        .isEqualTo("Ordinal parameter 'arg' was not provided.\n");
+  }
+
+  @Test
+  public void runCommand_unknownCommand_printsOnlyErrorMessage() {
+    StringWriter stringWriter = new StringWriter();
+    Flags flags = new Flags(new PrintWriter(stringWriter));
+
+    boolean executed = flags.runCommand(asArgs("unknown"));
+
+    assertThat(executed).isFalse();
+    assertThat(stringWriter.getBuffer().toString()).isEqualTo("Command 'unknown' was not found.\n");
+  }
+
+  @Test
+  public void runCommand_validCall_isExecuted() {
+    StringWriter stringWriter = new StringWriter();
+    Flags flags = new Flags(new PrintWriter(stringWriter));
+    IntCallback callback = new IntCallback();
+    flags.addCommand(command("command", callback::callback, ordinalParam(int.class, "arg")));
+
+    boolean executed = flags.runCommand(asArgs("command 42"));
+
+    assertThat(executed).isTrue();
+    assertThat(callback.value).isEqualTo(42);
+    assertThat(stringWriter.getBuffer().toString()).isEmpty();
   }
 }
@@ -25,6 +25,7 @@ import static com.afwsamples.testdpc.util.flags.Utils.asArgs;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.afwsamples.testdpc.util.flags.Utils.BooleanArrayCallback;
+import com.afwsamples.testdpc.util.flags.Utils.BooleanCallback;
 import com.afwsamples.testdpc.util.flags.Utils.Callback2Arg;
 import com.afwsamples.testdpc.util.flags.Utils.ObjectCallback;
 import com.afwsamples.testdpc.util.flags.Utils.StringArrayCallback;
@@ -62,6 +63,51 @@ public class ParamTest {
     assertThat(callback.value).isEqualTo("hello");
   }
 
+  @Test
+  public void namedBooleanParam_calledWithoutValue_isTrue() {
+    BooleanCallback callback = new BooleanCallback();
+    Flags flags = new Flags();
+    flags.addCommand(command("command", callback::callback, namedParam(boolean.class, "arg")));
+
+    flags.run(asArgs("command --arg"));
+
+    assertThat(callback.wasCalled).isTrue();
+    assertThat(callback.value).isTrue();
+  }
+
+  @Test
+  public void namedBooleanParam_calledWithoutValueBeforeNamedArg_isTrue() {
+    BooleanCallback flagCallback = new BooleanCallback();
+    StringCallback nameCallback = new StringCallback();
+    Flags flags = new Flags();
+    flags.addCommand(
+        command(
+            "command",
+            (flag, name) -> {
+              flagCallback.callback(flag);
+              nameCallback.callback(name);
+            },
+            namedParam(boolean.class, "flag"),
+            namedParam(String.class, "name")));
+
+    flags.run(asArgs("command --flag --name hello"));
+
+    assertThat(flagCallback.value).isTrue();
+    assertThat(nameCallback.value).isEqualTo("hello");
+  }
+
+  @Test
+  public void namedBooleanParam_calledWithValue_usesValue() {
+    BooleanCallback callback = new BooleanCallback();
+    Flags flags = new Flags();
+    flags.addCommand(command("command", callback::callback, namedParam(boolean.class, "arg")));
+
+    flags.run(asArgs("command --arg false"));
+
+    assertThat(callback.wasCalled).isTrue();
+    assertThat(callback.value).isFalse();
+  }
+
   @Test
   public void optionalParam_provided_works() {
     StringCallback callback = new StringCallback();
@@ -202,22 +248,50 @@ public class ParamTest {
     assertThat(callback.arg2).isEqualTo("arg2Value");
   }
 
+  @Test
+  public void repeatedOrdinalParam_primitiveType_producesBoxedArray() {
+    ObjectCallback callback = new ObjectCallback();
+    Flags flags = new Flags();
+    flags.addCommand(
+        command("command", callback::callback, repeated(ordinalParam(int.class, "arg"))));
+
+    flags.run(asArgs("command 1 2 3"));
+
+    assertThat(callback.wasCalled).isTrue();
+    assertThat(callback.value).isEqualTo(new Integer[] {1, 2, 3});
+  }
+
+  @Test
+  public void consecutiveCommands_doNotShareValues(@TestParameter ValueType valueType) {
+    ObjectCallback callback = new ObjectCallback();
+    Flags flags = new Flags();
+    flags.addCommand(
+        command("command", callback::callback, optional(namedParam(valueType.type, "arg"))));
+
+    flags.run(asArgs("command --arg " + valueType.nonDefaultValue));
+    flags.run(asArgs("command"));
+
+    assertThat(callback.value).isEqualTo(valueType.defaultValue);
+  }
+
   private enum ValueType {
-    BOOLEAN(boolean.class, false),
-    CHAR(char.class, '\0'),
-    FLOAT(float.class, 0f),
-    DOUBLE(double.class, 0d),
-    BYTE(byte.class, (byte) 0),
-    SHORT(short.class, (short) 0),
-    INT(int.class, 0),
-    LONG(long.class, 0L);
+    BOOLEAN(boolean.class, false, "true"),
+    CHAR(char.class, '\0', "c"),
+    FLOAT(float.class, 0f, "1.5"),
+    DOUBLE(double.class, 0d, "1.5"),
+    BYTE(byte.class, (byte) 0, "1"),
+    SHORT(short.class, (short) 0, "1"),
+    INT(int.class, 0, "1"),
+    LONG(long.class, 0L, "1");
 
     final Class<?> type;
     final Object defaultValue;
+    final String nonDefaultValue;
 
-    ValueType(Class<?> type, Object defaultValue) {
+    ValueType(Class<?> type, Object defaultValue, String nonDefaultValue) {
       this.type = type;
       this.defaultValue = defaultValue;
+      this.nonDefaultValue = nonDefaultValue;
     }
   }
 }